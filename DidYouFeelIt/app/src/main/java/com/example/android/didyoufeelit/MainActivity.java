@@ -18,8 +18,11 @@ package com.example.android.didyoufeelit;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
 import android.widget.TextView;
 
+import com.example.android.http.Metrics;
+
 /**
  * Displays the perceived strength of a single earthquake event based on responses from people who
  * felt the earthquake.
@@ -49,6 +52,7 @@ public class MainActivity extends AppCompatActivity {
      * @param earthquake take in an earthquake class
      */
     private void updateUi(Event earthquake) {
+        long bindStart = System.nanoTime();
         TextView titleTextView = (TextView) findViewById(R.id.title);
         titleTextView.setText(earthquake.title);
 
@@ -57,6 +61,25 @@ public class MainActivity extends AppCompatActivity {
 
         TextView magnitudeTextView = (TextView) findViewById(R.id.perceived_magnitude);
         magnitudeTextView.setText(earthquake.perceivedStrength);
+        Metrics.getDefault().recordSince(Metrics.BIND, bindStart);
+    }
+
+    /**
+     * write where the time of the request went (network, parsing, binding) to the log,
+     * only in a debug build
+     */
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (!BuildConfig.DEBUG) {
+            return;
+        }
+        Metrics.getDefault().export(new Metrics.Sink() {
+            @Override
+            public void write(String line) {
+                Log.i(Utils.LOG_TAG, line);
+            }
+        });
     }
 
 
@@ -15,21 +15,13 @@
  */
 package com.example.android.didyoufeelit;
 
-import android.text.TextUtils;
 import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import com.example.android.usgs.Feature;
+import com.example.android.usgs.FeatureMapper;
+import com.example.android.usgs.UsgsClient;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.nio.charset.Charset;
 
 /**
  * Utility class with methods to help perform the HTTP request and
@@ -41,130 +33,36 @@ public final class Utils {
     public static final String LOG_TAG = Utils.class.getSimpleName();
 
     /**
-     * Query the USGS dataset and return an {@link Event} object to represent a single earthquake.
+     * Return an {@link Event} object from the title, number of people, and perceived strength
+     * values of a feature, null if one of them is missing
      */
-    public static Event fetchEarthquakeData(String requestUrl) {
-        // Create URL object
-        URL url = createUrl(requestUrl);
+    private static final FeatureMapper<Event> EVENT_MAPPER = new FeatureMapper<Event>("title", "felt", "cdi") {
+        @Override
+        public Event map(Feature feature) {
+            // Extract out the title, number of people, and perceived strength values
+            String title = feature.getString("title");
+            String numberOfPeople = feature.getString("felt");
+            String perceivedStrength = feature.getString("cdi");
+            if (title == null || numberOfPeople == null || perceivedStrength == null) {
+                return null;
+            }
 
-        // Perform HTTP request to the URL and receive a JSON response back
-        String jsonResponse = null;
-        try {
-            jsonResponse = makeHttpRequest(url);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Error closing input stream", e);
+            // Create a new {@link Event} object
+            return new Event(title, numberOfPeople, perceivedStrength);
         }
-
-        // Extract relevant fields from the JSON response and create an {@link Event} object
-        Event earthquake = extractFeatureFromJson(jsonResponse);
-
-        // Return the {@link Event}
-        return earthquake;
-    }
+    };
 
     /**
-     * Returns new URL object from the given string URL.
-     */
-    private static URL createUrl(String stringUrl) {
-        URL url = null;
-        try {
-            url = new URL(stringUrl);
-        } catch (MalformedURLException e) {
-            Log.e(LOG_TAG, "Error with creating URL ", e);
-        }
-        return url;
-    }
-
-    /**
-     * Make an HTTP request to the given URL and return a String as the response.
+     * Query the USGS dataset and return an {@link Event} object to represent a single earthquake.
      */
-    private static String makeHttpRequest(URL url) throws IOException {
-        String jsonResponse = "";
-
-        // If the URL is null, then return early.
-        if (url == null) {
-            return jsonResponse;
-        }
-
-        HttpURLConnection urlConnection = null;
-        InputStream inputStream = null;
+    public static Event fetchEarthquakeData(String requestUrl) {
+        // Perform HTTP request to the URL and create an {@link Event} object from the first
+        // feature of the JSON response, the response is parsed while it's read
         try {
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setReadTimeout(10000 /* milliseconds */);
-            urlConnection.setConnectTimeout(15000 /* milliseconds */);
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
-
-            // If the request was successful (response code 200),
-            // then read the input stream and parse the response.
-            if (urlConnection.getResponseCode() == 200) {
-                inputStream = urlConnection.getInputStream();
-                jsonResponse = readFromStream(inputStream);
-            } else {
-                Log.e(LOG_TAG, "Error response code: " + urlConnection.getResponseCode());
-            }
+            return UsgsClient.getDefault().fetchFirst(requestUrl, EVENT_MAPPER);
         } catch (IOException e) {
             Log.e(LOG_TAG, "Problem retrieving the earthquake JSON results.", e);
-        } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-            if (inputStream != null) {
-                inputStream.close();
-            }
-        }
-        return jsonResponse;
-    }
-
-    /**
-     * Convert the {@link InputStream} into a String which contains the
-     * whole JSON response from the server.
-     */
-    private static String readFromStream(InputStream inputStream) throws IOException {
-        StringBuilder output = new StringBuilder();
-        if (inputStream != null) {
-            InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
-            BufferedReader reader = new BufferedReader(inputStreamReader);
-            String line = reader.readLine();
-            while (line != null) {
-                output.append(line);
-                line = reader.readLine();
-            }
-        }
-        return output.toString();
-    }
-
-    /**
-     * Return an {@link Event} object by parsing out information
-     * about the first earthquake from the input earthquakeJSON string.
-     */
-    private static Event extractFeatureFromJson(String earthquakeJSON) {
-        // If the JSON string is empty or null, then return early.
-        if (TextUtils.isEmpty(earthquakeJSON)) {
             return null;
         }
-
-        try {
-            JSONObject baseJsonResponse = new JSONObject(earthquakeJSON);
-            JSONArray featureArray = baseJsonResponse.getJSONArray("features");
-
-            // If there are results in the features array
-            if (featureArray.length() > 0) {
-                // Extract out the first feature (which is an earthquake)
-                JSONObject firstFeature = featureArray.getJSONObject(0);
-                JSONObject properties = firstFeature.getJSONObject("properties");
-
-                // Extract out the title, number of people, and perceived strength values
-                String title = properties.getString("title");
-                String numberOfPeople = properties.getString("felt");
-                String perceivedStrength = properties.getString("cdi");
-
-                // Create a new {@link Event} object
-                return new Event(title, numberOfPeople, perceivedStrength);
-            }
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, "Problem parsing the earthquake JSON results", e);
-        }
-        return null;
     }
 }
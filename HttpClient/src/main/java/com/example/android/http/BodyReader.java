@@ -0,0 +1,185 @@
+package com.example.android.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * Reads a whole response body as text with buffers reused from one response to the next.
+ * a body kept to be decoded later is read as bytes instead (see {@link #readBytes(HttpClient.Response)})
+ *
+ * the bytes are read in one byte[] (sized from the Content-Length when the server gives it, up to
+ * 1 MB, and grown as the bytes come) and decoded once in one char[], there is no line by line copy
+ * and the new lines are kept.
+ * each thread has its own buffers, so the text returned is only valid until the same thread
+ * reads an other body: use it (i.e. parse it) before that or copy it with toString().
+ */
+public final class BodyReader {
+
+    //the size of the buffers when the length of the body is unknown
+    private static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+    //a bigger buffer is not kept for the next response, so one big body doesn't hold memory forever
+    private static final int MAX_POOLED_BUFFER_SIZE = 1024 * 1024;
+
+    //the Content-Length is only what the server says, a buffer bigger than that is only allocated
+    //once the bytes are really there (a wrong or hostile header can't make us allocate it up front)
+    private static final int MAX_INITIAL_BUFFER_SIZE = 1024 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    //the buffers of each thread, no lock is needed
+    private static final ThreadLocal<Buffers> sBuffers = new ThreadLocal<Buffers>() {
+        @Override
+        protected Buffers initialValue() {
+            return new Buffers();
+        }
+    };
+
+    /**
+     * Create a private constructor because no one should ever create a {@link BodyReader} object.
+     */
+    private BodyReader() {
+    }
+
+    /**
+     * read the body of the response to its end and decode it as UTF-8
+     * @param response the response to read, it's not closed
+     * @return the text of the body, valid until this thread reads an other body
+     * @throws IOException if the body can't be read
+     */
+    public static CharSequence readText(HttpClient.Response response) throws IOException {
+        return readText(response.getBody(), response.getContentLength());
+    }
+
+    /**
+     * read a stream to its end and decode it as UTF-8
+     * @param inputStream the stream to read, it's not closed
+     * @param length the number of bytes of the stream or -1 if it's unknown
+     * @return the text of the stream, valid until this thread reads an other body
+     * @throws IOException if the stream can't be read
+     */
+    public static CharSequence readText(InputStream inputStream, long length) throws IOException {
+        Buffers buffers = sBuffers.get();
+        int count = read(inputStream, length, buffers);
+        byte[] bytes = buffers.mBytes;
+
+        //a UTF-8 byte is never more than one char
+        CharBuffer chars = buffers.chars(count);
+        CharsetDecoder decoder = buffers.mDecoder;
+        decoder.reset();
+        //a malformed byte is replaced, it doesn't stop the decoding
+        decoder.decode(ByteBuffer.wrap(bytes, 0, count), chars, true);
+        decoder.flush(chars);
+        chars.flip();
+
+        buffers.release();
+        return chars;
+    }
+
+    /**
+     * read the body of the response to its end, without decoding it
+     * @param response the response to read, it's not closed
+     * @return the bytes of the body, in a new array of their exact size (it's not reused)
+     * @throws IOException if the body can't be read
+     */
+    public static byte[] readBytes(HttpClient.Response response) throws IOException {
+        return readBytes(response.getBody(), response.getContentLength());
+    }
+
+    /**
+     * read a stream to its end, without decoding it
+     * @param inputStream the stream to read, it's not closed
+     * @param length the number of bytes of the stream or -1 if it's unknown
+     * @return the bytes of the stream, in a new array of their exact size (it's not reused)
+     * @throws IOException if the stream can't be read
+     */
+    public static byte[] readBytes(InputStream inputStream, long length) throws IOException {
+        Buffers buffers = sBuffers.get();
+        int count = read(inputStream, length, buffers);
+        byte[] bytes = Arrays.copyOf(buffers.mBytes, count);
+        buffers.release();
+        return bytes;
+    }
+
+    /**
+     * read the stream in the byte buffer of the thread
+     * @return the number of bytes read
+     */
+    private static int read(InputStream inputStream, long length, Buffers buffers) throws IOException {
+        //one more byte than the length so the end of the stream is seen without growing the buffer
+        int expected = length >= 0 ? (int) Math.min(length + 1, MAX_INITIAL_BUFFER_SIZE) : DEFAULT_BUFFER_SIZE;
+        byte[] bytes = buffers.bytes(expected);
+        int count = 0;
+        int read;
+        while ((read = inputStream.read(bytes, count, bytes.length - count)) != -1) {
+            count += read;
+            if (count == bytes.length) {
+                bytes = buffers.growBytes(count);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * the reusable buffers and decoder of one thread
+     */
+    private static final class Buffers {
+
+        private final CharsetDecoder mDecoder = UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private byte[] mBytes = new byte[DEFAULT_BUFFER_SIZE];
+        private char[] mChars = new char[DEFAULT_BUFFER_SIZE];
+
+        /**
+         * @return the byte buffer, at least of this size
+         */
+        byte[] bytes(int size) {
+            if (mBytes.length < size) {
+                mBytes = new byte[size];
+            }
+            return mBytes;
+        }
+
+        /**
+         * double the byte buffer, keeping the bytes already read
+         * @throws IOException if the body doesn't fit in an array
+         */
+        byte[] growBytes(int count) throws IOException {
+            if (count > Integer.MAX_VALUE / 2) {
+                throw new IOException("body too large: more than " + count + " bytes");
+            }
+            mBytes = Arrays.copyOf(mBytes, Math.max(count * 2, DEFAULT_BUFFER_SIZE));
+            return mBytes;
+        }
+
+        /**
+         * @return the char buffer, empty and of at least this size
+         */
+        CharBuffer chars(int size) {
+            if (mChars.length < size) {
+                mChars = new char[size];
+            }
+            return CharBuffer.wrap(mChars);
+        }
+
+        /**
+         * drop the buffers grown too big for the next read, the text returned keeps its own
+         * reference to the char buffer so it's still valid
+         */
+        void release() {
+            if (mBytes.length > MAX_POOLED_BUFFER_SIZE) {
+                mBytes = new byte[DEFAULT_BUFFER_SIZE];
+            }
+            if (mChars.length > MAX_POOLED_BUFFER_SIZE) {
+                mChars = new char[DEFAULT_BUFFER_SIZE];
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.android.http;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tells the work started for a request that it's not needed anymore.
+ *
+ * a request sent with a token ({@link HttpClient#get(java.net.URL, java.util.Map, CancellationToken)})
+ * is disconnected as soon as the token is canceled (on a thread of the client, not the one that
+ * cancels), so a thread reading its body gets an IOException instead of reading the rest of the
+ * response. on Android the disconnect closes the socket and a read waiting for bytes fails right
+ * away, on the JVM that read fails when it returns (the next bytes or the read timeout). every read
+ * after the cancel fails without going to the socket.
+ * a token is canceled once and for all, it can be canceled from any thread.
+ */
+public final class CancellationToken {
+
+    /**
+     * called once, on the thread that cancels the token
+     */
+    public interface OnCancelListener {
+        void onCancel();
+    }
+
+    private final List<OnCancelListener> mListeners = new ArrayList<>();
+    private boolean mCanceled;
+
+    /**
+     * cancel the token and call its listeners, it does nothing if it's already canceled
+     */
+    public void cancel() {
+        List<OnCancelListener> listeners;
+        synchronized (this) {
+            if (mCanceled) {
+                return;
+            }
+            mCanceled = true;
+            listeners = new ArrayList<>(mListeners);
+            mListeners.clear();
+            //wake up the threads in await()
+            notifyAll();
+        }
+        //outside of the lock, a listener can take its time (i.e. closing a socket)
+        for (OnCancelListener listener : listeners) {
+            listener.onCancel();
+        }
+    }
+
+    public synchronized boolean isCanceled() {
+        return mCanceled;
+    }
+
+    /**
+     * @throws InterruptedIOException if the token is canceled, so the work stops like a failed read
+     */
+    public void throwIfCanceled() throws InterruptedIOException {
+        if (isCanceled()) {
+            throw new InterruptedIOException("canceled");
+        }
+    }
+
+    /**
+     * wait until the token is canceled, at most the timeout (i.e. the backoff before a retry)
+     * @param timeout the longest wait in milliseconds
+     * @return true if the token is canceled
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    public synchronized boolean await(long timeout) throws InterruptedIOException {
+        long deadline = System.nanoTime() + timeout * 1000000L;
+        long left = timeout;
+        while (!mCanceled && left > 0) {
+            try {
+                wait(left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting");
+            }
+            left = (deadline - System.nanoTime()) / 1000000L;
+        }
+        return mCanceled;
+    }
+
+    /**
+     * @param listener called when the token is canceled, right now if it already is
+     */
+    public void addOnCancelListener(OnCancelListener listener) {
+        synchronized (this) {
+            if (!mCanceled) {
+                mListeners.add(listener);
+                return;
+            }
+        }
+        listener.onCancel();
+    }
+
+    /**
+     * @param listener a listener that is not needed anymore (i.e. the request is done)
+     */
+    public synchronized void removeOnCancelListener(OnCancelListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * @return the number of listeners waiting for the cancel (a request done must not leave one)
+     */
+    synchronized int getListenerCount() {
+        return mListeners.size();
+    }
+}
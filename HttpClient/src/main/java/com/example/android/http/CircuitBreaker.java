@@ -0,0 +1,79 @@
+package com.example.android.http;
+
+/**
+ * The health of one server, the requests to it fail right away while it's known to be down.
+ *
+ * closed: every request goes. after the failure threshold in a row it opens.
+ * open: no request goes until the open duration is over, then it's half open.
+ * half open: one trial request goes, the circuit closes if it works or opens again if it fails.
+ */
+final class CircuitBreaker {
+
+    private final int mFailureThreshold;
+    private final long mOpenDuration;
+
+    //the failures in a row, the circuit is open while it's at the threshold
+    private int mFailures;
+    //when the circuit opened (System.nanoTime())
+    private long mOpenedAt;
+    //true while the trial request of a half open circuit is in flight
+    private boolean mTrialInFlight;
+
+    /**
+     * @param failureThreshold the failures in a row opening the circuit
+     * @param openDuration the time the circuit stays open, in milliseconds
+     */
+    CircuitBreaker(int failureThreshold, long openDuration) {
+        mFailureThreshold = failureThreshold;
+        mOpenDuration = openDuration;
+    }
+
+    /**
+     * @param now the current time (System.nanoTime())
+     * @return true if a request can be sent, it must be followed by onSuccess, onFailure or onCanceled
+     */
+    synchronized boolean allowRequest(long now) {
+        if (mFailures < mFailureThreshold) {
+            return true;
+        }
+        if (mTrialInFlight || now - mOpenedAt < mOpenDuration * 1000000L) {
+            return false;
+        }
+        //half open, this request is the trial
+        mTrialInFlight = true;
+        return true;
+    }
+
+    synchronized void onSuccess() {
+        mFailures = 0;
+        mTrialInFlight = false;
+    }
+
+    /**
+     * @param now the current time (System.nanoTime())
+     */
+    synchronized void onFailure(long now) {
+        mTrialInFlight = false;
+        if (mFailures < mFailureThreshold) {
+            mFailures++;
+        }
+        if (mFailures == mFailureThreshold) {
+            //opened, or opened again after a failed trial
+            mOpenedAt = now;
+        }
+    }
+
+    /**
+     * the request was canceled, it says nothing about the server
+     */
+    synchronized void onCanceled() {
+        mTrialInFlight = false;
+    }
+
+    /**
+     * @return true while the requests fail right away (the trial of a half open circuit aside)
+     */
+    synchronized boolean isOpen() {
+        return mFailures >= mFailureThreshold;
+    }
+}
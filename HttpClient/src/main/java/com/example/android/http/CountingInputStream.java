@@ -0,0 +1,78 @@
+package com.example.android.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read from an other stream (i.e. the bytes received on the wire
+ * or the bytes left once the body is decompressed)
+ *
+ * with a token, a read fails as soon as the token is canceled: the connection was disconnected
+ * and what the stream gives then (i.e. an early end) is not the rest of the body
+ */
+final class CountingInputStream extends FilterInputStream {
+
+    private final CancellationToken mToken;
+    private long mCount;
+
+    CountingInputStream(InputStream in) {
+        this(in, null);
+    }
+
+    /**
+     * @param token stops the reads when it's canceled, can be null
+     */
+    CountingInputStream(InputStream in, CancellationToken token) {
+        super(in);
+        mToken = token;
+    }
+
+    /**
+     * @return the number of bytes read so far (skipped bytes included)
+     */
+    long getCount() {
+        return mCount;
+    }
+
+    @Override
+    public int read() throws IOException {
+        throwIfCanceled();
+        int b = in.read();
+        throwIfCanceled();
+        if (b != -1) {
+            mCount++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        throwIfCanceled();
+        int read = in.read(buffer, offset, length);
+        throwIfCanceled();
+        if (read > 0) {
+            mCount += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = in.skip(n);
+        mCount += skipped;
+        return skipped;
+    }
+
+    private void throwIfCanceled() throws IOException {
+        if (mToken != null) {
+            mToken.throwIfCanceled();
+        }
+    }
+
+    //the count can't go back, so no mark/reset
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.android.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends a request, and a second copy of it if the first one has no response after a delay.
+ *
+ * the first response (whatever its code) is the one returned, the other copy is canceled and its
+ * response closed if it comes anyway. both copies are canceled with the token of the caller, the
+ * listeners doing it are removed from that token once the copies are done (the one of the response
+ * once the response is closed) so a token used for many requests doesn't keep them.
+ * each copy runs on a thread of a small shared pool while the caller waits, if the pool is full
+ * the request is sent once on the thread of the caller.
+ */
+final class HedgedRequest {
+
+    //the copies in flight at the same time for the whole process
+    private static final int MAX_THREADS = 8;
+
+    //an idle thread stops after that
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static ThreadPoolExecutor sExecutor;
+
+    private final HttpClient mClient;
+    private final URL mUrl;
+    private final Map<String, String> mHeaders;
+    private final CancellationToken mToken;
+
+    //the listener of the token of the caller canceling each copy, by the token of the copy
+    private final Map<CancellationToken, CancellationToken.OnCancelListener> mForwards = new HashMap<>(4);
+
+    //the state of the copies, guarded by this
+    private int mRunning;
+    private boolean mInterrupted;
+    private HttpClient.Response mResponse;
+    private CancellationToken mResponseToken;
+    private IOException mError;
+    private boolean mDone;
+
+    /**
+     * @param token cancels both copies, can be null
+     */
+    HedgedRequest(HttpClient client, URL url, Map<String, String> headers, CancellationToken token) {
+        mClient = client;
+        mUrl = url;
+        mHeaders = headers;
+        mToken = token;
+    }
+
+    /**
+     * @param hedgeDelay the wait for a response before the second copy is sent, in milliseconds
+     * @return the first response, it must be closed
+     * @throws IOException if no copy got a response or the token is canceled
+     */
+    HttpClient.Response execute(long hedgeDelay) throws IOException {
+        CancellationToken first = newAttemptToken();
+        if (!start(first)) {
+            //no thread to wait on, the request is sent only once with the token of the caller
+            releaseAttemptToken(first);
+            return mClient.send(mUrl, mHeaders, mToken);
+        }
+
+        CancellationToken second = null;
+        try {
+            synchronized (this) {
+                waitForResponse(hedgeDelay);
+                if (mResponse == null && mRunning > 0 && !mInterrupted) {
+                    second = newAttemptToken();
+                    if (!start(second)) {
+                        releaseAttemptToken(second);
+                        second = null;
+                    }
+                }
+                waitForResponse(0);
+                mDone = true;
+            }
+        } finally {
+            //the copies are done, or are about to be canceled: the caller's token doesn't need to
+            //know them anymore (the response takes over the cancel of its own copy)
+            releaseAttemptToken(first);
+            if (second != null) {
+                releaseAttemptToken(second);
+            }
+        }
+
+        //the copy that lost is not needed anymore, its socket is closed
+        if (first != mResponseToken) {
+            first.cancel();
+        }
+        if (second != null && second != mResponseToken) {
+            second.cancel();
+        }
+
+        if (mInterrupted) {
+            if (mResponse != null) {
+                mResponse.close();
+            }
+            throw new InterruptedIOException("interrupted while waiting for a response");
+        }
+        if (mResponse != null) {
+            //the body is read after we return, a cancel of the caller must still close its socket
+            mResponse.cancelWith(mToken);
+            return mResponse;
+        }
+        if (mToken != null) {
+            mToken.throwIfCanceled();
+        }
+        throw mError;
+    }
+
+    /**
+     * @return a token for one copy, canceled with the token of the caller
+     */
+    private CancellationToken newAttemptToken() {
+        final CancellationToken token = new CancellationToken();
+        if (mToken != null) {
+            CancellationToken.OnCancelListener forward = new CancellationToken.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    token.cancel();
+                }
+            };
+            synchronized (this) {
+                mForwards.put(token, forward);
+            }
+            mToken.addOnCancelListener(forward);
+        }
+        return token;
+    }
+
+    /**
+     * stop canceling a copy with the token of the caller
+     */
+    private void releaseAttemptToken(CancellationToken token) {
+        CancellationToken.OnCancelListener forward;
+        synchronized (this) {
+            forward = mForwards.remove(token);
+        }
+        if (forward != null) {
+            mToken.removeOnCancelListener(forward);
+        }
+    }
+
+    /**
+     * wait until a copy has a response or every copy failed, an interrupt stops the wait
+     * @param timeout the longest wait in milliseconds, 0 to wait as long as it takes
+     */
+    private void waitForResponse(long timeout) {
+        long deadline = System.nanoTime() + timeout * 1000000L;
+        while (mResponse == null && mRunning > 0 && !mInterrupted) {
+            long left = timeout == 0 ? 0 : (deadline - System.nanoTime()) / 1000000L;
+            if (timeout != 0 && left <= 0) {
+                return;
+            }
+            try {
+                wait(left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                mInterrupted = true;
+            }
+        }
+    }
+
+    /**
+     * send a copy on a thread of the pool
+     * @return false if the pool has no thread for it
+     */
+    private boolean start(final CancellationToken token) {
+        synchronized (this) {
+            mRunning++;
+        }
+        try {
+            getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    attempt(token);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                mRunning--;
+            }
+            return false;
+        }
+    }
+
+    private void attempt(CancellationToken token) {
+        HttpClient.Response response = null;
+        IOException error = null;
+        try {
+            response = mClient.send(mUrl, mHeaders, token);
+        } catch (IOException e) {
+            error = e;
+        } catch (RuntimeException e) {
+            error = new IOException(e);
+        }
+
+        synchronized (this) {
+            mRunning--;
+            if (response != null && !mDone && mResponse == null) {
+                mResponse = response;
+                mResponseToken = token;
+                response = null;
+            } else if (error != null) {
+                mError = error;
+            }
+            notifyAll();
+        }
+        //the other copy was first
+        if (response != null) {
+            response.close();
+        }
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = new ThreadPoolExecutor(0, MAX_THREADS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                        private final AtomicInteger mCount = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "HedgedRequest #" + mCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return sExecutor;
+    }
+}
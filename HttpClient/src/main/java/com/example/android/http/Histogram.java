@@ -0,0 +1,126 @@
+package com.example.android.http;
+
+import java.util.Arrays;
+
+/**
+ * Counts values (i.e. durations or sizes) by range to give their percentiles.
+ *
+ * the values under 16 have a bucket each, above that each power of two is split in 8 buckets,
+ * so a percentile is never more than 12.5% off whatever the scale (microseconds or megabytes)
+ * and the histogram is a fixed array of counts, a value is recorded without any allocation.
+ * the min, max, sum and count are exact. the methods are synchronized.
+ */
+public final class Histogram {
+
+    //the values under that have their own bucket
+    private static final int LINEAR_LIMIT = 16;
+    //each power of two from 16 up is split in 2^SUB_BUCKET_BITS buckets
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    //the exponent of LINEAR_LIMIT
+    private static final int FIRST_EXPONENT = 4;
+
+    private final long[] mCounts = new long[LINEAR_LIMIT + (63 - FIRST_EXPONENT) * SUB_BUCKETS];
+    private long mCount;
+    private long mSum;
+    private long mMin = Long.MAX_VALUE;
+    private long mMax = Long.MIN_VALUE;
+
+    /**
+     * @param value the value, a negative one is counted as 0
+     */
+    public synchronized void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        mCounts[bucketOf(value)]++;
+        mCount++;
+        mSum += value;
+        mMin = Math.min(mMin, value);
+        mMax = Math.max(mMax, value);
+    }
+
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    public synchronized long getSum() {
+        return mSum;
+    }
+
+    /**
+     * @return the smallest value, 0 if there is none
+     */
+    public synchronized long getMin() {
+        return mCount == 0 ? 0 : mMin;
+    }
+
+    /**
+     * @return the largest value, 0 if there is none
+     */
+    public synchronized long getMax() {
+        return mCount == 0 ? 0 : mMax;
+    }
+
+    /**
+     * @return the mean of the values, 0 if there is none
+     */
+    public synchronized double getMean() {
+        return mCount == 0 ? 0 : (double) mSum / mCount;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the highest value of the bucket holding that percentile (never more than the max),
+     * 0 if there is no value
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (mCount == 0) {
+            return 0;
+        }
+        //the nearest rank
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * mCount));
+        long seen = 0;
+        for (int bucket = 0; bucket < mCounts.length; bucket++) {
+            seen += mCounts[bucket];
+            if (seen >= rank) {
+                return Math.max(mMin, Math.min(mMax, upperBoundOf(bucket)));
+            }
+        }
+        return mMax;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(mCounts, 0);
+        mCount = 0;
+        mSum = 0;
+        mMin = Long.MAX_VALUE;
+        mMax = Long.MIN_VALUE;
+    }
+
+    static int bucketOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exponent - FIRST_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the highest value of the bucket
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + FIRST_EXPONENT;
+        long subBucket = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        //the last bucket ends at Long.MAX_VALUE, the sum below would overflow
+        if (exponent == 62 && subBucket == SUB_BUCKETS - 1) {
+            return Long.MAX_VALUE;
+        }
+        return (1L << exponent) + (subBucket + 1) * width - 1;
+    }
+}
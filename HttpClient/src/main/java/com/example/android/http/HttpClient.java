@@ -0,0 +1,705 @@
+package com.example.android.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PushbackInputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A small HTTP client built on {@link HttpURLConnection} and shared by the apps.
+ *
+ * the connections are kept alive: a response is read to its end and closed but the connection is
+ * never disconnected (unless something went wrong), so it goes back to the pool of
+ * {@link HttpURLConnection} and the next request to the same server reuse it without a new
+ * TCP and TLS handshake.
+ * that pool is shared by the whole process and configured with the "http.keepAlive" and
+ * "http.maxConnections" system properties (kept alive, 5 idle connections for each server by
+ * default), not by the client: see the README.
+ * the responses are asked gzip or deflate compressed and decoded as a stream while they are read,
+ * the whole body is never kept uncompressed in memory.
+ *
+ * a client built with a {@link RetryPolicy} sends a failed request again, can hedge a slow one and
+ * stops sending requests to a server that keeps failing (see the policy). its only state is the
+ * recent health of each server, it can be used by every thread.
+ */
+public final class HttpClient {
+
+    //the timeouts the apps used before having a shared client
+    public static final int DEFAULT_CONNECT_TIMEOUT = 15000; // milliseconds
+    public static final int DEFAULT_READ_TIMEOUT = 10000; // milliseconds
+
+    //the most bytes read from a response left unread before giving its connection back,
+    //a bigger rest is cheaper to drop with the connection than to download
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    //the encodings we can decode, in our order of preference
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+    private static final String GZIP = "gzip";
+    private static final String DEFLATE = "deflate";
+
+    private static HttpClient sDefault;
+
+    //disconnects the canceled requests, see send()
+    private static Executor sDisconnectExecutor;
+
+    private final int mConnectTimeout;
+    private final int mReadTimeout;
+    private final boolean mCompression;
+
+    //null to send each request once
+    private final RetryPolicy mRetryPolicy;
+
+    //where the phases of the requests are recorded, null to record nothing
+    private final Metrics mMetrics;
+
+    //the health of each server by host and port, guarded by themselves
+    private final Map<String, CircuitBreaker> mCircuitBreakers = new HashMap<>();
+    private final Map<String, LatencyTracker> mLatencies = new HashMap<>();
+
+    //the jitter of the backoff
+    private final Random mRandom = new Random();
+
+    private HttpClient(Builder builder) {
+        mConnectTimeout = builder.mConnectTimeout;
+        mReadTimeout = builder.mReadTimeout;
+        mCompression = builder.mCompression;
+        mRetryPolicy = builder.mRetryPolicy;
+        mMetrics = builder.mMetrics;
+    }
+
+    /**
+     * @return a client with the default timeouts, keep-alive and compression
+     */
+    public static synchronized HttpClient getDefault() {
+        if (sDefault == null) {
+            sDefault = new Builder().build();
+        }
+        return sDefault;
+    }
+
+    /**
+     * @return where the phases of the requests are recorded, null if they are not
+     */
+    public Metrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * configure a {@link HttpClient}, every setting has a default
+     */
+    public static final class Builder {
+
+        private int mConnectTimeout = DEFAULT_CONNECT_TIMEOUT;
+        private int mReadTimeout = DEFAULT_READ_TIMEOUT;
+        private boolean mCompression = true;
+        private RetryPolicy mRetryPolicy;
+        private Metrics mMetrics = Metrics.getDefault();
+
+        /**
+         * @param connectTimeout the time to wait for the connection to open, in milliseconds
+         */
+        public Builder setConnectTimeout(int connectTimeout) {
+            if (connectTimeout < 0) {
+                throw new IllegalArgumentException("connectTimeout < 0");
+            }
+            mConnectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * @param readTimeout the time to wait for the next bytes of a response, in milliseconds
+         */
+        public Builder setReadTimeout(int readTimeout) {
+            if (readTimeout < 0) {
+                throw new IllegalArgumentException("readTimeout < 0");
+            }
+            mReadTimeout = readTimeout;
+            return this;
+        }
+
+        /**
+         * @param compression true to ask the server for a gzip or deflate compressed response
+         */
+        public Builder setCompression(boolean compression) {
+            mCompression = compression;
+            return this;
+        }
+
+        /**
+         * @param retryPolicy how the failed or slow requests are sent again, null to send each request once
+         */
+        public Builder setRetryPolicy(RetryPolicy retryPolicy) {
+            mRetryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * @param metrics where the connect, first byte and download times and the sizes of
+         *                the responses are recorded, null to record nothing
+         */
+        public Builder setMetrics(Metrics metrics) {
+            mMetrics = metrics;
+            return this;
+        }
+
+        /**
+         * @return the client
+         */
+        public HttpClient build() {
+            return new HttpClient(this);
+        }
+    }
+
+    /**
+     * send a GET request
+     * @param url the url of the request
+     * @return the response, it must be closed
+     * @throws IOException if the server can't be reached
+     */
+    public Response get(URL url) throws IOException {
+        return get(url, Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * send a GET request
+     * @param url the url of the request
+     * @param headers the headers added to the request (i.e. "If-None-Match")
+     * @return the response, it must be closed
+     * @throws IOException if the server can't be reached
+     */
+    public Response get(URL url, Map<String, String> headers) throws IOException {
+        return get(url, headers, null);
+    }
+
+    /**
+     * send a GET request that is disconnected when the token is canceled, a thread reading
+     * the body then gets an IOException instead of waiting for the rest of it
+     * @param url the url of the request
+     * @param headers the headers added to the request (i.e. "If-None-Match")
+     * @param token cancels the request, can be null
+     * @return the response, it must be closed
+     * @throws IOException if the server can't be reached or the token is canceled
+     */
+    public Response get(URL url, Map<String, String> headers, CancellationToken token) throws IOException {
+        if (mRetryPolicy == null) {
+            return send(url, headers, token);
+        }
+
+        String server = url.getHost() + ":" + url.getPort();
+        CircuitBreaker circuitBreaker = getCircuitBreaker(server);
+        LatencyTracker latencies = getLatencies(server);
+        int attempt = 1;
+        while (true) {
+            if (!circuitBreaker.allowRequest(System.nanoTime())) {
+                throw new IOException("circuit open for " + server + ", the server failed too many times");
+            }
+
+            long start = System.nanoTime();
+            Response response = null;
+            IOException failure = null;
+            try {
+                response = sendHedged(url, headers, token, latencies);
+            } catch (IOException e) {
+                failure = e;
+            } finally {
+                //whatever was thrown (a RuntimeException too) the breaker is told, a half open
+                //circuit would wait for its trial forever
+                if (response == null) {
+                    if (token != null && token.isCanceled()) {
+                        circuitBreaker.onCanceled();
+                    } else {
+                        circuitBreaker.onFailure(System.nanoTime());
+                    }
+                }
+            }
+            if (failure != null) {
+                if ((token != null && token.isCanceled()) || attempt == mRetryPolicy.getMaxAttempts()) {
+                    throw failure;
+                }
+                pause(mRetryPolicy.getBackoff(attempt, mRandom.nextDouble()), token);
+                attempt++;
+                continue;
+            }
+
+            if (!RetryPolicy.isRetryable(response.getCode())) {
+                circuitBreaker.onSuccess();
+                latencies.record((System.nanoTime() - start) / 1000000L);
+                return response;
+            }
+
+            circuitBreaker.onFailure(System.nanoTime());
+            long delay = Math.max(mRetryPolicy.getBackoff(attempt, mRandom.nextDouble()),
+                    getRetryAfter(response));
+            //the last attempt, or the server asked to wait longer than we would: the caller gets the error
+            if (attempt == mRetryPolicy.getMaxAttempts() || delay > mRetryPolicy.getMaxDelay()) {
+                return response;
+            }
+            response.close();
+            pause(delay, token);
+            attempt++;
+        }
+    }
+
+    /**
+     * send the request, and a second copy if the policy hedges and the server takes longer than usual
+     */
+    private Response sendHedged(URL url, Map<String, String> headers, CancellationToken token,
+                                LatencyTracker latencies) throws IOException {
+        long p95 = mRetryPolicy.isHedging() ? latencies.getPercentile(95) : -1;
+        if (p95 < 0) {
+            return send(url, headers, token);
+        }
+        long hedgeDelay = Math.max(p95, mRetryPolicy.getMinHedgeDelay());
+        return new HedgedRequest(this, url, headers, token).execute(hedgeDelay);
+    }
+
+    /**
+     * @return the wait the server asked for before the next request (the Retry-After header in
+     * seconds or as a date), in milliseconds, 0 if it didn't ask
+     */
+    private static long getRetryAfter(Response response) {
+        String retryAfter = response.getHeader("Retry-After");
+        if (retryAfter == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            long date = response.getHeaderDate("Retry-After", 0);
+            return Math.max(0, date - System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * wait before the next attempt, the wait stops if the token is canceled
+     * @throws InterruptedIOException if the token was canceled or the thread interrupted
+     */
+    private static void pause(long millis, CancellationToken token) throws InterruptedIOException {
+        if (token == null) {
+            token = new CancellationToken();
+        }
+        if (token.await(millis)) {
+            throw new InterruptedIOException("canceled");
+        }
+    }
+
+    private CircuitBreaker getCircuitBreaker(String server) {
+        synchronized (mCircuitBreakers) {
+            CircuitBreaker circuitBreaker = mCircuitBreakers.get(server);
+            if (circuitBreaker == null) {
+                circuitBreaker = new CircuitBreaker(mRetryPolicy.getFailureThreshold(),
+                        mRetryPolicy.getOpenDuration());
+                mCircuitBreakers.put(server, circuitBreaker);
+            }
+            return circuitBreaker;
+        }
+    }
+
+    private LatencyTracker getLatencies(String server) {
+        synchronized (mLatencies) {
+            LatencyTracker latencies = mLatencies.get(server);
+            if (latencies == null) {
+                latencies = new LatencyTracker();
+                mLatencies.put(server, latencies);
+            }
+            return latencies;
+        }
+    }
+
+    /**
+     * send the request once
+     * @see #get(URL, Map, CancellationToken)
+     */
+    Response send(URL url, Map<String, String> headers, CancellationToken token) throws IOException {
+        if (token != null) {
+            token.throwIfCanceled();
+        }
+        final HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        CancellationToken.OnCancelListener disconnect = null;
+        if (token != null) {
+            //closing the socket is the only way to stop a blocking read from an other thread.
+            //the listener runs on the thread that cancels (i.e. the main thread) and disconnect()
+            //does IO (a TLS close) and on the JVM waits for the read in progress, so it runs on a
+            //thread of its own
+            disconnect = new CancellationToken.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    getDisconnectExecutor().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            urlConnection.disconnect();
+                        }
+                    });
+                }
+            };
+            token.addOnCancelListener(disconnect);
+        }
+        try {
+            urlConnection.setReadTimeout(mReadTimeout);
+            urlConnection.setConnectTimeout(mConnectTimeout);
+            urlConnection.setRequestMethod("GET");
+            if (mCompression) {
+                //once we set it ourselves the body is given to us as it was sent, we decode it
+                urlConnection.setRequestProperty("Accept-Encoding", ACCEPT_ENCODING);
+            }
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                urlConnection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            //HttpURLConnection looks the host up in connect() (only if it opens a new connection, and
+            //not at all behind a proxy), its DNS time can't be told apart so it's in the connect time
+            long connectStart = System.nanoTime();
+            urlConnection.connect();
+            long requestStart = System.nanoTime();
+            int code = urlConnection.getResponseCode();
+            if (mMetrics != null) {
+                mMetrics.record(Metrics.HTTP_CONNECT, (requestStart - connectStart) / 1000);
+                mMetrics.recordSince(Metrics.HTTP_TTFB, requestStart);
+            }
+
+            return new Response(urlConnection, code, token, disconnect, mMetrics);
+        } catch (IOException | RuntimeException e) {
+            //we don't know in what state the connection is, it must not be reused
+            if (token != null) {
+                token.removeOnCancelListener(disconnect);
+            }
+            urlConnection.disconnect();
+            if (token != null) {
+                token.throwIfCanceled();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * the threads disconnecting the canceled requests, they don't keep the process alive
+     */
+    private static synchronized Executor getDisconnectExecutor() {
+        if (sDisconnectExecutor == null) {
+            sDisconnectExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "HttpClient disconnect #" + mCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sDisconnectExecutor;
+    }
+
+    /**
+     * @param timeInMilliseconds the Unix time
+     * @return the date as it's written in a header (i.e. "Sun, 06 Nov 1994 08:49:37 GMT")
+     */
+    public static String formatDate(long timeInMilliseconds) {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(new Date(timeInMilliseconds));
+    }
+
+    /**
+     * the response of a request, close it to give the connection back to the pool
+     */
+    public static final class Response implements Closeable {
+
+        private final HttpURLConnection mUrlConnection;
+        private final int mCode;
+        private final CancellationToken mToken;
+        private final CancellationToken.OnCancelListener mOnCancel;
+        private final Metrics mMetrics;
+        //when the status line and the headers were received (System.nanoTime())
+        private final long mHeadersTime = System.nanoTime();
+        private CountingInputStream mRawBody;
+        private CountingInputStream mBody;
+        private boolean mFailed;
+        private boolean mClosed;
+        //the token of the caller when the request was sent with a token of its own (a hedged copy)
+        private CancellationToken mCallerToken;
+        private CancellationToken.OnCancelListener mCallerOnCancel;
+
+        private Response(HttpURLConnection urlConnection, int code,
+                         CancellationToken token, CancellationToken.OnCancelListener onCancel, Metrics metrics) {
+            mUrlConnection = urlConnection;
+            mCode = code;
+            mToken = token;
+            mOnCancel = onCancel;
+            mMetrics = metrics;
+        }
+
+        /**
+         * cancel the request with the token of the caller too until the response is closed,
+         * for a request sent with a token of its own (i.e. a copy of a hedged request)
+         * @param callerToken the token of the caller, can be null
+         */
+        void cancelWith(CancellationToken callerToken) {
+            if (callerToken == null || mToken == null) {
+                return;
+            }
+            final CancellationToken token = mToken;
+            mCallerOnCancel = new CancellationToken.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    token.cancel();
+                }
+            };
+            mCallerToken = callerToken;
+            callerToken.addOnCancelListener(mCallerOnCancel);
+        }
+
+        /**
+         * @return the response code (i.e. 200 or 304)
+         */
+        public int getCode() {
+            return mCode;
+        }
+
+        /**
+         * @return true if the response code is 2xx
+         */
+        public boolean isSuccessful() {
+            return mCode >= 200 && mCode < 300;
+        }
+
+        /**
+         * @return the url of the response, after the redirects
+         */
+        public URL getUrl() {
+            return mUrlConnection.getURL();
+        }
+
+        /**
+         * @return the value of the header or null if the response has none
+         */
+        public String getHeader(String name) {
+            return mUrlConnection.getHeaderField(name);
+        }
+
+        /**
+         * @return the header parsed as a date in milliseconds or the default value
+         */
+        public long getHeaderDate(String name, long defaultValue) {
+            return mUrlConnection.getHeaderFieldDate(name, defaultValue);
+        }
+
+        /**
+         * the Content-Length header is the length on the wire, so it's only the length of
+         * the body when the server didn't compress it
+         * @return the number of bytes of the decoded body or -1 if it's unknown
+         */
+        public long getContentLength() {
+            String contentEncoding = mUrlConnection.getContentEncoding();
+            if (contentEncoding != null && !"identity".equalsIgnoreCase(contentEncoding.trim())) {
+                return -1;
+            }
+            String contentLength = mUrlConnection.getHeaderField("Content-Length");
+            if (contentLength == null) {
+                return -1;
+            }
+            try {
+                return Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        /**
+         * the body is decoded if the server compressed it, it's the error body for a 4xx or 5xx
+         * @return the body of the response, an empty stream if it has none
+         * @throws IOException if the body can't be read
+         */
+        public InputStream getBody() throws IOException {
+            if (mClosed) {
+                throw new IllegalStateException("response closed");
+            }
+            if (mBody == null) {
+                try {
+                    mRawBody = new CountingInputStream(openRawBody(), mToken);
+                    mBody = new CountingInputStream(decode(mRawBody, mUrlConnection.getContentEncoding()));
+                } catch (IOException e) {
+                    mFailed = true;
+                    throw e;
+                }
+            }
+            return mBody;
+        }
+
+        /**
+         * read what is left of the body and give the connection back to the pool,
+         * the connection is dropped instead if the body can't be read to its end
+         */
+        @Override
+        public void close() {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+
+            if (mToken != null) {
+                mToken.removeOnCancelListener(mOnCancel);
+            }
+            if (mCallerToken != null) {
+                mCallerToken.removeOnCancelListener(mCallerOnCancel);
+            }
+            //a canceled request was disconnected, there is nothing left to drain
+            boolean reusable = !mFailed && (mToken == null || !mToken.isCanceled());
+            if (reusable && mRawBody == null) {
+                try {
+                    mRawBody = new CountingInputStream(openRawBody());
+                } catch (IOException e) {
+                    reusable = false;
+                }
+            }
+            if (reusable && mRawBody != null) {
+                reusable = drain(mRawBody);
+            }
+            //closing the decoded body also release its decompressor and close the raw body
+            InputStream body = mBody != null ? mBody : mRawBody;
+            if (body != null) {
+                try {
+                    body.close();
+                } catch (IOException e) {
+                    reusable = false;
+                }
+            }
+            if (!reusable) {
+                mUrlConnection.disconnect();
+            }
+
+            //only the bodies that were read, a body only drained says nothing about the download
+            if (mMetrics != null && mBody != null) {
+                mMetrics.recordSince(Metrics.HTTP_DOWNLOAD, mHeadersTime);
+                mMetrics.record(Metrics.HTTP_WIRE_BYTES, getWireByteCount());
+                mMetrics.record(Metrics.HTTP_DECODED_BYTES, getDecodedByteCount());
+            }
+        }
+
+        /**
+         * @return the number of bytes of the body received on the wire so far (still compressed),
+         * it includes the rest read when the response is closed
+         */
+        public long getWireByteCount() {
+            return mRawBody != null ? mRawBody.getCount() : 0;
+        }
+
+        /**
+         * @return the number of bytes of the body read so far once decoded
+         */
+        public long getDecodedByteCount() {
+            return mBody != null ? mBody.getCount() : 0;
+        }
+
+        /**
+         * @return the body as it was sent or an empty stream if there is none
+         */
+        private InputStream openRawBody() throws IOException {
+            InputStream rawBody = mCode >= HttpURLConnection.HTTP_BAD_REQUEST
+                    ? mUrlConnection.getErrorStream() : mUrlConnection.getInputStream();
+            return rawBody != null ? rawBody : new EmptyInputStream();
+        }
+
+        /**
+         * @return true if the stream was read to its end
+         */
+        private static boolean drain(InputStream inputStream) {
+            byte[] buffer = new byte[4096];
+            int drained = 0;
+            try {
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    drained += read;
+                    if (drained > MAX_DRAIN_BYTES) {
+                        return false;
+                    }
+                }
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * wrap the body in a stream that decompress it while it's read
+     * @param rawBody the body as it was sent
+     * @param contentEncoding the Content-Encoding header of the response, can be null
+     * @return the decoded body
+     * @throws IOException if the body doesn't start like the encoding says
+     */
+    static InputStream decode(InputStream rawBody, String contentEncoding) throws IOException {
+        if (contentEncoding == null) {
+            return rawBody;
+        }
+        String encoding = contentEncoding.trim();
+        if (GZIP.equalsIgnoreCase(encoding) || "x-gzip".equalsIgnoreCase(encoding)) {
+            return new GZIPInputStream(rawBody);
+        }
+        if (DEFLATE.equalsIgnoreCase(encoding)) {
+            //deflate should be zlib wrapped but some servers send the raw deflate data,
+            //we look at the first 2 bytes to know which one we got
+            PushbackInputStream pushback = new PushbackInputStream(rawBody, 2);
+            byte[] header = new byte[2];
+            int read = 0;
+            while (read < header.length) {
+                int n = pushback.read(header, read, header.length - read);
+                if (n == -1) {
+                    break;
+                }
+                read += n;
+            }
+            pushback.unread(header, 0, read);
+            //an Inflater we give is not released by the stream, we end it ourselves on close
+            final Inflater inflater = new Inflater(read == 2 && !isZlibHeader(header));
+            return new InflaterInputStream(pushback, inflater) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
+        }
+        //identity or an encoding we didn't ask for, given as it is
+        return rawBody;
+    }
+
+    /**
+     * @return true if the 2 bytes are a valid zlib header (RFC 1950)
+     */
+    private static boolean isZlibHeader(byte[] header) {
+        int cmf = header[0] & 0xff;
+        int flg = header[1] & 0xff;
+        return (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+    }
+
+    /**
+     * the body of a response without content
+     */
+    private static final class EmptyInputStream extends InputStream {
+        @Override
+        public int read() {
+            return -1;
+        }
+    }
+}
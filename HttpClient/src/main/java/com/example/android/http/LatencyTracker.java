@@ -0,0 +1,47 @@
+package com.example.android.http;
+
+import java.util.Arrays;
+
+/**
+ * The last response times of one server, to know when a request is slower than usual.
+ *
+ * a response time is the time until the status line and the headers arrive (the body is read
+ * by the caller at its own pace). the last {@link #SAMPLES} times are kept in a ring.
+ */
+final class LatencyTracker {
+
+    //the response times kept, the older ones are overwritten
+    static final int SAMPLES = 64;
+
+    //fewer response times don't tell what usual is, no percentile is given
+    static final int MIN_SAMPLES = 16;
+
+    private final long[] mSamples = new long[SAMPLES];
+    private int mNext;
+    private int mCount;
+
+    /**
+     * @param millis the response time of a request, in milliseconds
+     */
+    synchronized void record(long millis) {
+        mSamples[mNext] = millis;
+        mNext = (mNext + 1) % SAMPLES;
+        mCount = Math.min(mCount + 1, SAMPLES);
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the response time that percentile of the kept ones are under, or -1 if there are
+     * not enough of them yet
+     */
+    synchronized long getPercentile(int percentile) {
+        if (mCount < MIN_SAMPLES) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(mSamples, mCount);
+        Arrays.sort(sorted);
+        //the nearest rank
+        int rank = (int) Math.ceil(percentile / 100.0 * mCount);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
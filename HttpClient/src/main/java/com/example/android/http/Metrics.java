@@ -0,0 +1,165 @@
+package com.example.android.http;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Histograms of where the time of a request goes, shared by the apps and by {@link HttpClient}.
+ *
+ * the client records the phases of each request: the connection (the DNS lookup, TCP and TLS, about 0
+ * when a kept alive connection is reused), the time to the first byte (the request sent and the status
+ * line and headers received) and the download of the body, with the bytes on the wire and decoded.
+ * the USGS client (or the app parsing its own responses) records the parsing and the number of
+ * features of a response, the apps record the binding of the views.
+ * a body parsed as it's read is downloaded and parsed at the same time, its download time includes
+ * the parsing.
+ *
+ * the durations are in microseconds. the histograms are written as one line each to a
+ * {@link Sink} (i.e. the log of the app) or to a file. the methods can be called from any thread.
+ */
+public final class Metrics {
+
+    //the phases of a request, recorded by HttpClient
+    public static final String HTTP_CONNECT = "http.connect_us";
+    public static final String HTTP_TTFB = "http.ttfb_us";
+    public static final String HTTP_DOWNLOAD = "http.download_us";
+    public static final String HTTP_WIRE_BYTES = "http.wire_bytes";
+    public static final String HTTP_DECODED_BYTES = "http.decoded_bytes";
+
+    //the work on a response, recorded by UsgsClient and the apps
+    public static final String PARSE = "usgs.parse_us";
+    public static final String FEATURES = "usgs.features";
+    public static final String BIND = "ui.bind_us";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static Metrics sDefault;
+
+    /**
+     * where the histograms are written, one line for each
+     */
+    public interface Sink {
+        void write(String line);
+    }
+
+    //the histograms by name, sorted so the export is always in the same order
+    private final Map<String, Histogram> mHistograms = new TreeMap<>();
+
+    /**
+     * @return the metrics of the whole app, the ones the default {@link HttpClient} records
+     */
+    public static synchronized Metrics getDefault() {
+        if (sDefault == null) {
+            sDefault = new Metrics();
+        }
+        return sDefault;
+    }
+
+    /**
+     * @param name the name of the histogram (i.e. {@link #PARSE})
+     * @return the histogram, created empty the first time
+     */
+    public Histogram histogram(String name) {
+        synchronized (mHistograms) {
+            Histogram histogram = mHistograms.get(name);
+            if (histogram == null) {
+                histogram = new Histogram();
+                mHistograms.put(name, histogram);
+            }
+            return histogram;
+        }
+    }
+
+    /**
+     * @param name the name of the histogram
+     * @param value the value (i.e. a size or a count)
+     */
+    public void record(String name, long value) {
+        histogram(name).record(value);
+    }
+
+    /**
+     * record the time since start, in microseconds
+     * @param name the name of the histogram
+     * @param startNanos when the timed work started (System.nanoTime())
+     */
+    public void recordSince(String name, long startNanos) {
+        histogram(name).record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    /**
+     * write one line for each histogram that has values (i.e. "usgs.parse_us count=3 min=... p50=...")
+     */
+    public void export(Sink sink) {
+        List<String> names;
+        List<Histogram> histograms;
+        synchronized (mHistograms) {
+            names = new ArrayList<>(mHistograms.keySet());
+            histograms = new ArrayList<>(mHistograms.values());
+        }
+        for (int i = 0; i < names.size(); i++) {
+            Histogram histogram = histograms.get(i);
+            if (histogram.getCount() > 0) {
+                sink.write(format(names.get(i), histogram));
+            }
+        }
+    }
+
+    /**
+     * write the histograms to a file, it's replaced
+     * @throws IOException if the file can't be written
+     */
+    public void exportTo(File file) throws IOException {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF_8));
+        final IOException[] error = new IOException[1];
+        try {
+            export(new Sink() {
+                @Override
+                public void write(String line) {
+                    if (error[0] != null) {
+                        return;
+                    }
+                    try {
+                        writer.write(line);
+                        writer.write('\n');
+                    } catch (IOException e) {
+                        error[0] = e;
+                    }
+                }
+            });
+        } finally {
+            writer.close();
+        }
+        if (error[0] != null) {
+            throw error[0];
+        }
+    }
+
+    /**
+     * empty every histogram (i.e. after an export, to see the next period on its own)
+     */
+    public void reset() {
+        synchronized (mHistograms) {
+            for (Histogram histogram : mHistograms.values()) {
+                histogram.reset();
+            }
+        }
+    }
+
+    private static String format(String name, Histogram histogram) {
+        return String.format(Locale.US, "%s count=%d min=%d p50=%d p90=%d p99=%d max=%d mean=%.1f",
+                name, histogram.getCount(), histogram.getMin(), histogram.getPercentile(50),
+                histogram.getPercentile(90), histogram.getPercentile(99), histogram.getMax(),
+                histogram.getMean());
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.android.http;
+
+import java.net.HttpURLConnection;
+
+/**
+ * How a {@link HttpClient} deals with a server that fails or answers slowly.
+ *
+ * a request that can't reach the server, or gets a 5xx, 408 or 429 response, is sent again after
+ * an exponential backoff with full jitter (a random delay up to base delay * 2^retry, so the
+ * clients failing together don't all come back at the same time).
+ * with hedging, a second copy of the request is sent when the first one has no response after the
+ * 95th percentile of the recent response times of the server, the first response is used and the
+ * other request is canceled.
+ * after a number of failures in a row the circuit breaker of the server opens: the requests to
+ * that server fail right away, without waiting for timeouts, until one trial request goes through.
+ *
+ * a policy is immutable, build it with a {@link Builder}.
+ */
+public final class RetryPolicy {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_BASE_DELAY = 250; // milliseconds
+    public static final long DEFAULT_MAX_DELAY = 4000; // milliseconds
+    public static final long DEFAULT_MIN_HEDGE_DELAY = 100; // milliseconds
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_OPEN_DURATION = 30000; // milliseconds
+
+    //the status codes worth sending the request again for
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    private final int mMaxAttempts;
+    private final long mBaseDelay;
+    private final long mMaxDelay;
+    private final boolean mHedging;
+    private final long mMinHedgeDelay;
+    private final int mFailureThreshold;
+    private final long mOpenDuration;
+
+    private RetryPolicy(Builder builder) {
+        mMaxAttempts = builder.mMaxAttempts;
+        mBaseDelay = builder.mBaseDelay;
+        mMaxDelay = builder.mMaxDelay;
+        mHedging = builder.mHedging;
+        mMinHedgeDelay = builder.mMinHedgeDelay;
+        mFailureThreshold = builder.mFailureThreshold;
+        mOpenDuration = builder.mOpenDuration;
+    }
+
+    /**
+     * configure a {@link RetryPolicy}, every setting has a default
+     */
+    public static final class Builder {
+
+        private int mMaxAttempts = DEFAULT_MAX_ATTEMPTS;
+        private long mBaseDelay = DEFAULT_BASE_DELAY;
+        private long mMaxDelay = DEFAULT_MAX_DELAY;
+        private boolean mHedging;
+        private long mMinHedgeDelay = DEFAULT_MIN_HEDGE_DELAY;
+        private int mFailureThreshold = DEFAULT_FAILURE_THRESHOLD;
+        private long mOpenDuration = DEFAULT_OPEN_DURATION;
+
+        /**
+         * @param maxAttempts the number of times a request is sent at most, 1 to never retry
+         */
+        public Builder setMaxAttempts(int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("maxAttempts < 1");
+            }
+            mMaxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * @param baseDelay the longest wait before the first retry, doubled for each next one, in milliseconds
+         * @param maxDelay the longest wait before any retry, in milliseconds
+         */
+        public Builder setBackoff(long baseDelay, long maxDelay) {
+            if (baseDelay < 0 || maxDelay < baseDelay) {
+                throw new IllegalArgumentException("baseDelay < 0 or maxDelay < baseDelay");
+            }
+            mBaseDelay = baseDelay;
+            mMaxDelay = maxDelay;
+            return this;
+        }
+
+        /**
+         * @param hedging true to send a second copy of a slow request
+         */
+        public Builder setHedging(boolean hedging) {
+            mHedging = hedging;
+            return this;
+        }
+
+        /**
+         * @param minHedgeDelay the shortest wait before the second copy, even if the server is
+         *                      usually faster, in milliseconds
+         */
+        public Builder setMinHedgeDelay(long minHedgeDelay) {
+            if (minHedgeDelay < 0) {
+                throw new IllegalArgumentException("minHedgeDelay < 0");
+            }
+            mMinHedgeDelay = minHedgeDelay;
+            return this;
+        }
+
+        /**
+         * @param failureThreshold the failures in a row opening the circuit breaker of a server
+         * @param openDuration the time the requests to the server fail right away, in milliseconds
+         */
+        public Builder setCircuitBreaker(int failureThreshold, long openDuration) {
+            if (failureThreshold < 1 || openDuration < 0) {
+                throw new IllegalArgumentException("failureThreshold < 1 or openDuration < 0");
+            }
+            mFailureThreshold = failureThreshold;
+            mOpenDuration = openDuration;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+    public boolean isHedging() {
+        return mHedging;
+    }
+
+    public long getMinHedgeDelay() {
+        return mMinHedgeDelay;
+    }
+
+    public int getFailureThreshold() {
+        return mFailureThreshold;
+    }
+
+    public long getOpenDuration() {
+        return mOpenDuration;
+    }
+
+    /**
+     * @param retry the number of the retry, 1 for the first one
+     * @param random a number between 0 (included) and 1 (excluded)
+     * @return the wait before that retry, in milliseconds
+     */
+    long getBackoff(int retry, double random) {
+        //the cap doubles with each retry, without overflowing for a large number of retries
+        long cap = mBaseDelay;
+        for (int i = 1; i < retry && cap < mMaxDelay; i++) {
+            cap *= 2;
+        }
+        cap = Math.min(cap, mMaxDelay);
+        return (long) (random * (cap + 1));
+    }
+
+    /**
+     * @return the longest wait before any retry, in milliseconds
+     */
+    long getMaxDelay() {
+        return mMaxDelay;
+    }
+
+    /**
+     * @return true if a response with this code is a failure of the server that a retry can fix
+     */
+    static boolean isRetryable(int code) {
+        return code >= 500 || code == HttpURLConnection.HTTP_CLIENT_TIMEOUT || code == HTTP_TOO_MANY_REQUESTS;
+    }
+}
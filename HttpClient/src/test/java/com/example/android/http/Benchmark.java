@@ -0,0 +1,112 @@
+package com.example.android.http;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Times a piece of work for the benchmarks of the tests: a few runs to warm the JIT up, then the
+ * median of the measured runs and the bytes one run allocates (on a HotSpot JVM, -1 elsewhere).
+ * the results are printed so a run of the tests shows them next to each other.
+ *
+ * it's a micro benchmark on the JVM of the development machine, not on a device: compare the
+ * before and after of the same run, not the numbers of two machines.
+ */
+final class Benchmark {
+
+    /**
+     * the work to time, its result is kept so the JIT can't drop the work as useless
+     */
+    interface Work {
+        Object run() throws Exception;
+    }
+
+    /**
+     * the time and the allocations of one run of a work
+     */
+    static final class Result {
+        final String mName;
+        final long mNanos;
+        final long mBytes;
+
+        Result(String name, long nanos, long bytes) {
+            mName = name;
+            mNanos = nanos;
+            mBytes = bytes;
+        }
+
+        double getMillis() {
+            return mNanos / 1000000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-48s %10.3f ms %14s", mName, getMillis(),
+                    mBytes >= 0 ? mBytes + " B" : "n/a");
+        }
+    }
+
+    //the results are summed here so no work is dead code
+    private static volatile int sSink;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link Benchmark} object.
+     */
+    private Benchmark() {
+    }
+
+    /**
+     * @param name what is measured, printed with the result
+     * @param warmUps the runs before the measured ones
+     * @param runs the measured runs
+     * @return the median time and the allocations of the measured runs
+     */
+    static Result measure(String name, int warmUps, int runs, Work work) throws Exception {
+        for (int i = 0; i < warmUps; i++) {
+            consume(work.run());
+        }
+        long[] nanos = new long[runs];
+        long[] bytes = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            Object result = work.run();
+            nanos[i] = System.nanoTime() - start;
+            long allocatedAfter = allocatedBytes();
+            bytes[i] = allocatedBefore >= 0 ? allocatedAfter - allocatedBefore : -1;
+            consume(result);
+        }
+        Arrays.sort(nanos);
+        Arrays.sort(bytes);
+        Result result = new Result(name, nanos[runs / 2], bytes[runs / 2]);
+        System.out.println(result);
+        return result;
+    }
+
+    /**
+     * print how much faster and smaller the second result is
+     */
+    static void compare(Result before, Result after) {
+        String allocations = before.mBytes > 0 && after.mBytes >= 0
+                ? String.format(Locale.US, ", %.1fx fewer bytes", (double) before.mBytes / Math.max(1, after.mBytes))
+                : "";
+        System.out.println(String.format(Locale.US, "%s -> %s: %.1fx faster%s", before.mName, after.mName,
+                (double) before.mNanos / Math.max(1, after.mNanos), allocations));
+    }
+
+    private static void consume(Object result) {
+        sSink += result != null ? System.identityHashCode(result) : 0;
+    }
+
+    /**
+     * @return the bytes allocated by this thread so far, -1 if the JVM doesn't count them
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
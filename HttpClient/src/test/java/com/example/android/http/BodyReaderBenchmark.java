@@ -0,0 +1,104 @@
+package com.example.android.http;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * The throughput of {@link BodyReader#readText(InputStream, long)} against readFromStream of the
+ * apps before it (readLine appended to a StringBuilder), on bodies already in memory so only the
+ * copies are measured.
+ */
+public class BodyReaderBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * @return a body of about that many bytes, lines of the earthquake feed with some text
+     * out of the ASCII range
+     */
+    private static byte[] body(int length) {
+        StringBuilder body = new StringBuilder(length);
+        while (body.length() < length) {
+            body.append("{\"type\":\"Feature\",\"properties\":{\"mag\":4.6,")
+                    .append("\"place\":\"12km S of Regi\u00f3n de Valpara\u00edso, Chile\",\"time\":1454124312220}},\n");
+        }
+        return body.toString().getBytes(UTF_8);
+    }
+
+    /**
+     * readFromStream of QueryUtils, Utils and Soonami before the body reader
+     */
+    private static String readFromStream(InputStream inputStream) throws IOException {
+        StringBuilder output = new StringBuilder();
+        if (inputStream != null) {
+            InputStreamReader inputStreamReader = new InputStreamReader(inputStream, UTF_8);
+            BufferedReader reader = new BufferedReader(inputStreamReader);
+            String line = reader.readLine();
+            while (line != null) {
+                output.append(line);
+                line = reader.readLine();
+            }
+        }
+        return output.toString();
+    }
+
+    @Test
+    public void readText_256KBody() throws Exception {
+        compare(256 * 1024, 20, 51);
+    }
+
+    @Test
+    public void readText_4MBody() throws Exception {
+        compare(4 * 1024 * 1024, 5, 21);
+    }
+
+    private static void compare(int length, int warmUps, int runs) throws Exception {
+        final byte[] body = body(length);
+        String text = new String(body, UTF_8);
+        assertEquals(text.replace("\n", ""), readFromStream(new ByteArrayInputStream(body)));
+        //the new lines are kept
+        assertEquals(text, BodyReader.readText(new ByteArrayInputStream(body), body.length).toString());
+
+        Benchmark.Result before = Benchmark.measure("readLine + StringBuilder", warmUps, runs, new Benchmark.Work() {
+            @Override
+            public Object run() throws Exception {
+                return readFromStream(new ByteArrayInputStream(body));
+            }
+        });
+        Benchmark.Result known = Benchmark.measure("BodyReader, Content-Length", warmUps, runs, new Benchmark.Work() {
+            @Override
+            public Object run() throws Exception {
+                return BodyReader.readText(new ByteArrayInputStream(body), body.length).length();
+            }
+        });
+        Benchmark.Result unknown = Benchmark.measure("BodyReader, no Content-Length", warmUps, runs, new Benchmark.Work() {
+            @Override
+            public Object run() throws Exception {
+                return BodyReader.readText(new ByteArrayInputStream(body), -1).length();
+            }
+        });
+        Benchmark.compare(before, known);
+        Benchmark.compare(before, unknown);
+        System.out.println(String.format(Locale.US, "%d KB: %.0f MB/s -> %.0f MB/s (%.0f MB/s without length)",
+                body.length / 1024, megabytesPerSecond(body, before), megabytesPerSecond(body, known),
+                megabytesPerSecond(body, unknown)));
+
+        //the buffers of a body up to 1 MB are kept for the next one, a bigger one is read in new ones
+        if (body.length <= 1024 * 1024) {
+            assertTrue(known.mBytes < before.mBytes);
+        }
+    }
+
+    private static double megabytesPerSecond(byte[] body, Benchmark.Result result) {
+        return body.length / (1024.0 * 1024.0) / (result.mNanos / 1e9);
+    }
+}
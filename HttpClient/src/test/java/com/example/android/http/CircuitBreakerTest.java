@@ -0,0 +1,91 @@
+package com.example.android.http;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * The states of a {@link CircuitBreaker}, with the time given by the test (in nanoseconds).
+ */
+public class CircuitBreakerTest {
+
+    private static final long MILLI = 1000000L;
+
+    @Test
+    public void closed_opensAfterThresholdFailuresInARow() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 1000);
+
+        assertTrue(breaker.allowRequest(0));
+        breaker.onFailure(0);
+        breaker.onFailure(0);
+        assertFalse(breaker.isOpen());
+        assertTrue(breaker.allowRequest(0));
+
+        breaker.onFailure(0);
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.allowRequest(0));
+    }
+
+    @Test
+    public void closed_successResetsTheFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(2, 1000);
+
+        breaker.onFailure(0);
+        breaker.onSuccess();
+        breaker.onFailure(0);
+
+        assertFalse(breaker.isOpen());
+        assertTrue(breaker.allowRequest(0));
+    }
+
+    @Test
+    public void open_letsOneTrialThroughAfterTheOpenDuration() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000);
+        breaker.onFailure(0);
+
+        assertFalse(breaker.allowRequest(999 * MILLI));
+        //half open: one trial and no other request while it's in flight
+        assertTrue(breaker.allowRequest(1000 * MILLI));
+        assertFalse(breaker.allowRequest(1001 * MILLI));
+    }
+
+    @Test
+    public void halfOpen_closesWhenTheTrialWorks() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000);
+        breaker.onFailure(0);
+        assertTrue(breaker.allowRequest(1000 * MILLI));
+
+        breaker.onSuccess();
+
+        assertFalse(breaker.isOpen());
+        assertTrue(breaker.allowRequest(1000 * MILLI));
+        assertTrue(breaker.allowRequest(1000 * MILLI));
+    }
+
+    @Test
+    public void halfOpen_opensAgainWhenTheTrialFails() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000);
+        breaker.onFailure(0);
+        assertTrue(breaker.allowRequest(1000 * MILLI));
+
+        breaker.onFailure(1500 * MILLI);
+
+        assertTrue(breaker.isOpen());
+        //the open duration starts again from the failed trial
+        assertFalse(breaker.allowRequest(2000 * MILLI));
+        assertTrue(breaker.allowRequest(2500 * MILLI));
+    }
+
+    @Test
+    public void halfOpen_canceledTrialLetsAnOtherOneThrough() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000);
+        breaker.onFailure(0);
+        assertTrue(breaker.allowRequest(1000 * MILLI));
+
+        breaker.onCanceled();
+
+        //a cancel says nothing about the server, it's still open but the next request is a trial
+        assertTrue(breaker.isOpen());
+        assertTrue(breaker.allowRequest(1000 * MILLI));
+    }
+}
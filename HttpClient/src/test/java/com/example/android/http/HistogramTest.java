@@ -0,0 +1,102 @@
+package com.example.android.http;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * The buckets and the percentiles of a {@link Histogram}.
+ */
+public class HistogramTest {
+
+    @Test
+    public void bucketOf_smallValuesHaveABucketEach() {
+        for (int value = 0; value < 16; value++) {
+            assertEquals(value, Histogram.bucketOf(value));
+            assertEquals(value, Histogram.upperBoundOf(value));
+        }
+    }
+
+    @Test
+    public void bucketOf_eachPowerOfTwoIsSplitInEightBuckets() {
+        //16 to 31: buckets of 2
+        assertEquals(16, Histogram.bucketOf(16));
+        assertEquals(16, Histogram.bucketOf(17));
+        assertEquals(17, Histogram.bucketOf(18));
+        assertEquals(23, Histogram.bucketOf(31));
+        //32 to 63: buckets of 4
+        assertEquals(24, Histogram.bucketOf(32));
+        assertEquals(24, Histogram.bucketOf(35));
+        assertEquals(25, Histogram.bucketOf(36));
+    }
+
+    @Test
+    public void upperBoundOf_isTheLastValueOfItsBucket() {
+        long[] values = {16, 17, 31, 32, 1000, 123456789L, Long.MAX_VALUE / 3, Long.MAX_VALUE};
+        for (long value : values) {
+            int bucket = Histogram.bucketOf(value);
+            long upperBound = Histogram.upperBoundOf(bucket);
+            assertTrue(value + " <= " + upperBound, value <= upperBound);
+            if (upperBound != Long.MAX_VALUE) {
+                assertEquals(bucket + 1, Histogram.bucketOf(upperBound + 1));
+            }
+            //never more than 12.5% over the value
+            assertTrue(value + " ~ " + upperBound, upperBound - value <= value / 8);
+        }
+    }
+
+    @Test
+    public void getPercentile_isWithinABucketOfTheValue() {
+        Histogram histogram = new Histogram();
+        for (int value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+
+        assertWithin(500, histogram.getPercentile(50));
+        assertWithin(900, histogram.getPercentile(90));
+        assertWithin(990, histogram.getPercentile(99));
+        assertEquals(1000, histogram.getPercentile(100));
+        assertEquals(1, histogram.getPercentile(0));
+    }
+
+    @Test
+    public void getPercentile_neverGoesOverTheMax() {
+        Histogram histogram = new Histogram();
+        histogram.record(1000);
+
+        //1000 is in the bucket 960 to 1023
+        assertEquals(1000, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void record_keepsTheExactMinMaxSumAndCount() {
+        Histogram histogram = new Histogram();
+        histogram.record(3);
+        histogram.record(40000);
+        histogram.record(-5);
+
+        assertEquals(3, histogram.getCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(40000, histogram.getMax());
+        assertEquals(40003, histogram.getSum());
+        assertEquals(40003 / 3.0, histogram.getMean(), 0.0001);
+    }
+
+    @Test
+    public void reset_emptiesTheHistogram() {
+        Histogram histogram = new Histogram();
+        histogram.record(42);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getMean(), 0);
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual + " is not close to " + expected,
+                actual >= expected && actual - expected <= expected / 8);
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.android.http;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * The latency of repeated requests to a {@link LocalServer}: the {@link HttpClient} that gives
+ * each drained response back to the keep-alive pool, against makeHttpRequest of the apps before
+ * it that opened a connection and disconnected it for every request.
+ * the bodies are read the same way on both sides, only the connections differ.
+ */
+public class HttpClientBenchmark {
+
+    private static final int REQUESTS = 200;
+
+    //a page of the earthquake feed
+    private static final String BODY = page(16 * 1024);
+
+    //the client port of every connection the server saw
+    private final Set<Integer> mConnections = Collections.synchronizedSet(new HashSet<Integer>());
+
+    private LocalServer mServer;
+    private URL mUrl;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(int request, HttpExchange exchange) throws IOException {
+                mConnections.add(exchange.getRemoteAddress().getPort());
+                LocalServer.respond(exchange, 200, BODY);
+            }
+        });
+        mUrl = mServer.url("/query?format=geojson");
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    private static String page(int length) {
+        StringBuilder page = new StringBuilder(length);
+        while (page.length() < length) {
+            page.append("{\"type\":\"Feature\",\"properties\":{\"mag\":4.6,\"place\":\"88km N of Yelizovo, Russia\"}},\n");
+        }
+        return page.toString();
+    }
+
+    /**
+     * makeHttpRequest before the shared client: a new connection, disconnected after the body
+     */
+    private int requestWithNewConnections() throws IOException {
+        int length = 0;
+        for (int i = 0; i < REQUESTS; i++) {
+            HttpURLConnection urlConnection = (HttpURLConnection) mUrl.openConnection();
+            InputStream inputStream = null;
+            try {
+                urlConnection.setReadTimeout(10000);
+                urlConnection.setConnectTimeout(15000);
+                urlConnection.setRequestMethod("GET");
+                urlConnection.connect();
+                if (urlConnection.getResponseCode() == 200) {
+                    inputStream = urlConnection.getInputStream();
+                    length += BodyReader.readText(inputStream, urlConnection.getContentLength()).length();
+                }
+            } finally {
+                urlConnection.disconnect();
+                if (inputStream != null) {
+                    inputStream.close();
+                }
+            }
+        }
+        return length;
+    }
+
+    private int requestWithTheClient(HttpClient client) throws IOException {
+        int length = 0;
+        for (int i = 0; i < REQUESTS; i++) {
+            HttpClient.Response response = client.get(mUrl);
+            try {
+                length += BodyReader.readText(response).length();
+            } finally {
+                response.close();
+            }
+        }
+        return length;
+    }
+
+    @Test
+    public void get_200RequestsInARow() throws Exception {
+        final HttpClient client = new HttpClient.Builder().setMetrics(new Metrics()).build();
+        assertEquals(REQUESTS * BODY.length(), requestWithNewConnections());
+        assertEquals(REQUESTS * BODY.length(), requestWithTheClient(client));
+
+        mConnections.clear();
+        Benchmark.Result before = Benchmark.measure("200 GET, connection per request", 3, 9, new Benchmark.Work() {
+            @Override
+            public Object run() throws Exception {
+                return requestWithNewConnections();
+            }
+        });
+        int connectionsBefore = mConnections.size();
+
+        mConnections.clear();
+        Benchmark.Result after = Benchmark.measure("200 GET, HttpClient keep-alive", 3, 9, new Benchmark.Work() {
+            @Override
+            public Object run() throws Exception {
+                return requestWithTheClient(client);
+            }
+        });
+        int connectionsAfter = mConnections.size();
+
+        Benchmark.compare(before, after);
+        System.out.println(String.format("per request: %.3f ms -> %.3f ms, connections opened: %d -> %d",
+                before.getMillis() / REQUESTS, after.getMillis() / REQUESTS, connectionsBefore, connectionsAfter));
+
+        //a connection for each request (the ports of the closed ones get reused, so the 12 runs
+        //show fewer), the client opens no new connection at all
+        assertTrue(connectionsBefore > REQUESTS);
+        assertTrue(connectionsAfter <= 1);
+    }
+}
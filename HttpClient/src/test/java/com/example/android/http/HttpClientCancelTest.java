@@ -0,0 +1,144 @@
+package com.example.android.http;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * The requests of {@link HttpClient} canceled with a {@link CancellationToken} while their body is
+ * read, from a {@link LocalServer} that sends the body one byte at a time and never ends it.
+ *
+ * on the JVM disconnect() doesn't stop a read already waiting for bytes (Android closes the
+ * socket), so the read in progress fails when it returns with the next byte, and every read after
+ * the cancel fails right away without going to the socket.
+ */
+public class HttpClientCancelTest {
+
+    private static final Map<String, String> NO_HEADERS = Collections.emptyMap();
+
+    //the time between two bytes of the body
+    private static final long TRICKLE = 50;
+
+    private LocalServer mServer;
+    private HttpClient mClient;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(int request, HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, 1024 * 1024);
+                OutputStream outputStream = exchange.getResponseBody();
+                try {
+                    while (true) {
+                        outputStream.write('x');
+                        outputStream.flush();
+                        Thread.sleep(TRICKLE);
+                    }
+                } catch (InterruptedException | IOException e) {
+                    //the server stopped or the client went away
+                }
+            }
+        });
+        mClient = new HttpClient.Builder().setMetrics(null).build();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    /**
+     * reads a body until it fails, on its own thread
+     */
+    private static final class Reader extends Thread {
+        final HttpClient.Response mResponse;
+        final CountDownLatch mFirstByte = new CountDownLatch(1);
+        volatile IOException mFailure;
+        volatile long mFailureTime;
+
+        Reader(HttpClient.Response response) {
+            mResponse = response;
+        }
+
+        @Override
+        public void run() {
+            try {
+                InputStream body = mResponse.getBody();
+                while (body.read() != -1) {
+                    mFirstByte.countDown();
+                }
+            } catch (IOException e) {
+                mFailureTime = System.nanoTime();
+                mFailure = e;
+            } finally {
+                mResponse.close();
+            }
+        }
+    }
+
+    @Test
+    public void cancel_failsTheReadOfTheBody() throws Exception {
+        CancellationToken token = new CancellationToken();
+        HttpClient.Response response = mClient.get(mServer.url("/"), NO_HEADERS, token);
+        Reader reader = new Reader(response);
+        reader.start();
+        assertTrue(reader.mFirstByte.await(5, TimeUnit.SECONDS));
+
+        long cancelTime = System.nanoTime();
+        token.cancel();
+        reader.join(5000);
+
+        assertFalse(reader.isAlive());
+        assertTrue(reader.mFailure instanceof InterruptedIOException);
+        //the read waiting when it was canceled returns with the next byte, it's not read to its end
+        long stopped = TimeUnit.NANOSECONDS.toMillis(reader.mFailureTime - cancelTime);
+        assertTrue("stopped after " + stopped + " ms", stopped < 10 * TRICKLE);
+        //the response is done, it doesn't keep a listener on the token
+        assertEquals(0, token.getListenerCount());
+    }
+
+    @Test
+    public void cancel_doesNotDisconnectOnTheCallingThread() throws Exception {
+        CancellationToken token = new CancellationToken();
+        HttpClient.Response response = mClient.get(mServer.url("/"), NO_HEADERS, token);
+        Reader reader = new Reader(response);
+        reader.start();
+        assertTrue(reader.mFirstByte.await(5, TimeUnit.SECONDS));
+
+        //on the JVM disconnect() waits for the read in progress, the caller (the main thread
+        //of the app) must not wait with it
+        long start = System.nanoTime();
+        token.cancel();
+        long cancel = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        reader.join(5000);
+
+        assertTrue("cancel took " + cancel + " ms", cancel < TRICKLE / 2);
+        assertTrue(reader.mFailure instanceof InterruptedIOException);
+    }
+
+    @Test
+    public void get_withATokenAlreadyCanceledSendsNothing() throws Exception {
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        try {
+            mClient.get(mServer.url("/"), NO_HEADERS, token);
+            fail("the request was sent");
+        } catch (InterruptedIOException e) {
+            assertEquals(0, mServer.getRequestCount());
+        }
+    }
+}
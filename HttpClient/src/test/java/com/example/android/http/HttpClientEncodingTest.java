@@ -0,0 +1,184 @@
+package com.example.android.http;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * The bodies of {@link HttpClient} decoded from gzip, zlib wrapped deflate, raw deflate and
+ * identity, against a {@link LocalServer} that encodes them like the path of the url asks.
+ */
+public class HttpClientEncodingTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    //a page of the earthquake feed, with text out of the ASCII range
+    private static final String BODY = page(64 * 1024);
+
+    //the Accept-Encoding of the last request
+    private volatile String mAcceptEncoding;
+    //the client port of every connection the server saw
+    private final Set<Integer> mConnections = Collections.synchronizedSet(new HashSet<Integer>());
+
+    private LocalServer mServer;
+    private HttpClient mClient;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(int request, HttpExchange exchange) throws IOException {
+                mAcceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                mConnections.add(exchange.getRemoteAddress().getPort());
+                String encoding = exchange.getRequestURI().getPath().substring(1);
+                byte[] body = encode(BODY.getBytes(UTF_8), encoding);
+                if (!encoding.equals("identity")) {
+                    exchange.getResponseHeaders().set("Content-Encoding", encoding.equals("raw") ? "deflate" : encoding);
+                }
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream outputStream = exchange.getResponseBody();
+                outputStream.write(body);
+                outputStream.close();
+            }
+        });
+        mClient = new HttpClient.Builder().setMetrics(null).build();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    private static String page(int length) {
+        StringBuilder page = new StringBuilder(length);
+        while (page.length() < length) {
+            page.append("{\"type\":\"Feature\",\"properties\":{\"mag\":4.6,")
+                    .append("\"place\":\"12km S of Regi\u00f3n de Valpara\u00edso, Chile\"}},\n");
+        }
+        return page.toString();
+    }
+
+    /**
+     * @param encoding "gzip", "deflate" (zlib wrapped), "raw" (deflate without the zlib header)
+     *                 or "identity"
+     */
+    private static byte[] encode(byte[] body, String encoding) throws IOException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        OutputStream outputStream;
+        if (encoding.equals("gzip")) {
+            outputStream = new GZIPOutputStream(encoded);
+        } else if (encoding.equals("deflate")) {
+            outputStream = new DeflaterOutputStream(encoded);
+        } else if (encoding.equals("raw")) {
+            outputStream = new DeflaterOutputStream(encoded, new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+        } else {
+            outputStream = encoded;
+        }
+        outputStream.write(body);
+        outputStream.close();
+        return encoded.toByteArray();
+    }
+
+    /**
+     * @return the response of the path, its body read to its end and the response closed
+     */
+    private HttpClient.Response get(String path, StringBuilder body) throws IOException {
+        HttpClient.Response response = mClient.get(mServer.url(path));
+        try {
+            body.append(BodyReader.readText(response));
+        } finally {
+            response.close();
+        }
+        return response;
+    }
+
+    private void assertDecoded(String encoding) throws IOException {
+        StringBuilder body = new StringBuilder();
+        HttpClient.Response response = get("/" + encoding, body);
+
+        assertEquals(200, response.getCode());
+        assertEquals(BODY, body.toString());
+        assertEquals(BODY.getBytes(UTF_8).length, response.getDecodedByteCount());
+        assertEquals(encode(BODY.getBytes(UTF_8), encoding).length, response.getWireByteCount());
+        //the page repeats itself, it's a lot smaller compressed
+        assertTrue(response.getWireByteCount() * 10 < response.getDecodedByteCount());
+    }
+
+    @Test
+    public void get_asksForGzipOrDeflate() throws Exception {
+        get("/identity", new StringBuilder());
+        assertEquals("gzip, deflate", mAcceptEncoding);
+    }
+
+    @Test
+    public void get_decodesGzip() throws Exception {
+        assertDecoded("gzip");
+    }
+
+    @Test
+    public void get_decodesZlibDeflate() throws Exception {
+        assertDecoded("deflate");
+    }
+
+    @Test
+    public void get_decodesRawDeflate() throws Exception {
+        assertDecoded("raw");
+    }
+
+    @Test
+    public void get_givesAnIdentityBodyAsItIs() throws Exception {
+        StringBuilder body = new StringBuilder();
+        HttpClient.Response response = get("/identity", body);
+
+        assertEquals(BODY, body.toString());
+        assertEquals(BODY.getBytes(UTF_8).length, response.getWireByteCount());
+        assertEquals(response.getWireByteCount(), response.getDecodedByteCount());
+        assertEquals(BODY.getBytes(UTF_8).length, response.getContentLength());
+    }
+
+    @Test
+    public void getContentLength_isUnknownForACompressedBody() throws Exception {
+        HttpClient.Response response = get("/gzip", new StringBuilder());
+        assertEquals(-1, response.getContentLength());
+    }
+
+    @Test
+    public void close_givesTheConnectionBackAfterEveryEncoding() throws Exception {
+        String[] encodings = {"gzip", "deflate", "raw", "identity", "gzip", "raw"};
+        for (String encoding : encodings) {
+            StringBuilder body = new StringBuilder();
+            get("/" + encoding, body);
+            assertEquals(BODY, body.toString());
+        }
+        assertEquals(encodings.length, mServer.getRequestCount());
+        assertEquals(1, mConnections.size());
+    }
+
+    @Test
+    public void close_drainsAnUnreadCompressedBodyAndKeepsTheConnection() throws Exception {
+        mClient.get(mServer.url("/gzip")).close();
+        //only a few bytes of the body read
+        HttpClient.Response response = mClient.get(mServer.url("/raw"));
+        assertEquals('{', response.getBody().read());
+        response.close();
+        get("/deflate", new StringBuilder());
+
+        assertEquals(3, mServer.getRequestCount());
+        assertEquals(1, mConnections.size());
+    }
+}
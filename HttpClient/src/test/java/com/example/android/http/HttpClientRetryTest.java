@@ -0,0 +1,315 @@
+package com.example.android.http;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * The retries, the hedging and the circuit breaker of {@link HttpClient}, against a {@link LocalServer}.
+ */
+public class HttpClientRetryTest {
+
+    private static final Map<String, String> NO_HEADERS = Collections.emptyMap();
+
+    private static HttpClient newClient(RetryPolicy retryPolicy) {
+        return new HttpClient.Builder()
+                .setRetryPolicy(retryPolicy)
+                .setMetrics(null)
+                .build();
+    }
+
+    @Test
+    public void get_retriesA503UntilItWorks() throws Exception {
+        LocalServer server = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(int request, HttpExchange exchange) throws IOException {
+                LocalServer.respond(exchange, request < 3 ? 503 : 200, "body");
+            }
+        });
+        try {
+            HttpClient client = newClient(new RetryPolicy.Builder().setBackoff(0, 0).build());
+
+            HttpClient.Response response = client.get(server.url("/"));
+            response.close();
+
+            assertEquals(200, response.getCode());
+            assertEquals(3, server.getRequestCount());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void get_returnsTheLastFailedResponse() throws Exception {
+        LocalServer server = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(int request, HttpExchange exchange) throws IOException {
+                LocalServer.respond(exchange, 500, "");
+            }
+        });
+        try {
+            HttpClient client = newClient(new RetryPolicy.Builder().setMaxAttempts(2).setBackoff(0, 0).build());
+
+            HttpClient.Response response = client.get(server.url("/"));
+            response.close();
+
+            assertEquals(500, response.getCode());
+            assertEquals(2, server.getRequestCount());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void get_doesNotRetryAClientError() throws Exception {
+        LocalServer server = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(int request, HttpExchange exchange) throws IOException {
+                LocalServer.respond(exchange, 404, "");
+            }
+        });
+        try {
+            HttpClient client = newClient(new RetryPolicy.Builder().setBackoff(0, 0).build());
+
+            HttpClient.Response response = client.get(server.url("/"));
+            response.close();
+
+            assertEquals(404, response.getCode());
+            assertEquals(1, server.getRequestCount());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void get_doesNotWaitLongerThanTheMaxDelayForRetryAfter() throws Exception {
+        LocalServer server = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(int request, HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().set("Retry-After", "3600");
+                LocalServer.respond(exchange, 503, "");
+            }
+        });
+        try {
+            HttpClient client = newClient(new RetryPolicy.Builder().setBackoff(0, 100).build());
+
+            HttpClient.Response response = client.get(server.url("/"));
+            response.close();
+
+            assertEquals(503, response.getCode());
+            assertEquals(1, server.getRequestCount());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void get_opensTheCircuitAfterUnreachableServer() throws Exception {
+        URL url = unusedUrl();
+        HttpClient client = newClient(new RetryPolicy.Builder()
+                .setBackoff(0, 0)
+                .setCircuitBreaker(3, 60000)
+                .build());
+
+        try {
+            client.get(url).close();
+            fail("the server can't be reached");
+        } catch (IOException e) {
+            assertFalse(e.getMessage(), e.getMessage().startsWith("circuit open"));
+        }
+        //the 3 attempts opened it, the next request fails right away
+        try {
+            client.get(url).close();
+            fail("the circuit is open");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("circuit open"));
+        }
+    }
+
+    @Test
+    public void get_opensTheCircuitAfterFailedResponsesAndClosesItAfterATrial() throws Exception {
+        LocalServer server = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(int request, HttpExchange exchange) throws IOException {
+                LocalServer.respond(exchange, request <= 2 ? 500 : 200, "");
+            }
+        });
+        try {
+            HttpClient client = newClient(new RetryPolicy.Builder()
+                    .setMaxAttempts(1)
+                    .setCircuitBreaker(2, 200)
+                    .build());
+            URL url = server.url("/");
+
+            client.get(url).close();
+            client.get(url).close();
+            try {
+                client.get(url).close();
+                fail("the circuit is open");
+            } catch (IOException e) {
+                assertEquals(2, server.getRequestCount());
+            }
+
+            Thread.sleep(250);
+            //the trial works, the circuit is closed again
+            client.get(url).close();
+            HttpClient.Response response = client.get(url);
+            response.close();
+            assertEquals(200, response.getCode());
+            assertEquals(4, server.getRequestCount());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void get_releasesTheTrialWhenTheRequestThrowsARuntimeException() throws Exception {
+        LocalServer server = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(int request, HttpExchange exchange) throws IOException {
+                LocalServer.respond(exchange, request == 1 ? 500 : 200, "");
+            }
+        });
+        try {
+            HttpClient client = newClient(new RetryPolicy.Builder()
+                    .setMaxAttempts(1)
+                    .setCircuitBreaker(1, 0)
+                    .build());
+            URL url = server.url("/");
+            client.get(url).close();
+
+            //the trial fails before it's sent: a header value can't hold a new line
+            try {
+                client.get(url, Collections.singletonMap("X-Test", "a\nb")).close();
+                fail("the header is invalid");
+            } catch (IllegalArgumentException expected) {
+            }
+
+            //an other trial can go, the breaker isn't waiting for the first one forever
+            HttpClient.Response response = client.get(url);
+            response.close();
+            assertEquals(200, response.getCode());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void get_canceledRequestIsNotAFailureOfTheServer() throws Exception {
+        LocalServer server = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(int request, HttpExchange exchange) throws IOException {
+                LocalServer.respond(exchange, 200, "");
+            }
+        });
+        try {
+            HttpClient client = newClient(new RetryPolicy.Builder()
+                    .setMaxAttempts(1)
+                    .setCircuitBreaker(1, 60000)
+                    .build());
+            URL url = server.url("/");
+            CancellationToken token = new CancellationToken();
+            token.cancel();
+
+            try {
+                client.get(url, NO_HEADERS, token).close();
+                fail("the token is canceled");
+            } catch (InterruptedIOException expected) {
+            }
+
+            HttpClient.Response response = client.get(url);
+            response.close();
+            assertEquals(200, response.getCode());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void get_removesItsListenerFromTheTokenWhenTheResponseIsClosed() throws Exception {
+        LocalServer server = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(int request, HttpExchange exchange) throws IOException {
+                LocalServer.respond(exchange, 200, "body");
+            }
+        });
+        try {
+            HttpClient client = newClient(new RetryPolicy.Builder().build());
+            CancellationToken token = new CancellationToken();
+
+            for (int i = 0; i < 10; i++) {
+                HttpClient.Response response = client.get(server.url("/"), NO_HEADERS, token);
+                assertEquals(1, token.getListenerCount());
+                response.close();
+            }
+
+            assertEquals(0, token.getListenerCount());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void get_hedgesASlowRequestAndReleasesTheToken() throws Exception {
+        final int slowRequest = LatencyTracker.MIN_SAMPLES + 1;
+        LocalServer server = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(int request, HttpExchange exchange) throws IOException {
+                if (request == slowRequest) {
+                    try {
+                        Thread.sleep(3000);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                LocalServer.respond(exchange, 200, "body");
+            }
+        });
+        try {
+            HttpClient client = newClient(new RetryPolicy.Builder()
+                    .setHedging(true)
+                    .setMinHedgeDelay(50)
+                    .build());
+            URL url = server.url("/");
+            CancellationToken token = new CancellationToken();
+            //the server must be known before a request is slower than usual
+            for (int i = 0; i < LatencyTracker.MIN_SAMPLES; i++) {
+                client.get(url, NO_HEADERS, token).close();
+            }
+            assertEquals(0, token.getListenerCount());
+
+            long start = System.nanoTime();
+            HttpClient.Response response = client.get(url, NO_HEADERS, token);
+            long elapsed = (System.nanoTime() - start) / 1000000L;
+
+            assertEquals(200, response.getCode());
+            assertTrue("the second copy answered in " + elapsed + " ms", elapsed < 2000);
+            assertEquals(slowRequest + 1, server.getRequestCount());
+            //only the response still listens to the token, until it's closed
+            assertEquals(1, token.getListenerCount());
+            response.close();
+            assertEquals(0, token.getListenerCount());
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * @return the url of a local port nothing listens to
+     */
+    private static URL unusedUrl() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        int port = socket.getLocalPort();
+        socket.close();
+        return new URL("http://127.0.0.1:" + port + "/");
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.android.http;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * The export of {@link Metrics} and the phases {@link HttpClient} records in it.
+ */
+public class MetricsTest {
+
+    @Test
+    public void export_writesTheHistogramsWithValuesInOrder() {
+        Metrics metrics = new Metrics();
+        metrics.record("b", 10);
+        metrics.record("a", 20);
+        metrics.histogram("empty");
+
+        List<String> lines = export(metrics);
+
+        assertEquals(2, lines.size());
+        assertEquals("a count=1 min=20 p50=20 p90=20 p99=20 max=20 mean=20.0", lines.get(0));
+        assertTrue(lines.get(1).startsWith("b count=1 "));
+    }
+
+    @Test
+    public void reset_emptiesEveryHistogram() {
+        Metrics metrics = new Metrics();
+        metrics.record("a", 20);
+        metrics.reset();
+
+        assertTrue(export(metrics).isEmpty());
+    }
+
+    @Test
+    public void exportTo_writesOneLineForEachHistogram() throws IOException {
+        Metrics metrics = new Metrics();
+        metrics.record("a", 1);
+        metrics.record("b", 2);
+        File file = File.createTempFile("metrics", ".txt");
+        try {
+            metrics.exportTo(file);
+
+            List<String> lines = Files.readAllLines(file.toPath(), Charset.forName("UTF-8"));
+            assertEquals(export(metrics), lines);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void get_recordsThePhasesOfTheRequest() throws Exception {
+        LocalServer server = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(int request, HttpExchange exchange) throws IOException {
+                LocalServer.respond(exchange, 200, "0123456789");
+            }
+        });
+        try {
+            Metrics metrics = new Metrics();
+            HttpClient client = new HttpClient.Builder().setCompression(false).setMetrics(metrics).build();
+
+            HttpClient.Response response = client.get(server.url("/"));
+            InputStream body = response.getBody();
+            while (body.read() != -1) {
+                //read the whole body
+            }
+            response.close();
+
+            assertEquals(1, metrics.histogram(Metrics.HTTP_CONNECT).getCount());
+            assertEquals(1, metrics.histogram(Metrics.HTTP_TTFB).getCount());
+            assertEquals(1, metrics.histogram(Metrics.HTTP_DOWNLOAD).getCount());
+            assertEquals(10, metrics.histogram(Metrics.HTTP_DECODED_BYTES).getMax());
+            //there is no separate DNS phase, the lookup is in the connect time
+            for (String line : export(metrics)) {
+                assertFalse(line, line.startsWith("http.dns"));
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static List<String> export(Metrics metrics) {
+        final List<String> lines = new ArrayList<>();
+        metrics.export(new Metrics.Sink() {
+            @Override
+            public void write(String line) {
+                lines.add(line);
+            }
+        });
+        return lines;
+    }
+}
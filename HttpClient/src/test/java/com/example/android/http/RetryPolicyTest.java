@@ -0,0 +1,51 @@
+package com.example.android.http;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * The backoff and the retryable codes of a {@link RetryPolicy}.
+ */
+public class RetryPolicyTest {
+
+    @Test
+    public void getBackoff_doublesTheCapWithEachRetry() {
+        RetryPolicy policy = new RetryPolicy.Builder().setBackoff(100, 10000).build();
+
+        //the highest random gives the cap, the lowest gives no wait (full jitter)
+        assertEquals(100, policy.getBackoff(1, 0.99999));
+        assertEquals(200, policy.getBackoff(2, 0.99999));
+        assertEquals(400, policy.getBackoff(3, 0.99999));
+        assertEquals(0, policy.getBackoff(3, 0));
+    }
+
+    @Test
+    public void getBackoff_neverGoesOverTheMaxDelay() {
+        RetryPolicy policy = new RetryPolicy.Builder().setBackoff(100, 1000).build();
+
+        assertEquals(1000, policy.getBackoff(5, 0.99999));
+        assertEquals(1000, policy.getBackoff(1000, 0.99999));
+    }
+
+    @Test
+    public void isRetryable_onlyServerErrorsTimeoutsAndTooManyRequests() {
+        assertTrue(RetryPolicy.isRetryable(500));
+        assertTrue(RetryPolicy.isRetryable(503));
+        assertTrue(RetryPolicy.isRetryable(408));
+        assertTrue(RetryPolicy.isRetryable(429));
+        assertFalse(RetryPolicy.isRetryable(200));
+        assertFalse(RetryPolicy.isRetryable(304));
+        assertFalse(RetryPolicy.isRetryable(404));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void builder_rejectsNoAttempt() {
+        new RetryPolicy.Builder().setMaxAttempts(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void builder_rejectsAMaxDelayUnderTheBaseDelay() {
+        new RetryPolicy.Builder().setBackoff(1000, 100);
+    }
+}
@@ -6,6 +6,9 @@ package com.example.android.quakereport;
 
 public class Earthquake {
 
+    /** USGS id of the earthquake event (i.e. "us1000abcd") */
+    private String mId;
+
     /** Magnitude of the earthquake */
     private double mMagnitude;
 
@@ -16,23 +19,42 @@ public class Earthquake {
 
     private String mUrl;
 
+    /** coordinates of the epicenter in degrees and depth in km, NaN if unknown */
+    private double mLongitude;
+    private double mLatitude;
+    private double mDepth;
+
     /**
      * Constructs a new {@link Earthquake} object.
      *
+     * @param id is the USGS id of the earthquake event
      * @param magnitude is the magnitude (size) of the earthquake
      * @param location is the city location of the earthquake
      * @param timeInMilliseconds is the time in milliseconds (from the Epoch) when the
      *  earthquake happened
+     * @param url is the USGS web page of the earthquake
+     * @param longitude is the longitude of the epicenter in degrees
+     * @param latitude is the latitude of the epicenter in degrees
+     * @param depth is the depth of the hypocenter in km
      */
-    public Earthquake(Double magnitude, String location, Long timeInMilliseconds, String url){
+    public Earthquake(String id, double magnitude, String location, long timeInMilliseconds, String url,
+                      double longitude, double latitude, double depth){
+        mId = id;
         mMagnitude = magnitude;
         mLocation = location;
         mTimeInMilliseconds = timeInMilliseconds;
         mUrl = url;
+        mLongitude = longitude;
+        mLatitude = latitude;
+        mDepth = depth;
     }
 
 
-    public Double getMagnitude() {
+    public String getId() {
+        return mId;
+    }
+
+    public double getMagnitude() {
         return mMagnitude;
     }
 
@@ -40,11 +62,23 @@ public class Earthquake {
         return mLocation;
     }
 
-    public Long getTimeInMilliseconds() {
+    public long getTimeInMilliseconds() {
         return mTimeInMilliseconds;
     }
 
     public String getUrl() {
         return mUrl;
     }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getDepth() {
+        return mDepth;
+    }
 }
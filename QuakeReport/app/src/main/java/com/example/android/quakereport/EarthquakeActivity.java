@@ -22,24 +22,49 @@ import android.content.Loader;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
 import android.widget.TextView;
 
-import java.util.ArrayList;
-import java.util.List;
+import com.example.android.http.Metrics;
 
+import java.io.File;
+import java.io.IOException;
 
-public class EarthquakeActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<List<Earthquake>> {
+
+public class EarthquakeActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<EarthquakeDisplayModel> {
 
     public static final String LOG_TAG = EarthquakeActivity.class.getName();
 
 
-    private static final String USGS_REQUEST_URL = "https://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&eventtype=earthquake&orderby=time&minmag=6&limit=10";
-    //if not enough is showing is this link instead->"https://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&orderby=time&minmag=5&limit=10"
+    //the earthquakes shown, rendered to the USGS parameters so the server does the filtering
+    //the offset and limit parameters are added by the loader for each page
+    static final EarthquakeQuery USGS_QUERY = new EarthquakeQuery.Builder()
+            .setMinMagnitude(6)//if not enough is showing use 5 instead
+            .setOrder(EarthquakeQuery.Order.TIME)
+            .build();
+    //a url with a long starttime/endtime range (i.e. a whole year) is not paged, the loader split it
+    //in time windows fetched at the same time (see {@link EarthquakeQueryPlanner})
+
+    //the number of earthquakes fetched for each page, the first page is small so the first rows show up fast
+    private static final int PAGE_SIZE = 20;
+
+    //when the last visible row is this close to the end of the list we ask for the next page
+    private static final int PAGE_PREFETCH_DISTANCE = 5;
+
+    //the on-disk cache of the USGS responses (see {@link EarthquakeCache})
+    private static final String CACHE_DIRECTORY = "earthquakes";
+    private static final long CACHE_MAX_SIZE = 4 * 1024 * 1024; // 4 MiB
+    //a response is used without asking the server during that time, then it's revalidated
+    private static final long CACHE_TIME_TO_LIVE = 5 * 60 * 1000; // 5 minutes
+
+    //where the request, parse and bind times are written when the user leaves the screen (see {@link Metrics})
+    private static final String METRICS_FILE = "metrics.txt";
 
     //create an id for the loader useful when you have multiple loader
     private static final int EARTHQUAKE_LOADER_ID = 1;
@@ -55,31 +80,27 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderManag
         super.onCreate(savedInstanceState);
         setContentView(R.layout.earthquake_activity);
 
+        //the cache is shared by every request of the app, we only need to open it once
+        if (QueryUtils.getCache() == null) {
+            QueryUtils.setCache(new EarthquakeCache(new File(getCacheDir(), CACHE_DIRECTORY),
+                    CACHE_MAX_SIZE, CACHE_TIME_TO_LIVE));
+        }
+
         // Find a reference to the {@link TextView} in the layout
         mEmptyStateTextView = (TextView) findViewById(R.id.empty_view);
 
-        // Find a reference to the {@link ListView} in the layout
-        ListView earthquakeListView = (ListView) findViewById(R.id.list);
+        // Find a reference to the {@link RecyclerView} in the layout
+        RecyclerView earthquakeListView = (RecyclerView) findViewById(R.id.list);
 
-        //set the empty view on the listView if there no data to be shown
-        earthquakeListView.setEmptyView(mEmptyStateTextView);
+        //the rows are shown one under the other like a ListView
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        earthquakeListView.setLayoutManager(layoutManager);
 
         // here we populate the adapter with an empty list to start with //
-        mAdapter = new EarthquakeAdapter(this, new ArrayList<Earthquake>());
-
-        // Set the adapter on the {@link ListView}
-        // so the list can be populated in the user interface
-        earthquakeListView.setAdapter(mAdapter);
-
-        //this set the listview item to show the webpage or the earthquake showing more detail
-        earthquakeListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        //a click on a row show the webpage or the earthquake showing more detail
+        mAdapter = new EarthquakeAdapter(this, new EarthquakeAdapter.OnEarthquakeClickListener() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long l) {
-
-                // Find the current earthquake that was clicked on
-                Earthquake currentEarthquake = mAdapter.getItem(position);
-
-                // alternative way to get the position: Earthquake currentEarthquake = earthquakes.get(position);
+            public void onEarthquakeClick(Earthquake currentEarthquake) {
 
                 // Convert the String URL into a URI object (to pass into the Intent constructor)
                 Uri earthquakeUri = Uri.parse(currentEarthquake.getUrl());
@@ -89,8 +110,40 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderManag
 
                 // Send the intent to launch a new activity
                 startActivity(websiteIntent);
+            }
+        });
 
+        //the RecyclerView has no empty view so we show the TextView ourselves when the adapter is empty
+        mAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                updateEmptyView();
+            }
 
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
+        });
+
+        // Set the adapter on the {@link RecyclerView}
+        // so the list can be populated in the user interface
+        earthquakeListView.setAdapter(mAdapter);
+
+        //fetch the next page only when the user scroll near the end of the list
+        earthquakeListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int totalItemCount = layoutManager.getItemCount();
+                if (totalItemCount > 0
+                        && layoutManager.findLastVisibleItemPosition() >= totalItemCount - 1 - PAGE_PREFETCH_DISTANCE) {
+                    loadNextPage();
+                }
             }
         });
 
@@ -103,9 +156,16 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderManag
         // Get details on the currently active default data network
         NetworkInfo networkInfo = connMgr.getActiveNetworkInfo();
 
-        // If there is a network connection, fetch data
+        boolean isConnected = networkInfo != null && networkInfo.isConnected();
+
+        //keep the local copy up to date in the background (the alarm is set again only on a new start)
+        if (isConnected && savedInstanceState == null) {
+            EarthquakeSyncService.schedule(this);
+        }
+
+        // If there is a network connection or a local copy of the feed, load data
         // if networkInfo is not empty and network is connected then perform step...
-        if (networkInfo != null && networkInfo.isConnected()) {
+        if (isConnected || EarthquakeRepository.exists(this)) {
 
             // Get a reference to the LoaderManager, in order to interact with loaders.
             // the loaderManager will help us with screen rotation
@@ -125,27 +185,78 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderManag
 
     }
 
+    /**
+     * write where the time went so far (network, parsing, binding) to a file of the cache directory,
+     * each time the user leaves the screen, and to the log in a debug build
+     */
+    @Override
+    protected void onStop() {
+        super.onStop();
+        final Metrics metrics = Metrics.getDefault();
+        //only a debug build fills the log with the histograms
+        if (BuildConfig.DEBUG) {
+            metrics.export(new Metrics.Sink() {
+                @Override
+                public void write(String line) {
+                    Log.i(LOG_TAG, line);
+                }
+            });
+        }
+        //no file IO on the main thread, the exports are written one after the other
+        final Context context = getApplicationContext();
+        AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    metrics.exportTo(new File(context.getCacheDir(), METRICS_FILE));
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Problem writing the metrics.", e);
+                }
+            }
+        });
+    }
+
     /**
      *
      * this method prepare and create the Loader by initializing our Loader class {@link EarthquakeLoader}
      * and passing in the data we need to be process in the background Thread
      * @param id the id given when we initialize it
      * @param args Any arguments supplied by the caller TODO ??
-     * @return a loader with a generic type list of earthquake
+     * @return a loader with a generic type earthquake display model
      */
     @Override
-    public Loader<List<Earthquake>> onCreateLoader(int id, Bundle args) {
+    public Loader<EarthquakeDisplayModel> onCreateLoader(int id, Bundle args) {
 
-        return new EarthquakeLoader(this, USGS_REQUEST_URL);
+        //the pages are read from the local copy of the feed, they are only fetched if there is none
+        return new EarthquakeLoader(this, USGS_QUERY, PAGE_SIZE, EarthquakeSync.getDefault(this));
+    }
+
+    /**
+     * show the empty state TextView only when there is no earthquake in the list
+     */
+    private void updateEmptyView() {
+        mEmptyStateTextView.setVisibility(mAdapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
+    }
+
+    /**
+     * ask the loader for the next page of earthquakes, it does nothing if a page is already
+     * loading or if there is no more page
+     */
+    private void loadNextPage() {
+        Loader<EarthquakeDisplayModel> loader = getLoaderManager().getLoader(EARTHQUAKE_LOADER_ID);
+        if (loader != null) {
+            ((EarthquakeLoader) loader).loadNextPage();
+        }
     }
 
     /**
      * this method is called when the Loader finished gathering eatrhquake data
-     * @param loader loader takes in a loader of generic type list of earthquake
-     * @param earthquakes the returned list of earthquakes from the JSON parse
+     * it's called once for each page with every page loaded so far
+     * @param loader loader takes in a loader of generic type earthquake display model
+     * @param earthquakes every page of earthquakes loaded so far
      */
     @Override
-    public void onLoadFinished(Loader<List<Earthquake>> loader, List<Earthquake> earthquakes) {
+    public void onLoadFinished(Loader<EarthquakeDisplayModel> loader, EarthquakeDisplayModel earthquakes) {
 
         // Hide loading indicator because the data has been loaded
         View loadingIndicator = findViewById(R.id.loading_indicator);
@@ -153,31 +264,31 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderManag
 
 
         // Set empty state text to display "No earthquakes found."
-        // this TextView is attached to the earthquakeListView.setEmptyView()
+        // this TextView is only visible when the adapter is empty (see updateEmptyView())
         // here we just preparing our text to show up if the view is really empty
-        mEmptyStateTextView.setText("No earthquakes found");
-
+        // (a failed request is not an empty feed, the first page is asked again the next time we start)
+        if (((EarthquakeLoader) loader).isLastPageFailed()) {
+            mEmptyStateTextView.setText("Problem loading the earthquakes");
+        } else {
+            mEmptyStateTextView.setText("No earthquakes found");
+        }
 
-        // Clear the adapter of previous earthquake data
-        mAdapter.clear();// we prepare our adapter by clearing any information as the EarthquakeArray was an empty at first
 
-        // If there is a valid list of {@link Earthquake}s, then add them to the adapter's
-        // data set. This will trigger the ListView to update.
-        if (earthquakes != null && !earthquakes.isEmpty()) {
-            mAdapter.addAll(earthquakes);//here you can comment out the adapter to test if the empty view message will be shown or to see the progress indicator
-        }
+        // the model hold every page loaded so far, the adapter only rebind the rows that changed
+        // This will trigger the RecyclerView to update.
+        mAdapter.setEarthquakes(earthquakes);//here you can comment out the adapter to test if the empty view message will be shown or to see the progress indicator
     }
 
     /**
      *
      * called when the activity or Fragment is destroy
      * I need to remove code that has any references to the loader's data such as the adapter
-     * @param loader takes in a loader of generic type list of earthquake
+     * @param loader takes in a loader of generic type earthquake display model
      */
     @Override
-    public void onLoaderReset(Loader<List<Earthquake>> loader) {
+    public void onLoaderReset(Loader<EarthquakeDisplayModel> loader) {
 
-        mAdapter.clear();
+        mAdapter.setEarthquakes(null);
 
     }
 
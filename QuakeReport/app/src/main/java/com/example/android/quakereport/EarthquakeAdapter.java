@@ -2,206 +2,238 @@ package com.example.android.quakereport;
 
 import android.content.Context;
 import android.graphics.drawable.GradientDrawable;
+import android.os.AsyncTask;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.support.v4.content.ContextCompat;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.TextView;
 
-import java.text.DecimalFormat;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Date;
+import com.example.android.http.Histogram;
+import com.example.android.http.Metrics;
 
 
 
 /**
- * the main thing on arrayAdapter: build a constructor that support arrayList and override the getView method CTRL O
+ * the main thing on an adapter: give the number of rows, create the ViewHolder and bind it
+ *
+ * every text and color of a row is already in the {@link EarthquakeDisplayModel} (formatted on the
+ * loader thread) so binding a row is only setting the views kept in a {@link ViewHolder}.
+ * when new earthquakes are given, the difference with the shown ones is computed on a background
+ * thread with {@link DiffUtil} so only the inserted, removed or changed rows are bound again.
  */
 
-public class EarthquakeAdapter extends ArrayAdapter<Earthquake> {
+public class EarthquakeAdapter extends RecyclerView.Adapter<EarthquakeAdapter.ViewHolder> {
 
-    //this is a seperator for splitting our location String from the {@link earthquake}
-    private static final String LOCATION_SEPARATOR = " of ";
-
-    //the constructor takes an context and a arraylist of type earthquakesclass to pass in
-    public EarthquakeAdapter(@NonNull Context context, ArrayList<Earthquake> earthquakes) {
-        super(context,0,earthquakes);
+    /**
+     * called when the user click on a row
+     */
+    public interface OnEarthquakeClickListener {
+        void onEarthquakeClick(Earthquake earthquake);
     }
 
-    @NonNull
-    @Override
-    public View getView(int position, @Nullable View convertView, @NonNull ViewGroup parent) {
-        View listViewItem = convertView;
-        //TODO:need to understand this part better
-        if(listViewItem == null){
-
-            listViewItem = LayoutInflater.from(getContext()).inflate(R.layout.earthquake_list_item, parent, false);
-
-        }
-
-        //get the current position instance of the earthquake class
-        Earthquake currentEarthquake = getItem(position);
+    private final Context mContext;
 
-        //link textView to their id from the list item
-        //then set the text from the  id and the earthquakeclass
+    private final OnEarthquakeClickListener mClickListener;
 
-        //magnitude textView
-        TextView magnitudeText = (TextView) listViewItem.findViewById(R.id.magnitude);
+    //the rows shown in the list, never changed once given to the adapter
+    private EarthquakeDisplayModel mEarthquakes = EarthquakeDisplayModel.empty();
 
-        //a String conversion from a double primitive
-        String formattedMagnitude = formatMagnitude(currentEarthquake.getMagnitude());
+    //increased each time new earthquakes are given, a diff computed for an older one is dropped
+    private int mGeneration;
 
-        //set the textView to the formatted String
-        magnitudeText.setText(formattedMagnitude);
+    //the diff being computed, if any
+    private DiffTask mDiffTask;
 
+    //the bind times, looked up once instead of by name for each row bound
+    private final Histogram mBindTimes = Metrics.getDefault().histogram(Metrics.BIND);
 
-        //a String holding our current earthquake from our {@link ArrayList<Earthquake>}
-        String originalLocation = currentEarthquake.getLocation();
-
-        //the location off set (eg 90km Est...)
-        String locationOffset;
-
-        //the location of the earthquake (eg San Francisco, Ca...)
-        String primaryLocation;
-
-        if(originalLocation.contains(LOCATION_SEPARATOR)){
+    //the constructor takes an context, the earthquakes are given later with setEarthquakes
+    public EarthquakeAdapter(@NonNull Context context, @NonNull OnEarthquakeClickListener clickListener) {
+        mContext = context;
+        mClickListener = clickListener;
+        //the id comes from the USGS event id (or its time and url when it has none)
+        //so a row keep its id when the list change
+        setHasStableIds(true);
+    }
 
-            String[] stringParts = originalLocation.split(LOCATION_SEPARATOR);
-            locationOffset = stringParts[0] + LOCATION_SEPARATOR;
-            primaryLocation = stringParts[1];
+    /**
+     * show an other set of earthquakes (i.e. when a new page is loaded or the feed is reloaded)
+     * @param earthquakes the rows to show or null to show an empty list
+     */
+    public void setEarthquakes(@Nullable EarthquakeDisplayModel earthquakes) {
+        final EarthquakeDisplayModel newEarthquakes = earthquakes != null ? earthquakes : EarthquakeDisplayModel.empty();
+        final int generation = ++mGeneration;
 
-        }else{
-            locationOffset = "Near the";
-            primaryLocation = originalLocation;
+        if (mDiffTask != null) {
+            mDiffTask.cancel(false);
+            mDiffTask = null;
         }
 
+        //nothing to compare with, we don't need a diff
+        if (mEarthquakes.size() == 0 || newEarthquakes.size() == 0) {
+            mEarthquakes = newEarthquakes;
+            notifyDataSetChanged();
+            return;
+        }
 
-        TextView locationOffsetView = (TextView) listViewItem.findViewById(R.id.location_offset);
-        TextView primaryLocationView = (TextView) listViewItem.findViewById(R.id.primary_location);
-
-        locationOffsetView.setText(locationOffset);
-        primaryLocationView.setText(primaryLocation);
-
-
-        //the dateObject witch hold out Unix time (it's contains the date as well as the time)
-        Date dateObject = new Date(currentEarthquake.getTimeInMilliseconds());
-
-        //date textView
-        TextView dateView = (TextView) listViewItem.findViewById(R.id.date);
-
-        //a String conversion from Unix time to a date  {@link SimpleDateFormat}(i.e SimpleDateFormat("LLL dd, yyyy"))
-        String formattedDate = formatDate(dateObject);
+        mDiffTask = new DiffTask(mEarthquakes, newEarthquakes, generation);
+        mDiffTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
 
-        //set dateView text
-        dateView.setText(formattedDate);
+    /**
+     * @return the earthquakes shown in the list
+     */
+    public EarthquakeDisplayModel getEarthquakes() {
+        return mEarthquakes;
+    }
 
-        //the time textView
-        TextView timeView = (TextView) listViewItem.findViewById(R.id.time);
+    public Context getContext() {
+        return mContext;
+    }
 
-        //a String conversion from Unix time to a clock  {@link SimpleDateFormat}(i.e SimpleDateFormat("h:mm a"))
-        String formattedTime = formatTime(dateObject);
+    @Override
+    public int getItemCount() {
+        return mEarthquakes.size();
+    }
 
-        timeView.setText(formattedTime);
+    @Override
+    public long getItemId(int position) {
+        return mEarthquakes.getItemId(position);
+    }
 
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View listViewItem = LayoutInflater.from(getContext()).inflate(R.layout.earthquake_list_item, parent, false);
+        return new ViewHolder(listViewItem);
+    }
 
-        //the next code following, set up the magnitude TextView background to display the right color
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        long bindStart = System.nanoTime();
+        //the texts were formatted on the loader thread, here we only set them
+        holder.magnitudeView.setText(mEarthquakes.getMagnitudeText(position));
+        holder.locationOffsetView.setText(mEarthquakes.getLocationOffsetText(position));
+        holder.primaryLocationView.setText(mEarthquakes.getPrimaryLocationText(position));
+        holder.dateView.setText(mEarthquakes.getDateText(position));
+        holder.timeView.setText(mEarthquakes.getTimeText(position));
 
         // Set the proper background color on the magnitude circle.
-        // Fetch the background from the TextView, which is a GradientDrawable.
-        GradientDrawable magnitudeCircle = (GradientDrawable) magnitudeText.getBackground();
-
-        // Get the appropriate background color based on the current earthquake magnitude
-        int magnitudeColor = getMagnitudeColor(currentEarthquake.getMagnitude());
-
-        // Set the color on the magnitude circle
-        magnitudeCircle.setColor(magnitudeColor);
-
-
-
-
-        return listViewItem;
+        // the GradientDrawable of the TextView is kept in the ViewHolder
+        holder.magnitudeCircle.setColor(mEarthquakes.getMagnitudeColor(position));
+        mBindTimes.record((System.nanoTime() - bindStart) / 1000);
     }
 
-
-
     /**
-     * Return the formatted date string (i.e. "Mar 3, 1984") from a Date object.
-     * @param dateObject takes the date object that hold the Unix time
+     * keep the views of a row so we don't have to find them each time the row is reused
      */
-    private String formatDate(Date dateObject) {
-        SimpleDateFormat dateFormat = new SimpleDateFormat("LLL dd, yyyy");
-        return dateFormat.format(dateObject);
+    class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+        final TextView magnitudeView;
+        final GradientDrawable magnitudeCircle;
+        final TextView locationOffsetView;
+        final TextView primaryLocationView;
+        final TextView dateView;
+        final TextView timeView;
+
+        ViewHolder(View listViewItem) {
+            super(listViewItem);
+            magnitudeView = (TextView) listViewItem.findViewById(R.id.magnitude);
+            // the background of the magnitude TextView is a GradientDrawable (magnitude_circle.xml)
+            magnitudeCircle = (GradientDrawable) magnitudeView.getBackground();
+            locationOffsetView = (TextView) listViewItem.findViewById(R.id.location_offset);
+            primaryLocationView = (TextView) listViewItem.findViewById(R.id.primary_location);
+            dateView = (TextView) listViewItem.findViewById(R.id.date);
+            timeView = (TextView) listViewItem.findViewById(R.id.time);
+            listViewItem.setOnClickListener(this);
+        }
+
+        @Override
+        public void onClick(View view) {
+            int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                mClickListener.onEarthquakeClick(mEarthquakes.getEarthquakes().get(position));
+            }
+        }
     }
 
     /**
-     * Return the formatted date string (i.e. "4:30 PM") from a Date object.
-     * @param dateObject takes the date object that hold the Unix time
+     * compute the difference between the shown earthquakes and the new ones in the background,
+     * then apply it on the UI thread
      */
-    private String formatTime(Date dateObject) {
-        SimpleDateFormat timeFormat = new SimpleDateFormat("h:mm a");
-        return timeFormat.format(dateObject);
-    }
+    private class DiffTask extends AsyncTask<Void, Void, DiffUtil.DiffResult> {
 
+        private final EarthquakeDisplayModel mOldEarthquakes;
+        private final EarthquakeDisplayModel mNewEarthquakes;
+        private final int mTaskGeneration;
 
-    /**
-     * Return the formatted magnitude string showing 1 decimal place (i.e. "3.2")
-     * from a decimal magnitude value.
-     * @param magnitude takes the magnitude from the earthquake object
-     */
-    private String formatMagnitude(double magnitude) {
-        DecimalFormat magnitudeFormat = new DecimalFormat("0.0");
-        return magnitudeFormat.format(magnitude);
+        DiffTask(EarthquakeDisplayModel oldEarthquakes, EarthquakeDisplayModel newEarthquakes, int generation) {
+            mOldEarthquakes = oldEarthquakes;
+            mNewEarthquakes = newEarthquakes;
+            mTaskGeneration = generation;
+        }
+
+        @Override
+        protected DiffUtil.DiffResult doInBackground(Void... voids) {
+            return DiffUtil.calculateDiff(new EarthquakeDiffCallback(mOldEarthquakes, mNewEarthquakes));
+        }
+
+        @Override
+        protected void onPostExecute(DiffUtil.DiffResult diffResult) {
+            //newer earthquakes were given while we were computing, this diff is useless
+            if (mTaskGeneration != mGeneration) {
+                return;
+            }
+            mDiffTask = null;
+            mEarthquakes = mNewEarthquakes;
+            diffResult.dispatchUpdatesTo(EarthquakeAdapter.this);
+        }
     }
 
     /**
-     *
-     * @param magnitude takes the magnitude witch is a double
-     * @return the resource id of the color
+     * two rows are the same earthquake if they have the same USGS event id (or the same time and
+     * url when they have none), the row changed if one of the shown values changed
      */
-    private int getMagnitudeColor(double magnitude) {
-        int magnitudeColorResourceId;
-        //case cannot accept double so we cast it
-        int magnitudeFloor = (int) Math.floor(magnitude);
-        switch (magnitudeFloor) {
-            case 0:
-            case 1:
-                magnitudeColorResourceId = R.color.magnitude1;
-                break;
-            case 2:
-                magnitudeColorResourceId = R.color.magnitude2;
-                break;
-            case 3:
-                magnitudeColorResourceId = R.color.magnitude3;
-                break;
-            case 4:
-                magnitudeColorResourceId = R.color.magnitude4;
-                break;
-            case 5:
-                magnitudeColorResourceId = R.color.magnitude5;
-                break;
-            case 6:
-                magnitudeColorResourceId = R.color.magnitude6;
-                break;
-            case 7:
-                magnitudeColorResourceId = R.color.magnitude7;
-                break;
-            case 8:
-                magnitudeColorResourceId = R.color.magnitude8;
-                break;
-            case 9:
-                magnitudeColorResourceId = R.color.magnitude9;
-                break;
-            default:
-                magnitudeColorResourceId = R.color.magnitude10plus;
-                break;
+    static class EarthquakeDiffCallback extends DiffUtil.Callback {
+
+        private final EarthquakeStore mOldEarthquakes;
+        private final EarthquakeStore mNewEarthquakes;
+
+        EarthquakeDiffCallback(EarthquakeDisplayModel oldEarthquakes, EarthquakeDisplayModel newEarthquakes) {
+            mOldEarthquakes = oldEarthquakes.getEarthquakes();
+            mNewEarthquakes = newEarthquakes.getEarthquakes();
         }
-        return ContextCompat.getColor(getContext(), magnitudeColorResourceId);
-    }
 
+        @Override
+        public int getOldListSize() {
+            return mOldEarthquakes.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewEarthquakes.size();
+        }
 
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            String oldId = mOldEarthquakes.getId(oldItemPosition);
+            if (!oldId.equals(mNewEarthquakes.getId(newItemPosition))) {
+                return false;
+            }
+            //every event without id has the same empty id, they can't be told apart by it
+            return !oldId.isEmpty()
+                    || (mOldEarthquakes.getTimeInMilliseconds(oldItemPosition) == mNewEarthquakes.getTimeInMilliseconds(newItemPosition)
+                    && mOldEarthquakes.getUrl(oldItemPosition).equals(mNewEarthquakes.getUrl(newItemPosition)));
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldEarthquakes.getMagnitude(oldItemPosition) == mNewEarthquakes.getMagnitude(newItemPosition)
+                    && mOldEarthquakes.getTimeInMilliseconds(oldItemPosition) == mNewEarthquakes.getTimeInMilliseconds(newItemPosition)
+                    && mOldEarthquakes.getLocation(oldItemPosition).equals(mNewEarthquakes.getLocation(newItemPosition));
+        }
+    }
 
 }
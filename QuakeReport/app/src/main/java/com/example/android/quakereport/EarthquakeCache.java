@@ -0,0 +1,432 @@
+package com.example.android.quakereport;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A persistent cache of the USGS responses, one entry per request url.
+ *
+ * each entry keeps an {@link EarthquakeSnapshot} of the parsed response on disk with the ETag
+ * and Last-Modified headers
+ * so {@link QueryUtils} can revalidate it with a conditional GET once its time to live is over.
+ * the least recently used entries are removed when the cache grows over its maximum size.
+ */
+public final class EarthquakeCache {
+
+    private static final String LOG_TAG = EarthquakeCache.class.getSimpleName();
+
+    //the version of the entry file, bump it if the layout of the entry file or of the
+    //snapshot change so the entries of an older version are dropped when the cache is opened
+    private static final int ENTRY_VERSION = 4;
+
+    private static final String ENTRY_SUFFIX = ".entry";
+    private static final String BODY_SUFFIX = ".body";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * A cached response
+     */
+    public static final class Entry {
+
+        private final String mUrl;
+        private final File mEntryFile;
+        private final File mBodyFile;
+        private final String mETag;
+        private final long mLastModified;
+        private long mFetchedAt;
+
+        //the earthquakes parsed from the body, kept while memory allows so a hit doesn't parse again
+        private SoftReference<EarthquakeStore> mEarthquakes = new SoftReference<>(null);
+
+        private Entry(String url, File entryFile, File bodyFile, String eTag, long lastModified, long fetchedAt) {
+            mUrl = url;
+            mEntryFile = entryFile;
+            mBodyFile = bodyFile;
+            mETag = eTag;
+            mLastModified = lastModified;
+            mFetchedAt = fetchedAt;
+        }
+
+        public String getUrl() {
+            return mUrl;
+        }
+
+        /**
+         * @return the file holding the {@link EarthquakeSnapshot} of the response
+         */
+        public File getBodyFile() {
+            return mBodyFile;
+        }
+
+        /**
+         * @return the ETag header of the response or null if there was none
+         */
+        public String getETag() {
+            return mETag;
+        }
+
+        /**
+         * @return the Last-Modified header of the response in milliseconds or 0 if there was none
+         */
+        public long getLastModified() {
+            return mLastModified;
+        }
+
+        /**
+         * @return the time the response was fetched or last revalidated
+         */
+        public synchronized long getFetchedAt() {
+            return mFetchedAt;
+        }
+
+        /**
+         * @return the earthquakes already parsed from this entry or null if they were collected
+         */
+        public synchronized EarthquakeStore getEarthquakes() {
+            return mEarthquakes.get();
+        }
+
+        public synchronized void setEarthquakes(EarthquakeStore earthquakes) {
+            mEarthquakes = new SoftReference<>(earthquakes);
+        }
+
+        private long getSize() {
+            return mBodyFile.length();
+        }
+    }
+
+    private final File mDirectory;
+    private final long mMaxSize;
+    private final long mDefaultTimeToLive;
+
+    //the time to live set for a given request url, the default one is used otherwise
+    private final Map<String, Long> mTimeToLive = new HashMap<>();
+
+    //in access order so the first entry is always the least recently used one
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long mSize;
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mRevalidateCount;
+
+    /**
+     * open the cache and read back the entries already on disk
+     * @param directory the directory holding the cache files, created if needed
+     * @param maxSize the maximum size in bytes of the response snapshots
+     * @param defaultTimeToLive how long in milliseconds a response is used without asking the server
+     */
+    public EarthquakeCache(File directory, long maxSize, long defaultTimeToLive) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+        mDefaultTimeToLive = defaultTimeToLive;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(LOG_TAG, "Can't create the cache directory " + directory);
+        }
+        readEntries();
+    }
+
+    /**
+     * set the time to live of one request url
+     * @param url the request url
+     * @param timeToLive how long in milliseconds the response is used without asking the server
+     */
+    public synchronized void setTimeToLive(String url, long timeToLive) {
+        mTimeToLive.put(url, timeToLive);
+    }
+
+    public synchronized long getTimeToLive(String url) {
+        Long timeToLive = mTimeToLive.get(url);
+        return timeToLive != null ? timeToLive : mDefaultTimeToLive;
+    }
+
+    /**
+     * @param url the request url
+     * @return the cached response or null if there is none
+     */
+    public synchronized Entry get(String url) {
+        Entry entry = mEntries.get(url);
+        if (entry != null && !entry.getBodyFile().isFile()) {
+            //the system can clear the cache directory behind our back
+            remove(entry);
+            return null;
+        }
+        if (entry != null) {
+            //the modification time of the entry file keep the access order for the next launch
+            entry.mEntryFile.setLastModified(System.currentTimeMillis());
+        }
+        return entry;
+    }
+
+    /**
+     * @return true if the entry can be used without asking the server
+     */
+    public boolean isFresh(Entry entry, long now) {
+        long age = now - entry.getFetchedAt();
+        return age >= 0 && age < getTimeToLive(entry.getUrl());
+    }
+
+    /**
+     * @return a new temporary file to write a response snapshot in, give it to
+     * {@link #put(String, File, String, long, long)} once the body is complete
+     */
+    public File newBodyFile() throws IOException {
+        return File.createTempFile("response", TEMP_SUFFIX, mDirectory);
+    }
+
+    /**
+     * store a response, replacing the previous one for the same url
+     * @param url the request url
+     * @param body the snapshot of the response, it's moved into the cache
+     * @param eTag the ETag header or null
+     * @param lastModified the Last-Modified header in milliseconds or 0
+     * @param now the time the response was fetched
+     * @return the new entry or null if it couldn't be stored
+     */
+    public synchronized Entry put(String url, File body, String eTag, long lastModified, long now) {
+        Entry previous = mEntries.get(url);
+        if (previous != null) {
+            remove(previous);
+        }
+
+        String key = keyOf(url);
+        File entryFile = new File(mDirectory, key + ENTRY_SUFFIX);
+        File bodyFile = new File(mDirectory, key + BODY_SUFFIX);
+
+        if (!body.renameTo(bodyFile)) {
+            Log.e(LOG_TAG, "Can't move the response body into the cache");
+            body.delete();
+            return null;
+        }
+
+        Entry entry = new Entry(url, entryFile, bodyFile, eTag, lastModified, now);
+        if (!writeEntry(entry)) {
+            bodyFile.delete();
+            return null;
+        }
+
+        mEntries.put(url, entry);
+        mSize += entry.getSize();
+        trimToSize();
+
+        return entry;
+    }
+
+    /**
+     * the server told us the entry did not change (304), start its time to live again
+     */
+    public synchronized void revalidated(Entry entry, long now) {
+        synchronized (entry) {
+            entry.mFetchedAt = now;
+        }
+        writeEntry(entry);
+    }
+
+    /**
+     * remove every entry
+     */
+    public synchronized void clear() {
+        for (Entry entry : new ArrayList<>(mEntries.values())) {
+            remove(entry);
+        }
+    }
+
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    public long getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * @return the number of responses served from the cache without asking the server
+     */
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return the number of responses downloaded from the server
+     */
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return the number of responses the server told us were not modified (304)
+     */
+    public synchronized int getRevalidateCount() {
+        return mRevalidateCount;
+    }
+
+    synchronized void recordHit() {
+        mHitCount++;
+    }
+
+    synchronized void recordMiss() {
+        mMissCount++;
+    }
+
+    synchronized void recordRevalidate() {
+        mRevalidateCount++;
+    }
+
+    /**
+     * remove the least recently used entries until the cache fit its maximum size
+     */
+    private void trimToSize() {
+        Iterator<Entry> iterator = mEntries.values().iterator();
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            deleteFiles(eldest);
+        }
+    }
+
+    private void remove(Entry entry) {
+        mEntries.remove(entry.getUrl());
+        deleteFiles(entry);
+    }
+
+    private void deleteFiles(Entry entry) {
+        mSize -= entry.getSize();
+        entry.getBodyFile().delete();
+        entry.mEntryFile.delete();
+    }
+
+    /**
+     * write the entry file, its modification time is the last access time of the entry
+     */
+    private boolean writeEntry(Entry entry) {
+        DataOutputStream output = null;
+        try {
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(entry.mEntryFile)));
+            output.writeInt(ENTRY_VERSION);
+            output.writeUTF(entry.getUrl());
+            output.writeUTF(entry.getETag() != null ? entry.getETag() : "");
+            output.writeLong(entry.getLastModified());
+            output.writeLong(entry.getFetchedAt());
+            return true;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem writing the cache entry", e);
+            entry.mEntryFile.delete();
+            return false;
+        } finally {
+            closeQuietly(output);
+        }
+    }
+
+    /**
+     * read back the entries written by a previous launch, the oldest accessed first
+     */
+    private synchronized void readEntries() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        List<File> entryFiles = new ArrayList<>();
+        for (File file : files) {
+            if (file.getName().endsWith(ENTRY_SUFFIX)) {
+                entryFiles.add(file);
+            } else if (file.getName().endsWith(TEMP_SUFFIX)) {
+                //a body we were writing when the app was killed
+                file.delete();
+            }
+        }
+
+        Collections.sort(entryFiles, new Comparator<File>() {
+            @Override
+            public int compare(File first, File second) {
+                long firstTime = first.lastModified();
+                long secondTime = second.lastModified();
+                return firstTime < secondTime ? -1 : (firstTime == secondTime ? 0 : 1);
+            }
+        });
+
+        for (File entryFile : entryFiles) {
+            Entry entry = readEntry(entryFile);
+            if (entry != null) {
+                mEntries.put(entry.getUrl(), entry);
+                mSize += entry.getSize();
+            }
+        }
+        trimToSize();
+    }
+
+    private Entry readEntry(File entryFile) {
+        String name = entryFile.getName();
+        File bodyFile = new File(mDirectory, name.substring(0, name.length() - ENTRY_SUFFIX.length()) + BODY_SUFFIX);
+
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(entryFile)));
+            if (input.readInt() != ENTRY_VERSION || !bodyFile.isFile()) {
+                throw new IOException("Unusable cache entry " + name);
+            }
+            String url = input.readUTF();
+            String eTag = input.readUTF();
+            long lastModified = input.readLong();
+            long fetchedAt = input.readLong();
+            return new Entry(url, entryFile, bodyFile, eTag.isEmpty() ? null : eTag, lastModified, fetchedAt);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Dropping cache entry " + name, e);
+            entryFile.delete();
+            bodyFile.delete();
+            return null;
+        } finally {
+            closeQuietly(input);
+        }
+    }
+
+    /**
+     * @return a file name safe key for the url
+     */
+    private static String keyOf(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(url.getBytes(Charset.forName("UTF-8")));
+            StringBuilder key = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16));
+                key.append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(Arrays.hashCode(url.getBytes(Charset.forName("UTF-8"))));
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
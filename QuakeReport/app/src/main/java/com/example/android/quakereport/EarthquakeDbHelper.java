@@ -0,0 +1,81 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+/**
+ * Creates the SQLite database of the {@link EarthquakeRepository}.
+ *
+ * the earthquakes are indexed on the event id (unique, to replace a revised event), on the time
+ * (the list is ordered by time and paged from the last row shown) and on the magnitude
+ */
+final class EarthquakeDbHelper extends SQLiteOpenHelper {
+
+    static final String DATABASE_NAME = "earthquakes.db";
+
+    //bump it each time the schema change, see onUpgrade()
+    private static final int DATABASE_VERSION = 2;
+
+    static final String TABLE_EARTHQUAKES = "earthquakes";
+    static final String COLUMN_EVENT_ID = "event_id";
+    static final String COLUMN_MAGNITUDE = "mag";
+    static final String COLUMN_LOCATION = "place";
+    static final String COLUMN_TIME = "time";
+    static final String COLUMN_URL = "url";
+    static final String COLUMN_LONGITUDE = "longitude";
+    static final String COLUMN_LATITUDE = "latitude";
+    static final String COLUMN_DEPTH = "depth";
+
+    //the time of the last sync of each feed url
+    static final String TABLE_SYNC_STATE = "sync_state";
+    static final String COLUMN_FEED_URL = "feed_url";
+    static final String COLUMN_LAST_SYNC_TIME = "last_sync_time";
+
+    //the tables and indexes created by onCreate(), in that order
+    static final String[] SCHEMA = {
+            "CREATE TABLE " + TABLE_EARTHQUAKES + " ("
+                    + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + COLUMN_EVENT_ID + " TEXT NOT NULL, "
+                    + COLUMN_MAGNITUDE + " REAL NOT NULL, "
+                    + COLUMN_LOCATION + " TEXT NOT NULL, "
+                    + COLUMN_TIME + " INTEGER NOT NULL, "
+                    + COLUMN_URL + " TEXT NOT NULL, "
+                    //NULL when the feed has no geometry (NaN can't be stored by SQLite)
+                    + COLUMN_LONGITUDE + " REAL, "
+                    + COLUMN_LATITUDE + " REAL, "
+                    + COLUMN_DEPTH + " REAL)",
+
+            //the unique index is also what makes INSERT OR REPLACE update a revised event
+            "CREATE UNIQUE INDEX " + TABLE_EARTHQUAKES + "_" + COLUMN_EVENT_ID
+                    + " ON " + TABLE_EARTHQUAKES + " (" + COLUMN_EVENT_ID + ")",
+            //the event id breaks the ties between 2 events at the same time when paging
+            "CREATE INDEX " + TABLE_EARTHQUAKES + "_" + COLUMN_TIME
+                    + " ON " + TABLE_EARTHQUAKES + " (" + COLUMN_TIME + ", " + COLUMN_EVENT_ID + ")",
+            "CREATE INDEX " + TABLE_EARTHQUAKES + "_" + COLUMN_MAGNITUDE
+                    + " ON " + TABLE_EARTHQUAKES + " (" + COLUMN_MAGNITUDE + ")",
+
+            "CREATE TABLE " + TABLE_SYNC_STATE + " ("
+                    + COLUMN_FEED_URL + " TEXT PRIMARY KEY, "
+                    + COLUMN_LAST_SYNC_TIME + " INTEGER NOT NULL)"
+    };
+
+    EarthquakeDbHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        for (String statement : SCHEMA) {
+            db.execSQL(statement);
+        }
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        //the database is only a copy of the USGS feed, the next sync fills it again
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_EARTHQUAKES);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SYNC_STATE);
+        onCreate(db);
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.android.quakereport;
+
+/**
+ * The immutable display model of the earthquake list: every text and color of every row,
+ * formatted once on the loader thread so binding a row on the UI thread is only field assignment.
+ *
+ * it keeps the {@link EarthquakeStore} it was built from for the raw values (i.e. the url of a row).
+ * the {@link EarthquakeSearchIndex} of its locations is only built once the list is searched,
+ * then it grows page by page with the list. the {@link EarthquakeStats} of its rows are only
+ * computed once they're asked for, the ones of the previous pages plus the new page if they were
+ */
+public final class EarthquakeDisplayModel {
+
+    //the constants of the FNV-1a hash of the stable ids
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final EarthquakeStore mEarthquakes;
+    private final long[] mItemIds;
+    private final String[] mMagnitudeTexts;
+    private final int[] mMagnitudeColors;
+    private final String[] mLocationOffsetTexts;
+    private final String[] mDateTexts;
+    private final String[] mTimeTexts;
+
+    //built the first time the list is searched, shared with the models of the next pages
+    //(it only returns the positions of this model)
+    private EarthquakeSearchIndex mSearchIndex;
+
+    //the index of the previous pages if they were searched, and their number of rows,
+    //until the index of this model is built from it
+    private EarthquakeSearchIndex mPreviousSearchIndex;
+    private final int mPreviousSize;
+
+    //computed the first time they're asked for
+    private EarthquakeStats mStats;
+
+    //the stats of the previous pages if they were computed, until the stats of this model are
+    private EarthquakeStats mPreviousStats;
+
+    //built the first time a map query needs it
+    private EarthquakeSpatialIndex mSpatialIndex;
+
+    private EarthquakeDisplayModel(EarthquakeStore earthquakes, EarthquakeSearchIndex previousSearchIndex,
+                                   int previousSize, EarthquakeStats previousStats) {
+        int size = earthquakes.size();
+        mEarthquakes = earthquakes;
+        mPreviousSearchIndex = previousSearchIndex;
+        mPreviousSize = previousSize;
+        mPreviousStats = previousStats;
+        mItemIds = new long[size];
+        mMagnitudeTexts = new String[size];
+        mMagnitudeColors = new int[size];
+        mLocationOffsetTexts = new String[size];
+        mDateTexts = new String[size];
+        mTimeTexts = new String[size];
+    }
+
+    /**
+     * @return a model with no row
+     */
+    public static EarthquakeDisplayModel empty() {
+        return new EarthquakeDisplayModel(new EarthquakeStore(), null, 0, null);
+    }
+
+    /**
+     * format every earthquake of the store, call it on a background thread
+     * @param earthquakes the earthquakes to show, must not be changed afterward
+     * @param previous a model whose store is the beginning of this one (i.e. the pages already
+     *                 loaded), its rows are copied instead of formatted again, can be null
+     * @param formatter the formatter of the calling thread
+     * @return the display model of the store
+     */
+    public static EarthquakeDisplayModel build(EarthquakeStore earthquakes, EarthquakeDisplayModel previous,
+                                               EarthquakeFormatter formatter) {
+        boolean extendsPrevious = previous != null && previous.size() <= earthquakes.size();
+
+        //nothing is indexed or summed until it's needed, then the index and the stats of the
+        //previous pages (if they were needed) only need the new rows
+        EarthquakeSearchIndex previousSearchIndex = null;
+        EarthquakeStats previousStats = null;
+        if (extendsPrevious) {
+            synchronized (previous) {
+                previousSearchIndex = previous.mSearchIndex;
+                previousStats = previous.mStats;
+            }
+        }
+
+        EarthquakeDisplayModel model = new EarthquakeDisplayModel(earthquakes, previousSearchIndex,
+                extendsPrevious ? previous.size() : 0, previousStats);
+
+        int formatted = 0;
+        if (extendsPrevious) {
+            formatted = previous.size();
+            System.arraycopy(previous.mItemIds, 0, model.mItemIds, 0, formatted);
+            System.arraycopy(previous.mMagnitudeTexts, 0, model.mMagnitudeTexts, 0, formatted);
+            System.arraycopy(previous.mMagnitudeColors, 0, model.mMagnitudeColors, 0, formatted);
+            System.arraycopy(previous.mLocationOffsetTexts, 0, model.mLocationOffsetTexts, 0, formatted);
+            System.arraycopy(previous.mDateTexts, 0, model.mDateTexts, 0, formatted);
+            System.arraycopy(previous.mTimeTexts, 0, model.mTimeTexts, 0, formatted);
+        }
+
+        for (int i = formatted; i < earthquakes.size(); i++) {
+            double magnitude = earthquakes.getMagnitude(i);
+            long time = earthquakes.getTimeInMilliseconds(i);
+            model.mItemIds[i] = itemIdOf(earthquakes, i);
+            model.mMagnitudeTexts[i] = formatter.formatMagnitude(magnitude);
+            model.mMagnitudeColors[i] = formatter.getMagnitudeColor(magnitude);
+            model.mLocationOffsetTexts[i] = formatter.formatLocationOffset(earthquakes.getLocationOffset(i));
+            model.mDateTexts[i] = formatter.formatDate(time);
+            model.mTimeTexts[i] = formatter.formatTime(time);
+        }
+
+        return model;
+    }
+
+    public int size() {
+        return mEarthquakes.size();
+    }
+
+    /**
+     * @return the raw earthquakes of the list
+     */
+    public EarthquakeStore getEarthquakes() {
+        return mEarthquakes;
+    }
+
+    /**
+     * the index is built once per model, on the first call, call it on a background thread
+     * @return the index of the epicenters of the list (nearest, radius and box queries)
+     */
+    public synchronized EarthquakeSpatialIndex getSpatialIndex() {
+        if (mSpatialIndex == null) {
+            mSpatialIndex = EarthquakeSpatialIndex.build(mEarthquakes);
+        }
+        return mSpatialIndex;
+    }
+
+    /**
+     * the stats are computed on the first call (only the new page is summed if the stats of
+     * the previous pages were asked for), call it on a background thread
+     * @return the magnitude buckets, days and regions of the rows
+     */
+    public synchronized EarthquakeStats getStats() {
+        if (mStats == null) {
+            //the stats of the previous pages are immutable, only the new rows are summed
+            mStats = mPreviousStats != null ? mPreviousStats.plus(mEarthquakes) : EarthquakeStats.compute(mEarthquakes);
+            mPreviousStats = null;
+        }
+        return mStats;
+    }
+
+    /**
+     * find the rows whose primary location has a word starting with each word typed.
+     * the first search of a model indexes its rows (only the new page if the previous pages were
+     * searched), call it on a background thread. the next ones take less than a millisecond so
+     * they can run on the UI thread as the user types
+     * @param text what the user typed
+     * @return the positions of the rows in the order of the list, every row if the text has no word
+     */
+    public int[] search(String text) {
+        return getSearchIndex().search(text, size());
+    }
+
+    /**
+     * @return the index of the rows, built on the first call
+     */
+    private synchronized EarthquakeSearchIndex getSearchIndex() {
+        if (mSearchIndex == null) {
+            EarthquakeSearchIndex searchIndex = null;
+            if (mPreviousSearchIndex != null) {
+                //the index of the previous pages only needs the new rows, unless it already holds rows
+                //of an other model built from the same previous pages (i.e. a load that was canceled)
+                synchronized (mPreviousSearchIndex) {
+                    if (mPreviousSearchIndex.size() == mPreviousSize) {
+                        mPreviousSearchIndex.addAll(mEarthquakes);
+                        searchIndex = mPreviousSearchIndex;
+                    }
+                }
+            }
+            if (searchIndex == null) {
+                searchIndex = new EarthquakeSearchIndex();
+                searchIndex.addAll(mEarthquakes);
+            }
+            mSearchIndex = searchIndex;
+            mPreviousSearchIndex = null;
+        }
+        return mSearchIndex;
+    }
+
+    /**
+     * @return a stable id of the row, computed from the USGS event id
+     */
+    public long getItemId(int position) {
+        return mItemIds[position];
+    }
+
+    public String getMagnitudeText(int position) {
+        return mMagnitudeTexts[position];
+    }
+
+    public int getMagnitudeColor(int position) {
+        return mMagnitudeColors[position];
+    }
+
+    public String getLocationOffsetText(int position) {
+        return mLocationOffsetTexts[position];
+    }
+
+    public String getPrimaryLocationText(int position) {
+        return mEarthquakes.getPrimaryLocation(position);
+    }
+
+    public String getDateText(int position) {
+        return mDateTexts[position];
+    }
+
+    public String getTimeText(int position) {
+        return mTimeTexts[position];
+    }
+
+    /**
+     * @return a 64-bit hash (FNV-1a) of the USGS event id, used as the stable id of the row.
+     * an event without id is hashed from its time and url instead, or every one of them would
+     * have the same id
+     */
+    private static long itemIdOf(EarthquakeStore earthquakes, int position) {
+        String eventId = earthquakes.getId(position);
+        if (!eventId.isEmpty()) {
+            return hash(FNV_OFFSET_BASIS, eventId);
+        }
+        long hash = FNV_OFFSET_BASIS;
+        long time = earthquakes.getTimeInMilliseconds(position);
+        for (int shift = 0; shift < 64; shift += 8) {
+            hash ^= (time >>> shift) & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash(hash, earthquakes.getUrl(position));
+    }
+
+    private static long hash(long hash, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
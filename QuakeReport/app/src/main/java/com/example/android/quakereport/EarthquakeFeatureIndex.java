@@ -0,0 +1,202 @@
+package com.example.android.quakereport;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.example.android.quakereport.EarthquakeActivity.LOG_TAG;
+
+/**
+ * The features of USGS GeoJSON responses kept as raw bytes, decoded one at a time when they're needed.
+ *
+ * one pass over the bytes finds where each object of the "features" array starts and ends, it only
+ * counts the braces and skips the strings, no JSON value is decoded and no String is built.
+ * a feature is parsed by {@link EarthquakeParser} only when it's asked for (i.e. when its row is
+ * about to be shown), so the first rows of a very large response are ready long before the
+ * whole response could be parsed.
+ *
+ * the index can hold the features of several responses one after the other (see {@link #concat(List)}).
+ * it's immutable once built, it can be read by any thread.
+ */
+public final class EarthquakeFeatureIndex {
+
+    private static final byte[] FEATURES_NAME = {'f', 'e', 'a', 't', 'u', 'r', 'e', 's'};
+
+    //the responses and, for each feature, its response and the byte range of its object
+    private final byte[][] mBodies;
+    private final int[] mBodyIndexes;
+    private final int[] mStarts;
+    private final int[] mEnds;
+    private final int mSize;
+
+    private EarthquakeFeatureIndex(byte[][] bodies, int[] bodyIndexes, int[] starts, int[] ends, int size) {
+        mBodies = bodies;
+        mBodyIndexes = bodyIndexes;
+        mStarts = starts;
+        mEnds = ends;
+        mSize = size;
+    }
+
+    /**
+     * find the features of a response
+     * @param body the bytes of the response, kept by the index so they must not be changed
+     * @return the index of the features, empty if the response has no "features" array
+     * @throws IOException if the response ends in the middle of the array
+     */
+    public static EarthquakeFeatureIndex build(byte[] body) throws IOException {
+        int[] starts = new int[16];
+        int[] ends = new int[16];
+        int size = 0;
+
+        int depth = 0;
+        //the depth of the features array once it's found, the features are the objects right inside it
+        int featuresDepth = -1;
+        int length = body.length;
+        int i = 0;
+        while (i < length) {
+            byte b = body[i];
+            if (b == '"') {
+                int end = skipString(body, i);
+                //a key of the root object: look for "features": [
+                if (depth == 1 && featuresDepth < 0 && isName(body, i + 1, end - 1, FEATURES_NAME)) {
+                    int next = skipWhitespace(body, end);
+                    if (next < length && body[next] == ':') {
+                        next = skipWhitespace(body, next + 1);
+                        if (next < length && body[next] == '[') {
+                            featuresDepth = depth + 1;
+                        }
+                    }
+                }
+                i = end;
+                continue;
+            }
+
+            if (b == '{' || b == '[') {
+                if (b == '{' && depth == featuresDepth) {
+                    if (size == starts.length) {
+                        starts = Arrays.copyOf(starts, size * 2);
+                        ends = Arrays.copyOf(ends, size * 2);
+                    }
+                    starts[size] = i;
+                }
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+                if (b == '}' && depth == featuresDepth) {
+                    ends[size++] = i + 1;
+                } else if (b == ']' && depth == featuresDepth - 1) {
+                    //the end of the features array, the rest of the response is not needed
+                    return new EarthquakeFeatureIndex(new byte[][]{body}, new int[size], starts, ends, size);
+                }
+            }
+            i++;
+        }
+
+        if (featuresDepth >= 0) {
+            throw new IOException("the features array is not closed");
+        }
+        return new EarthquakeFeatureIndex(new byte[][]{body}, new int[0], new int[0], new int[0], 0);
+    }
+
+    /**
+     * put the features of several indexes one after the other, the bytes are not copied
+     * @param indexes the indexes, in the order of their features
+     * @return the index of every feature
+     */
+    public static EarthquakeFeatureIndex concat(List<EarthquakeFeatureIndex> indexes) {
+        int bodyCount = 0;
+        int size = 0;
+        for (EarthquakeFeatureIndex index : indexes) {
+            bodyCount += index.mBodies.length;
+            size += index.mSize;
+        }
+
+        byte[][] bodies = new byte[bodyCount][];
+        int[] bodyIndexes = new int[size];
+        int[] starts = new int[size];
+        int[] ends = new int[size];
+        int firstBody = 0;
+        int position = 0;
+        for (EarthquakeFeatureIndex index : indexes) {
+            System.arraycopy(index.mBodies, 0, bodies, firstBody, index.mBodies.length);
+            for (int i = 0; i < index.mSize; i++) {
+                bodyIndexes[position + i] = firstBody + index.mBodyIndexes[i];
+            }
+            System.arraycopy(index.mStarts, 0, starts, position, index.mSize);
+            System.arraycopy(index.mEnds, 0, ends, position, index.mSize);
+            firstBody += index.mBodies.length;
+            position += index.mSize;
+        }
+        return new EarthquakeFeatureIndex(bodies, bodyIndexes, starts, ends, size);
+    }
+
+    /**
+     * @return the number of features, the ones without properties included
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * parse one feature
+     * @param position the position of the feature
+     * @param callback receives the earthquake of the feature
+     * @return false if the feature has no properties or can't be parsed, nothing is emitted
+     */
+    public boolean decode(int position, EarthquakeParser.Callback callback) {
+        if (position < 0 || position >= mSize) {
+            throw new IndexOutOfBoundsException("position " + position + " size " + mSize);
+        }
+        byte[] body = mBodies[mBodyIndexes[position]];
+        ByteArrayInputStream feature = new ByteArrayInputStream(body, mStarts[position],
+                mEnds[position] - mStarts[position]);
+        try {
+            return EarthquakeParser.parseFeature(feature, callback);
+        } catch (IOException e) {
+            // the parser throws an IOException on a malformed feature too
+            Log.e(LOG_TAG, "Problem parsing the earthquake feature " + position, e);
+            return false;
+        }
+    }
+
+    /**
+     * @return the index of the end of the string starting at this quote (after the closing quote)
+     */
+    private static int skipString(byte[] body, int quote) {
+        int i = quote + 1;
+        while (i < body.length) {
+            byte b = body[i];
+            if (b == '"') {
+                return i + 1;
+            }
+            //the escaped char can be a quote, it doesn't close the string
+            i += b == '\\' ? 2 : 1;
+        }
+        return body.length;
+    }
+
+    private static int skipWhitespace(byte[] body, int i) {
+        while (i < body.length && (body[i] == ' ' || body[i] == '\n' || body[i] == '\r' || body[i] == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return true if the bytes between start and end (excluded) are the name
+     */
+    private static boolean isName(byte[] body, int start, int end, byte[] name) {
+        if (end - start != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (body[start + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.support.v4.content.ContextCompat;
+
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Turns the raw earthquake values into the Strings and colors shown in a row of the list.
+ *
+ * the formatters are not thread safe, a formatter must only be used by one thread
+ * (the loader thread, see {@link EarthquakeDisplayModel})
+ */
+public final class EarthquakeFormatter {
+
+    //shown in front of the location when it has no offset (eg "Near the" "Pacific-Antarctic Ridge")
+    private static final String NEAR_THE = "Near the";
+
+    private final SimpleDateFormat mDateFormat = new SimpleDateFormat("LLL dd, yyyy");
+    private final SimpleDateFormat mTimeFormat = new SimpleDateFormat("h:mm a");
+    private final DecimalFormat mMagnitudeFormat = new DecimalFormat("0.0");
+    private final Date mDate = new Date();
+
+    //the color of the magnitude circle for each magnitude floor
+    private final int[] mMagnitudeColors;
+
+    /**
+     * @param context used to resolve the magnitude colors once
+     */
+    public EarthquakeFormatter(Context context) {
+        this(buildMagnitudeColors(context));
+    }
+
+    /**
+     * @param magnitudeColors the color of each magnitude floor from 0 to 10+ (i.e. fixed ones in a test)
+     */
+    EarthquakeFormatter(int[] magnitudeColors) {
+        mMagnitudeColors = magnitudeColors;
+    }
+
+    /**
+     * Return the formatted magnitude string showing 1 decimal place (i.e. "3.2")
+     * from a decimal magnitude value.
+     * @param magnitude takes the magnitude from the earthquake object
+     */
+    public String formatMagnitude(double magnitude) {
+        return mMagnitudeFormat.format(magnitude);
+    }
+
+    /**
+     * Return the formatted date string (i.e. "Mar 3, 1984") from the Unix time.
+     */
+    public String formatDate(long timeInMilliseconds) {
+        mDate.setTime(timeInMilliseconds);
+        return mDateFormat.format(mDate);
+    }
+
+    /**
+     * Return the formatted time string (i.e. "4:30 PM") from the Unix time.
+     */
+    public String formatTime(long timeInMilliseconds) {
+        mDate.setTime(timeInMilliseconds);
+        return mTimeFormat.format(mDate);
+    }
+
+    /**
+     * @param locationOffset the offset split from the location (eg "90km Est of ") or an empty String
+     * @return the text shown above the primary location
+     */
+    public String formatLocationOffset(String locationOffset) {
+        return locationOffset.isEmpty() ? NEAR_THE : locationOffset;
+    }
+
+    /**
+     *
+     * @param magnitude takes the magnitude witch is a double
+     * @return the color of the magnitude circle, read from the table built in the constructor
+     */
+    public int getMagnitudeColor(double magnitude) {
+        //the table has one color for each magnitude floor from 0 to 10+, the buckets of the stats
+        return mMagnitudeColors[EarthquakeStats.magnitudeBucket(magnitude)];
+    }
+
+    /**
+     * resolve once the color of each magnitude floor (0 and 1 share the same color)
+     * @return the colors, the last one is for a magnitude of 10 or more
+     */
+    private static int[] buildMagnitudeColors(Context context) {
+        int[] colorResourceIds = {
+                R.color.magnitude1,
+                R.color.magnitude1,
+                R.color.magnitude2,
+                R.color.magnitude3,
+                R.color.magnitude4,
+                R.color.magnitude5,
+                R.color.magnitude6,
+                R.color.magnitude7,
+                R.color.magnitude8,
+                R.color.magnitude9,
+                R.color.magnitude10plus
+        };
+
+        int[] colors = new int[colorResourceIds.length];
+        for (int i = 0; i < colorResourceIds.length; i++) {
+            colors[i] = ContextCompat.getColor(context, colorResourceIds[i]);
+        }
+        return colors;
+    }
+}
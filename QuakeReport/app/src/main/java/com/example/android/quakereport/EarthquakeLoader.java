@@ -1,32 +1,113 @@
 package com.example.android.quakereport;
 
-import android.content.AsyncTaskLoader;
+import android.content.BroadcastReceiver;
 import android.content.Context;
-import android.util.Log;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.Loader;
+import android.support.v4.content.LocalBroadcastManager;
 
-import java.util.List;
+import com.example.android.http.CancellationToken;
 
 
 
 /**
  * here we create a loader class  to use it with our main activity
- * the AsyncTaskLoader is similar to the AsyncTask
+ * the loader keeps the pages across rotations, each page is loaded by a job of the
+ * {@link EarthquakePipeline}: fetched on an IO thread, indexed on the index thread and delivered
+ * on the main thread. the job is canceled when the activity stops, its request is disconnected.
+ *
+ * the earthquakes are loaded one page at a time (USGS offset/limit parameters),
+ * each load returns every page loaded so far, already formatted for the list
+ * (see {@link EarthquakeDisplayModel}) so the UI thread only has to set the texts.
+ * a query too large for one request (i.e. a whole year) is not paged: it's split by the
+ * {@link EarthquakeQueryPlanner} and every partition is fetched at the same time in one load.
+ * when it's split in time windows its features are only indexed ({@link EarthquakeFeatureIndex})
+ * and each page parses the next features, so the first rows don't wait for the whole year to be parsed.
+ * when the feed has a local copy ({@link EarthquakeSync}) its pages are read from the
+ * {@link EarthquakeRepository} without any request, and the rows shown are read again each time
+ * the {@link EarthquakeSyncService} brings it up to date.
+ * the pages outlive the loader in the {@link EarthquakeResultCache}: a new loader of the same query
+ * (i.e. the activity was closed and opened again) shows them without any request.
+ * a loader built from an {@link EarthquakeQuery} checks the predicates the server can't evaluate
+ * on each page, on the fetch thread, and stops at the limit of the query.
+ * where the paging stopped, and the fetch of each page, are kept by an {@link EarthquakePager}
  */
-public class EarthquakeLoader extends AsyncTaskLoader<List<Earthquake>> {
+public class EarthquakeLoader extends Loader<EarthquakeDisplayModel> {
 
-    private static final String LOG_TAG = EarthquakeLoader.class.getName();
+    //the query of the loader or null if it was built from a url, its local filter and limit are
+    //applied to a query fetched at once
+    private final EarthquakeQuery mQuery;
 
-    private String mUrl;
+    //where the paging stopped and the fetch of the next page
+    private final EarthquakePager mPager;
 
+    //all the pages loaded so far, null until the first page is delivered
+    private EarthquakeDisplayModel mEarthquakes;
+
+    //format the rows on the loader thread, the loads never run at the same time
+    private final EarthquakeFormatter mFormatter;
+
+    //true while a page is being fetched so we don't restart (and cancel) the current load
+    private boolean mLoadingPage;
+
+    //the local copy of the feed or null if the url is not synced
+    private final EarthquakeSync mSync;
+
+    //keeps the pages for the next loader of the same query, and its key
+    private final EarthquakeResultCache mResultCache;
+    private final String mKey;
+
+    //reload the local copy when a sync is done, registered while the loader is started
+    private BroadcastReceiver mSyncReceiver;
+
+    //the stages of the loads, the results come back in the order the pages were asked
+    private final EarthquakePipeline mPipeline = new EarthquakePipeline();
+
+    //the job loading a page, null when there is none (it stays until its result or cancel is published)
+    private EarthquakePipeline.Job mJob;
+
+    //a load asked while the job was being canceled, it starts once the cancel is published
+    private boolean mPendingLoad;
 
     /**
      * here we pass in the context and the request url inside this constructor
      * @param context take the app context(Activity)
+     * @param url the request url without the offset and limit parameters
+     * @param pageSize the number of earthquakes to fetch for each page
+     */
+    public EarthquakeLoader(Context context, String url, int pageSize) {
+        this(context, url, pageSize, null);
+    }
+
+    /**
+     * @param context take the app context(Activity)
+     * @param url the request url without the offset and limit parameters
+     * @param pageSize the number of earthquakes to fetch for each page
+     * @param sync the local copy of the same feed, shown before any request, can be null
      */
-    public EarthquakeLoader(Context context, String url) {
+    public EarthquakeLoader(Context context, String url, int pageSize, EarthquakeSync sync) {
+        this(context, url, null, pageSize, sync);
+    }
+
+    /**
+     * @param context take the app context(Activity)
+     * @param query the earthquakes to load, the pages are added to its url
+     * @param pageSize the number of earthquakes to fetch for each page
+     * @param sync the local copy of the same query, shown before any request, can be null
+     */
+    public EarthquakeLoader(Context context, EarthquakeQuery query, int pageSize, EarthquakeSync sync) {
+        this(context, query.toUrl(), query, pageSize, sync);
+    }
+
+    private EarthquakeLoader(Context context, String url, EarthquakeQuery query, int pageSize, EarthquakeSync sync) {
         super(context);
-        mUrl = url;
-        
+        mQuery = query;
+        mPager = new EarthquakePager(url, query, pageSize, sync);
+        mSync = sync;
+        mFormatter = new EarthquakeFormatter(context);
+        mResultCache = EarthquakeResultCache.getDefault(context);
+        mKey = query != null ? query.getKey() : url;
     }
 
 
@@ -35,32 +116,261 @@ public class EarthquakeLoader extends AsyncTaskLoader<List<Earthquake>> {
      */
     @Override
     protected void onStartLoading() {
-        forceLoad();//trigger the loader to start doing the background work
+        if (mSync != null && mSyncReceiver == null) {
+            mSyncReceiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    //the loader reload now if it's started, or else the next time it starts
+                    mPager.setReloadLocal();
+                    if (isStarted()) {
+                        mLoadingPage = true;
+                    }
+                    onContentChanged();
+                }
+            };
+            LocalBroadcastManager.getInstance(getContext()).registerReceiver(mSyncReceiver,
+                    new IntentFilter(EarthquakeSyncService.ACTION_SYNCED));
+        }
+
+        //a new loader of a query already loaded (i.e. the activity was closed and opened again)
+        if (mEarthquakes == null && !mLoadingPage) {
+            restoreRetained();
+        }
+
+        if ((takeContentChanged() || mPager.needsReloadLocal()) && mEarthquakes != null && !mLoadingPage) {
+            //a sync brought new events while we were stopped (or since the retained pages were read),
+            //the rows we have are shown while the local copy is read again
+            deliverResult(mEarthquakes);
+            mLoadingPage = true;
+            forceLoad();
+        } else if (mEarthquakes != null) {
+            //the pages are already here (i.e. after a rotation) so we give them back right away
+            deliverResult(mEarthquakes);
+        } else if (!mLoadingPage) {
+            mLoadingPage = true;
+            forceLoad();//trigger the loader to start doing the background work
+        }
+    }
+
+
+    /**
+     * like AsyncTaskLoader, a load asked while one is running cancels it and starts once it's done
+     */
+    @Override
+    protected void onForceLoad() {
+        super.onForceLoad();
+        if (mJob != null) {
+            mJob.cancel();
+            mPendingLoad = true;
+            return;
+        }
+        startJob();
+    }
+
+    /**
+     * submit the job loading the next page (or the first one) to the pipeline
+     */
+    private void startJob() {
+        //the earthquakes we already have, read here on the main thread where they're delivered
+        final EarthquakeDisplayModel loaded = mEarthquakes;
+        mJob = mPipeline.submit(
+                new EarthquakePipeline.Fetch<EarthquakePager.Page>() {
+                    @Override
+                    public EarthquakePager.Page fetch(CancellationToken token) {
+                        return mPager.fetchPage(loaded != null ? loaded.getEarthquakes() : null, token);
+                    }
+                },
+                new EarthquakePipeline.Index<EarthquakePager.Page, EarthquakeDisplayModel>() {
+                    @Override
+                    public EarthquakeDisplayModel index(EarthquakePager.Page page) {
+                        return buildModel(loaded, page);
+                    }
+                },
+                new EarthquakePipeline.Publish<EarthquakeDisplayModel>() {
+                    @Override
+                    public void onPublished(EarthquakeDisplayModel earthquakes) {
+                        mJob = null;
+                        deliverResult(earthquakes);
+                    }
+
+                    @Override
+                    public void onCanceled(EarthquakeDisplayModel earthquakes) {
+                        mJob = null;
+                        if (isReset()) {
+                            return;
+                        }
+                        //the page was fetched before the cancel, the next page starts after it
+                        if (earthquakes != null) {
+                            mEarthquakes = earthquakes;
+                            retain();
+                        }
+                        //the first page is still needed if the activity came back meanwhile
+                        if (mPendingLoad || (isStarted() && mEarthquakes == null)) {
+                            mPendingLoad = false;
+                            mLoadingPage = true;
+                            startJob();
+                        } else {
+                            mLoadingPage = false;
+                        }
+                    }
+
+                    @Override
+                    public void onFailed(RuntimeException e) {
+                        mJob = null;
+                        //like a page that could not be fetched: the list shows what it showed and
+                        //the next load tries again
+                        mPager.setFailed();
+                        deliverResult(mEarthquakes != null ? mEarthquakes : EarthquakeDisplayModel.empty());
+                    }
+                });
+    }
+
+    /**
+     * the index stage: build what the list shows, called on the index thread of the pipeline
+     * @param loaded the pages already loaded, null if there is none
+     * @param page the rows fetched by the pager
+     * @return the display model of every page
+     */
+    private EarthquakeDisplayModel buildModel(EarthquakeDisplayModel loaded, EarthquakePager.Page page) {
+        if (page.mRows == null) {
+            //the page failed, the list shows what it showed
+            return loaded != null ? loaded : EarthquakeDisplayModel.empty();
+        }
+        if (page.mWhole) {
+            //the partitions are merged in the order of the query, the local filter and the limit are applied here
+            EarthquakeStore earthquakes = mQuery != null ? mQuery.apply(page.mRows) : page.mRows;
+            return EarthquakeDisplayModel.build(earthquakes, null, mFormatter);
+        }
+        return append(page.mReplace ? null : loaded, page.mRows);
     }
 
+    /**
+     * @param loaded the pages already loaded, null if there is none
+     * @param page the new page
+     * @return the display model of every page
+     */
+    private EarthquakeDisplayModel append(EarthquakeDisplayModel loaded, EarthquakeStore page) {
+        //a delivered store is never changed again (the UI is reading it), the page is added to a copy
+        //sharing its arrays so only the rows of the page are copied, not every row loaded so far
+        //(the pager already stopped the page at the limit of the query)
+        EarthquakeStore earthquakes = loaded != null ? loaded.getEarthquakes().copy() : new EarthquakeStore(page.size());
+        earthquakes.addAll(page);
+
+        //only the new page is formatted, the rows already loaded are copied
+        return EarthquakeDisplayModel.build(earthquakes, loaded, mFormatter);
+    }
+
+    /**
+     * keep the pages loaded so far before giving them to the activity
+     * @param earthquakes every page loaded so far
+     */
+    @Override
+    public void deliverResult(EarthquakeDisplayModel earthquakes) {
+        mLoadingPage = false;
+        if (isReset()) {
+            return;
+        }
+
+        //a failed page changed nothing: the rows loaded (if any) and the retained state stay as they were,
+        //with no row loaded the next start of the loader tries the first page again
+        if (!mPager.isFailed()) {
+            mEarthquakes = earthquakes;
+            retain();
+        }
+        super.deliverResult(earthquakes);
+    }
+
+    /**
+     * keep the pages and where the paging stopped in the result cache, call it on the main thread
+     * once the job is done (its fetch stage wrote the state)
+     */
+    private void retain() {
+        if (mEarthquakes == null) {
+            return;
+        }
+        mResultCache.put(mKey, mPager.retain(mEarthquakes, System.currentTimeMillis()));
+    }
+
+    /**
+     * take the pages kept by an other loader of the same query, the local copy is read again if
+     * a sync brought new events since then. nothing changes if there were none or they expired
+     */
+    private void restoreRetained() {
+        EarthquakeResultCache.Entry entry = mResultCache.get(mKey, System.currentTimeMillis());
+        if (entry == null) {
+            return;
+        }
+        mEarthquakes = entry.mEarthquakes;
+        mPager.restore(entry);
+    }
 
     /**
-     * this method load in the background thread to do some work
-     * @return the list of earthquake and notify the {#onLoadFinished} in the EarthquakeActivity
+     * the user left the screen, the page being fetched is not needed anymore
+     * (a rotation keeps the loader started, its load goes on)
      */
     @Override
-    public List<Earthquake> loadInBackground() {
+    protected void onStopLoading() {
+        cancelJob();
+    }
+
+    /**
+     * called by cancelLoad() (API 16 and up)
+     */
+    @Override
+    protected boolean onCancelLoad() {
+        return cancelJob();
+    }
+
+    /**
+     * cancel the running job, its cancel is published later on the main thread
+     * @return false if there was no job to cancel
+     */
+    private boolean cancelJob() {
+        mPendingLoad = false;
+        if (mJob == null) {
+            return false;
+        }
+        mJob.cancel();
+        return true;
+    }
 
-        if(mUrl == null){
-            return null;
+    /**
+     * fetch the next page if there is one and we are not already fetching a page,
+     * call it when the user scroll near the end of the list
+     */
+    public void loadNextPage() {
+        if (mLoadingPage || !mPager.hasMorePages() || mEarthquakes == null) {
+            return;
         }
 
-//        //slow down the background Thread
-//        //To simulate a slow connection and test the loading indicator
-//        try {
-//            Thread.sleep(2000);
-//        } catch (InterruptedException e) {
-//            e.printStackTrace();
-//        }
+        mLoadingPage = true;
+        forceLoad();
+    }
 
+    /**
+     * @return true if the last page could not be fetched, the next load fetches it again
+     */
+    public boolean isLastPageFailed() {
+        return mPager.isFailed();
+    }
 
+    /**
+     * @return true while a page is being fetched
+     */
+    public boolean isLoadingPage() {
+        return mLoadingPage;
+    }
 
-        return QueryUtils.fetchEarthquakeData(mUrl);
+    @Override
+    protected void onReset() {
+        cancelJob();
+        if (mSyncReceiver != null) {
+            LocalBroadcastManager.getInstance(getContext()).unregisterReceiver(mSyncReceiver);
+            mSyncReceiver = null;
+        }
+        mEarthquakes = null;
+        mPager.reset();
+        mLoadingPage = false;
     }
 
 }
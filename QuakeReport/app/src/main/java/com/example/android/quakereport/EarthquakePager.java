@@ -0,0 +1,417 @@
+package com.example.android.quakereport;
+
+import android.util.Log;
+
+import com.example.android.http.CancellationToken;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Where the paging of an {@link EarthquakeLoader} stopped, and the fetch of its next page.
+ *
+ * the next page comes from the local copy ({@link EarthquakeSync}), from the features of a query
+ * split in time windows ({@link EarthquakeFeatureIndex}) or from the next offset of the feed.
+ * the pager keeps where each of them stopped, the loader keeps the pages and runs the jobs.
+ * it has nothing of Android so the paging can be checked on the JVM against a local server.
+ *
+ * the pages are fetched one at a time on the fetch thread of the pipeline, the main thread reads
+ * the state once the job is published (i.e. {@link #hasMorePages()}, {@link #retain(EarthquakeDisplayModel, long)}).
+ */
+final class EarthquakePager {
+
+    private static final String LOG_TAG = EarthquakePager.class.getName();
+
+    /**
+     * what the fetch stage gives to the index stage
+     */
+    static final class Page {
+        //the rows of the page, null if it failed (the pages already loaded stay as they are)
+        final EarthquakeStore mRows;
+        //true if the rows replace the pages already loaded instead of coming after them
+        final boolean mReplace;
+        //true if the rows are every partition of the query, still to be filtered and limited
+        final boolean mWhole;
+
+        Page(EarthquakeStore rows, boolean replace, boolean whole) {
+            mRows = rows;
+            mReplace = replace;
+            mWhole = whole;
+        }
+
+        /**
+         * @return a page without rows, the pages already loaded stay as they are
+         */
+        static Page failed() {
+            return new Page(null, false, false);
+        }
+    }
+
+    private final String mUrl;
+
+    //the query of the url or null if the loader was built from a url
+    private final EarthquakeQuery mQuery;
+
+    //the number of earthquakes asked for each page
+    private final int mPageSize;
+
+    //the local copy of the feed or null if the url is not synced
+    private final EarthquakeSync mSync;
+
+    //true once the query is paged through the network or its features, it's not planned again
+    private boolean mPlanned;
+
+    //the number of earthquakes of the feed fetched so far, some can be filtered out on the device
+    private int mNetworkOffset;
+
+    //the features of a query split in time windows, parsed one page at a time (null for the other queries)
+    private EarthquakeFeatureIndex mFeatureIndex;
+
+    //the position of the next feature to parse
+    private int mFeatureOffset;
+
+    //the ids of the last parsed events with the same time, an event on the edge of two windows comes twice
+    private final Set<String> mEdgeIds = new HashSet<>();
+    private long mEdgeTime = Long.MIN_VALUE;
+
+    //false once the server returned a page smaller than the page size
+    private volatile boolean mHasMorePages = true;
+
+    //true when the last page could not be fetched (no network, an error response or a cut response),
+    //nothing moved so the next load fetches the same page again
+    private volatile boolean mFailed;
+
+    //true once the pages come from the local copy instead of the network
+    private volatile boolean mShowingLocal;
+
+    //true when a sync changed the local copy, the rows shown must be read again
+    private volatile boolean mReloadLocal;
+
+    //the version of the local copy when the rows shown were read (see EarthquakeSync.getVersion())
+    private volatile int mSyncVersion;
+
+    /**
+     * @param url the request url without the offset and limit parameters, can be null
+     * @param query the query of the url, null if there is only the url
+     * @param pageSize the number of earthquakes to fetch for each page
+     * @param sync the local copy of the same query, read before any request, can be null
+     */
+    EarthquakePager(String url, EarthquakeQuery query, int pageSize, EarthquakeSync sync) {
+        mUrl = url;
+        mQuery = query;
+        mPageSize = pageSize;
+        mSync = sync;
+    }
+
+    /**
+     * fetch (or read from the local copy) the rows of the next page, the loads never run at the same time
+     * @param loaded the rows already loaded, null if there is none
+     * @param token canceled when the activity stops or the loader is reset
+     * @return the rows to add, null if the load was canceled before any state was changed
+     */
+    Page fetchPage(EarthquakeStore loaded, CancellationToken token) {
+        mFailed = false;
+        try {
+            Page page = fetchNextPage(loaded, token);
+            if (page == null || page.mWhole) {
+                return page;
+            }
+            return limit(page, page.mReplace || loaded == null ? 0 : loaded.size());
+        } catch (IOException e) {
+            if (token.isCanceled()) {
+                //the response was cut by the cancel, the offset stays where it was so the page is fetched again
+                return null;
+            }
+            //the offset and the paging state stay where they were so the same page is fetched again
+            Log.e(LOG_TAG, "Problem loading the next page of earthquakes.", e);
+            mFailed = true;
+            return Page.failed();
+        }
+    }
+
+    /**
+     * @see #fetchPage(EarthquakeStore, CancellationToken)
+     * @throws IOException if a request failed, nothing was changed by that request
+     */
+    private Page fetchNextPage(EarthquakeStore loaded, CancellationToken token) throws IOException {
+
+        if(mUrl == null){
+            return new Page(new EarthquakeStore(), true, false);
+        }
+
+        //the next page start after the earthquakes we already have
+        int loadedCount = loaded == null ? 0 : loaded.size();
+
+//        //slow down the background Thread
+//        //To simulate a slow connection and test the loading indicator
+//        try {
+//            Thread.sleep(2000);
+//        } catch (InterruptedException e) {
+//            e.printStackTrace();
+//        }
+
+        //the pages of the local copy are read from the repository, no request
+        if (mSync != null) {
+            EarthquakeSync.LocalCopy repository = mSync.getRepository();
+            if (mShowingLocal && !mReloadLocal) {
+                //the next page starts right after the last row shown
+                return new Page(readLocalPage(repository, loaded, mPageSize, token), false, false);
+            }
+
+            //the first page, or the rows shown again after a sync (they replace the pages
+            //fetched from the network before the first sync was done)
+            mReloadLocal = false;
+            //read before the rows, a sync writing meanwhile makes the next start read them again
+            int syncVersion = mSync.getVersion();
+            int limit = Math.max(loadedCount, mPageSize);
+            EarthquakeStore rows = readLocalPage(repository, new EarthquakeStore(), limit, token);
+            if (!rows.isEmpty()) {
+                mShowingLocal = true;
+                mSyncVersion = syncVersion;
+                return new Page(rows, true, false);
+            }
+        }
+
+        if (!mPlanned) {
+            //a query split in time windows is indexed once, then each page parses the next features
+            if (loadedCount == 0 && (mQuery == null || mQuery.getOrder() == EarthquakeQuery.Order.TIME)) {
+                List<String> windowUrls = EarthquakeQueryPlanner.planTimeWindows(mUrl);
+                if (windowUrls != null) {
+                    EarthquakeFeatureIndex featureIndex = EarthquakeQueryPlanner.fetchIndex(windowUrls, token);
+                    if (token.isCanceled()) {
+                        //some windows are missing, the next load fetches them again
+                        return null;
+                    }
+                    setPlanned(featureIndex);
+                }
+            }
+
+            //a large query is fetched at once in parallel partitions, there is no next page
+            if (!mPlanned) {
+                List<String> partitionUrls = EarthquakeQueryPlanner.plan(mUrl);
+                if (partitionUrls.size() > 1) {
+                    EarthquakeStore earthquakes = EarthquakeQueryPlanner.fetch(partitionUrls, token);
+                    if (token.isCanceled()) {
+                        return null;
+                    }
+                    mHasMorePages = false;
+                    return new Page(earthquakes, true, true);
+                }
+                setPlanned(null);
+            }
+        }
+        if (mFeatureIndex != null) {
+            return new Page(readFeaturePage(token), false, false);
+        }
+
+        EarthquakeStore page;
+        do {
+            String pageUrl = mQuery != null
+                    ? mQuery.toPageUrl(mNetworkOffset, mPageSize)
+                    : QueryUtils.buildPageUrl(mUrl, mNetworkOffset, mPageSize);
+            EarthquakeStore fetched = QueryUtils.fetchEarthquakeData(pageUrl, token);
+            if (token.isCanceled()) {
+                //the response was cut, the offset stays where it was so the page is fetched again
+                return null;
+            }
+            mNetworkOffset += fetched.size();
+
+            //a whole response smaller than asked means we reached the end of the feed
+            //(a failed or cut response throws, it never ends the paging)
+            mHasMorePages = fetched.size() == mPageSize;
+            page = filter(fetched);
+            //a page where nothing matches would add no row and the list would not scroll to the next one
+        } while (page.isEmpty() && mHasMorePages && !token.isCanceled());
+
+        return new Page(page, false, false);
+    }
+
+    /**
+     * the pages come from the network or from the features of this index from now on, the query
+     * is not planned again. the first page sets it, or a test where there is no {@link android.net.Uri}
+     * @param featureIndex the features of a query split in time windows, null to page the network
+     */
+    void setPlanned(EarthquakeFeatureIndex featureIndex) {
+        mPlanned = true;
+        mFeatureIndex = featureIndex;
+        mFeatureOffset = 0;
+    }
+
+    /**
+     * the pages stop at the limit of the query
+     * @param loadedCount the number of rows the page comes after
+     * @return the page, without the rows after the limit
+     */
+    private Page limit(Page page, int loadedCount) {
+        int limit = mQuery != null ? mQuery.getLimit() : 0;
+        if (page.mRows == null || limit == 0 || loadedCount + page.mRows.size() < limit) {
+            return page;
+        }
+
+        mHasMorePages = false;
+        int added = Math.max(0, limit - loadedCount);
+        if (added == page.mRows.size()) {
+            return page;
+        }
+        EarthquakeStore rows = new EarthquakeStore(added);
+        for (int i = 0; i < added; i++) {
+            rows.add(page.mRows, i);
+        }
+        return new Page(rows, page.mReplace, false);
+    }
+
+    /**
+     * read pages of the local copy until one has a row matching the query (or there is no more page)
+     * @param after the rows already shown, newest first, can be empty
+     * @param limit the number of earthquakes read for each page
+     * @param token stops reading the next pages when it's canceled
+     * @return the matching rows of the page
+     */
+    private EarthquakeStore readLocalPage(EarthquakeSync.LocalCopy repository, EarthquakeStore after, int limit,
+                                          CancellationToken token) {
+        EarthquakeStore page;
+        EarthquakeStore matching;
+        do {
+            page = repository.queryNextPage(after, limit);
+            mHasMorePages = page.size() == limit;
+            matching = filter(page);
+            after = page;
+        } while (matching.isEmpty() && mHasMorePages && !token.isCanceled());
+        return matching;
+    }
+
+    /**
+     * parse the next features of the index until a page has a row matching the query
+     * (or there is no more feature)
+     * @param token stops parsing the next pages when it's canceled
+     * @return the matching rows of the page
+     */
+    private EarthquakeStore readFeaturePage(CancellationToken token) {
+        EarthquakeStore matching;
+        do {
+            EarthquakeStore parsed = new EarthquakeStore(mPageSize);
+            int end = Math.min(mFeatureIndex.size(), mFeatureOffset + mPageSize);
+            for (; mFeatureOffset < end; mFeatureOffset++) {
+                mFeatureIndex.decode(mFeatureOffset, parsed);
+            }
+
+            EarthquakeStore page = new EarthquakeStore(parsed.size());
+            for (int i = 0; i < parsed.size(); i++) {
+                if (!isEdgeDuplicate(parsed.getId(i), parsed.getTimeInMilliseconds(i))) {
+                    page.add(parsed, i);
+                }
+            }
+
+            mHasMorePages = mFeatureOffset < mFeatureIndex.size();
+            matching = filter(page);
+        } while (matching.isEmpty() && mHasMorePages && !token.isCanceled());
+        return matching;
+    }
+
+    /**
+     * the windows are parsed newest first so the 2 copies of an event on their edge have the same
+     * time and come one after the other (with the other events of that time)
+     * @return true if the event was already parsed
+     */
+    private boolean isEdgeDuplicate(String id, long time) {
+        if (time != mEdgeTime) {
+            mEdgeTime = time;
+            mEdgeIds.clear();
+        }
+        //an event without id can't be compared, it's always kept
+        return !id.isEmpty() && !mEdgeIds.add(id);
+    }
+
+    /**
+     * @return the earthquakes matching the predicates of the query that the server can't evaluate
+     */
+    private EarthquakeStore filter(EarthquakeStore earthquakes) {
+        return mQuery != null ? mQuery.filter(earthquakes) : earthquakes;
+    }
+
+    /**
+     * @return false once the last page was loaded
+     */
+    boolean hasMorePages() {
+        return mHasMorePages;
+    }
+
+    /**
+     * @return true if the last page could not be fetched, the next load fetches it again
+     */
+    boolean isFailed() {
+        return mFailed;
+    }
+
+    /**
+     * the load failed some other way than its request (i.e. a bug), nothing moved either
+     */
+    void setFailed() {
+        mFailed = true;
+    }
+
+    /**
+     * a sync changed the local copy, the next load reads the rows shown again
+     */
+    void setReloadLocal() {
+        mReloadLocal = true;
+    }
+
+    /**
+     * @return true if the rows shown must be read again from the local copy
+     */
+    boolean needsReloadLocal() {
+        return mReloadLocal;
+    }
+
+    /**
+     * @param earthquakes the pages loaded so far
+     * @param time now, in milliseconds
+     * @return the pages and where the paging stopped, for the result cache
+     */
+    EarthquakeResultCache.Entry retain(EarthquakeDisplayModel earthquakes, long time) {
+        return new EarthquakeResultCache.Entry(earthquakes, mNetworkOffset, mHasMorePages,
+                mShowingLocal, mSyncVersion, mFeatureIndex, mFeatureOffset,
+                mEdgeTime, mEdgeIds.toArray(new String[mEdgeIds.size()]), time);
+    }
+
+    /**
+     * continue where the paging of an other loader of the same query stopped, the local copy is
+     * read again if a sync brought new events since then
+     */
+    void restore(EarthquakeResultCache.Entry entry) {
+        mNetworkOffset = entry.mNetworkOffset;
+        mHasMorePages = entry.mHasMorePages;
+        mShowingLocal = entry.mShowingLocal;
+        mSyncVersion = entry.mSyncVersion;
+        mFeatureIndex = entry.mFeatureIndex;
+        mFeatureOffset = entry.mFeatureOffset;
+        //a query fetched at once in partitions (or only read from the local copy) is planned again
+        mPlanned = mFeatureIndex != null || mNetworkOffset > 0;
+        mEdgeTime = entry.mEdgeTime;
+        mEdgeIds.clear();
+        Collections.addAll(mEdgeIds, entry.mEdgeIds);
+        if (mSync != null && mShowingLocal && mSyncVersion != mSync.getVersion()) {
+            mReloadLocal = true;
+        }
+    }
+
+    /**
+     * start again from the first page
+     */
+    void reset() {
+        mPlanned = false;
+        mHasMorePages = true;
+        mNetworkOffset = 0;
+        mFeatureIndex = null;
+        mFeatureOffset = 0;
+        mEdgeIds.clear();
+        mEdgeTime = Long.MIN_VALUE;
+        mFailed = false;
+        mShowingLocal = false;
+        mReloadLocal = false;
+    }
+}
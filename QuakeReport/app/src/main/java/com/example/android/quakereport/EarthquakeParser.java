@@ -0,0 +1,82 @@
+package com.example.android.quakereport;
+
+import com.example.android.usgs.Feature;
+import com.example.android.usgs.FeatureMapper;
+import com.example.android.usgs.UsgsParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the earthquakes of a USGS GeoJSON response with the streaming parser shared with
+ * the other networking apps ({@link UsgsParser}).
+ *
+ * instead of building the whole String and then a {@link org.json.JSONObject} tree,
+ * the tokens are read straight from the {@link InputStream} and the fields of each earthquake
+ * are handed to a {@link Callback} as soon as its feature is closed,
+ * so only one feature at a time is held in memory
+ */
+public final class EarthquakeParser {
+
+    /**
+     * Receives every earthquake as soon as its feature has been read, the fields are given
+     * as primitives so no object is created for each earthquake (see {@link EarthquakeStore}).
+     * the longitude, latitude (degrees) and depth (km) are NaN when the feature has no geometry
+     */
+    public interface Callback {
+        void onEarthquake(String id, double magnitude, String location, long timeInMilliseconds, String url,
+                          double longitude, double latitude, double depth);
+    }
+
+    /**
+     * Create a private constructor because no one should ever create a {@link EarthquakeParser} object.
+     */
+    private EarthquakeParser() {
+    }
+
+    /**
+     * read the GeoJSON response and emit one earthquake per feature
+     * @param inputStream the response body (not closed by this method)
+     * @param callback receives each earthquake in the order of the feed
+     * @return the number of earthquakes emitted
+     * @throws IOException if the stream can't be read or is not valid JSON
+     */
+    public static int parse(InputStream inputStream, Callback callback) throws IOException {
+        // the mapper calls the callback itself, no object is made for each earthquake
+        return UsgsParser.parse(inputStream, new CallbackMapper(callback), null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * read one feature object alone (i.e. a feature found by {@link EarthquakeFeatureIndex})
+     * @param inputStream the bytes of the feature object (not closed by this method)
+     * @param callback receives the earthquake
+     * @return false if the feature has no properties, nothing is emitted
+     * @throws IOException if the stream can't be read or is not valid JSON
+     */
+    public static boolean parseFeature(InputStream inputStream, Callback callback) throws IOException {
+        return UsgsParser.parseFeature(inputStream, new CallbackMapper(callback), null);
+    }
+
+    /**
+     * give the fields of each feature to the callback, the "mag", "place", "time" and "url"
+     * properties (an empty String or 0 when one is missing or null in the feed)
+     */
+    private static final class CallbackMapper extends FeatureMapper<Void> {
+
+        private final Callback mCallback;
+
+        CallbackMapper(Callback callback) {
+            super("mag", "place", "time", "url");
+            mCallback = callback;
+        }
+
+        @Override
+        public Void map(Feature feature) {
+            mCallback.onEarthquake(feature.getId() != null ? feature.getId() : "",
+                    feature.getDouble("mag", 0), feature.getString("place", ""),
+                    feature.getLong("time", 0), feature.getString("url", ""),
+                    feature.getLongitude(), feature.getLatitude(), feature.getDepth());
+            return null;
+        }
+    }
+}
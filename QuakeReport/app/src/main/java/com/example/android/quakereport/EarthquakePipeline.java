@@ -0,0 +1,264 @@
+package com.example.android.quakereport;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.android.http.CancellationToken;
+
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.android.quakereport.EarthquakeActivity.LOG_TAG;
+
+/**
+ * Runs the loads of the earthquakes in stages, each stage on its own bounded executor.
+ *
+ * the fetch stage does the request, decodes the body and parses it on a small pool of IO threads.
+ * those three are one stage because the body is decompressed and parsed while it's read from the
+ * socket, there is never a whole response (or a whole JSON document) to hand to the next stage.
+ * the index stage builds what the list shows (see {@link EarthquakeDisplayModel}) on one thread,
+ * so the jobs are indexed one after the other. the publish stage runs on the main thread and
+ * gives the results in the order the jobs were submitted, even when a later fetch ends first.
+ *
+ * a job is canceled with {@link Job#cancel()}: the request in flight is disconnected (see
+ * {@link CancellationToken}) and the stages not started yet are skipped.
+ * a stage that throws fails its job: the exception is logged and given to
+ * {@link Publish#onFailed(RuntimeException)}, it never escapes on a thread of the pools.
+ * the jobs are submitted on the main thread.
+ */
+final class EarthquakePipeline {
+
+    //the fetches running at the same time, they mostly wait for the network
+    private static final int FETCH_THREADS = 4;
+
+    //the jobs waiting for a thread of a stage, more are refused instead of piling up
+    private static final int MAX_QUEUED_JOBS = 32;
+
+    //an idle thread stops after that, the pools don't keep threads while nothing is loaded
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static ThreadPoolExecutor sFetchExecutor;
+    private static ThreadPoolExecutor sIndexExecutor;
+
+    /**
+     * the network, decode and parse stage, called on an IO thread
+     * @param <T> what is fetched (i.e. a page of earthquakes)
+     */
+    interface Fetch<T> {
+        /**
+         * @param token canceled when the job is, pass it to the requests
+         * @return what was fetched or null if the job was canceled before it was done
+         */
+        T fetch(CancellationToken token);
+    }
+
+    /**
+     * the index stage, called on the index thread once the fetch is done
+     * @param <T> what is fetched
+     * @param <R> what is published
+     */
+    interface Index<T, R> {
+        R index(T fetched);
+    }
+
+    /**
+     * the publish stage, called on the main thread in the order the jobs were submitted
+     * @param <R> what is published
+     */
+    interface Publish<R> {
+        void onPublished(R result);
+
+        /**
+         * called instead of {@link #onPublished(Object)} when the job was canceled
+         * @param result the result if the job was canceled after its fetch was done, or else null
+         */
+        void onCanceled(R result);
+
+        /**
+         * called instead of {@link #onPublished(Object)} when the fetch or the index stage threw
+         * (a job canceled meanwhile goes to {@link #onCanceled(Object)} instead)
+         * @param e what the stage threw, it was already logged
+         */
+        void onFailed(RuntimeException e);
+    }
+
+    /**
+     * a job submitted to the pipeline
+     */
+    static final class Job {
+        private final CancellationToken mToken = new CancellationToken();
+
+        /**
+         * stop the job, the request in flight is disconnected. it can be called from any thread
+         */
+        void cancel() {
+            mToken.cancel();
+        }
+
+        boolean isCanceled() {
+            return mToken.isCanceled();
+        }
+    }
+
+    //runs the publish stage, the main thread of the app
+    private final Executor mMainThread;
+
+    //the sequence of the next job submitted and of the next job published, only used on the main thread
+    private long mNextSequence;
+    private long mNextPublished;
+
+    //the jobs done before the ones submitted earlier, by sequence, only used on the main thread
+    private final TreeMap<Long, Runnable> mDone = new TreeMap<>();
+
+    /**
+     * a pipeline publishing on the main thread, create it on the main thread
+     */
+    EarthquakePipeline() {
+        this(new Executor() {
+            private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+            @Override
+            public void execute(Runnable runnable) {
+                mMainHandler.post(runnable);
+            }
+        });
+    }
+
+    /**
+     * @param mainThread runs the publish stage one task after the other (i.e. a thread of
+     *                   the tests standing for the main thread), the jobs are submitted on it
+     */
+    EarthquakePipeline(Executor mainThread) {
+        mMainThread = mainThread;
+    }
+
+    /**
+     * start a job, call it on the main thread
+     * @return the job, to cancel it
+     */
+    <T, R> Job submit(final Fetch<T> fetch, final Index<T, R> index, final Publish<R> publish) {
+        final Job job = new Job();
+        final long sequence = mNextSequence++;
+
+        Runnable fetchStage = new Runnable() {
+            @Override
+            public void run() {
+                final T fetched;
+                try {
+                    fetched = job.isCanceled() ? null : fetch.fetch(job.mToken);
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Problem fetching the earthquakes of a job.", e);
+                    publish(sequence, job, null, e, publish);
+                    return;
+                }
+                if (fetched == null) {
+                    publish(sequence, job, null, null, publish);
+                    return;
+                }
+
+                //once fetched the job is always indexed, the caller may already count what was fetched
+                //(i.e. the offset of its next page), the result goes to onCanceled if it was canceled
+                Runnable indexStage = new Runnable() {
+                    @Override
+                    public void run() {
+                        R result;
+                        try {
+                            result = index.index(fetched);
+                        } catch (RuntimeException e) {
+                            Log.e(LOG_TAG, "Problem indexing the earthquakes of a job.", e);
+                            publish(sequence, job, null, e, publish);
+                            return;
+                        }
+                        publish(sequence, job, result, null, publish);
+                    }
+                };
+                try {
+                    getIndexExecutor().execute(indexStage);
+                } catch (RejectedExecutionException e) {
+                    Log.e(LOG_TAG, "Too many earthquake jobs waiting to be indexed.", e);
+                    job.cancel();
+                    publish(sequence, job, null, null, publish);
+                }
+            }
+        };
+
+        try {
+            getFetchExecutor().execute(fetchStage);
+        } catch (RejectedExecutionException e) {
+            Log.e(LOG_TAG, "Too many earthquake jobs waiting to be fetched.", e);
+            job.cancel();
+            publish(sequence, job, null, null, publish);
+        }
+        return job;
+    }
+
+    /**
+     * give the result of a job to the main thread, it's published once the jobs before it are
+     * @param failure what a stage threw, null if none did
+     */
+    private <R> void publish(final long sequence, final Job job, final R result, final RuntimeException failure,
+                             final Publish<R> publish) {
+        mMainThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                mDone.put(sequence, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (failure != null && !job.isCanceled()) {
+                            publish.onFailed(failure);
+                        } else if (job.isCanceled() || result == null) {
+                            publish.onCanceled(result);
+                        } else {
+                            publish.onPublished(result);
+                        }
+                    }
+                });
+                while (!mDone.isEmpty() && mDone.firstKey() == mNextPublished) {
+                    mDone.pollFirstEntry().getValue().run();
+                    mNextPublished++;
+                }
+            }
+        });
+    }
+
+    private static synchronized ThreadPoolExecutor getFetchExecutor() {
+        if (sFetchExecutor == null) {
+            sFetchExecutor = newExecutor(FETCH_THREADS, "EarthquakeFetch #");
+        }
+        return sFetchExecutor;
+    }
+
+    private static synchronized ThreadPoolExecutor getIndexExecutor() {
+        if (sIndexExecutor == null) {
+            sIndexExecutor = newExecutor(1, "EarthquakeIndex #");
+        }
+        return sIndexExecutor;
+    }
+
+    /**
+     * a pool with a bounded queue whose threads don't keep the process alive
+     */
+    private static ThreadPoolExecutor newExecutor(int threads, final String name) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(MAX_QUEUED_JOBS),
+                new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, name + mCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,383 @@
+package com.example.android.quakereport;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * A USGS earthquake query: time range, magnitude range, box, order and limit.
+ *
+ * it's rendered to the USGS parameters (see {@link #toUrl()}) so the server only sends the
+ * earthquakes we need instead of the whole feed filtered on the device.
+ * a predicate the server can't evaluate (the text of the location) is checked on the device,
+ * on the rows the server returns (see {@link #filter(EarthquakeStore)}), call it on a background thread.
+ *
+ * build it with a {@link Builder}, it's immutable
+ */
+public final class EarthquakeQuery {
+
+    private static final String USGS_QUERY_URL = "https://earthquake.usgs.gov/fdsnws/event/1/query";
+
+    //the date format of the USGS starttime/endtime parameters (UTC), the same as the planner
+    private static final String DATE_TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss";
+
+    /**
+     * the order of the earthquakes, with the value of the USGS orderby parameter
+     */
+    public enum Order {
+        TIME("time"),
+        TIME_ASC("time-asc"),
+        MAGNITUDE("magnitude"),
+        MAGNITUDE_ASC("magnitude-asc");
+
+        private final String mParameter;
+
+        Order(String parameter) {
+            mParameter = parameter;
+        }
+
+        /**
+         * @param parameter the value of the orderby parameter of a url, can be null
+         * @return the order of that value, TIME (the order of the server) if there is none
+         */
+        public static Order fromParameter(String parameter) {
+            for (Order order : values()) {
+                if (order.mParameter.equals(parameter)) {
+                    return order;
+                }
+            }
+            return TIME;
+        }
+
+        /**
+         * compare 2 earthquakes of the same store or of 2 stores
+         * @return a negative number if the first one comes before the second one in this order
+         */
+        public int compare(EarthquakeStore first, int firstPosition, EarthquakeStore second, int secondPosition) {
+            switch (this) {
+                case TIME_ASC:
+                    return compareLongs(first.getTimeInMilliseconds(firstPosition),
+                            second.getTimeInMilliseconds(secondPosition));
+                case MAGNITUDE:
+                    return Double.compare(second.getMagnitude(secondPosition), first.getMagnitude(firstPosition));
+                case MAGNITUDE_ASC:
+                    return Double.compare(first.getMagnitude(firstPosition), second.getMagnitude(secondPosition));
+                default:
+                    return compareLongs(second.getTimeInMilliseconds(secondPosition),
+                            first.getTimeInMilliseconds(firstPosition));
+            }
+        }
+    }
+
+    private final long mStartTime;
+    private final long mEndTime;
+    private final double mMinMagnitude;
+    private final double mMaxMagnitude;
+    private final double mMinLatitude;
+    private final double mMaxLatitude;
+    private final double mMinLongitude;
+    private final double mMaxLongitude;
+    private final Order mOrder;
+    private final int mLimit;
+    private final String mLocationText;
+
+    private EarthquakeQuery(Builder builder) {
+        mStartTime = builder.mStartTime;
+        mEndTime = builder.mEndTime;
+        mMinMagnitude = builder.mMinMagnitude;
+        mMaxMagnitude = builder.mMaxMagnitude;
+        mMinLatitude = builder.mMinLatitude;
+        mMaxLatitude = builder.mMaxLatitude;
+        mMinLongitude = builder.mMinLongitude;
+        mMaxLongitude = builder.mMaxLongitude;
+        mOrder = builder.mOrder;
+        mLimit = builder.mLimit;
+        mLocationText = builder.mLocationText;
+    }
+
+    public static final class Builder {
+
+        private long mStartTime = Long.MIN_VALUE;
+        private long mEndTime = Long.MAX_VALUE;
+        private double mMinMagnitude = Double.NaN;
+        private double mMaxMagnitude = Double.NaN;
+        private double mMinLatitude = Double.NaN;
+        private double mMaxLatitude = Double.NaN;
+        private double mMinLongitude = Double.NaN;
+        private double mMaxLongitude = Double.NaN;
+        private Order mOrder = Order.TIME;
+        private int mLimit;
+        private String mLocationText;
+
+        /**
+         * @param startTime the Unix time of the oldest earthquake
+         * @param endTime the Unix time of the newest earthquake
+         */
+        public Builder setTimeRange(long startTime, long endTime) {
+            if (endTime < startTime) {
+                throw new IllegalArgumentException("endTime < startTime");
+            }
+            mStartTime = startTime;
+            mEndTime = endTime;
+            return this;
+        }
+
+        /**
+         * @param minMagnitude the smallest magnitude
+         */
+        public Builder setMinMagnitude(double minMagnitude) {
+            mMinMagnitude = minMagnitude;
+            return this;
+        }
+
+        /**
+         * @param maxMagnitude the largest magnitude
+         */
+        public Builder setMaxMagnitude(double maxMagnitude) {
+            mMaxMagnitude = maxMagnitude;
+            return this;
+        }
+
+        /**
+         * the box crosses the antimeridian when minLongitude > maxLongitude (i.e. 170 to -170)
+         */
+        public Builder setBoundingBox(double minLatitude, double maxLatitude, double minLongitude, double maxLongitude) {
+            if (minLatitude > maxLatitude || minLatitude < -90 || maxLatitude > 90) {
+                throw new IllegalArgumentException("invalid latitudes");
+            }
+            if (minLongitude < -180 || minLongitude > 180 || maxLongitude < -180 || maxLongitude > 180) {
+                throw new IllegalArgumentException("invalid longitudes");
+            }
+            mMinLatitude = minLatitude;
+            mMaxLatitude = maxLatitude;
+            mMinLongitude = minLongitude;
+            mMaxLongitude = maxLongitude;
+            return this;
+        }
+
+        /**
+         * @param order the order of the earthquakes, newest first by default
+         */
+        public Builder setOrder(Order order) {
+            if (order == null) {
+                throw new IllegalArgumentException("order == null");
+            }
+            mOrder = order;
+            return this;
+        }
+
+        /**
+         * @param limit the largest number of earthquakes, 0 for no limit
+         */
+        public Builder setLimit(int limit) {
+            if (limit < 0) {
+                throw new IllegalArgumentException("limit < 0");
+            }
+            mLimit = limit;
+            return this;
+        }
+
+        /**
+         * USGS can't search the location, this predicate is checked on the device
+         * @param locationText a text the location must contain (ignoring case), null for any location
+         */
+        public Builder setLocationText(String locationText) {
+            mLocationText = locationText;
+            return this;
+        }
+
+        public EarthquakeQuery build() {
+            return new EarthquakeQuery(this);
+        }
+    }
+
+    /**
+     * @return the largest number of earthquakes or 0 if there is no limit
+     */
+    public int getLimit() {
+        return mLimit;
+    }
+
+    public Order getOrder() {
+        return mOrder;
+    }
+
+    /**
+     * @return true if some predicate can't be sent to the server and must be checked on the device
+     */
+    public boolean needsLocalFilter() {
+        return mLocationText != null;
+    }
+
+    /**
+     * @return a key for the results of the query, the same for two queries returning the same earthquakes
+     */
+    public String getKey() {
+        if (!needsLocalFilter()) {
+            return toUrl();
+        }
+        //the predicates checked on the device and the limit are not in the url
+        return toUrl() + "#location=" + mLocationText + "&limit=" + mLimit;
+    }
+
+    /**
+     * @return the USGS url of the query
+     */
+    public String toUrl() {
+        StringBuilder url = newUrl();
+        //with a local filter the server would cut the rows before we filter them, we count them ourselves
+        if (mLimit > 0 && !needsLocalFilter()) {
+            appendParameter(url, "limit", String.valueOf(mLimit));
+        }
+        return url.toString();
+    }
+
+    /**
+     * the limit of the query is not sent, the pages stop at the limit on the device
+     * @param offset the number of earthquakes of the query returned before this page
+     * @param pageSize the number of earthquakes of the page
+     * @return the USGS url of one page of the query
+     */
+    public String toPageUrl(int offset, int pageSize) {
+        StringBuilder url = newUrl();
+        appendParameter(url, "offset", String.valueOf(offset + 1));//USGS counts from 1
+        appendParameter(url, "limit", String.valueOf(pageSize));
+        return url.toString();
+    }
+
+    /**
+     * @return the url with every parameter the server can evaluate, except the limit
+     */
+    private StringBuilder newUrl() {
+        StringBuilder url = new StringBuilder(USGS_QUERY_URL).append("?format=geojson");
+        appendParameter(url, "eventtype", "earthquake");
+        appendParameter(url, "orderby", mOrder.mParameter);
+
+        if (mStartTime != Long.MIN_VALUE || mEndTime != Long.MAX_VALUE) {
+            SimpleDateFormat format = new SimpleDateFormat(DATE_TIME_FORMAT, Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            if (mStartTime != Long.MIN_VALUE) {
+                appendParameter(url, "starttime", format.format(mStartTime));
+            }
+            if (mEndTime != Long.MAX_VALUE) {
+                appendParameter(url, "endtime", format.format(mEndTime));
+            }
+        }
+        if (!Double.isNaN(mMinMagnitude)) {
+            appendParameter(url, "minmagnitude", String.valueOf(mMinMagnitude));
+        }
+        if (!Double.isNaN(mMaxMagnitude)) {
+            appendParameter(url, "maxmagnitude", String.valueOf(mMaxMagnitude));
+        }
+        if (!Double.isNaN(mMinLatitude)) {
+            //USGS takes longitudes up to 360 for a box crossing the antimeridian
+            double maxLongitude = mMinLongitude > mMaxLongitude ? mMaxLongitude + 360 : mMaxLongitude;
+            appendParameter(url, "minlatitude", String.valueOf(mMinLatitude));
+            appendParameter(url, "maxlatitude", String.valueOf(mMaxLatitude));
+            appendParameter(url, "minlongitude", String.valueOf(mMinLongitude));
+            appendParameter(url, "maxlongitude", String.valueOf(maxLongitude));
+        }
+        return url;
+    }
+
+    /**
+     * the url is built without {@link android.net.Uri} so it can be checked on the JVM,
+     * the values have nothing to escape in a query (digits, letters, '-', '.' and ':')
+     */
+    private static void appendParameter(StringBuilder url, String name, String value) {
+        url.append('&').append(name).append('=').append(value);
+    }
+
+    /**
+     * check every predicate of the query, the ones of the server included
+     * (i.e. for earthquakes that were not fetched with this query)
+     * @return true if the earthquake at this position matches the query
+     */
+    public boolean matches(EarthquakeStore earthquakes, int position) {
+        long time = earthquakes.getTimeInMilliseconds(position);
+        if (time < mStartTime || time > mEndTime) {
+            return false;
+        }
+
+        double magnitude = earthquakes.getMagnitude(position);
+        if ((!Double.isNaN(mMinMagnitude) && magnitude < mMinMagnitude)
+                || (!Double.isNaN(mMaxMagnitude) && magnitude > mMaxMagnitude)) {
+            return false;
+        }
+
+        if (!Double.isNaN(mMinLatitude)) {
+            double latitude = earthquakes.getLatitude(position);
+            double longitude = earthquakes.getLongitude(position);
+            if (Double.isNaN(latitude) || latitude < mMinLatitude || latitude > mMaxLatitude) {
+                return false;
+            }
+            boolean inLongitudes = mMinLongitude <= mMaxLongitude
+                    ? longitude >= mMinLongitude && longitude <= mMaxLongitude
+                    : longitude >= mMinLongitude || longitude <= mMaxLongitude;
+            if (!inLongitudes) {
+                return false;
+            }
+        }
+
+        return matchesLocally(earthquakes, position);
+    }
+
+    /**
+     * keep the earthquakes matching the predicates the server can't evaluate,
+     * the earthquakes were returned by the url of this query
+     * @return the matching earthquakes, the same store if there is no local predicate
+     */
+    public EarthquakeStore filter(EarthquakeStore earthquakes) {
+        if (!needsLocalFilter()) {
+            return earthquakes;
+        }
+
+        EarthquakeStore matching = new EarthquakeStore();
+        for (int i = 0; i < earthquakes.size(); i++) {
+            if (matchesLocally(earthquakes, i)) {
+                matching.add(earthquakes, i);
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * filter and limit the earthquakes of a query that was split and merged
+     * (see {@link EarthquakeQueryPlanner}), the partitions are merged in the order of the query
+     * @param earthquakes the earthquakes returned by the url of this query, in the order of the query
+     * @return the earthquakes of the query
+     */
+    public EarthquakeStore apply(EarthquakeStore earthquakes) {
+        EarthquakeStore matching = filter(earthquakes);
+        if (mLimit == 0 || matching.size() <= mLimit) {
+            return matching;
+        }
+
+        EarthquakeStore result = new EarthquakeStore(mLimit);
+        for (int i = 0; i < mLimit; i++) {
+            result.add(matching, i);
+        }
+        return result;
+    }
+
+    private boolean matchesLocally(EarthquakeStore earthquakes, int position) {
+        return mLocationText == null || containsIgnoreCase(earthquakes.getLocation(position), mLocationText);
+    }
+
+    //Long.compare() needs API 19
+    private static int compareLongs(long a, long b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
+    /**
+     * @return true if the text contains the part, ignoring case, without copying the text
+     */
+    private static boolean containsIgnoreCase(String text, String part) {
+        for (int i = 0; i + part.length() <= text.length(); i++) {
+            if (text.regionMatches(true, i, part, 0, part.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,450 @@
+package com.example.android.quakereport;
+
+import android.net.Uri;
+
+import com.example.android.http.CancellationToken;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits a large USGS request (i.e. a whole year) in smaller ones, fetches them at the same time
+ * and merges them back in one list in the order of the request.
+ *
+ * a request is split in time windows when it has a long starttime/endtime range, or else in a grid
+ * of boxes when it has a wide minlatitude/maxlatitude/minlongitude/maxlongitude box.
+ * each partition is fetched and parsed on its own thread of a small shared pool, the server
+ * answers them in parallel so the whole query takes about the time of the slowest partition.
+ * an earthquake on the edge of two partitions is returned by both, it's kept only once (by event id).
+ * the query fails if any of its partitions fails, it's never merged with a window or a region missing.
+ * each partition keeps the orderby and the limit of the request: the first earthquakes of the
+ * whole query are always among the first earthquakes of their partition, so the merge only has
+ * to keep the first ones of the merged partitions (i.e. the 20 largest of a year are among the
+ * 20 largest of each month).
+ */
+public final class EarthquakeQueryPlanner {
+
+    //a time range longer than that is split in windows of that length
+    private static final long MAX_WINDOW = 30L * 24 * 60 * 60 * 1000; // 30 days
+
+    //a box wider than that (in degrees of latitude or longitude) is split in a grid
+    private static final double MAX_REGION_SPAN = 90;
+
+    //more partitions would only wait in the queue of the executor
+    private static final int MAX_PARTITIONS = 16;
+
+    //the number of partitions fetched at the same time
+    private static final int MAX_CONCURRENT_FETCHES = 4;
+
+    //the date format of the USGS starttime/endtime parameters (UTC)
+    private static final String DATE_TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss";
+    private static final String DATE_FORMAT = "yyyy-MM-dd";
+
+    private static ExecutorService sExecutor;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link EarthquakeQueryPlanner} object.
+     */
+    private EarthquakeQueryPlanner() {
+    }
+
+    /**
+     * split a request in the partitions fetched by {@link #fetch(List, CancellationToken)}
+     * @param requestUrl the url of the whole query
+     * @return the urls of the partitions, only the request url if it doesn't need to be split
+     */
+    public static List<String> plan(String requestUrl) {
+        Uri uri = Uri.parse(requestUrl);
+
+        List<String> timeWindows = splitByTime(requestUrl, uri);
+        if (timeWindows != null) {
+            return timeWindows;
+        }
+
+        double minLatitude = parseDegrees(uri.getQueryParameter("minlatitude"));
+        double maxLatitude = parseDegrees(uri.getQueryParameter("maxlatitude"));
+        double minLongitude = parseDegrees(uri.getQueryParameter("minlongitude"));
+        double maxLongitude = parseDegrees(uri.getQueryParameter("maxlongitude"));
+        if (!Double.isNaN(minLatitude) && !Double.isNaN(maxLatitude)
+                && !Double.isNaN(minLongitude) && !Double.isNaN(maxLongitude)) {
+            int rows = (int) Math.min(Math.ceil((maxLatitude - minLatitude) / MAX_REGION_SPAN), 2);
+            int columns = (int) Math.min(Math.ceil((maxLongitude - minLongitude) / MAX_REGION_SPAN), MAX_PARTITIONS / 2);
+            if (rows * columns > 1) {
+                return splitByRegion(requestUrl, minLatitude, maxLatitude, minLongitude, maxLongitude,
+                        Math.max(rows, 1), Math.max(columns, 1));
+            }
+        }
+
+        return Collections.singletonList(requestUrl);
+    }
+
+    /**
+     * split a request with a long time range in time windows, they don't overlap (except on
+     * their edges) so their features are already in order one after the other
+     * @param requestUrl the url of the whole query
+     * @return the urls of the windows, newest first, or null if the request is not split by time
+     * or is not ordered newest first (the windows would not be in order one after the other)
+     */
+    public static List<String> planTimeWindows(String requestUrl) {
+        Uri uri = Uri.parse(requestUrl);
+        if (EarthquakeQuery.Order.fromParameter(uri.getQueryParameter("orderby")) != EarthquakeQuery.Order.TIME) {
+            return null;
+        }
+        return splitByTime(requestUrl, uri);
+    }
+
+    /**
+     * @return the urls of the windows of a request with a long time range, newest first,
+     * or null if it's not split by time
+     */
+    private static List<String> splitByTime(String requestUrl, Uri uri) {
+        long startTime = parseTime(uri.getQueryParameter("starttime"));
+        long endTime = parseTime(uri.getQueryParameter("endtime"));
+        if (startTime >= 0 && endTime > startTime + MAX_WINDOW) {
+            int windows = (int) Math.min(MAX_PARTITIONS, (endTime - startTime + MAX_WINDOW - 1) / MAX_WINDOW);
+            return splitByTime(requestUrl, startTime, endTime, windows);
+        }
+        return null;
+    }
+
+    /**
+     * split a request in time windows of the same length
+     * @param requestUrl the url of the whole query
+     * @param startTime the start of the query, Unix time
+     * @param endTime the end of the query, Unix time
+     * @param windows the number of windows
+     * @return the url of each window, ordered from the newest to the oldest
+     */
+    public static List<String> splitByTime(String requestUrl, long startTime, long endTime, int windows) {
+        if (windows < 2 || endTime <= startTime) {
+            return Collections.singletonList(requestUrl);
+        }
+
+        SimpleDateFormat format = newDateFormat(DATE_TIME_FORMAT);
+        long windowLength = (endTime - startTime + windows - 1) / windows;
+
+        List<String> partitions = new ArrayList<>(windows);
+        for (long windowEnd = endTime; windowEnd > startTime; windowEnd -= windowLength) {
+            long windowStart = Math.max(startTime, windowEnd - windowLength);
+            partitions.add(replaceQueryParameters(requestUrl,
+                    "starttime", format.format(windowStart),
+                    "endtime", format.format(windowEnd)));
+        }
+        return partitions;
+    }
+
+    /**
+     * split a request in a grid of boxes of the same size
+     * @param requestUrl the url of the whole query
+     * @param rows the number of boxes from south to north
+     * @param columns the number of boxes from west to east
+     * @return the url of each box
+     */
+    public static List<String> splitByRegion(String requestUrl, double minLatitude, double maxLatitude,
+                                             double minLongitude, double maxLongitude, int rows, int columns) {
+        double latitudeStep = (maxLatitude - minLatitude) / rows;
+        double longitudeStep = (maxLongitude - minLongitude) / columns;
+
+        List<String> partitions = new ArrayList<>(rows * columns);
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                //the last box ends on the edge of the query so rounding can't lose a strip
+                double south = minLatitude + row * latitudeStep;
+                double north = row == rows - 1 ? maxLatitude : south + latitudeStep;
+                double west = minLongitude + column * longitudeStep;
+                double east = column == columns - 1 ? maxLongitude : west + longitudeStep;
+                partitions.add(replaceQueryParameters(requestUrl,
+                        "minlatitude", String.valueOf(south),
+                        "maxlatitude", String.valueOf(north),
+                        "minlongitude", String.valueOf(west),
+                        "maxlongitude", String.valueOf(east)));
+            }
+        }
+        return partitions;
+    }
+
+    /**
+     * fetch and parse every partition at the same time, then merge them,
+     * call it on a background thread (i.e. the loader thread)
+     * @param partitionUrls the urls returned by {@link #plan(String)}
+     * @return the earthquakes of every partition in the order of the request, each event only once
+     * and no more than its limit
+     * @throws IOException if the request of a partition failed, the query is not whole without it
+     */
+    public static EarthquakeStore fetch(List<String> partitionUrls) throws IOException {
+        return fetch(partitionUrls, null);
+    }
+
+    /**
+     * same as {@link #fetch(List)}, every partition stops as soon as the token is canceled
+     * @param partitionUrls the urls returned by {@link #plan(String)}
+     * @param token cancels the requests, can be null
+     * @return the earthquakes of every partition in the order of the request, each event only once
+     * and no more than its limit
+     * @throws IOException if the request of a partition failed (the others are canceled)
+     * or the token was canceled
+     */
+    public static EarthquakeStore fetch(List<String> partitionUrls, CancellationToken token)
+            throws IOException {
+        if (partitionUrls.size() == 1) {
+            return QueryUtils.fetchEarthquakeData(partitionUrls.get(0), token);
+        }
+
+        //every partition has the orderby and the limit of the request
+        Uri uri = Uri.parse(partitionUrls.get(0));
+        EarthquakeQuery.Order order = EarthquakeQuery.Order.fromParameter(uri.getQueryParameter("orderby"));
+        return fetch(partitionUrls, order, parseLimit(uri.getQueryParameter("limit")), token);
+    }
+
+    /**
+     * same as {@link #fetch(List, CancellationToken)} with the order and the limit already read
+     * from the partitions (i.e. by a test, where there is no {@link Uri})
+     */
+    static EarthquakeStore fetch(List<String> partitionUrls, EarthquakeQuery.Order order, int limit,
+                                 final CancellationToken token) throws IOException {
+        ExecutorService executor = getExecutor();
+        List<Future<EarthquakeStore>> futures = new ArrayList<>(partitionUrls.size());
+        for (final String partitionUrl : partitionUrls) {
+            futures.add(executor.submit(new Callable<EarthquakeStore>() {
+                @Override
+                public EarthquakeStore call() throws IOException {
+                    return QueryUtils.fetchEarthquakeData(partitionUrl, token);
+                }
+            }));
+        }
+
+        return merge(getAll(futures), order, limit);
+    }
+
+    /**
+     * fetch every time window at the same time and index their features without parsing them,
+     * call it on a background thread (i.e. the loader thread)
+     * @param windowUrls the urls returned by {@link #planTimeWindows(String)}
+     * @return the features of every window, newest first. an event on the edge of two windows
+     * is there twice, one right after the other
+     * @throws IOException if the request of a window failed, the query is not whole without it
+     */
+    public static EarthquakeFeatureIndex fetchIndex(List<String> windowUrls) throws IOException {
+        return fetchIndex(windowUrls, null);
+    }
+
+    /**
+     * same as {@link #fetchIndex(List)}, every window stops as soon as the token is canceled
+     * @param windowUrls the urls returned by {@link #planTimeWindows(String)}
+     * @param token cancels the requests, can be null
+     * @return the features of every window, newest first
+     * @throws IOException if the request of a window failed (the others are canceled)
+     * or the token was canceled
+     */
+    public static EarthquakeFeatureIndex fetchIndex(List<String> windowUrls, final CancellationToken token)
+            throws IOException {
+        ExecutorService executor = getExecutor();
+        List<Future<EarthquakeFeatureIndex>> futures = new ArrayList<>(windowUrls.size());
+        for (final String windowUrl : windowUrls) {
+            futures.add(executor.submit(new Callable<EarthquakeFeatureIndex>() {
+                @Override
+                public EarthquakeFeatureIndex call() throws IOException {
+                    return QueryUtils.fetchFeatureIndex(windowUrl, token);
+                }
+            }));
+        }
+
+        return EarthquakeFeatureIndex.concat(getAll(futures));
+    }
+
+    /**
+     * wait for every partition, a missing one would lose its time window or its region without
+     * any sign of it so the query fails as a whole
+     * @return the result of each partition, in the order of the futures
+     * @throws IOException if a partition failed or the wait was interrupted, the partitions
+     * still running are canceled
+     */
+    private static <T> List<T> getAll(List<Future<T>> futures) throws IOException {
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            //the load was canceled, the partitions not fetched yet are not needed anymore
+            cancelAll(futures);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("canceled");
+        } catch (ExecutionException e) {
+            cancelAll(futures);
+            throw new IOException("Problem fetching a partition of the query.", e.getCause());
+        }
+    }
+
+    private static <T> void cancelAll(List<Future<T>> futures) {
+        for (Future<T> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * merge partitions ordered by time (newest first) in one store ordered the same way
+     * @param partitions the earthquakes of each partition
+     * @return the merged earthquakes, an event in more than one partition is kept once
+     */
+    public static EarthquakeStore merge(List<EarthquakeStore> partitions) {
+        return merge(partitions, EarthquakeQuery.Order.TIME, 0);
+    }
+
+    /**
+     * merge partitions in the same order in one store ordered the same way
+     * @param partitions the earthquakes of each partition
+     * @param order the order of every partition
+     * @param limit the number of earthquakes kept, 0 to keep them all
+     * @return the merged earthquakes, an event in more than one partition is kept once
+     */
+    public static EarthquakeStore merge(List<EarthquakeStore> partitions, EarthquakeQuery.Order order, int limit) {
+        int total = 0;
+        for (EarthquakeStore partition : partitions) {
+            total += partition.size();
+        }
+        if (limit > 0) {
+            total = Math.min(total, limit);
+        }
+
+        EarthquakeStore merged = new EarthquakeStore(total);
+        Set<String> ids = new HashSet<>(total * 2);
+        //the next position to take in each partition
+        int[] positions = new int[partitions.size()];
+
+        //there are only a few partitions, we look at the head of each one to find the first
+        while (limit == 0 || merged.size() < limit) {
+            int first = -1;
+            for (int i = 0; i < positions.length; i++) {
+                EarthquakeStore partition = partitions.get(i);
+                if (positions[i] < partition.size() && (first == -1
+                        || order.compare(partition, positions[i], partitions.get(first), positions[first]) < 0)) {
+                    first = i;
+                }
+            }
+            if (first == -1) {
+                break;
+            }
+
+            EarthquakeStore partition = partitions.get(first);
+            int position = positions[first]++;
+            String id = partition.getId(position);
+            //an event without id can't be compared, it's always kept
+            if (id.isEmpty() || ids.add(id)) {
+                merged.add(partition, position);
+            }
+        }
+
+        return merged;
+    }
+
+    /**
+     * the pool shared by every query, its threads don't keep the process alive
+     */
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newFixedThreadPool(MAX_CONCURRENT_FETCHES, new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "EarthquakeQuery #" + mCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sExecutor;
+    }
+
+    /**
+     * @param keysAndValues the name and the new value of each replaced parameter
+     * @return the url with those parameters replaced (or added), the other ones (i.e. orderby
+     * and limit) are kept
+     */
+    private static String replaceQueryParameters(String requestUrl, String... keysAndValues) {
+        Uri uri = Uri.parse(requestUrl);
+        Set<String> replaced = new HashSet<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            replaced.add(keysAndValues[i]);
+        }
+
+        Uri.Builder builder = uri.buildUpon().clearQuery();
+        for (String name : uri.getQueryParameterNames()) {
+            if (!replaced.contains(name)) {
+                builder.appendQueryParameter(name, uri.getQueryParameter(name));
+            }
+        }
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            builder.appendQueryParameter(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return builder.build().toString();
+    }
+
+    /**
+     * @param time a USGS date (i.e. "2014-01-01" or "2014-01-01T12:00:00"), in UTC
+     * @return the Unix time or -1 if there is no date or it can't be read
+     */
+    private static long parseTime(String time) {
+        if (time == null) {
+            return -1;
+        }
+        String pattern = time.indexOf('T') >= 0 ? DATE_TIME_FORMAT : DATE_FORMAT;
+        try {
+            return newDateFormat(pattern).parse(time).getTime();
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return the limit or 0 if there is none or it can't be read
+     */
+    private static int parseLimit(String limit) {
+        if (limit == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(limit));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return the degrees or NaN if there are none or they can't be read
+     */
+    private static double parseDegrees(String degrees) {
+        if (degrees == null) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(degrees);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static SimpleDateFormat newDateFormat(String pattern) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format;
+    }
+}
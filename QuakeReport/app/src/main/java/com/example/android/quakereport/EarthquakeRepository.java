@@ -0,0 +1,245 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import static com.example.android.quakereport.EarthquakeDbHelper.COLUMN_DEPTH;
+import static com.example.android.quakereport.EarthquakeDbHelper.COLUMN_EVENT_ID;
+import static com.example.android.quakereport.EarthquakeDbHelper.COLUMN_FEED_URL;
+import static com.example.android.quakereport.EarthquakeDbHelper.COLUMN_LAST_SYNC_TIME;
+import static com.example.android.quakereport.EarthquakeDbHelper.COLUMN_LATITUDE;
+import static com.example.android.quakereport.EarthquakeDbHelper.COLUMN_LOCATION;
+import static com.example.android.quakereport.EarthquakeDbHelper.COLUMN_LONGITUDE;
+import static com.example.android.quakereport.EarthquakeDbHelper.COLUMN_MAGNITUDE;
+import static com.example.android.quakereport.EarthquakeDbHelper.COLUMN_TIME;
+import static com.example.android.quakereport.EarthquakeDbHelper.COLUMN_URL;
+import static com.example.android.quakereport.EarthquakeDbHelper.TABLE_EARTHQUAKES;
+import static com.example.android.quakereport.EarthquakeDbHelper.TABLE_SYNC_STATE;
+
+/**
+ * The earthquakes kept on the device, in a SQLite database.
+ *
+ * they are inserted by batches in one transaction with a compiled statement, and read back one
+ * page at a time: a page starts right after the last row of the previous one (keyset paging on
+ * the time index), so a page deep in the list costs the same as the first one.
+ * a range query such as "M6+ in the last 30 days" runs on the indexes, without any request.
+ *
+ * every method does disk work, call them on a background thread
+ */
+public final class EarthquakeRepository implements EarthquakeSync.LocalCopy {
+
+    //the columns read into an EarthquakeStore
+    private static final String SELECT_EARTHQUAKES = "SELECT " + COLUMN_EVENT_ID + ", " + COLUMN_MAGNITUDE
+            + ", " + COLUMN_LOCATION + ", " + COLUMN_TIME + ", " + COLUMN_URL + ", " + COLUMN_LONGITUDE
+            + ", " + COLUMN_LATITUDE + ", " + COLUMN_DEPTH + " FROM " + TABLE_EARTHQUAKES;
+
+    //a page of earthquakes newest first, from a magnitude and a start time and after a (time, id)
+    static final String SELECT_PAGE = SELECT_EARTHQUAKES
+            + " WHERE " + COLUMN_MAGNITUDE + " >= ? AND " + COLUMN_TIME + " >= ?"
+            //the rows after (time, id) in the order of the list, written without OR
+            //so SQLite walks the (time, event_id) index in order and doesn't sort
+            + " AND " + COLUMN_TIME + " <= ? AND NOT (" + COLUMN_TIME + " = ? AND " + COLUMN_EVENT_ID + " >= ?)"
+            + " ORDER BY " + COLUMN_TIME + " DESC, " + COLUMN_EVENT_ID + " DESC";
+
+    //adds an earthquake or replaces the one with the same event id
+    static final String INSERT_EARTHQUAKE = "INSERT OR REPLACE INTO " + TABLE_EARTHQUAKES + " ("
+            + COLUMN_EVENT_ID + ", " + COLUMN_MAGNITUDE + ", " + COLUMN_LOCATION + ", "
+            + COLUMN_TIME + ", " + COLUMN_URL + ", " + COLUMN_LONGITUDE + ", " + COLUMN_LATITUDE + ", "
+            + COLUMN_DEPTH + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static EarthquakeRepository sInstance;
+
+    private final EarthquakeDbHelper mDbHelper;
+
+    private EarthquakeRepository(Context context) {
+        mDbHelper = new EarthquakeDbHelper(context);
+    }
+
+    /**
+     * @return the repository of the app, there is only one so the database is opened once
+     */
+    public static synchronized EarthquakeRepository getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new EarthquakeRepository(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * only look for the file so it can be called on the UI thread
+     * @return true if the database was already created (i.e. the feed was synced once)
+     */
+    public static boolean exists(Context context) {
+        return context.getDatabasePath(EarthquakeDbHelper.DATABASE_NAME).exists();
+    }
+
+    /**
+     * add the earthquakes, an event already stored (same id) is replaced by its new version
+     * @param earthquakes the earthquakes to add
+     * @return the number of earthquakes written
+     */
+    @Override
+    public int insert(EarthquakeStore earthquakes) {
+        if (earthquakes.isEmpty()) {
+            return 0;
+        }
+
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        //one transaction for the batch, or else each row would be its own transaction (and disk sync)
+        db.beginTransaction();
+        SQLiteStatement insert = db.compileStatement(INSERT_EARTHQUAKE);
+        try {
+            for (int i = 0; i < earthquakes.size(); i++) {
+                insert.bindString(1, earthquakes.getId(i));
+                insert.bindDouble(2, earthquakes.getMagnitude(i));
+                insert.bindString(3, earthquakes.getLocation(i));
+                insert.bindLong(4, earthquakes.getTimeInMilliseconds(i));
+                insert.bindString(5, earthquakes.getUrl(i));
+                bindDouble(insert, 6, earthquakes.getLongitude(i));
+                bindDouble(insert, 7, earthquakes.getLatitude(i));
+                bindDouble(insert, 8, earthquakes.getDepth(i));
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            insert.close();
+            db.endTransaction();
+        }
+        return earthquakes.size();
+    }
+
+    /**
+     * @param time the Unix time of the oldest earthquake to keep
+     * @return the number of earthquakes deleted
+     */
+    @Override
+    public int deleteOlderThan(long time) {
+        return mDbHelper.getWritableDatabase().delete(TABLE_EARTHQUAKES,
+                COLUMN_TIME + " < ?", new String[]{String.valueOf(time)});
+    }
+
+    /**
+     * read one page of earthquakes, newest first
+     * @param minMagnitude the smallest magnitude returned
+     * @param startTime the Unix time of the oldest earthquake returned
+     * @param beforeTime the time of the last row of the previous page, Long.MAX_VALUE for the first page
+     * @param beforeId the event id of the last row of the previous page, null for the first page
+     * @param limit the number of earthquakes of the page
+     * @return the page, smaller than the limit if it's the last one
+     */
+    public EarthquakeStore queryPage(double minMagnitude, long startTime, long beforeTime, String beforeId, int limit) {
+        String beforeTimeArg = String.valueOf(beforeTime);
+        Cursor cursor = mDbHelper.getReadableDatabase().rawQuery(SELECT_PAGE + " LIMIT " + limit,
+                new String[]{String.valueOf(minMagnitude), String.valueOf(startTime),
+                        beforeTimeArg, beforeTimeArg, beforeId != null ? beforeId : ""});
+        return read(cursor, limit);
+    }
+
+    /**
+     * read the page that follows the last row of the given earthquakes
+     * @param previous the rows already shown, newest first, can be empty
+     * @param limit the number of earthquakes of the page
+     */
+    @Override
+    public EarthquakeStore queryNextPage(EarthquakeStore previous, int limit) {
+        //the bounds are given as text, -Infinity would not be read back as a number by SQLite
+        if (previous.isEmpty()) {
+            return queryPage(-Double.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE, null, limit);
+        }
+        int last = previous.size() - 1;
+        return queryPage(-Double.MAX_VALUE, Long.MIN_VALUE,
+                previous.getTimeInMilliseconds(last), previous.getId(last), limit);
+    }
+
+    /**
+     * @return the time of the newest earthquake stored or -1 if there is none
+     */
+    @Override
+    public long getNewestTime() {
+        Cursor cursor = mDbHelper.getReadableDatabase().rawQuery(
+                "SELECT MAX(" + COLUMN_TIME + ") FROM " + TABLE_EARTHQUAKES, null);
+        try {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return the number of earthquakes stored
+     */
+    public int count() {
+        Cursor cursor = mDbHelper.getReadableDatabase().rawQuery(
+                "SELECT COUNT(*) FROM " + TABLE_EARTHQUAKES, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @param feedUrl the url of the synced feed
+     * @return the time of its last sync (Unix time) or 0 if it was never synced
+     */
+    @Override
+    public long getLastSyncTime(String feedUrl) {
+        Cursor cursor = mDbHelper.getReadableDatabase().rawQuery("SELECT " + COLUMN_LAST_SYNC_TIME
+                + " FROM " + TABLE_SYNC_STATE + " WHERE " + COLUMN_FEED_URL + " = ?", new String[]{feedUrl});
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @param feedUrl the url of the synced feed
+     * @param time the time of its last sync (Unix time)
+     */
+    @Override
+    public void setLastSyncTime(String feedUrl, long time) {
+        mDbHelper.getWritableDatabase().execSQL("INSERT OR REPLACE INTO " + TABLE_SYNC_STATE
+                + " (" + COLUMN_FEED_URL + ", " + COLUMN_LAST_SYNC_TIME + ") VALUES (?, ?)",
+                new Object[]{feedUrl, time});
+    }
+
+    /**
+     * copy the rows of the cursor in a store and close it
+     */
+    private static EarthquakeStore read(Cursor cursor, int capacity) {
+        try {
+            EarthquakeStore earthquakes = new EarthquakeStore(Math.min(capacity, cursor.getCount()));
+            //the columns are in the order of SELECT_EARTHQUAKES
+            while (cursor.moveToNext()) {
+                earthquakes.onEarthquake(cursor.getString(0), cursor.getDouble(1), cursor.getString(2),
+                        cursor.getLong(3), cursor.getString(4),
+                        getDouble(cursor, 5), getDouble(cursor, 6), getDouble(cursor, 7));
+            }
+            earthquakes.compact();
+            return earthquakes;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * bind a double that can be NaN, stored as NULL
+     */
+    private static void bindDouble(SQLiteStatement statement, int index, double value) {
+        if (Double.isNaN(value)) {
+            statement.bindNull(index);
+        } else {
+            statement.bindDouble(index, value);
+        }
+    }
+
+    /**
+     * @return the double of the column or NaN if it's NULL
+     */
+    private static double getDouble(Cursor cursor, int index) {
+        return cursor.isNull(index) ? Double.NaN : cursor.getDouble(index);
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.android.quakereport;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.util.Log;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.example.android.quakereport.EarthquakeActivity.LOG_TAG;
+
+/**
+ * Keeps the pages loaded for each query while the process lives.
+ *
+ * a loader is destroyed with its activity (i.e. the user pressed back), the next loader of the same
+ * query gets the pages from here and shows them without any request or parsing. the entry keeps
+ * where the paging stopped too, so the next page continues after them.
+ *
+ * the pages of the network expire after a time to live. the pages of the local copy
+ * ({@link EarthquakeSync}) don't expire: they're read again only if a sync brought new events
+ * since they were read (see {@link EarthquakeSync#getVersion()}).
+ *
+ * the least recently used entries are dropped when there are too many rows, and when the system
+ * is short of memory: some of them when the app is running low, all of them once the app is in the
+ * background list. the methods are synchronized, the entries themselves are immutable.
+ */
+public final class EarthquakeResultCache implements ComponentCallbacks2 {
+
+    //the rows kept for every query together, a row and its formatted texts are a few hundred bytes
+    private static final int MAX_ROWS = 10000;
+
+    //the pages of the network are fetched again after that, the same as the responses on disk
+    private static final long TIME_TO_LIVE = 5 * 60 * 1000; // 5 minutes
+
+    private static EarthquakeResultCache sDefault;
+
+    /**
+     * the pages of one query and where the paging stopped
+     */
+    static final class Entry {
+        final EarthquakeDisplayModel mEarthquakes;
+        //the number of earthquakes of the feed fetched, some can be filtered out on the device
+        final int mNetworkOffset;
+        final boolean mHasMorePages;
+        //the pages were read from the local copy, at this version of it
+        final boolean mShowingLocal;
+        final int mSyncVersion;
+        //the features of a query split in time windows and the next one to parse, or null
+        final EarthquakeFeatureIndex mFeatureIndex;
+        final int mFeatureOffset;
+        //the last parsed events with the same time (an event on the edge of two windows comes twice)
+        final long mEdgeTime;
+        final String[] mEdgeIds;
+        //when the pages were loaded
+        final long mTime;
+
+        Entry(EarthquakeDisplayModel earthquakes, int networkOffset, boolean hasMorePages,
+              boolean showingLocal, int syncVersion, EarthquakeFeatureIndex featureIndex,
+              int featureOffset, long edgeTime, String[] edgeIds, long time) {
+            mEarthquakes = earthquakes;
+            mNetworkOffset = networkOffset;
+            mHasMorePages = hasMorePages;
+            mShowingLocal = showingLocal;
+            mSyncVersion = syncVersion;
+            mFeatureIndex = featureIndex;
+            mFeatureOffset = featureOffset;
+            mEdgeTime = edgeTime;
+            mEdgeIds = edgeIds;
+            mTime = time;
+        }
+    }
+
+    private final int mMaxRows;
+    private final long mTimeToLive;
+
+    //the entries by query, the least recently used first
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    //the rows of every entry
+    private int mRows;
+
+    /**
+     * @param maxRows the rows kept for every query together
+     * @param timeToLive the time after which the pages of the network are fetched again, in milliseconds
+     */
+    public EarthquakeResultCache(int maxRows, long timeToLive) {
+        mMaxRows = maxRows;
+        mTimeToLive = timeToLive;
+    }
+
+    /**
+     * @return the cache of the app, it's told when the system is short of memory
+     */
+    public static synchronized EarthquakeResultCache getDefault(Context context) {
+        if (sDefault == null) {
+            sDefault = new EarthquakeResultCache(MAX_ROWS, TIME_TO_LIVE);
+            context.getApplicationContext().registerComponentCallbacks(sDefault);
+        }
+        return sDefault;
+    }
+
+    /**
+     * @param key the key of the query (see {@link EarthquakeQuery#getKey()})
+     * @param now the current time (Unix time)
+     * @return the pages of the query, null if there are none or they expired
+     */
+    synchronized Entry get(String key, long now) {
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.mShowingLocal && now - entry.mTime >= mTimeToLive) {
+            remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * keep the pages of a query, they replace the ones kept before
+     */
+    synchronized void put(String key, Entry entry) {
+        remove(key);
+        mEntries.put(key, entry);
+        mRows += entry.mEarthquakes.size();
+        trimToRows(mMaxRows);
+    }
+
+    /**
+     * forget the pages of a query (i.e. the user asked to refresh it)
+     */
+    synchronized void remove(String key) {
+        Entry removed = mEntries.remove(key);
+        if (removed != null) {
+            mRows -= removed.mEarthquakes.size();
+        }
+    }
+
+    /**
+     * @return the rows of every entry
+     */
+    public synchronized int getRowCount() {
+        return mRows;
+    }
+
+    /**
+     * drop the least recently used entries until there are at most that many rows
+     * (the last entry is kept while one is enough to go over)
+     */
+    public synchronized void trimToRows(int maxRows) {
+        Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+        while (mRows > maxRows && iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            if (maxRows > 0 && mEntries.size() == 1) {
+                break;
+            }
+            iterator.remove();
+            mRows -= entry.mEarthquakes.size();
+        }
+    }
+
+    public synchronized void clear() {
+        mEntries.clear();
+        mRows = 0;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_BACKGROUND) {
+            //the process is in the list of the ones killed first, the less it holds the later it's killed
+            Log.d(LOG_TAG, "Dropping the retained results, trim level " + level);
+            clear();
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            //the app is in the foreground but the system is killing others, the oldest queries go
+            trimToRows(mMaxRows / 2);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        clear();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+}
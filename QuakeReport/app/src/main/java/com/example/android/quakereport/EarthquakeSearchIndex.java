@@ -0,0 +1,187 @@
+package com.example.android.quakereport;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * An inverted index of the words of the primary locations (i.e. "yelizovo" and "russia" for
+ * "88km N of Yelizovo, Russia") to search the earthquakes as the user types.
+ *
+ * each word keeps the sorted positions of its earthquakes. the words are sorted too, so the words
+ * starting with what the user typed are one range of the map and a search never looks at
+ * the earthquakes themselves. the words are lower case and without accents ("biobio" finds "Bíobío").
+ *
+ * the index only grows: the rows of each new page are added with {@link #addAll(EarthquakeStore)},
+ * a search gives the positions lower than the size asked so an older (smaller) list can share it.
+ * the methods are synchronized, a search can run on the UI thread while a page is added.
+ */
+public final class EarthquakeSearchIndex {
+
+    //the positions of the earthquakes of each word
+    private final TreeMap<String, Postings> mWords = new TreeMap<>();
+
+    //the number of earthquakes of the store already indexed
+    private int mSize;
+
+    //the last primary location indexed and its words, the same location often comes several times in a row
+    private String mLastLocation;
+    private String[] mLastWords = new String[0];
+
+    /**
+     * the positions of one word, in increasing order
+     */
+    private static final class Postings {
+        int[] mPositions = new int[4];
+        int mSize;
+
+        void add(int position) {
+            //a word twice in the same location is kept once
+            if (mSize > 0 && mPositions[mSize - 1] == position) {
+                return;
+            }
+            if (mSize == mPositions.length) {
+                mPositions = Arrays.copyOf(mPositions, mSize * 2);
+            }
+            mPositions[mSize++] = position;
+        }
+    }
+
+    /**
+     * index the earthquakes of the store that are not indexed yet, the store must start with the
+     * earthquakes already indexed (i.e. the pages loaded before)
+     * @param earthquakes every earthquake of the list
+     */
+    public synchronized void addAll(EarthquakeStore earthquakes) {
+        for (int position = mSize; position < earthquakes.size(); position++) {
+            String location = earthquakes.getPrimaryLocation(position);
+            //the Strings of the store are interned, an equal location is the same String
+            if (location != mLastLocation) {
+                mLastLocation = location;
+                mLastWords = tokenize(location);
+            }
+            for (String word : mLastWords) {
+                Postings postings = mWords.get(word);
+                if (postings == null) {
+                    postings = new Postings();
+                    mWords.put(word, postings);
+                }
+                postings.add(position);
+            }
+        }
+        mSize = Math.max(mSize, earthquakes.size());
+    }
+
+    /**
+     * @return the number of earthquakes indexed
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * find the earthquakes whose primary location has a word starting with each word of the text
+     * (i.e. "ala pen" finds "Alaska Peninsula")
+     * @param text what the user typed
+     * @param size only the positions lower than that are returned (the size of the list shown)
+     * @return the positions in increasing order, every position lower than size if the text has no word
+     */
+    public synchronized int[] search(String text, int size) {
+        size = Math.min(size, mSize);
+        String[] prefixes = tokenize(text);
+        if (prefixes.length == 0) {
+            int[] all = new int[size];
+            for (int i = 0; i < size; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+
+        //one bit per earthquake, the earthquakes matching every word so far
+        long[] matching = null;
+        for (String prefix : prefixes) {
+            long[] words = matchPrefix(prefix, size);
+            if (matching == null) {
+                matching = words;
+            } else {
+                for (int i = 0; i < matching.length; i++) {
+                    matching[i] &= words[i];
+                }
+            }
+        }
+        return toPositions(matching);
+    }
+
+    /**
+     * @return one bit per earthquake lower than size, set if one of its words starts with the prefix
+     */
+    private long[] matchPrefix(String prefix, int size) {
+        long[] bits = new long[(size + 63) >>> 6];
+        //every word starting with the prefix sorts between the prefix and the prefix followed by the last char
+        SortedMap<String, Postings> words = mWords.subMap(prefix, prefix + Character.MAX_VALUE);
+        for (Map.Entry<String, Postings> entry : words.entrySet()) {
+            Postings postings = entry.getValue();
+            for (int i = 0; i < postings.mSize; i++) {
+                int position = postings.mPositions[i];
+                if (position >= size) {
+                    break;
+                }
+                bits[position >>> 6] |= 1L << position;
+            }
+        }
+        return bits;
+    }
+
+    private static int[] toPositions(long[] bits) {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        int[] positions = new int[count];
+        int next = 0;
+        for (int i = 0; i < bits.length; i++) {
+            long word = bits[i];
+            while (word != 0) {
+                positions[next++] = (i << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * split a text in lower case words without accents
+     * @return the words, empty if there is none
+     */
+    static String[] tokenize(String text) {
+        if (text == null || text.isEmpty()) {
+            return new String[0];
+        }
+        //the accents become their own chars (combining marks), they are dropped
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD).toLowerCase(Locale.US);
+
+        String[] words = new String[4];
+        int count = 0;
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= normalized.length(); i++) {
+            char c = i < normalized.length() ? normalized.charAt(i) : ' ';
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                //a mark is part of the word before it, it doesn't end it
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+            } else if (word.length() > 0) {
+                if (count == words.length) {
+                    words = Arrays.copyOf(words, count * 2);
+                }
+                words[count++] = word.toString();
+                word.setLength(0);
+            }
+        }
+        return Arrays.copyOf(words, count);
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.android.quakereport;
+
+import com.example.android.http.CancellationToken;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Coalesces the fetches of the same url running at the same time.
+ *
+ * the first caller of a url does the request and the parsing, the callers that come while it's
+ * in flight wait for it and get the same store (i.e. the loader of a rotated activity and the
+ * sync service asking for the first page together). once the fetch is done the url is forgotten,
+ * the next call makes a new request (the responses are cached by {@link EarthquakeCache}).
+ *
+ * the shared store is read by every caller, it must not be changed.
+ * the request is canceled with the token of the caller doing it, the callers waiting for it
+ * then try again (one of them does the request) instead of getting what was read before the cancel.
+ * a request that failed fails for every caller waiting for it.
+ */
+final class EarthquakeSingleFlight {
+
+    /**
+     * does the request of a url, called once for all the callers waiting for it
+     */
+    interface Fetcher {
+        /**
+         * @param token cancels the request, can be null
+         * @return the earthquakes of the url
+         * @throws IOException if the request failed
+         */
+        EarthquakeStore fetch(String requestUrl, CancellationToken token) throws IOException;
+    }
+
+    /**
+     * a fetch in flight, its callers wait on it until it's finished
+     */
+    private static final class Call {
+        //guarded by the call, with the fields below written before it's set
+        boolean mFinished;
+        EarthquakeStore mResult;
+        //why the request failed, null if it didn't
+        IOException mFailure;
+        //the caller doing the request was canceled, mResult is not the whole response
+        boolean mCanceled;
+
+        /**
+         * wake up every caller waiting for the result
+         */
+        synchronized void finish() {
+            mFinished = true;
+            notifyAll();
+        }
+    }
+
+    private final Fetcher mFetcher;
+
+    //the fetches in flight by url, guarded by itself
+    private final Map<String, Call> mCalls = new HashMap<>();
+
+    EarthquakeSingleFlight(Fetcher fetcher) {
+        mFetcher = fetcher;
+    }
+
+    /**
+     * fetch the url, or wait for the fetch of the same url already in flight
+     * @param requestUrl the url of the request
+     * @return the earthquakes of the url, shared with the other callers so it must not be changed
+     * @throws IOException if the request failed
+     */
+    EarthquakeStore fetch(String requestUrl) throws IOException {
+        return fetch(requestUrl, null);
+    }
+
+    /**
+     * fetch the url, or wait for the fetch of the same url already in flight
+     * @param requestUrl the url of the request
+     * @param token cancels the request or the wait, can be null
+     * @return the earthquakes of the url, shared with the other callers so it must not be changed
+     * @throws IOException if the request failed or the token was canceled
+     */
+    EarthquakeStore fetch(String requestUrl, CancellationToken token) throws IOException {
+        while (true) {
+            Call call;
+            boolean leader = false;
+            synchronized (mCalls) {
+                call = mCalls.get(requestUrl);
+                if (call == null) {
+                    call = new Call();
+                    mCalls.put(requestUrl, call);
+                    leader = true;
+                }
+            }
+
+            if (leader) {
+                return lead(requestUrl, call, token);
+            }
+            if (!await(call, token)) {
+                //we were canceled while waiting, the request goes on for the others
+                throw new InterruptedIOException("canceled");
+            }
+            if (call.mCanceled) {
+                //the caller doing the request left, the request is made again
+                continue;
+            }
+            if (call.mFailure != null) {
+                throw new IOException("the request of " + requestUrl + " failed", call.mFailure);
+            }
+            return call.mResult;
+        }
+    }
+
+    private EarthquakeStore lead(String requestUrl, Call call, CancellationToken token) throws IOException {
+        //the waiting callers get an IOException too if the fetch throws anything else
+        IOException failure = new IOException("the request of " + requestUrl + " was not done");
+        try {
+            call.mResult = mFetcher.fetch(requestUrl, token);
+            failure = null;
+            return call.mResult;
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        } finally {
+            synchronized (mCalls) {
+                mCalls.remove(requestUrl);
+            }
+            call.mFailure = failure;
+            call.mCanceled = token != null && token.isCanceled();
+            call.finish();
+        }
+    }
+
+    /**
+     * @return the number of urls being fetched
+     */
+    int getInFlightCount() {
+        synchronized (mCalls) {
+            return mCalls.size();
+        }
+    }
+
+    /**
+     * wait for the fetch in flight, an interrupt doesn't stop the wait (the request is not ours
+     * to cancel) but the thread stays interrupted. a cancel of the token wakes the wait up right
+     * away through a listener, nothing is polled
+     * @return false if the token was canceled before the fetch was done
+     */
+    private static boolean await(final Call call, CancellationToken token) {
+        CancellationToken.OnCancelListener wakeUp = null;
+        if (token != null) {
+            wakeUp = new CancellationToken.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    synchronized (call) {
+                        call.notifyAll();
+                    }
+                }
+            };
+            //called right away if the token is already canceled
+            token.addOnCancelListener(wakeUp);
+        }
+
+        boolean interrupted = false;
+        try {
+            synchronized (call) {
+                while (!call.mFinished && (token == null || !token.isCanceled())) {
+                    try {
+                        call.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                //the result was written before finish() so it's visible once finished
+                return call.mFinished;
+            }
+        } finally {
+            if (token != null) {
+                token.removeOnCancelListener(wakeUp);
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
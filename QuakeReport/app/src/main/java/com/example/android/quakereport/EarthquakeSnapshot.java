@@ -0,0 +1,200 @@
+package com.example.android.quakereport;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary copy of an {@link EarthquakeStore}, so a cached response can be read back
+ * without parsing the JSON again.
+ *
+ * the file is laid out in columns (all the magnitudes, then all the times...) and each location
+ * or url is written once in a string table, the columns only hold the index in that table:
+ * <pre>
+ * int    magic "QKSN"
+ * int    version
+ * int    earthquake count (n)
+ * int    string count (s)
+ * int    id index[n]
+ * double magnitude[n]
+ * long   time[n]
+ * int    location index[n]
+ * int    url index[n]
+ * double longitude[n]
+ * double latitude[n]
+ * double depth[n]
+ * s times: int byte length, UTF-8 bytes
+ * </pre>
+ * it's read with a memory mapped buffer so the file is not copied in a byte array first.
+ */
+public final class EarthquakeSnapshot {
+
+    private static final int MAGIC = 0x514b534e; // "QKSN"
+
+    //bump it each time the layout change, an older snapshot is then refused by read()
+    private static final int VERSION = 3;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Create a private constructor because no one should ever create a {@link EarthquakeSnapshot} object.
+     */
+    private EarthquakeSnapshot() {
+    }
+
+    /**
+     * write the earthquakes to a file
+     * @param earthquakes the store to write
+     * @param file the snapshot file, replaced if it exists
+     * @throws IOException if the file can't be written
+     */
+    public static void write(EarthquakeStore earthquakes, File file) throws IOException {
+        int count = earthquakes.size();
+
+        //each different String get an index in the string table
+        Map<String, Integer> stringIndexes = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        int[] idIndexes = new int[count];
+        int[] locationIndexes = new int[count];
+        int[] urlIndexes = new int[count];
+        for (int i = 0; i < count; i++) {
+            idIndexes[i] = indexOf(earthquakes.getId(i), stringIndexes, strings);
+            locationIndexes[i] = indexOf(earthquakes.getLocation(i), stringIndexes, strings);
+            urlIndexes[i] = indexOf(earthquakes.getUrl(i), stringIndexes, strings);
+        }
+
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(count);
+            output.writeInt(strings.size());
+
+            for (int i = 0; i < count; i++) {
+                output.writeInt(idIndexes[i]);
+            }
+            for (int i = 0; i < count; i++) {
+                output.writeDouble(earthquakes.getMagnitude(i));
+            }
+            for (int i = 0; i < count; i++) {
+                output.writeLong(earthquakes.getTimeInMilliseconds(i));
+            }
+            for (int i = 0; i < count; i++) {
+                output.writeInt(locationIndexes[i]);
+            }
+            for (int i = 0; i < count; i++) {
+                output.writeInt(urlIndexes[i]);
+            }
+            for (int i = 0; i < count; i++) {
+                output.writeDouble(earthquakes.getLongitude(i));
+            }
+            for (int i = 0; i < count; i++) {
+                output.writeDouble(earthquakes.getLatitude(i));
+            }
+            for (int i = 0; i < count; i++) {
+                output.writeDouble(earthquakes.getDepth(i));
+            }
+
+            for (String string : strings) {
+                byte[] bytes = string.getBytes(UTF_8);
+                output.writeInt(bytes.length);
+                output.write(bytes);
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * read the earthquakes written by {@link #write(EarthquakeStore, File)}
+     * @param file the snapshot file
+     * @return the earthquakes in the order they were written
+     * @throws IOException if the file can't be read, is not a snapshot or has an other version
+     */
+    public static EarthquakeStore read(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException
+                | NegativeArraySizeException e) {
+            throw new IOException("Truncated earthquake snapshot " + file, e);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private static EarthquakeStore read(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not an earthquake snapshot");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported earthquake snapshot version " + version);
+        }
+        int count = buffer.getInt();
+        int stringCount = buffer.getInt();
+
+        //the position of each column, we read them side by side
+        int idIndexes = buffer.position();
+        int magnitudes = idIndexes + count * 4;
+        int times = magnitudes + count * 8;
+        int locationIndexes = times + count * 8;
+        int urlIndexes = locationIndexes + count * 4;
+        int longitudes = urlIndexes + count * 4;
+        int latitudes = longitudes + count * 8;
+        int depths = latitudes + count * 8;
+
+        buffer.position(depths + count * 8);
+        String[] strings = new String[stringCount];
+        for (int i = 0; i < stringCount; i++) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            strings[i] = new String(bytes, UTF_8);
+        }
+
+        EarthquakeStore earthquakes = new EarthquakeStore(count);
+        for (int i = 0; i < count; i++) {
+            earthquakes.onEarthquake(
+                    strings[buffer.getInt(idIndexes + i * 4)],
+                    buffer.getDouble(magnitudes + i * 8),
+                    strings[buffer.getInt(locationIndexes + i * 4)],
+                    buffer.getLong(times + i * 8),
+                    strings[buffer.getInt(urlIndexes + i * 4)],
+                    buffer.getDouble(longitudes + i * 8),
+                    buffer.getDouble(latitudes + i * 8),
+                    buffer.getDouble(depths + i * 8));
+        }
+        earthquakes.compact();
+        return earthquakes;
+    }
+
+    /**
+     * @return the index of the String in the string table, it's added if it's not there yet
+     */
+    private static int indexOf(String string, Map<String, Integer> stringIndexes, List<String> strings) {
+        if (string == null) {
+            string = "";
+        }
+        Integer index = stringIndexes.get(string);
+        if (index == null) {
+            index = strings.size();
+            stringIndexes.put(string, index);
+            strings.add(string);
+        }
+        return index;
+    }
+}
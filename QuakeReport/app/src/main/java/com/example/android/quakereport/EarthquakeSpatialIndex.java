@@ -0,0 +1,416 @@
+package com.example.android.quakereport;
+
+import java.util.Arrays;
+
+/**
+ * A grid index over the epicenters of an {@link EarthquakeStore}, to answer bounding box,
+ * radius and nearest queries without looking at every earthquake.
+ *
+ * the globe is cut in cells of {@link #CELL_DEGREES} degrees, the positions of the earthquakes are
+ * sorted by cell in one int array and each cell only keeps where its run starts (no object per
+ * earthquake or per cell). a query only reads the cells it overlaps.
+ * the earthquakes without coordinates are not indexed.
+ *
+ * the index is immutable, it can be read by any thread. the store must not change after it's built.
+ */
+public final class EarthquakeSpatialIndex {
+
+    //the size of a cell, in degrees of latitude and longitude
+    public static final double CELL_DEGREES = 2;
+
+    //mean radius of the earth (IUGG)
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+
+    private static final int ROWS = (int) Math.ceil(180 / CELL_DEGREES);
+    private static final int COLUMNS = (int) Math.ceil(360 / CELL_DEGREES);
+
+    private final EarthquakeStore mEarthquakes;
+
+    //the positions in the store, sorted by cell
+    private final int[] mPositions;
+
+    //the positions of the cell c are mPositions[mCellStarts[c]] to mPositions[mCellStarts[c + 1] - 1]
+    private final int[] mCellStarts;
+
+    private EarthquakeSpatialIndex(EarthquakeStore earthquakes, int[] positions, int[] cellStarts) {
+        mEarthquakes = earthquakes;
+        mPositions = positions;
+        mCellStarts = cellStarts;
+    }
+
+    /**
+     * index the epicenters of the store, it takes one pass to count and one pass to place
+     * @param earthquakes the store to index, must not change afterward
+     * @return the index
+     */
+    public static EarthquakeSpatialIndex build(EarthquakeStore earthquakes) {
+        int size = earthquakes.size();
+        int[] cells = new int[size];
+        int[] cellStarts = new int[ROWS * COLUMNS + 1];
+
+        int indexed = 0;
+        for (int i = 0; i < size; i++) {
+            double latitude = earthquakes.getLatitude(i);
+            double longitude = earthquakes.getLongitude(i);
+            if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+                cells[i] = -1;
+                continue;
+            }
+            cells[i] = cellOf(row(latitude), column(longitude));
+            cellStarts[cells[i] + 1]++;
+            indexed++;
+        }
+
+        //the counts become the start of each run
+        for (int c = 0; c < ROWS * COLUMNS; c++) {
+            cellStarts[c + 1] += cellStarts[c];
+        }
+
+        int[] positions = new int[indexed];
+        int[] next = Arrays.copyOf(cellStarts, ROWS * COLUMNS);
+        for (int i = 0; i < size; i++) {
+            if (cells[i] >= 0) {
+                positions[next[cells[i]]++] = i;
+            }
+        }
+
+        return new EarthquakeSpatialIndex(earthquakes, positions, cellStarts);
+    }
+
+    /**
+     * @return the indexed store
+     */
+    public EarthquakeStore getEarthquakes() {
+        return mEarthquakes;
+    }
+
+    /**
+     * find the earthquakes in a box, the box crosses the antimeridian if minLongitude > maxLongitude
+     * (i.e. 170 to -170)
+     * @return the positions in the store, in the order of the store
+     */
+    public int[] queryBox(double minLatitude, double maxLatitude, double minLongitude, double maxLongitude) {
+        IntList result = new IntList();
+        if (minLongitude <= maxLongitude) {
+            collectBox(minLatitude, maxLatitude, minLongitude, maxLongitude, result);
+        } else {
+            collectBox(minLatitude, maxLatitude, minLongitude, 180, result);
+            collectBox(minLatitude, maxLatitude, -180, maxLongitude, result);
+        }
+        return result.toSortedArray();
+    }
+
+    /**
+     * find the earthquakes at most at this distance of a point
+     * @param latitude the latitude of the center, in degrees
+     * @param longitude the longitude of the center, in degrees
+     * @param radiusKm the distance, in km
+     * @return the positions in the store, in the order of the store
+     */
+    public int[] queryRadius(double latitude, double longitude, double radiusKm) {
+        IntList result = new IntList();
+        double angle = radiusKm / EARTH_RADIUS_KM;
+        double latitudeDelta = Math.toDegrees(angle);
+        double minLatitude = latitude - latitudeDelta;
+        double maxLatitude = latitude + latitudeDelta;
+
+        //the box around the circle, every longitude when the circle covers a pole
+        double minLongitude = -180;
+        double maxLongitude = 180;
+        if (minLatitude > -90 && maxLatitude < 90 && angle < Math.PI / 2) {
+            double longitudeDelta = Math.toDegrees(Math.asin(Math.sin(angle) / Math.cos(Math.toRadians(latitude))));
+            minLongitude = longitude - longitudeDelta;
+            maxLongitude = longitude + longitudeDelta;
+        }
+
+        IntList candidates = new IntList();
+        if (maxLongitude - minLongitude >= 360) {
+            collectBox(minLatitude, maxLatitude, -180, 180, candidates);
+        } else {
+            //a box going past 180 or -180 is cut in two on the antimeridian
+            collectBox(minLatitude, maxLatitude, Math.max(minLongitude, -180), Math.min(maxLongitude, 180), candidates);
+            if (minLongitude < -180) {
+                collectBox(minLatitude, maxLatitude, minLongitude + 360, 180, candidates);
+            }
+            if (maxLongitude > 180) {
+                collectBox(minLatitude, maxLatitude, -180, maxLongitude - 360, candidates);
+            }
+        }
+
+        for (int i = 0; i < candidates.mSize; i++) {
+            int position = candidates.mValues[i];
+            if (distanceKm(latitude, longitude, mEarthquakes.getLatitude(position),
+                    mEarthquakes.getLongitude(position)) <= radiusKm) {
+                result.add(position);
+            }
+        }
+        return result.toSortedArray();
+    }
+
+    /**
+     * find the k earthquakes closest to a point, the cells are read ring by ring around the point
+     * and the search stops once no cell left can hold a closer earthquake
+     * @param latitude the latitude of the point, in degrees
+     * @param longitude the longitude of the point, in degrees
+     * @param k the number of earthquakes
+     * @return the positions in the store, the closest first
+     */
+    public int[] nearest(double latitude, double longitude, int k) {
+        if (k <= 0 || mPositions.length == 0) {
+            return new int[0];
+        }
+        k = Math.min(k, mPositions.length);
+
+        int centerRow = row(latitude);
+        int centerColumn = column(longitude);
+        boolean[] visited = new boolean[ROWS * COLUMNS];
+        NearestHeap heap = new NearestHeap(k);
+
+        for (int ring = 0; ; ring++) {
+            int firstRow = Math.max(0, centerRow - ring);
+            int lastRow = Math.min(ROWS - 1, centerRow + ring);
+            boolean allColumns = 2 * ring + 1 >= COLUMNS;
+
+            for (int row = firstRow; row <= lastRow; row++) {
+                boolean edgeRow = row == centerRow - ring || row == centerRow + ring;
+                for (int offset = -ring; offset <= ring; offset++) {
+                    //inside the ring only the first and last columns are new
+                    if (!edgeRow && offset != -ring && offset != ring) {
+                        continue;
+                    }
+                    int column = ((centerColumn + offset) % COLUMNS + COLUMNS) % COLUMNS;
+                    int cell = cellOf(row, column);
+                    if (visited[cell]) {
+                        continue;
+                    }
+                    visited[cell] = true;
+                    for (int i = mCellStarts[cell]; i < mCellStarts[cell + 1]; i++) {
+                        int position = mPositions[i];
+                        heap.offer(position, distanceKm(latitude, longitude,
+                                mEarthquakes.getLatitude(position), mEarthquakes.getLongitude(position)));
+                    }
+                }
+            }
+
+            boolean allRows = firstRow == 0 && lastRow == ROWS - 1;
+            if (allRows && allColumns) {
+                break;
+            }
+            if (heap.isFull() && heap.maxDistance() <= minDistanceOutside(latitude, longitude,
+                    firstRow, lastRow, centerColumn, ring, allRows, allColumns)) {
+                break;
+            }
+        }
+
+        return heap.toSortedPositions();
+    }
+
+    /**
+     * @return the great circle distance between 2 points, in km (haversine)
+     */
+    public static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double latitudeDelta = Math.toRadians(latitude2 - latitude1);
+        double longitudeDelta = Math.toRadians(longitude2 - longitude1);
+        double h = haversine(latitudeDelta)
+                + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2)) * haversine(longitudeDelta);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(h)));
+    }
+
+    /**
+     * a lower bound of the distance between the point and any earthquake in a cell not read yet
+     */
+    private static double minDistanceOutside(double latitude, double longitude, int firstRow, int lastRow,
+                                             int centerColumn, int ring, boolean allRows, boolean allColumns) {
+        double bound = Double.MAX_VALUE;
+
+        //a cell in an other row is at least that far in latitude
+        if (!allRows) {
+            double south = firstRow > 0 ? latitude - rowSouth(firstRow) : Double.MAX_VALUE;
+            double north = lastRow < ROWS - 1 ? rowSouth(lastRow + 1) - latitude : Double.MAX_VALUE;
+            bound = EARTH_RADIUS_KM * Math.toRadians(Math.min(south, north));
+        }
+
+        //a cell in an other column of the rows read is at least that far in longitude,
+        //the distance of a longitude gap shrinks toward the poles so we take the highest latitude
+        if (!allColumns) {
+            double west = longitude - columnWest(centerColumn - ring);
+            double east = columnWest(centerColumn + ring + 1) - longitude;
+            double longitudeGap = Math.toRadians(Math.min(west, east));
+            double maxAbsLatitude = Math.max(Math.abs(rowSouth(firstRow)), Math.abs(rowSouth(lastRow + 1)));
+            double cos = Math.cos(Math.toRadians(Math.min(90, maxAbsLatitude)));
+            double h = cos * cos * haversine(longitudeGap);
+            bound = Math.min(bound, 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(h))));
+        }
+
+        return bound;
+    }
+
+    /**
+     * add the positions in the box (longitudes between -180 and 180) to the list
+     */
+    private void collectBox(double minLatitude, double maxLatitude, double minLongitude, double maxLongitude,
+                            IntList result) {
+        if (minLatitude > maxLatitude || minLongitude > maxLongitude) {
+            return;
+        }
+        int firstRow = row(minLatitude);
+        int lastRow = row(maxLatitude);
+        int firstColumn = column(minLongitude);
+        int lastColumn = column(maxLongitude);
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = cellOf(row, column);
+                for (int i = mCellStarts[cell]; i < mCellStarts[cell + 1]; i++) {
+                    int position = mPositions[i];
+                    double latitude = mEarthquakes.getLatitude(position);
+                    double longitude = mEarthquakes.getLongitude(position);
+                    if (latitude >= minLatitude && latitude <= maxLatitude
+                            && longitude >= minLongitude && longitude <= maxLongitude) {
+                        result.add(position);
+                    }
+                }
+            }
+        }
+    }
+
+    private static double haversine(double angle) {
+        double sin = Math.sin(angle / 2);
+        return sin * sin;
+    }
+
+    private static int row(double latitude) {
+        return Math.max(0, Math.min(ROWS - 1, (int) Math.floor((latitude + 90) / CELL_DEGREES)));
+    }
+
+    private static int column(double longitude) {
+        return Math.max(0, Math.min(COLUMNS - 1, (int) Math.floor((longitude + 180) / CELL_DEGREES)));
+    }
+
+    /**
+     * @return the latitude of the south edge of the row (the row can be ROWS for the north edge)
+     */
+    private static double rowSouth(int row) {
+        return row * CELL_DEGREES - 90;
+    }
+
+    /**
+     * @return the longitude of the west edge of the column, not wrapped (i.e. -182 or 184)
+     */
+    private static double columnWest(int column) {
+        return column * CELL_DEGREES - 180;
+    }
+
+    private static int cellOf(int row, int column) {
+        return row * COLUMNS + column;
+    }
+
+    /**
+     * a growable list of int, so the results are not boxed
+     */
+    private static final class IntList {
+        int[] mValues = new int[16];
+        int mSize;
+
+        void add(int value) {
+            if (mSize == mValues.length) {
+                mValues = Arrays.copyOf(mValues, mSize * 2);
+            }
+            mValues[mSize++] = value;
+        }
+
+        int[] toSortedArray() {
+            int[] values = Arrays.copyOf(mValues, mSize);
+            Arrays.sort(values);
+            return values;
+        }
+    }
+
+    /**
+     * the k closest earthquakes found so far, a max-heap on the distance so the farthest
+     * one is replaced when a closer one is found
+     */
+    private static final class NearestHeap {
+        private final int[] mPositions;
+        private final double[] mDistances;
+        private int mSize;
+
+        NearestHeap(int capacity) {
+            mPositions = new int[capacity];
+            mDistances = new double[capacity];
+        }
+
+        boolean isFull() {
+            return mSize == mPositions.length;
+        }
+
+        double maxDistance() {
+            return mDistances[0];
+        }
+
+        void offer(int position, double distance) {
+            if (!isFull()) {
+                mPositions[mSize] = position;
+                mDistances[mSize] = distance;
+                siftUp(mSize++);
+            } else if (distance < mDistances[0]) {
+                mPositions[0] = position;
+                mDistances[0] = distance;
+                siftDown(0);
+            }
+        }
+
+        /**
+         * @return the positions, closest first (the heap is emptied)
+         */
+        int[] toSortedPositions() {
+            int[] positions = new int[mSize];
+            for (int i = mSize - 1; i >= 0; i--) {
+                positions[i] = mPositions[0];
+                mSize--;
+                swap(0, mSize);
+                siftDown(0);
+            }
+            return positions;
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (mDistances[parent] >= mDistances[i]) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int largest = i;
+                int left = 2 * i + 1;
+                int right = left + 1;
+                if (left < mSize && mDistances[left] > mDistances[largest]) {
+                    largest = left;
+                }
+                if (right < mSize && mDistances[right] > mDistances[largest]) {
+                    largest = right;
+                }
+                if (largest == i) {
+                    return;
+                }
+                swap(i, largest);
+                i = largest;
+            }
+        }
+
+        private void swap(int i, int j) {
+            int position = mPositions[i];
+            mPositions[i] = mPositions[j];
+            mPositions[j] = position;
+            double distance = mDistances[i];
+            mDistances[i] = mDistances[j];
+            mDistances[j] = distance;
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package com.example.android.quakereport;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.android.quakereport.EarthquakeActivity.LOG_TAG;
+
+/**
+ * A summary of a list of earthquakes: the count of each magnitude bucket (the buckets of the
+ * magnitude colors), the count of each day and the max and mean magnitude of each region.
+ *
+ * it reads the columns of the {@link EarthquakeStore} directly, no {@link Earthquake} is created.
+ * a large store is cut in ranges summed at the same time on a small pool, then the partial
+ * summaries are merged. a summary is immutable: the rows of a new page are added with
+ * {@link #plus(EarthquakeStore)}, which only reads the new rows and returns a new summary.
+ */
+public final class EarthquakeStats {
+
+    //one bucket for each magnitude floor from 0 to 10+, like the colors of the magnitude circle
+    public static final int MAGNITUDE_BUCKETS = 11;
+
+    public static final long DAY_IN_MILLISECONDS = 24L * 60 * 60 * 1000;
+
+    //a smaller range is not worth the cost of an other thread
+    private static final int MIN_PARALLEL_RANGE = 100000;
+
+    private static final int THREAD_COUNT = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    private static ExecutorService sExecutor;
+
+    /**
+     * the summary of the earthquakes of one region (i.e. "Alaska")
+     */
+    public static final class Region {
+        private final String mName;
+        private int mCount;
+        private double mMagnitudeSum;
+        private double mMaxMagnitude = Double.NEGATIVE_INFINITY;
+
+        private Region(String name) {
+            mName = name;
+        }
+
+        private Region(Region other) {
+            mName = other.mName;
+            mCount = other.mCount;
+            mMagnitudeSum = other.mMagnitudeSum;
+            mMaxMagnitude = other.mMaxMagnitude;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public int getCount() {
+            return mCount;
+        }
+
+        public double getMaxMagnitude() {
+            return mMaxMagnitude;
+        }
+
+        public double getMeanMagnitude() {
+            return mMagnitudeSum / mCount;
+        }
+
+        private void add(double magnitude) {
+            mCount++;
+            mMagnitudeSum += magnitude;
+            mMaxMagnitude = Math.max(mMaxMagnitude, magnitude);
+        }
+
+        private void add(Region other) {
+            mCount += other.mCount;
+            mMagnitudeSum += other.mMagnitudeSum;
+            mMaxMagnitude = Math.max(mMaxMagnitude, other.mMaxMagnitude);
+        }
+    }
+
+    //the number of rows of the store summed
+    private int mSize;
+
+    private final int[] mMagnitudeCounts = new int[MAGNITUDE_BUCKETS];
+    private double mMagnitudeSum;
+    private double mMaxMagnitude = Double.NEGATIVE_INFINITY;
+
+    //the count of each day from mFirstDay (days since the epoch, UTC), mDayCounts can be longer than the range
+    private int mFirstDay;
+    private int[] mDayCounts = new int[0];
+    private int mDayRange;
+
+    private final Map<String, Region> mRegions = new HashMap<>();
+
+    private EarthquakeStats() {
+    }
+
+    /**
+     * @return the summary of no earthquake
+     */
+    public static EarthquakeStats empty() {
+        return new EarthquakeStats();
+    }
+
+    /**
+     * summarize every earthquake of the store, call it on a background thread
+     */
+    public static EarthquakeStats compute(EarthquakeStore earthquakes) {
+        return empty().plus(earthquakes);
+    }
+
+    /**
+     * add the rows of the store that are not summed yet, the store must start with the rows of
+     * this summary (i.e. the pages loaded before), call it on a background thread
+     * @return a new summary, this one is not changed
+     */
+    public EarthquakeStats plus(EarthquakeStore earthquakes) {
+        EarthquakeStats stats = copy();
+        int from = mSize;
+        int to = earthquakes.size();
+        if (to - from < 2 * MIN_PARALLEL_RANGE || THREAD_COUNT == 1) {
+            stats.sum(earthquakes, from, to);
+        } else {
+            for (EarthquakeStats partial : sumInParallel(earthquakes, from, to)) {
+                stats.merge(partial);
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * @return the number of earthquakes summed
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the bucket of a magnitude, its floor from 0 to {@link #MAGNITUDE_BUCKETS} - 1 (10 or more)
+     */
+    public static int magnitudeBucket(double magnitude) {
+        int magnitudeFloor = (int) Math.floor(magnitude);
+        return Math.max(0, Math.min(magnitudeFloor, MAGNITUDE_BUCKETS - 1));
+    }
+
+    /**
+     * @param bucket the bucket returned by {@link #magnitudeBucket(double)}
+     * @return the number of earthquakes in the bucket
+     */
+    public int getMagnitudeCount(int bucket) {
+        return mMagnitudeCounts[bucket];
+    }
+
+    /**
+     * @return the largest magnitude or -Infinity if there is no earthquake
+     */
+    public double getMaxMagnitude() {
+        return mMaxMagnitude;
+    }
+
+    /**
+     * @return the mean magnitude or NaN if there is no earthquake
+     */
+    public double getMeanMagnitude() {
+        return mMagnitudeSum / mSize;
+    }
+
+    /**
+     * @return the first day of the histogram (days since the epoch, UTC)
+     */
+    public int getFirstDay() {
+        return mFirstDay;
+    }
+
+    /**
+     * @return the number of days of the histogram, from the oldest earthquake to the newest
+     */
+    public int getDayCount() {
+        return mDayRange;
+    }
+
+    /**
+     * @param day a day since the epoch (i.e. {@link #dayOf(long)})
+     * @return the number of earthquakes of the day
+     */
+    public int getCountOfDay(int day) {
+        int index = day - mFirstDay;
+        return index >= 0 && index < mDayRange ? mDayCounts[index] : 0;
+    }
+
+    /**
+     * @return the regions by name, the region of a location is its last part (i.e. "Alaska" for
+     * "Anchorage, Alaska")
+     */
+    public Map<String, Region> getRegions() {
+        return Collections.unmodifiableMap(mRegions);
+    }
+
+    /**
+     * @return the day of a time, in days since the epoch (UTC)
+     */
+    public static int dayOf(long timeInMilliseconds) {
+        //rounded down, also before 1970
+        long day = timeInMilliseconds / DAY_IN_MILLISECONDS;
+        if (timeInMilliseconds < 0 && day * DAY_IN_MILLISECONDS != timeInMilliseconds) {
+            day--;
+        }
+        return (int) day;
+    }
+
+    /**
+     * @return the name of the region of a primary location (i.e. "Alaska" for "Anchorage, Alaska")
+     */
+    static String regionOf(String primaryLocation) {
+        int comma = primaryLocation.lastIndexOf(',');
+        return comma >= 0 ? primaryLocation.substring(comma + 1).trim() : primaryLocation.trim();
+    }
+
+    /**
+     * sum the rows of the range in this summary
+     */
+    private void sum(EarthquakeStore earthquakes, int from, int to) {
+        //the primary locations are interned by the store, each one is resolved to its region once
+        Map<String, Region> regionOfLocation = new IdentityHashMap<>();
+
+        for (int i = from; i < to; i++) {
+            double magnitude = earthquakes.getMagnitude(i);
+            mMagnitudeCounts[magnitudeBucket(magnitude)]++;
+            mMagnitudeSum += magnitude;
+            if (magnitude > mMaxMagnitude) {
+                mMaxMagnitude = magnitude;
+            }
+
+            addDay(dayOf(earthquakes.getTimeInMilliseconds(i)), 1);
+
+            String location = earthquakes.getPrimaryLocation(i);
+            Region region = regionOfLocation.get(location);
+            if (region == null) {
+                region = getOrAddRegion(regionOf(location));
+                regionOfLocation.put(location, region);
+            }
+            region.add(magnitude);
+        }
+        mSize += to - from;
+    }
+
+    /**
+     * cut the range in one range per thread and sum them at the same time
+     * @return the summary of each range
+     */
+    private static List<EarthquakeStats> sumInParallel(final EarthquakeStore earthquakes, int from, int to) {
+        int ranges = Math.min(THREAD_COUNT, (to - from) / MIN_PARALLEL_RANGE);
+        int rangeLength = (to - from + ranges - 1) / ranges;
+
+        List<Future<EarthquakeStats>> futures = new ArrayList<>(ranges);
+        for (int start = from; start < to; start += rangeLength) {
+            final int rangeStart = start;
+            final int rangeEnd = Math.min(to, start + rangeLength);
+            futures.add(getExecutor().submit(new Callable<EarthquakeStats>() {
+                @Override
+                public EarthquakeStats call() {
+                    EarthquakeStats partial = new EarthquakeStats();
+                    partial.sum(earthquakes, rangeStart, rangeEnd);
+                    return partial;
+                }
+            }));
+        }
+
+        List<EarthquakeStats> partials = new ArrayList<>(futures.size());
+        try {
+            for (Future<EarthquakeStats> future : futures) {
+                partials.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            for (Future<EarthquakeStats> future : futures) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while summing the earthquakes", e);
+        } catch (ExecutionException e) {
+            Log.e(LOG_TAG, "Problem summing the earthquakes.", e);
+            throw new IllegalStateException(e.getCause());
+        }
+        return partials;
+    }
+
+    /**
+     * add an other summary to this one
+     */
+    private void merge(EarthquakeStats other) {
+        for (int i = 0; i < MAGNITUDE_BUCKETS; i++) {
+            mMagnitudeCounts[i] += other.mMagnitudeCounts[i];
+        }
+        mMagnitudeSum += other.mMagnitudeSum;
+        mMaxMagnitude = Math.max(mMaxMagnitude, other.mMaxMagnitude);
+
+        for (int i = 0; i < other.mDayRange; i++) {
+            if (other.mDayCounts[i] != 0) {
+                addDay(other.mFirstDay + i, other.mDayCounts[i]);
+            }
+        }
+
+        for (Region region : other.mRegions.values()) {
+            getOrAddRegion(region.mName).add(region);
+        }
+        mSize += other.mSize;
+    }
+
+    /**
+     * @return a copy that can be changed without changing this summary
+     */
+    private EarthquakeStats copy() {
+        EarthquakeStats copy = new EarthquakeStats();
+        copy.mSize = mSize;
+        System.arraycopy(mMagnitudeCounts, 0, copy.mMagnitudeCounts, 0, MAGNITUDE_BUCKETS);
+        copy.mMagnitudeSum = mMagnitudeSum;
+        copy.mMaxMagnitude = mMaxMagnitude;
+        copy.mFirstDay = mFirstDay;
+        copy.mDayCounts = Arrays.copyOf(mDayCounts, mDayRange);
+        copy.mDayRange = mDayRange;
+        for (Region region : mRegions.values()) {
+            copy.mRegions.put(region.mName, new Region(region));
+        }
+        return copy;
+    }
+
+    private Region getOrAddRegion(String name) {
+        Region region = mRegions.get(name);
+        if (region == null) {
+            region = new Region(name);
+            mRegions.put(name, region);
+        }
+        return region;
+    }
+
+    /**
+     * add a count to a day, the histogram grows (doubling) to include it
+     */
+    private void addDay(int day, int count) {
+        if (mDayRange == 0) {
+            if (mDayCounts.length == 0) {
+                mDayCounts = new int[16];
+            }
+            mFirstDay = day;
+            mDayRange = 1;
+        } else if (day < mFirstDay) {
+            //the days are shifted to make room before the first one, the array only grows when
+            //they don't fit (the feeds are the newest first, each day comes before the last one)
+            int shift = mFirstDay - day;
+            int[] counts = mDayCounts;
+            if (mDayRange + shift > mDayCounts.length) {
+                counts = new int[Math.max(mDayCounts.length * 2, mDayRange + shift)];
+            }
+            System.arraycopy(mDayCounts, 0, counts, shift, mDayRange);
+            Arrays.fill(counts, 0, shift, 0);
+            mDayCounts = counts;
+            mFirstDay = day;
+            mDayRange += shift;
+        } else if (day - mFirstDay >= mDayRange) {
+            int range = day - mFirstDay + 1;
+            if (range > mDayCounts.length) {
+                mDayCounts = Arrays.copyOf(mDayCounts, Math.max(mDayCounts.length * 2, range));
+            }
+            mDayRange = range;
+        }
+        mDayCounts[day - mFirstDay] += count;
+    }
+
+    /**
+     * the pool shared by every summary, its threads don't keep the process alive
+     */
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newFixedThreadPool(THREAD_COUNT, new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "EarthquakeStats #" + mCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sExecutor;
+    }
+}
@@ -0,0 +1,418 @@
+package com.example.android.quakereport;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A list of earthquakes kept in columns (one primitive array per field) instead of one
+ * {@link Earthquake} object per event.
+ *
+ * the magnitude, time and coordinates are read with primitive accessors (no boxing) and the location
+ * Strings are interned while the store is filled so the same String is only kept once (the urls
+ * are unique to each event, they are not).
+ * the location is also split once when it's added (i.e. "88km N of " and "Yelizovo, Russia")
+ * so the list doesn't have to split it each time a row is shown.
+ * a {@link Row} gives an object view of one position without allocating a new object for each row.
+ *
+ * a store (and its copies) is filled on one thread at a time (the loader thread), once it's given
+ * to the UI its rows must not be changed
+ * anymore. rows can still be added to a {@link #copy()} of it: the copy shares the arrays and
+ * writes after the last row of the store, so adding a page doesn't copy the rows already loaded.
+ */
+public final class EarthquakeStore implements EarthquakeParser.Callback {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    //this is a seperator for splitting our location String (i.e. "88km N of Yelizovo, Russia")
+    public static final String LOCATION_SEPARATOR = " of ";
+
+    private String[] mIds;
+    private double[] mMagnitudes;
+    private long[] mTimes;
+    private String[] mLocations;
+    private String[] mLocationOffsets;
+    private String[] mPrimaryLocations;
+    private String[] mUrls;
+    private double[] mLongitudes;
+    private double[] mLatitudes;
+    private double[] mDepths;
+    private int mSize;
+
+    //the end of the rows written in the arrays, shared by the stores sharing them (see copy()).
+    //only the store ending there can add rows in place, the others copy the arrays first
+    private Tail mTail = new Tail();
+
+    //the locations already in the store, so an equal String is stored only once.
+    //it's only needed while the store is filled, compact() drops it
+    private Map<String, String> mStrings;
+
+    /**
+     * the end of the rows written in shared arrays
+     */
+    private static final class Tail {
+        int mEnd;
+    }
+
+    /**
+     * A reusable view of one earthquake of the store
+     */
+    public final class Row {
+
+        private int mPosition;
+
+        private Row() {
+        }
+
+        /**
+         * point the row to an other earthquake
+         * @param position the position of the earthquake in the store
+         * @return this row
+         */
+        public Row moveTo(int position) {
+            if (position < 0 || position >= mSize) {
+                throw new IndexOutOfBoundsException("position " + position + " size " + mSize);
+            }
+            mPosition = position;
+            return this;
+        }
+
+        public int getPosition() {
+            return mPosition;
+        }
+
+        public String getId() {
+            return mIds[mPosition];
+        }
+
+        public double getMagnitude() {
+            return mMagnitudes[mPosition];
+        }
+
+        public String getLocation() {
+            return mLocations[mPosition];
+        }
+
+        public String getLocationOffset() {
+            return mLocationOffsets[mPosition];
+        }
+
+        public String getPrimaryLocation() {
+            return mPrimaryLocations[mPosition];
+        }
+
+        public long getTimeInMilliseconds() {
+            return mTimes[mPosition];
+        }
+
+        public String getUrl() {
+            return mUrls[mPosition];
+        }
+
+        public double getLongitude() {
+            return mLongitudes[mPosition];
+        }
+
+        public double getLatitude() {
+            return mLatitudes[mPosition];
+        }
+
+        public double getDepth() {
+            return mDepths[mPosition];
+        }
+    }
+
+    public EarthquakeStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * a store sharing the arrays of an other one, see {@link #copy()}
+     */
+    private EarthquakeStore(EarthquakeStore other) {
+        mIds = other.mIds;
+        mMagnitudes = other.mMagnitudes;
+        mTimes = other.mTimes;
+        mLocations = other.mLocations;
+        mLocationOffsets = other.mLocationOffsets;
+        mPrimaryLocations = other.mPrimaryLocations;
+        mUrls = other.mUrls;
+        mLongitudes = other.mLongitudes;
+        mLatitudes = other.mLatitudes;
+        mDepths = other.mDepths;
+        mSize = other.mSize;
+        mTail = other.mTail;
+    }
+
+    /**
+     * @param capacity the number of earthquakes the store can hold before growing
+     */
+    public EarthquakeStore(int capacity) {
+        capacity = Math.max(capacity, 1);
+        mIds = new String[capacity];
+        mMagnitudes = new double[capacity];
+        mTimes = new long[capacity];
+        mLocations = new String[capacity];
+        mLocationOffsets = new String[capacity];
+        mPrimaryLocations = new String[capacity];
+        mUrls = new String[capacity];
+        mLongitudes = new double[capacity];
+        mLatitudes = new double[capacity];
+        mDepths = new double[capacity];
+    }
+
+    /**
+     * add an earthquake at the end of the store, it's also how the parser fills the store
+     */
+    @Override
+    public void onEarthquake(String id, double magnitude, String location, long timeInMilliseconds, String url,
+                             double longitude, double latitude, double depth) {
+        ensureCapacity(mSize + 1);
+        mIds[mSize] = id != null ? id : "";
+        mMagnitudes[mSize] = magnitude;
+        mTimes[mSize] = timeInMilliseconds;
+        mLocations[mSize] = intern(location);
+        mUrls[mSize] = url != null ? url : "";
+        mLongitudes[mSize] = longitude;
+        mLatitudes[mSize] = latitude;
+        mDepths[mSize] = depth;
+        splitLocation(mSize);
+        mSize++;
+        mTail.mEnd = mSize;
+    }
+
+    /**
+     * add one earthquake of an other store at the end of this one, its Strings (already shared
+     * in the other store) and its split location are copied as they are
+     * @param other the store to copy from
+     * @param position the position of the earthquake in the other store
+     */
+    public void add(EarthquakeStore other, int position) {
+        other.checkPosition(position);
+        ensureCapacity(mSize + 1);
+        mIds[mSize] = other.mIds[position];
+        mMagnitudes[mSize] = other.mMagnitudes[position];
+        mTimes[mSize] = other.mTimes[position];
+        mLocations[mSize] = other.mLocations[position];
+        mLocationOffsets[mSize] = other.mLocationOffsets[position];
+        mPrimaryLocations[mSize] = other.mPrimaryLocations[position];
+        mUrls[mSize] = other.mUrls[position];
+        mLongitudes[mSize] = other.mLongitudes[position];
+        mLatitudes[mSize] = other.mLatitudes[position];
+        mDepths[mSize] = other.mDepths[position];
+        mSize++;
+        mTail.mEnd = mSize;
+    }
+
+    /**
+     * add every earthquake of an other store at the end of this one, its Strings (already shared
+     * in the other store) are copied as they are
+     */
+    public void addAll(EarthquakeStore other) {
+        int count = other.mSize;
+        ensureCapacity(mSize + count);
+        System.arraycopy(other.mIds, 0, mIds, mSize, count);
+        System.arraycopy(other.mMagnitudes, 0, mMagnitudes, mSize, count);
+        System.arraycopy(other.mTimes, 0, mTimes, mSize, count);
+        System.arraycopy(other.mLocations, 0, mLocations, mSize, count);
+        System.arraycopy(other.mLocationOffsets, 0, mLocationOffsets, mSize, count);
+        System.arraycopy(other.mPrimaryLocations, 0, mPrimaryLocations, mSize, count);
+        System.arraycopy(other.mUrls, 0, mUrls, mSize, count);
+        System.arraycopy(other.mLongitudes, 0, mLongitudes, mSize, count);
+        System.arraycopy(other.mLatitudes, 0, mLatitudes, mSize, count);
+        System.arraycopy(other.mDepths, 0, mDepths, mSize, count);
+        mSize += count;
+        mTail.mEnd = mSize;
+    }
+
+    /**
+     * @return a store with the same rows, sharing the arrays of this one. rows added to the copy
+     * are written after the last row of this store without copying the rows already there (this
+     * store doesn't see them), unless rows were already added after them by an other copy: then
+     * the arrays are copied first. the rows of this store are never changed by the copy
+     */
+    public EarthquakeStore copy() {
+        return new EarthquakeStore(this);
+    }
+
+    /**
+     * drop what is only needed while the store is filled (the map sharing the equal locations),
+     * call it once the store is complete (i.e. the whole response is parsed). rows can still be
+     * added after it, their locations are only shared with the ones added after it
+     */
+    public void compact() {
+        mStrings = null;
+    }
+
+    /**
+     * give every earthquake of the store to a callback, in order
+     */
+    public void replay(EarthquakeParser.Callback callback) {
+        for (int i = 0; i < mSize; i++) {
+            callback.onEarthquake(mIds[i], mMagnitudes[i], mLocations[i], mTimes[i], mUrls[i],
+                    mLongitudes[i], mLatitudes[i], mDepths[i]);
+        }
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * @return the USGS id of the earthquake event, unique in the feed
+     */
+    public String getId(int position) {
+        checkPosition(position);
+        return mIds[position];
+    }
+
+    public double getMagnitude(int position) {
+        checkPosition(position);
+        return mMagnitudes[position];
+    }
+
+    public String getLocation(int position) {
+        checkPosition(position);
+        return mLocations[position];
+    }
+
+    /**
+     * @return the location offset (i.e. "88km N of ") or an empty String if the location has none
+     */
+    public String getLocationOffset(int position) {
+        checkPosition(position);
+        return mLocationOffsets[position];
+    }
+
+    /**
+     * @return the location without its offset (i.e. "Yelizovo, Russia")
+     */
+    public String getPrimaryLocation(int position) {
+        checkPosition(position);
+        return mPrimaryLocations[position];
+    }
+
+    public long getTimeInMilliseconds(int position) {
+        checkPosition(position);
+        return mTimes[position];
+    }
+
+    public String getUrl(int position) {
+        checkPosition(position);
+        return mUrls[position];
+    }
+
+    /**
+     * @return the longitude in degrees (-180 to 180) or NaN if the feed didn't give it
+     */
+    public double getLongitude(int position) {
+        checkPosition(position);
+        return mLongitudes[position];
+    }
+
+    /**
+     * @return the latitude in degrees (-90 to 90) or NaN if the feed didn't give it
+     */
+    public double getLatitude(int position) {
+        checkPosition(position);
+        return mLatitudes[position];
+    }
+
+    /**
+     * @return the depth in km or NaN if the feed didn't give it
+     */
+    public double getDepth(int position) {
+        checkPosition(position);
+        return mDepths[position];
+    }
+
+    /**
+     * @return a new {@link Earthquake} object for the position, use a {@link Row} to avoid the allocation
+     */
+    public Earthquake get(int position) {
+        checkPosition(position);
+        return new Earthquake(mIds[position], mMagnitudes[position], mLocations[position], mTimes[position], mUrls[position],
+                mLongitudes[position], mLatitudes[position], mDepths[position]);
+    }
+
+    /**
+     * @return a new reusable view of the store, pointing to the first earthquake
+     */
+    public Row newRow() {
+        return new Row();
+    }
+
+    private void checkPosition(int position) {
+        if (position < 0 || position >= mSize) {
+            throw new IndexOutOfBoundsException("position " + position + " size " + mSize);
+        }
+    }
+
+    /**
+     * split the location at the position in its offset and primary location
+     */
+    private void splitLocation(int position) {
+        String location = mLocations[position];
+        int separator = location.indexOf(LOCATION_SEPARATOR);
+        if (separator >= 0) {
+            int end = separator + LOCATION_SEPARATOR.length();
+            mLocationOffsets[position] = intern(location.substring(0, end));
+            mPrimaryLocations[position] = intern(location.substring(end));
+        } else {
+            mLocationOffsets[position] = "";
+            mPrimaryLocations[position] = location;
+        }
+    }
+
+    private String intern(String string) {
+        if (string == null) {
+            return "";
+        }
+        if (mStrings == null) {
+            mStrings = new HashMap<>();
+        }
+        String interned = mStrings.get(string);
+        if (interned == null) {
+            mStrings.put(string, string);
+            interned = string;
+        }
+        return interned;
+    }
+
+    /**
+     * make room for the rows up to the capacity, the arrays are copied if they are too small or
+     * if they are shared with a store that already wrote after our last row
+     */
+    private void ensureCapacity(int capacity) {
+        boolean ownsTail = mTail.mEnd == mSize;
+        if (capacity <= mMagnitudes.length && ownsTail) {
+            return;
+        }
+        int newCapacity = capacity <= mMagnitudes.length ? mMagnitudes.length : Math.max(capacity, mMagnitudes.length * 2);
+        //the rows after ours belong to an other store, ours are copied in arrays of our own
+        mTail = new Tail();
+        mTail.mEnd = mSize;
+        mIds = Arrays.copyOf(mIds, newCapacity);
+        mMagnitudes = Arrays.copyOf(mMagnitudes, newCapacity);
+        mTimes = Arrays.copyOf(mTimes, newCapacity);
+        mLocations = Arrays.copyOf(mLocations, newCapacity);
+        mLocationOffsets = Arrays.copyOf(mLocationOffsets, newCapacity);
+        mPrimaryLocations = Arrays.copyOf(mPrimaryLocations, newCapacity);
+        mUrls = Arrays.copyOf(mUrls, newCapacity);
+        mLongitudes = Arrays.copyOf(mLongitudes, newCapacity);
+        mLatitudes = Arrays.copyOf(mLatitudes, newCapacity);
+        mDepths = Arrays.copyOf(mDepths, newCapacity);
+        if (!ownsTail) {
+            //don't keep the Strings of the rows of the other store
+            Arrays.fill(mIds, mSize, newCapacity, null);
+            Arrays.fill(mLocations, mSize, newCapacity, null);
+            Arrays.fill(mLocationOffsets, mSize, newCapacity, null);
+            Arrays.fill(mPrimaryLocations, mSize, newCapacity, null);
+            Arrays.fill(mUrls, mSize, newCapacity, null);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static com.example.android.quakereport.EarthquakeActivity.LOG_TAG;
+
+/**
+ * Keeps a local copy of the earthquake feed and brings it up to date with delta fetches.
+ *
+ * the first sync fetches the whole feed, the next ones only ask the server for the events updated
+ * after the newest one we have (USGS updatedafter parameter), so only the new and revised events
+ * travel over the network. they are written in the {@link EarthquakeRepository} where they replace
+ * the stored event with the same id, and the events older than the retention are dropped.
+ * the activity can then show the stored earthquakes right away, before any request.
+ *
+ * the time comes from a {@link Clock} and the events are kept in a {@link LocalCopy}, so the sync
+ * can be driven by a fake clock and a local feed into a copy in memory.
+ */
+public final class EarthquakeSync {
+
+    /**
+     * where the synced events are kept, the {@link EarthquakeRepository} of the app
+     */
+    public interface LocalCopy {
+        /**
+         * add the events, one already stored (same id) is replaced by its new version
+         * @return the number of events written
+         */
+        int insert(EarthquakeStore earthquakes);
+
+        /**
+         * @param time the Unix time of the oldest event to keep
+         * @return the number of events deleted
+         */
+        int deleteOlderThan(long time);
+
+        /**
+         * read the page that follows the last row of the given events, newest first
+         * @param previous the rows already shown, can be empty
+         * @param limit the number of events of the page
+         */
+        EarthquakeStore queryNextPage(EarthquakeStore previous, int limit);
+
+        /**
+         * @return the time of the newest event stored or -1 if there is none
+         */
+        long getNewestTime();
+
+        /**
+         * @return the time of the last sync of the feed (Unix time) or 0 if it was never synced
+         */
+        long getLastSyncTime(String feedUrl);
+
+        void setLastSyncTime(String feedUrl, long time);
+    }
+
+    /**
+     * gives the current time, replace it to control the time of the sync
+     */
+    public interface Clock {
+        /**
+         * @return the current Unix time in milliseconds
+         */
+        long currentTimeMillis();
+    }
+
+    //the clock of the system
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    //the USGS default time range when a query has no starttime
+    public static final long DEFAULT_RETENTION = 30L * 24 * 60 * 60 * 1000; // 30 days
+
+    //where the local copy was kept before the repository, deleted when found
+    private static final String OLD_SNAPSHOT_FILE = "earthquakes.snapshot";
+
+    //the date format of the USGS time parameters (UTC)
+    private static final String DATE_TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSS";
+
+    private static EarthquakeSync sDefault;
+
+    private final LocalCopy mRepository;
+    private final String mRequestUrl;
+    private final Clock mClock;
+    private final long mRetention;
+
+    //counts the syncs that changed the local copy since the process started
+    private volatile int mVersion;
+
+    /**
+     * @param repository where the local copy is kept
+     * @param requestUrl the query to keep in sync, ordered by time and without offset or limit
+     * @param clock gives the current time
+     * @param retention how long an event is kept after its time, in milliseconds
+     */
+    public EarthquakeSync(LocalCopy repository, String requestUrl, Clock clock, long retention) {
+        mRepository = repository;
+        mRequestUrl = requestUrl;
+        mClock = clock;
+        mRetention = retention;
+    }
+
+    /**
+     * @return the sync of the feed shown by {@link EarthquakeActivity}, shared by the whole app
+     */
+    public static synchronized EarthquakeSync getDefault(Context context) {
+        if (sDefault == null) {
+            File oldSnapshot = new File(context.getApplicationContext().getFilesDir(), OLD_SNAPSHOT_FILE);
+            if (oldSnapshot.exists()) {
+                oldSnapshot.delete();
+            }
+            sDefault = new EarthquakeSync(EarthquakeRepository.getInstance(context),
+                    EarthquakeActivity.USGS_QUERY.toUrl(), SYSTEM_CLOCK, DEFAULT_RETENTION);
+        }
+        return sDefault;
+    }
+
+    /**
+     * @return the repository holding the local copy
+     */
+    public LocalCopy getRepository() {
+        return mRepository;
+    }
+
+    /**
+     * @return the time of the last sync (Unix time) or 0 if there was none
+     */
+    public long getLastSyncTime() {
+        return mRepository.getLastSyncTime(mRequestUrl);
+    }
+
+    /**
+     * @return a number that changes each time a sync adds or revises events, the rows read before
+     * are still the newest ones while it's the same
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * @param interval the time between two syncs, in milliseconds
+     * @return true if the last sync is older than the interval
+     */
+    public boolean isSyncDue(long interval) {
+        return mClock.currentTimeMillis() - getLastSyncTime() >= interval;
+    }
+
+    /**
+     * fetch the events updated since the newest stored one and write them in the repository,
+     * call it on a background thread
+     * @return the number of new or revised events (0 if the request failed)
+     */
+    public synchronized int sync() {
+        long now = mClock.currentTimeMillis();
+
+        int updated = 0;
+        try {
+            EarthquakeStore delta = QueryUtils.fetchEarthquakeData(buildDeltaUrl(mRepository.getNewestTime()));
+            updated = mRepository.insert(delta);
+        } catch (IOException e) {
+            //nothing is written, the next sync asks again from the same newest event
+            Log.e(LOG_TAG, "Problem fetching the earthquakes to sync.", e);
+        }
+        mRepository.deleteOlderThan(now - mRetention);
+        if (updated > 0) {
+            mVersion++;
+        }
+
+        //an empty answer (or a failed request) still counts as a sync, we ask again at the next interval
+        mRepository.setLastSyncTime(mRequestUrl, now);
+        return updated;
+    }
+
+    /**
+     * @param newestTime the time of the newest stored event or -1 if there is none
+     * @return the url of the whole feed if nothing is stored, or else only of the events
+     * updated after the newest stored one
+     */
+    private String buildDeltaUrl(long newestTime) {
+        if (newestTime < 0) {
+            return mRequestUrl;
+        }
+
+        SimpleDateFormat format = new SimpleDateFormat(DATE_TIME_FORMAT, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        //the date has nothing to escape in a query (digits, '-', 'T', ':' and '.')
+        return mRequestUrl + (mRequestUrl.indexOf('?') < 0 ? "?" : "&")
+                + "updatedafter=" + format.format(newestTime);
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.android.quakereport;
+
+import android.app.AlarmManager;
+import android.app.IntentService;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.support.v4.content.LocalBroadcastManager;
+
+/**
+ * Runs the {@link EarthquakeSync} in the background, started by a repeating alarm
+ * so the local copy is up to date when the activity opens.
+ *
+ * the IntentService does the work on its own thread and stops itself when it's done
+ */
+public class EarthquakeSyncService extends IntentService {
+
+    //sent (in the app only) when a sync brought new events, the loader reloads the local copy
+    public static final String ACTION_SYNCED = "com.example.android.quakereport.action.SYNCED";
+
+    //the time between two syncs, the system can shift it to save battery
+    public static final long SYNC_INTERVAL = AlarmManager.INTERVAL_HALF_HOUR;
+
+    public EarthquakeSyncService() {
+        super(EarthquakeSyncService.class.getSimpleName());
+    }
+
+    /**
+     * sync now and then every {@link #SYNC_INTERVAL}, scheduling it again only replace the alarm
+     * @param context any context of the app
+     */
+    public static void schedule(Context context) {
+        Intent intent = new Intent(context, EarthquakeSyncService.class);
+        PendingIntent pendingIntent = PendingIntent.getService(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME,
+                SystemClock.elapsedRealtime(), SYNC_INTERVAL, pendingIntent);
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        EarthquakeSync sync = EarthquakeSync.getDefault(this);
+
+        //the alarm is inexact, a sync already done recently (i.e. just after a restart) is skipped
+        if (!sync.isSyncDue(SYNC_INTERVAL / 2)) {
+            return;
+        }
+
+        //nothing to reload if the feed didn't change since the last sync
+        if (sync.sync() > 0) {
+            LocalBroadcastManager.getInstance(this).sendBroadcast(new Intent(ACTION_SYNCED));
+        }
+    }
+}
@@ -2,19 +2,20 @@ package com.example.android.quakereport;
 
 import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import com.example.android.http.BodyReader;
+import com.example.android.http.CancellationToken;
+import com.example.android.http.HttpClient;
+import com.example.android.http.Metrics;
+import com.example.android.http.RetryPolicy;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.Charset;
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import static android.R.id.input;
 import static com.example.android.quakereport.EarthquakeActivity.LOG_TAG;
@@ -33,25 +34,148 @@ public final class QueryUtils {
     private QueryUtils() {
     }
 
+    //the on-disk cache of the responses, set by the activity
+    private static EarthquakeCache sCache;
 
+    //a failed request is sent again with a backoff, a slow one gets a second copy and the requests
+    //stop for a while once the server failed too many times in a row (see RetryPolicy)
+    private static final HttpClient sHttpClient = new HttpClient.Builder()
+            .setRetryPolicy(new RetryPolicy.Builder().setHedging(true).build())
+            .build();
 
-    public static ArrayList<Earthquake> fetchEarthquakeData(String requestUrl){
+    //the fetches of the same url at the same time share one request and one parse
+    private static final EarthquakeSingleFlight sInFlightFetches = new EarthquakeSingleFlight(
+            new EarthquakeSingleFlight.Fetcher() {
+                @Override
+                public EarthquakeStore fetch(String requestUrl, CancellationToken token) throws IOException {
+                    //here we prepare a store of earthquake to return
+                    EarthquakeStore earthquakes = new EarthquakeStore();
+
+                    //each earthquake is added as soon as the parser reach the end of its feature
+                    fetchEarthquakeData(requestUrl, earthquakes, token);
+                    earthquakes.compact();
+
+                    return earthquakes;
+                }
+            });
+
+
+
+    /**
+     * query the USGS dataset and return the earthquakes
+     * @param requestUrl the url of http String
+     * @return the earthquakes in the order of the feed, the store can be shared with other
+     * callers of the same url so it must not be changed
+     * @throws IOException if the url is malformed, the server can't be reached, doesn't answer 200
+     * or the response is cut or malformed (an empty store is a feed without earthquakes)
+     */
+    public static EarthquakeStore fetchEarthquakeData(String requestUrl) throws IOException {
+        return fetchEarthquakeData(requestUrl, (CancellationToken) null);
+    }
+
+    /**
+     * query the USGS dataset and return the earthquakes, the request stops as soon as the token is canceled
+     * @param requestUrl the url of http String
+     * @param token cancels the request, can be null
+     * @return the earthquakes in the order of the feed, the store can be shared with other
+     * callers of the same url so it must not be changed
+     * @throws IOException if the request failed (see {@link #fetchEarthquakeData(String)})
+     * or the token was canceled
+     */
+    public static EarthquakeStore fetchEarthquakeData(String requestUrl, CancellationToken token)
+            throws IOException {
+        //a fetch of the same url already in flight (i.e. the loader of a rotated activity) is shared
+        return sInFlightFetches.fetch(requestUrl, token);
+    }
+
+    /**
+     * query the USGS dataset and stream each earthquake to the callback while the response is read
+     * @param requestUrl the url of http String
+     * @param callback receives each earthquake as soon as it is parsed
+     * @throws IOException if the request failed, the callback may have received the first earthquakes
+     */
+    public static void fetchEarthquakeData(String requestUrl, EarthquakeParser.Callback callback)
+            throws IOException {
+        fetchEarthquakeData(requestUrl, callback, null);
+    }
+
+    /**
+     * query the USGS dataset and stream each earthquake to the callback while the response is read
+     * @param requestUrl the url of http String
+     * @param callback receives each earthquake as soon as it is parsed
+     * @param token cancels the request, can be null
+     * @throws IOException if the request failed or the token was canceled, the callback may have
+     * received the first earthquakes
+     */
+    public static void fetchEarthquakeData(String requestUrl, EarthquakeParser.Callback callback,
+                                           CancellationToken token) throws IOException {
         //create the url with our own method
         URL url = createUrl(requestUrl);
-        //perform the Http request our own method
-        String jsonResponse = null;
-        try{
+        //perform the Http request our own method, the response is parsed while it's downloaded
+        makeHttpRequest(url, callback, token);
+    }
 
-            jsonResponse = makeHttpRequest(url);
 
-        }catch (IOException e){
-            Log.e(QueryUtils.class.getSimpleName(), "Error closing input stream", e);
+    /**
+     * query the USGS dataset and index the features of the response without parsing them
+     * (see {@link EarthquakeFeatureIndex}). the response is not cached: the cache keeps the parsed
+     * earthquakes, which is the parsing the index is here to avoid
+     * @param requestUrl the url of http String
+     * @return the index of the features
+     * @throws IOException if the url is malformed, the server can't be reached, doesn't answer 200
+     * or the response is cut or malformed
+     */
+    public static EarthquakeFeatureIndex fetchFeatureIndex(String requestUrl) throws IOException {
+        return fetchFeatureIndex(requestUrl, null);
+    }
 
+    /**
+     * same as {@link #fetchFeatureIndex(String)}, the request stops as soon as the token is canceled
+     * @param requestUrl the url of http String
+     * @param token cancels the request, can be null
+     * @return the index of the features
+     * @throws IOException if the request failed (see {@link #fetchFeatureIndex(String)})
+     * or the token was canceled
+     */
+    public static EarthquakeFeatureIndex fetchFeatureIndex(String requestUrl, CancellationToken token)
+            throws IOException {
+        URL url = createUrl(requestUrl);
+        if (url == null) {
+            throw new MalformedURLException("invalid url");
+        }
+        HttpClient.Response response = null;
+        try {
+            response = sHttpClient.get(url, Collections.<String, String>emptyMap(), token);
+            if (response.getCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Error response code: " + response.getCode());
+            }
+            byte[] body = BodyReader.readBytes(response);
+            long parseStart = System.nanoTime();
+            EarthquakeFeatureIndex index = EarthquakeFeatureIndex.build(body);
+            Metrics.getDefault().recordSince(Metrics.PARSE, parseStart);
+            Metrics.getDefault().record(Metrics.FEATURES, index.size());
+            return index;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem retrieving the earthquake JSON results.", e);
+            throw e;
+        } finally {
+            if (response != null) {
+                response.close();
+            }
         }
-        //here we prepare a list of earthquake to return
-        ArrayList<Earthquake> earthquakes = extractEarthquakes(jsonResponse);
+    }
 
-        return earthquakes;
+    /**
+     * add the USGS paging parameters to a request url
+     * @param requestUrl the url of http String without offset and limit
+     * @param loadedCount the number of earthquakes already loaded (the USGS offset start at 1)
+     * @param pageSize the number of earthquakes to return for this page
+     * @return the url of the page
+     */
+    public static String buildPageUrl(String requestUrl, int loadedCount, int pageSize){
+        //the numbers have nothing to escape, like the updatedafter date of EarthquakeSync
+        return requestUrl + (requestUrl.indexOf('?') < 0 ? "?" : "&")
+                + "offset=" + (loadedCount + 1) + "&limit=" + pageSize;
     }
 
 
@@ -74,137 +198,183 @@ public final class QueryUtils {
     }
 
 
+    /**
+     * set the cache used for every request, pass null to stop caching
+     * @param cache the on-disk cache of the USGS responses
+     */
+    public static synchronized void setCache(EarthquakeCache cache){
+        sCache = cache;
+    }
+
+    /**
+     * @return the cache used for every request or null if there is none
+     */
+    public static synchronized EarthquakeCache getCache(){
+        return sCache;
+    }
+
+
     /**
      *
-     * @param url the request url passed in by the {{@link #fetchEarthquakeData(String)}}
-     * @return a string containing the JSON response
-     * @throws IOException we need to handle the InputStream error if any, try/catch inside {{@link #fetchEarthquakeData(String)}}
+     * @param url the request url passed in by the {{@link #fetchEarthquakeData(String, EarthquakeParser.Callback, CancellationToken)}}
+     * @param callback receives each earthquake parsed from the response
+     * @param token disconnects the request when it's canceled, can be null
+     * @throws IOException if the url is null, the server can't be reached, doesn't answer 200 (or 304
+     * for our cached response) or the response is malformed, the caller tells it from an empty feed
      */
-    private static String makeHttpRequest(URL url) throws IOException{
-        String jsonResponse = "";
+    private static void makeHttpRequest(URL url, EarthquakeParser.Callback callback,
+                                        CancellationToken token) throws IOException{
 
-        // If the URL is null, then return early.
+        // If the URL is null, there is nothing to request
         if (url == null) {
-            return jsonResponse;
+            throw new MalformedURLException("invalid url");
+        }
+
+        long now = System.currentTimeMillis();
+        EarthquakeCache cache = getCache();
+        EarthquakeCache.Entry cached = cache != null ? cache.get(url.toString()) : null;
+
+        // a response still in its time to live is used without asking the server at all
+        if (cached != null && cache.isFresh(cached, now)) {
+            if (readFromCache(cached, callback)) {
+                cache.recordHit();
+                return;
+            }
+            cached = null;
         }
 
 
         // REMEMBER TO NOT FORGET THE INTERNET PERMISSION FOR FETCHING DATA AND VERIFY THAT OUR INTERNET WORKS
 
-        // here we consider variable scope to have access inside the try/catch block
-        HttpURLConnection urlConnection = null;
-        InputStream inputStream = null;
+        // ask the server to answer 304 (not modified) if our cached response is still the same
+        Map<String, String> headers = new HashMap<>();
+        if (cached != null) {
+            if (cached.getETag() != null) {
+                headers.put("If-None-Match", cached.getETag());
+            }
+            if (cached.getLastModified() > 0) {
+                headers.put("If-Modified-Since", HttpClient.formatDate(cached.getLastModified()));
+            }
+        }
+
+        // the response is closed but the connection is kept alive for the next page
+        HttpClient.Response response = null;
 
         try {
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setReadTimeout(10000 /* milliseconds */);
-            urlConnection.setConnectTimeout(15000 /* milliseconds */);
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
+            // a cancel closes the socket, the parser then stops with an IOException
+            response = sHttpClient.get(url, headers, token);
 
             // If the request was successful (response code 200),
-            // then read the input stream and parse the response.
-            if (urlConnection.getResponseCode() == 200) {
-                inputStream = urlConnection.getInputStream();
-                jsonResponse = readFromStream(inputStream);
+            // then parse the input stream directly, no String or JSONObject of the whole response is built.
+            int responseCode = response.getCode();
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                cache.recordRevalidate();
+                cache.revalidated(cached, now);
+                if (!readFromCache(cached, callback)) {
+                    throw new IOException("the cached response of " + url + " can't be read");
+                }
+            } else if (responseCode == HttpURLConnection.HTTP_OK) {
+                // the body is parsed as it's read, this time includes the download of the rest of it
+                long parseStart = System.nanoTime();
+                int count;
+                if (cache == null) {
+                    count = EarthquakeParser.parse(response.getBody(), callback);
+                } else {
+                    cache.recordMiss();
+                    count = parseIntoCache(cache, url, response, callback, now);
+                }
+                Metrics.getDefault().recordSince(Metrics.PARSE, parseStart);
+                Metrics.getDefault().record(Metrics.FEATURES, count);
             } else {
-                Log.e(LOG_TAG, "Error response code: " + urlConnection.getResponseCode());
+                throw new IOException("Error response code: " + responseCode);
             }
         } catch (IOException e) {
+            // the parser throws an IOException on a malformed response too
             Log.e(LOG_TAG, "Problem retrieving the earthquake JSON results.", e);
+            throw e;
         } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-            if (inputStream != null) {
-                inputStream.close();
+            if (response != null) {
+                // closing records the bytes on the wire and decoded in the http histograms of the
+                // metrics, what the compression saved is in their export
+                response.close();
             }
         }
-        return jsonResponse;
     }
 
-
     /**
-     *
-     * @param inputStream takes the inputStream given by the server (request url)
-     * @return build and return the String containing the server response
-     * @throws IOException handle the InputStream error if any, try/catch inside {{@link #makeHttpRequest(URL)}}
+     * give the earthquakes of a cached response to the callback, they are read back from
+     * the snapshot on disk only if the ones read before were collected (no JSON is parsed)
+     * @return false if the snapshot can't be read
      */
-    private static String readFromStream(InputStream inputStream) throws IOException {
-        StringBuilder output = new StringBuilder();
-        if (inputStream != null) {
-            InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
-            BufferedReader reader = new BufferedReader(inputStreamReader);
-            String line = reader.readLine();
-            while (line != null) {
-                output.append(line);
-                line = reader.readLine();
+    private static boolean readFromCache(EarthquakeCache.Entry cached, EarthquakeParser.Callback callback) {
+        EarthquakeStore earthquakes = cached.getEarthquakes();
+        if (earthquakes == null) {
+            try {
+                earthquakes = EarthquakeSnapshot.read(cached.getBodyFile());
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem reading the cached earthquake snapshot.", e);
+                return false;
             }
+            cached.setEarthquakes(earthquakes);
         }
-        return output.toString();
-    }
-
-
-
 
+        earthquakes.replay(callback);
+        return true;
+    }
 
     /**
-     * Return a list of {@link Earthquake} objects that has been built up from
-     * parsing a JSON response.
+     * parse the response and store a snapshot of the earthquakes in the cache
+     * so the next time it's used the JSON doesn't need to be parsed again
+     * @param url the url of the request, the entry is stored under it (not under the url the
+     *            response was redirected to) so the next request of the same url finds it
+     * @return the number of earthquakes parsed
      */
-    private static ArrayList<Earthquake> extractEarthquakes(String earthquakeJSON) {
-
-        // Create an empty ArrayList that we can start adding earthquakes from the JSON key values
-        ArrayList<Earthquake> earthquakes = new ArrayList<>();
-
-        // Try to parse the JSON response from the USGS_REQUEST_URL if there's a problem with the way the JSON
-        // is formatted, a JSONException exception object will be thrown.
-        // Catch the exception so the app doesn't crash, and print the error message to the logs.
+    private static int parseIntoCache(EarthquakeCache cache, URL url, HttpClient.Response response,
+                                       EarthquakeParser.Callback callback, long now) throws IOException {
+        CollectingCallback collector = new CollectingCallback(callback);
+        EarthquakeParser.parse(response.getBody(), collector);
+        collector.mEarthquakes.compact();
+
+        File snapshot = cache.newBodyFile();
+        boolean stored = false;
         try {
+            EarthquakeSnapshot.write(collector.mEarthquakes, snapshot);
+
+            EarthquakeCache.Entry entry = cache.put(url.toString(), snapshot,
+                    response.getHeader("ETag"),
+                    response.getHeaderDate("Last-Modified", 0), now);
+            if (entry != null) {
+                entry.setEarthquakes(collector.mEarthquakes);
+                stored = true;
+            }
+        } finally {
+            if (!stored) {
+                snapshot.delete();
+            }
+        }
+        return collector.mEarthquakes.size();
+    }
 
-            // build up a list of Earthquake objects with the corresponding data.
-            // the baseJsonResponse is actually a JSONObject
-            JSONObject baseJsonResponse = new JSONObject(earthquakeJSON);
-
-            // here we extract the array in the JSON key value "features"
-            JSONArray earthquakeArray = baseJsonResponse.getJSONArray("features");
-
-            // here we loop into the array getting the fields we need for the earthquake data
-            for(int i = 0;i < earthquakeArray.length();i++){
-
-                //since the array contains Object of the same type we get each one of them
-                JSONObject currentEarthquake = earthquakeArray.getJSONObject(i);
-
-                // Extract the value for the key called "properties" in a JSONObject
-                JSONObject properties = currentEarthquake.getJSONObject("properties");
-
-                // Extract the value for the key called "mag" in a double
-                Double magnitude = properties.getDouble("mag");
-
-                // Extract the value for the key called "place" in a String
-                String place = properties.getString("place");
-
-                // Extract the value for the key called "time" in a long data type
-                long time = properties.getLong("time");
+    /**
+     * forward each earthquake to an other callback (if any) and keep them in a store
+     */
+    private static final class CollectingCallback implements EarthquakeParser.Callback {
 
-                // Extract the value for the key called "url" in a String
-                String url = properties.getString("url");
+        private final EarthquakeParser.Callback mCallback;
+        private final EarthquakeStore mEarthquakes = new EarthquakeStore();
 
+        CollectingCallback(EarthquakeParser.Callback callback) {
+            mCallback = callback;
+        }
 
-                // add a new {@link Earthquake} object with the magnitude, location, time,
-                // and url from the JSON response.
-                earthquakes.add(new Earthquake(magnitude,place,time,url));
+        @Override
+        public void onEarthquake(String id, double magnitude, String location, long timeInMilliseconds, String url,
+                                 double longitude, double latitude, double depth) {
+            mEarthquakes.onEarthquake(id, magnitude, location, timeInMilliseconds, url, longitude, latitude, depth);
+            if (mCallback != null) {
+                mCallback.onEarthquake(id, magnitude, location, timeInMilliseconds, url, longitude, latitude, depth);
             }
-
-        } catch (JSONException e) {
-            // If an error is thrown when executing any of the above statements in the "try" block,
-            // catch the exception here, so the app doesn't crash. Print a log message
-            // with the message from the exception.
-            Log.e("QueryUtils", "Problem parsing the earthquake JSON results", e);
         }
-
-        // Return the list of earthquakes
-        return earthquakes;
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,240 @@
+package com.example.android.quakereport;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Times a piece of work for the benchmarks of the tests: a few runs to warm the JIT up, then the
+ * median of the measured runs and the bytes one run allocates (on a HotSpot JVM, -1 elsewhere).
+ * the results are printed so a run of the tests shows them next to each other.
+ *
+ * it's a micro benchmark on the JVM of the development machine, not on a device: compare the
+ * before and after of the same run, not the numbers of two machines.
+ * the data is made up but shaped like the USGS feed ({@link #usgsFeed(int)}, {@link #store(int)}).
+ *
+ * the benchmark classes are in the {@link Timed} category: they take minutes and their numbers
+ * depend on the machine, so they only print them and only run with -Pbenchmarks
+ * (./gradlew testDebugUnitTest -Pbenchmarks). the unit tests check the same code on small data.
+ */
+final class Benchmark {
+
+    //the newest event of the made up data, the next ones are a minute apart
+    static final long NEWEST_TIME = 1500000000000L;
+
+    //the regions of the made up events, with and without an offset
+    private static final String[] REGIONS = {
+            "Yelizovo, Russia", "Ridgecrest, CA", "Anchorage, Alaska", "Suva, Fiji", "Tonga",
+            "Valparaiso, Chile", "Hualien City, Taiwan", "Ishinomaki, Japan", "Kermadec Islands region",
+            "Mid-Atlantic Ridge", "Pahala, Hawaii", "Lima, Peru", "Sumatra, Indonesia", "Crete, Greece",
+            "Reykjanes Ridge", "Kathmandu, Nepal", "Christchurch, New Zealand", "Oaxaca, Mexico"};
+
+    /**
+     * the JUnit category of the benchmark classes, left out of the test task (see build.gradle)
+     */
+    interface Timed {
+    }
+
+    /**
+     * the work to time, its result is kept so the JIT can't drop the work as useless
+     */
+    interface Work {
+        Object run() throws Exception;
+    }
+
+    /**
+     * the time and the allocations of one run of a work
+     */
+    static final class Result {
+        final String mName;
+        final long mNanos;
+        final long mBytes;
+
+        Result(String name, long nanos, long bytes) {
+            mName = name;
+            mNanos = nanos;
+            mBytes = bytes;
+        }
+
+        double getMillis() {
+            return mNanos / 1000000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-48s %10.3f ms %14s", mName, getMillis(),
+                    mBytes >= 0 ? mBytes + " B" : "n/a");
+        }
+    }
+
+    //the results are summed here so no work is dead code
+    private static volatile int sSink;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link Benchmark} object.
+     */
+    private Benchmark() {
+    }
+
+    /**
+     * @param name what is measured, printed with the result
+     * @param warmUps the runs before the measured ones
+     * @param runs the measured runs
+     * @return the median time and the allocations of the measured runs
+     */
+    static Result measure(String name, int warmUps, int runs, Work work) throws Exception {
+        for (int i = 0; i < warmUps; i++) {
+            consume(work.run());
+        }
+        long[] nanos = new long[runs];
+        long[] bytes = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            Object result = work.run();
+            nanos[i] = System.nanoTime() - start;
+            long allocatedAfter = allocatedBytes();
+            bytes[i] = allocatedBefore >= 0 ? allocatedAfter - allocatedBefore : -1;
+            consume(result);
+        }
+        Arrays.sort(nanos);
+        Arrays.sort(bytes);
+        Result result = new Result(name, nanos[runs / 2], bytes[runs / 2]);
+        System.out.println(result);
+        return result;
+    }
+
+    /**
+     * print how much faster and smaller the second result is
+     */
+    static void compare(Result before, Result after) {
+        String allocations = before.mBytes > 0 && after.mBytes >= 0
+                ? String.format(Locale.US, ", %.1fx fewer bytes", (double) before.mBytes / Math.max(1, after.mBytes))
+                : "";
+        System.out.println(String.format(Locale.US, "%s -> %s: %.1fx faster%s", before.mName, after.mName,
+                (double) before.mNanos / Math.max(1, after.mNanos), allocations));
+    }
+
+    /**
+     * @return the bytes of heap still held by the result of the work, after a full collection
+     */
+    static long retainedBytes(String name, Work work) throws Exception {
+        long before = usedHeap();
+        Object result = work.run();
+        long retained = usedHeap() - before;
+        consume(result);
+        System.out.println(String.format(Locale.US, "%-48s %14s retained", name, retained + " B"));
+        return retained;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        //a few collections so the finalizers and the weak references are done too
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void consume(Object result) {
+        sSink += result != null ? System.identityHashCode(result) : 0;
+    }
+
+    /**
+     * @return the bytes allocated by this thread so far, -1 if the JVM doesn't count them
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * @return the location of a made up event (i.e. "12km N of Suva, Fiji")
+     */
+    static String location(int i) {
+        String region = REGIONS[i % REGIONS.length];
+        if (i % 5 == 0) {
+            return region;
+        }
+        return (i % 97) + "km " + "NSEW".charAt(i % 4) + " of " + region;
+    }
+
+    /**
+     * @return the magnitude of a made up event, from 2.5 to 8.4
+     */
+    static double magnitude(int i) {
+        return 2.5 + (i * 7 % 60) / 10.0;
+    }
+
+    /**
+     * @return a GeoJSON feed of made up events with every property of the USGS feed (most of them
+     * are not read by the app, a parser has to skip them), one feature per line
+     */
+    static byte[] usgsFeed(int count) {
+        StringBuilder feed = new StringBuilder(count * 1100 + 512);
+        feed.append("{\"type\":\"FeatureCollection\",\"metadata\":{\"generated\":1500000000000,"
+                + "\"url\":\"https://earthquake.usgs.gov/fdsnws/event/1/query\",\"title\":\"USGS Earthquakes\","
+                + "\"status\":200,\"api\":\"1.5.8\",\"count\":").append(count).append("},\"features\":[\n");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                feed.append(",\n");
+            }
+            String id = "us" + (20000000 + i);
+            double magnitude = magnitude(i);
+            String location = location(i);
+            feed.append("{\"type\":\"Feature\",\"properties\":{\"mag\":").append(magnitude)
+                    .append(",\"place\":\"").append(location)
+                    .append("\",\"time\":").append(NEWEST_TIME - i * 60000L)
+                    .append(",\"updated\":").append(NEWEST_TIME + 3600000L)
+                    .append(",\"tz\":720,\"url\":\"https://earthquake.usgs.gov/earthquakes/eventpage/").append(id)
+                    .append("\",\"detail\":\"https://earthquake.usgs.gov/fdsnws/event/1/query?eventid=").append(id)
+                    .append("&format=geojson\",\"felt\":").append(i % 13)
+                    .append(",\"cdi\":3.4,\"mmi\":5.82,\"alert\":\"green\",\"status\":\"reviewed\",\"tsunami\":")
+                    .append(i % 2).append(",\"sig\":798,\"net\":\"us\",\"code\":\"").append(20000000 + i)
+                    .append("\",\"ids\":\",at00o1qxho,pt16030050,").append(id)
+                    .append(",\",\"sources\":\",at,pt,us,gcmt,\",\"types\":\",cap,dyfi,finite-fault,"
+                            + "general-text,geoserve,impact-link,losspager,moment-tensor,origin,phase-data,shakemap,\","
+                            + "\"nst\":null,\"dmin\":0.958,\"rms\":1.19,\"gap\":17,\"magType\":\"mww\","
+                            + "\"type\":\"earthquake\",\"title\":\"M ").append(magnitude).append(" - ").append(location)
+                    .append("\"},\"geometry\":{\"type\":\"Point\",\"coordinates\":[")
+                    .append(longitude(i)).append(',').append(latitude(i)).append(",").append(i % 600)
+                    .append("]},\"id\":\"").append(id).append("\"}");
+        }
+        feed.append("\n]}");
+        return feed.toString().getBytes(Charset.forName("UTF-8"));
+    }
+
+    /**
+     * @return a store of made up events, newest first
+     */
+    static EarthquakeStore store(int count) {
+        EarthquakeStore earthquakes = new EarthquakeStore(count);
+        for (int i = 0; i < count; i++) {
+            String id = "us" + (20000000 + i);
+            earthquakes.onEarthquake(id, magnitude(i), location(i), NEWEST_TIME - i * 60000L,
+                    "https://earthquake.usgs.gov/earthquakes/eventpage/" + id, longitude(i), latitude(i), i % 600);
+        }
+        return earthquakes;
+    }
+
+    /**
+     * @return the longitude of a made up event, spread over the whole globe
+     */
+    static double longitude(int i) {
+        return new Random(i).nextDouble() * 360 - 180;
+    }
+
+    /**
+     * @return the latitude of a made up event, spread over the whole globe
+     */
+    static double latitude(int i) {
+        return new Random(~i).nextDouble() * 180 - 90;
+    }
+}
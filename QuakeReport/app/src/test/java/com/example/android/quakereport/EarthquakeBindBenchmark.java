@@ -0,0 +1,198 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+/**
+ * The work a bind of the list does for each row to get its texts and color, for a screen
+ * flung over 5k rows. the view lookups and setText are left out, they need a device.
+ */
+@Category(Benchmark.Timed.class)
+public class EarthquakeBindBenchmark {
+
+    private static final int ROWS = 5000;
+
+    private static final String LOCATION_SEPARATOR = " of ";
+
+    private static final EarthquakeStore EARTHQUAKES = Benchmark.store(ROWS);
+
+    /**
+     * the texts of a row, what the bind hands to the views
+     */
+    private static final class RowTexts {
+        String mMagnitude;
+        String mLocationOffset;
+        String mPrimaryLocation;
+        String mDate;
+        String mTime;
+        int mColor;
+
+        int length() {
+            return mMagnitude.length() + mLocationOffset.length() + mPrimaryLocation.length()
+                    + mDate.length() + mTime.length() + mColor;
+        }
+    }
+
+    /**
+     * getView of EarthquakeAdapter before the ViewHolder: new formatters, a new Date and a split
+     * for every row, the color resource from a switch
+     */
+    private static int bindEveryRowWithNewFormatters(RowTexts texts) {
+        int length = 0;
+        for (int i = 0; i < ROWS; i++) {
+            Double magnitude = EARTHQUAKES.getMagnitude(i);
+            texts.mMagnitude = new DecimalFormat("0.0").format(magnitude);
+
+            String originalLocation = EARTHQUAKES.getLocation(i);
+            if (originalLocation.contains(LOCATION_SEPARATOR)) {
+                String[] stringParts = originalLocation.split(LOCATION_SEPARATOR);
+                texts.mLocationOffset = stringParts[0] + LOCATION_SEPARATOR;
+                texts.mPrimaryLocation = stringParts[1];
+            } else {
+                texts.mLocationOffset = "Near the";
+                texts.mPrimaryLocation = originalLocation;
+            }
+
+            Date dateObject = new Date(EARTHQUAKES.getTimeInMilliseconds(i));
+            texts.mDate = new SimpleDateFormat("LLL dd, yyyy").format(dateObject);
+            texts.mTime = new SimpleDateFormat("h:mm a").format(dateObject);
+
+            texts.mColor = magnitudeColorResourceId(magnitude);
+            length += texts.length();
+        }
+        return length;
+    }
+
+    /**
+     * getView with the ViewHolder: the formatters and the color table made once, the location
+     * split when the event was added to the store
+     */
+    private static int bindEveryRowWithTheFormatter(EarthquakeFormatter formatter, RowTexts texts) {
+        EarthquakeStore.Row row = EARTHQUAKES.newRow();
+        int length = 0;
+        for (int i = 0; i < ROWS; i++) {
+            row.moveTo(i);
+            texts.mMagnitude = formatter.formatMagnitude(row.getMagnitude());
+            texts.mLocationOffset = formatter.formatLocationOffset(row.getLocationOffset());
+            texts.mPrimaryLocation = row.getPrimaryLocation();
+            texts.mDate = formatter.formatDate(row.getTimeInMilliseconds());
+            texts.mTime = formatter.formatTime(row.getTimeInMilliseconds());
+            texts.mColor = formatter.getMagnitudeColor(row.getMagnitude());
+            length += texts.length();
+        }
+        return length;
+    }
+
+    /**
+     * onBindViewHolder with the display model built on the loader thread: only field reads
+     */
+    private static int bindEveryRowFromTheModel(EarthquakeDisplayModel model, RowTexts texts) {
+        int length = 0;
+        for (int i = 0; i < ROWS; i++) {
+            texts.mMagnitude = model.getMagnitudeText(i);
+            texts.mLocationOffset = model.getLocationOffsetText(i);
+            texts.mPrimaryLocation = model.getPrimaryLocationText(i);
+            texts.mDate = model.getDateText(i);
+            texts.mTime = model.getTimeText(i);
+            texts.mColor = model.getMagnitudeColor(i);
+            length += texts.length();
+        }
+        return length;
+    }
+
+    private static int magnitudeColorResourceId(double magnitude) {
+        int magnitudeFloor = (int) Math.floor(magnitude);
+        switch (magnitudeFloor) {
+            case 0:
+            case 1:
+                return 1;
+            case 2:
+                return 2;
+            case 3:
+                return 3;
+            case 4:
+                return 4;
+            case 5:
+                return 5;
+            case 6:
+                return 6;
+            case 7:
+                return 7;
+            case 8:
+                return 8;
+            case 9:
+                return 9;
+            default:
+                return 10;
+        }
+    }
+
+    /**
+     * @return the color table of the formatter with the same values as the switch
+     */
+    private static int[] magnitudeColors() {
+        return new int[]{1, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+    }
+
+    @Test
+    public void bind_5000Rows() throws Exception {
+        final RowTexts texts = new RowTexts();
+        final EarthquakeFormatter formatter = new EarthquakeFormatter(magnitudeColors());
+        assertEquals(bindEveryRowWithNewFormatters(texts), bindEveryRowWithTheFormatter(formatter, texts));
+
+        Benchmark.Result before = Benchmark.measure("bind, new formatters and split", 5, 21, new Benchmark.Work() {
+            @Override
+            public Object run() {
+                return bindEveryRowWithNewFormatters(texts);
+            }
+        });
+        Benchmark.Result after = Benchmark.measure("bind, EarthquakeFormatter", 5, 21, new Benchmark.Work() {
+            @Override
+            public Object run() {
+                return bindEveryRowWithTheFormatter(formatter, texts);
+            }
+        });
+        Benchmark.compare(before, after);
+        System.out.println(String.format("per row: %d B -> %d B", before.mBytes / ROWS, after.mBytes / ROWS));
+    }
+
+    @Test
+    public void bind_5000RowsFromTheDisplayModel() throws Exception {
+        final RowTexts texts = new RowTexts();
+        final EarthquakeFormatter formatter = new EarthquakeFormatter(magnitudeColors());
+        final EarthquakeDisplayModel model = EarthquakeDisplayModel.build(EARTHQUAKES, null, formatter);
+        assertEquals(bindEveryRowWithTheFormatter(formatter, texts), bindEveryRowFromTheModel(model, texts));
+
+        //the time the UI thread spends on the rows
+        Benchmark.Result before = Benchmark.measure("bind, EarthquakeFormatter", 5, 21, new Benchmark.Work() {
+            @Override
+            public Object run() {
+                return bindEveryRowWithTheFormatter(formatter, texts);
+            }
+        });
+        Benchmark.Result after = Benchmark.measure("bind, EarthquakeDisplayModel", 5, 21, new Benchmark.Work() {
+            @Override
+            public Object run() {
+                return bindEveryRowFromTheModel(model, texts);
+            }
+        });
+        Benchmark.compare(before, after);
+
+        //paid once on the loader thread instead
+        Benchmark.measure("EarthquakeDisplayModel.build on the loader", 5, 21, new Benchmark.Work() {
+            @Override
+            public Object run() {
+                return EarthquakeDisplayModel.build(EARTHQUAKES, null, formatter);
+            }
+        });
+
+        //nothing per row, the few hundred bytes are the measuring itself
+        System.out.println(String.format("per row: %d B -> %d B", before.mBytes / ROWS, after.mBytes / ROWS));
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * The rows {@link EarthquakeAdapter.EarthquakeDiffCallback} matches between two lists and the
+ * ones it tells changed, what DiffUtil asks it for each pair of rows.
+ */
+public class EarthquakeDiffCallbackTest {
+
+    private static final EarthquakeFormatter FORMATTER = new EarthquakeFormatter(new int[11]);
+
+    private static EarthquakeAdapter.EarthquakeDiffCallback callback(EarthquakeStore oldEarthquakes,
+                                                                     EarthquakeStore newEarthquakes) {
+        return new EarthquakeAdapter.EarthquakeDiffCallback(
+                EarthquakeDisplayModel.build(oldEarthquakes, null, FORMATTER),
+                EarthquakeDisplayModel.build(newEarthquakes, null, FORMATTER));
+    }
+
+    private static void add(EarthquakeStore earthquakes, String id, double magnitude, String location,
+                            long time, String url) {
+        earthquakes.onEarthquake(id, magnitude, location, time, url, 0, 0, 10);
+    }
+
+    @Test
+    public void areItemsTheSame_matchesTheEventId() {
+        EarthquakeStore oldEarthquakes = new EarthquakeStore();
+        add(oldEarthquakes, "us1", 4.5, "Tonga", 1000L, "https://earthquake.usgs.gov/us1");
+        add(oldEarthquakes, "us2", 5.0, "Fiji", 2000L, "https://earthquake.usgs.gov/us2");
+        EarthquakeStore newEarthquakes = new EarthquakeStore();
+        add(newEarthquakes, "us3", 3.1, "Chile", 3000L, "https://earthquake.usgs.gov/us3");
+        //a revised event keeps its id
+        add(newEarthquakes, "us1", 4.7, "Tonga Islands", 1500L, "https://earthquake.usgs.gov/us1");
+
+        EarthquakeAdapter.EarthquakeDiffCallback callback = callback(oldEarthquakes, newEarthquakes);
+
+        assertEquals(2, callback.getOldListSize());
+        assertEquals(2, callback.getNewListSize());
+        assertTrue(callback.areItemsTheSame(0, 1));
+        assertFalse(callback.areItemsTheSame(0, 0));
+        assertFalse(callback.areItemsTheSame(1, 1));
+    }
+
+    @Test
+    public void areItemsTheSame_matchesTheTimeAndUrlOfAnEventWithoutId() {
+        EarthquakeStore oldEarthquakes = new EarthquakeStore();
+        add(oldEarthquakes, "", 4.5, "Tonga", 1000L, "https://earthquake.usgs.gov/a");
+        add(oldEarthquakes, "", 4.5, "Tonga", 2000L, "https://earthquake.usgs.gov/a");
+        EarthquakeStore newEarthquakes = new EarthquakeStore();
+        add(newEarthquakes, "", 4.6, "Tonga", 1000L, "https://earthquake.usgs.gov/a");
+        add(newEarthquakes, "", 4.5, "Tonga", 2000L, "https://earthquake.usgs.gov/b");
+
+        EarthquakeAdapter.EarthquakeDiffCallback callback = callback(oldEarthquakes, newEarthquakes);
+
+        assertTrue(callback.areItemsTheSame(0, 0));
+        assertFalse(callback.areItemsTheSame(1, 0));
+        assertFalse(callback.areItemsTheSame(1, 1));
+    }
+
+    @Test
+    public void areContentsTheSame_comparesTheShownValues() {
+        EarthquakeStore oldEarthquakes = new EarthquakeStore();
+        add(oldEarthquakes, "us1", 4.5, "Tonga", 1000L, "https://earthquake.usgs.gov/us1");
+        EarthquakeStore newEarthquakes = new EarthquakeStore();
+        add(newEarthquakes, "us1", 4.5, "Tonga", 1000L, "https://earthquake.usgs.gov/us1");
+        add(newEarthquakes, "us1", 4.6, "Tonga", 1000L, "https://earthquake.usgs.gov/us1");
+        add(newEarthquakes, "us1", 4.5, "Tonga", 1001L, "https://earthquake.usgs.gov/us1");
+        add(newEarthquakes, "us1", 4.5, "10km S of Tonga", 1000L, "https://earthquake.usgs.gov/us1");
+
+        EarthquakeAdapter.EarthquakeDiffCallback callback = callback(oldEarthquakes, newEarthquakes);
+
+        assertTrue(callback.areContentsTheSame(0, 0));
+        assertFalse(callback.areContentsTheSame(0, 1));
+        assertFalse(callback.areContentsTheSame(0, 2));
+        assertFalse(callback.areContentsTheSame(0, 3));
+    }
+}
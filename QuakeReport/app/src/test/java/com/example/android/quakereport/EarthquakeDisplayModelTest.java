@@ -0,0 +1,237 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+/**
+ * The texts and colors of the rows, formatted by {@link EarthquakeFormatter} into an
+ * {@link EarthquakeDisplayModel}, against the formatters getView used to make for every row
+ * (the time the UI thread saves is in {@link EarthquakeBindBenchmark}).
+ */
+public class EarthquakeDisplayModelTest {
+
+    private static final int ROWS = 40;
+
+    //a color for each magnitude floor from 0 to 10+, 0 and 1 share the same one
+    private static final int[] COLORS = {1, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+
+    private static void add(EarthquakeStore earthquakes, String id, double magnitude, String location, long time) {
+        earthquakes.onEarthquake(id, magnitude, location, time, "https://earthquake.usgs.gov/" + id, 0, 0, 10);
+    }
+
+    @Test
+    public void formatter_formatsLikeNewFormatters() {
+        EarthquakeFormatter formatter = new EarthquakeFormatter(COLORS);
+        for (int i = 0; i < ROWS; i++) {
+            double magnitude = Benchmark.magnitude(i);
+            long time = Benchmark.NEWEST_TIME - i * 3600000L;
+            Date date = new Date(time);
+
+            assertEquals(new DecimalFormat("0.0").format(magnitude), formatter.formatMagnitude(magnitude));
+            assertEquals(new SimpleDateFormat("LLL dd, yyyy").format(date), formatter.formatDate(time));
+            assertEquals(new SimpleDateFormat("h:mm a").format(date), formatter.formatTime(time));
+        }
+    }
+
+    @Test
+    public void formatter_colorsAMagnitudeByItsFloor() {
+        EarthquakeFormatter formatter = new EarthquakeFormatter(COLORS);
+
+        assertEquals(1, formatter.getMagnitudeColor(0.3));
+        assertEquals(1, formatter.getMagnitudeColor(1.9));
+        assertEquals(2, formatter.getMagnitudeColor(2.0));
+        assertEquals(7, formatter.getMagnitudeColor(7.8));
+        assertEquals(10, formatter.getMagnitudeColor(10.0));
+        assertEquals(10, formatter.getMagnitudeColor(12.5));
+    }
+
+    @Test
+    public void formatter_showsNearTheWithoutAnOffset() {
+        EarthquakeFormatter formatter = new EarthquakeFormatter(COLORS);
+
+        assertEquals("Near the", formatter.formatLocationOffset(""));
+        assertEquals("88km N of ", formatter.formatLocationOffset("88km N of "));
+    }
+
+    @Test
+    public void build_formatsEveryRow() {
+        EarthquakeStore earthquakes = Benchmark.store(ROWS);
+        EarthquakeFormatter formatter = new EarthquakeFormatter(COLORS);
+        EarthquakeDisplayModel model = EarthquakeDisplayModel.build(earthquakes, null, formatter);
+
+        assertEquals(ROWS, model.size());
+        for (int i = 0; i < ROWS; i++) {
+            double magnitude = earthquakes.getMagnitude(i);
+            long time = earthquakes.getTimeInMilliseconds(i);
+            assertEquals(formatter.formatMagnitude(magnitude), model.getMagnitudeText(i));
+            assertEquals(formatter.getMagnitudeColor(magnitude), model.getMagnitudeColor(i));
+            assertEquals(formatter.formatLocationOffset(earthquakes.getLocationOffset(i)), model.getLocationOffsetText(i));
+            assertEquals(earthquakes.getPrimaryLocation(i), model.getPrimaryLocationText(i));
+            assertEquals(formatter.formatDate(time), model.getDateText(i));
+            assertEquals(formatter.formatTime(time), model.getTimeText(i));
+        }
+    }
+
+    @Test
+    public void build_fromThePreviousPageIsTheSameAsAtOnce() {
+        EarthquakeStore all = Benchmark.store(ROWS);
+        EarthquakeStore firstPage = new EarthquakeStore();
+        for (int i = 0; i < ROWS / 2; i++) {
+            firstPage.add(all, i);
+        }
+        EarthquakeStore bothPages = firstPage.copy();
+        for (int i = ROWS / 2; i < ROWS; i++) {
+            bothPages.add(all, i);
+        }
+        EarthquakeFormatter formatter = new EarthquakeFormatter(COLORS);
+
+        EarthquakeDisplayModel atOnce = EarthquakeDisplayModel.build(all, null, formatter);
+        EarthquakeDisplayModel previous = EarthquakeDisplayModel.build(firstPage, null, formatter);
+        EarthquakeDisplayModel paged = EarthquakeDisplayModel.build(bothPages, previous, formatter);
+
+        assertEquals(ROWS / 2, previous.size());
+        assertEquals(atOnce.size(), paged.size());
+        for (int i = 0; i < ROWS; i++) {
+            assertEquals(atOnce.getItemId(i), paged.getItemId(i));
+            assertEquals(atOnce.getMagnitudeText(i), paged.getMagnitudeText(i));
+            assertEquals(atOnce.getMagnitudeColor(i), paged.getMagnitudeColor(i));
+            assertEquals(atOnce.getLocationOffsetText(i), paged.getLocationOffsetText(i));
+            assertEquals(atOnce.getDateText(i), paged.getDateText(i));
+            assertEquals(atOnce.getTimeText(i), paged.getTimeText(i));
+        }
+    }
+
+    @Test
+    public void getItemId_isStableAndDiffersBetweenEvents() {
+        EarthquakeStore earthquakes = new EarthquakeStore();
+        add(earthquakes, "us1000abcd", 4.5, "Tonga", 1000L);
+        add(earthquakes, "us1000abce", 4.5, "Tonga", 1000L);
+        //2 events without id, told apart by their time and url
+        earthquakes.onEarthquake("", 4.5, "Fiji", 1000L, "https://earthquake.usgs.gov/a", 0, 0, 10);
+        earthquakes.onEarthquake("", 4.5, "Fiji", 2000L, "https://earthquake.usgs.gov/a", 0, 0, 10);
+        EarthquakeStore again = new EarthquakeStore();
+        add(again, "us1000abcd", 6.1, "Chile", 5000L);
+        EarthquakeFormatter formatter = new EarthquakeFormatter(COLORS);
+
+        EarthquakeDisplayModel model = EarthquakeDisplayModel.build(earthquakes, null, formatter);
+
+        assertEquals(model.getItemId(0), EarthquakeDisplayModel.build(again, null, formatter).getItemId(0));
+        assertNotEquals(model.getItemId(0), model.getItemId(1));
+        assertNotEquals(model.getItemId(2), model.getItemId(3));
+        assertNotEquals(model.getItemId(0), model.getItemId(2));
+    }
+
+    /**
+     * @return a store of these locations, one event an hour
+     */
+    private static EarthquakeStore store(String... locations) {
+        EarthquakeStore earthquakes = new EarthquakeStore();
+        for (int i = 0; i < locations.length; i++) {
+            add(earthquakes, "us" + i, 4.5, locations[i], Benchmark.NEWEST_TIME - i * 3600000L);
+        }
+        return earthquakes;
+    }
+
+    private static EarthquakeStore plus(EarthquakeStore earthquakes, String... locations) {
+        EarthquakeStore more = earthquakes.copy();
+        for (String location : locations) {
+            add(more, "us" + more.size(), 4.5, location, Benchmark.NEWEST_TIME - more.size() * 3600000L);
+        }
+        return more;
+    }
+
+    @Test
+    public void search_ofTheNextPageAddsItsRowsToTheSearchedPages() {
+        EarthquakeFormatter formatter = new EarthquakeFormatter(COLORS);
+        EarthquakeStore firstPage = store("Southern Alaska", "Fiji region", "Alaska Peninsula");
+        EarthquakeDisplayModel previous = EarthquakeDisplayModel.build(firstPage, null, formatter);
+        assertArrayEquals(new int[]{0, 2}, previous.search("alaska"));
+
+        EarthquakeDisplayModel paged = EarthquakeDisplayModel.build(plus(firstPage, "Tonga", "Central Alaska"),
+                previous, formatter);
+
+        assertArrayEquals(new int[]{0, 2, 4}, paged.search("alaska"));
+        //the index is shared, the previous pages still only find their rows
+        assertArrayEquals(new int[]{0, 2}, previous.search("alaska"));
+    }
+
+    @Test
+    public void search_ofPagesNeverSearchedIndexesEveryRow() {
+        EarthquakeFormatter formatter = new EarthquakeFormatter(COLORS);
+        EarthquakeStore firstPage = store("Southern Alaska", "Fiji region");
+        EarthquakeDisplayModel previous = EarthquakeDisplayModel.build(firstPage, null, formatter);
+        EarthquakeDisplayModel paged = EarthquakeDisplayModel.build(plus(firstPage, "Central Alaska"),
+                previous, formatter);
+
+        assertArrayEquals(new int[]{0, 2}, paged.search("alaska"));
+        assertArrayEquals(new int[]{0}, previous.search("alaska"));
+    }
+
+    @Test
+    public void search_ofTwoModelsOfTheSamePagesFindsTheirOwnRows() {
+        //a load canceled after its page was built, then the same page loaded again with other rows
+        EarthquakeFormatter formatter = new EarthquakeFormatter(COLORS);
+        EarthquakeStore firstPage = store("Southern Alaska", "Fiji region");
+        EarthquakeDisplayModel previous = EarthquakeDisplayModel.build(firstPage, null, formatter);
+        previous.search("fiji");
+        EarthquakeDisplayModel canceled = EarthquakeDisplayModel.build(plus(firstPage, "Tonga"), previous, formatter);
+        EarthquakeDisplayModel loaded = EarthquakeDisplayModel.build(plus(firstPage, "South of the Fiji Islands"),
+                previous, formatter);
+
+        assertArrayEquals(new int[]{2}, canceled.search("tonga"));
+        assertArrayEquals(new int[]{1, 2}, loaded.search("fiji"));
+        assertArrayEquals(new int[0], loaded.search("tonga"));
+    }
+
+    private static void assertSameStats(EarthquakeStats expected, EarthquakeStats actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int bucket = 0; bucket < EarthquakeStats.MAGNITUDE_BUCKETS; bucket++) {
+            assertEquals(expected.getMagnitudeCount(bucket), actual.getMagnitudeCount(bucket));
+        }
+        assertEquals(expected.getFirstDay(), actual.getFirstDay());
+        assertEquals(expected.getDayCount(), actual.getDayCount());
+        assertEquals(expected.getRegions().keySet(), actual.getRegions().keySet());
+        for (String region : expected.getRegions().keySet()) {
+            assertEquals(expected.getRegions().get(region).getCount(), actual.getRegions().get(region).getCount());
+        }
+    }
+
+    @Test
+    public void getStats_ofTheNextPageAddsItsRowsToTheStatsOfThePages() {
+        EarthquakeFormatter formatter = new EarthquakeFormatter(COLORS);
+        EarthquakeStore firstPage = store("Southern Alaska", "Fiji region", "Alaska Peninsula");
+        EarthquakeDisplayModel previous = EarthquakeDisplayModel.build(firstPage, null, formatter);
+        assertEquals(3, previous.getStats().size());
+
+        EarthquakeStore earthquakes = plus(firstPage, "Tonga", "Central Alaska");
+        EarthquakeDisplayModel paged = EarthquakeDisplayModel.build(earthquakes, previous, formatter);
+
+        assertSameStats(EarthquakeStats.compute(earthquakes), paged.getStats());
+        //the stats of the previous pages are not changed
+        assertEquals(3, previous.getStats().size());
+        assertSame(paged.getStats(), paged.getStats());
+    }
+
+    @Test
+    public void getStats_ofPagesNeverAskedSumsEveryRow() {
+        EarthquakeFormatter formatter = new EarthquakeFormatter(COLORS);
+        EarthquakeStore firstPage = store("Southern Alaska", "Fiji region");
+        EarthquakeDisplayModel previous = EarthquakeDisplayModel.build(firstPage, null, formatter);
+        EarthquakeStore earthquakes = plus(firstPage, "Tonga");
+        EarthquakeDisplayModel paged = EarthquakeDisplayModel.build(earthquakes, previous, formatter);
+
+        assertSameStats(EarthquakeStats.compute(earthquakes), paged.getStats());
+        assertSameStats(EarthquakeStats.compute(firstPage), previous.getStats());
+    }
+
+    @Test
+    public void empty_hasNoRow() {
+        assertEquals(0, EarthquakeDisplayModel.empty().size());
+        assertEquals(0, EarthquakeDisplayModel.empty().getStats().size());
+    }
+}
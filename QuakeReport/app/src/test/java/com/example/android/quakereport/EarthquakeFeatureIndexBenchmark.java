@@ -0,0 +1,104 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * The time to the first rows of a query split in time windows: {@link EarthquakeFeatureIndex} finds
+ * the features of the responses and parses only the first page, against the eager way of parsing
+ * every feature of the responses before the first page can be shown.
+ * the responses are already in memory on both sides, the time of the requests is left out.
+ */
+@Category(Benchmark.Timed.class)
+public class EarthquakeFeatureIndexBenchmark {
+
+    //the first page of the loader (EarthquakeActivity.PAGE_SIZE)
+    private static final int PAGE_SIZE = 20;
+
+    //the 30 day windows of a year (EarthquakeQueryPlanner.MAX_WINDOW)
+    private static final int WINDOWS = 13;
+
+    @Test
+    public void firstPage_of13000Features() throws Exception {
+        compare(1000, 5, 9);
+    }
+
+    @Test
+    public void firstPage_of52000Features() throws Exception {
+        compare(4000, 2, 5);
+    }
+
+    /**
+     * @param windowSize the number of features of each window
+     */
+    private static void compare(int windowSize, int warmUps, int runs) throws Exception {
+        final List<byte[]> windows = new ArrayList<>(WINDOWS);
+        long bytes = 0;
+        for (int i = 0; i < WINDOWS; i++) {
+            byte[] window = Benchmark.usgsFeed(windowSize);
+            windows.add(window);
+            bytes += window.length;
+        }
+        System.out.println(windowSize * WINDOWS + " features in " + WINDOWS + " windows, " + bytes / 1024 + " KB");
+
+        //both sides show the same first rows
+        EarthquakeStore eager = parseEveryFeature(windows);
+        EarthquakeStore lazy = parseFirstPage(windows);
+        assertEquals(windowSize * WINDOWS, eager.size());
+        assertEquals(PAGE_SIZE, lazy.size());
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            assertEquals(eager.getId(i), lazy.getId(i));
+            assertEquals(eager.getTimeInMilliseconds(i), lazy.getTimeInMilliseconds(i));
+            assertEquals(eager.getLocation(i), lazy.getLocation(i));
+        }
+
+        Benchmark.Result before = Benchmark.measure("parse every feature, first page", warmUps, runs,
+                new Benchmark.Work() {
+                    @Override
+                    public Object run() throws Exception {
+                        return parseEveryFeature(windows);
+                    }
+                });
+        Benchmark.Result after = Benchmark.measure("EarthquakeFeatureIndex, first page", warmUps, runs,
+                new Benchmark.Work() {
+                    @Override
+                    public Object run() throws Exception {
+                        return parseFirstPage(windows);
+                    }
+                });
+        Benchmark.compare(before, after);
+    }
+
+    /**
+     * the windows parsed one after the other, the loader can only show a row once they all are
+     */
+    private static EarthquakeStore parseEveryFeature(List<byte[]> windows) throws Exception {
+        EarthquakeStore earthquakes = new EarthquakeStore();
+        for (byte[] window : windows) {
+            EarthquakeParser.parse(new ByteArrayInputStream(window), earthquakes);
+        }
+        return earthquakes;
+    }
+
+    /**
+     * what the loader does for the first page of a split query (EarthquakeQueryPlanner.fetchIndex)
+     */
+    private static EarthquakeStore parseFirstPage(List<byte[]> windows) throws Exception {
+        List<EarthquakeFeatureIndex> indexes = new ArrayList<>(windows.size());
+        for (byte[] window : windows) {
+            indexes.add(EarthquakeFeatureIndex.build(window));
+        }
+        EarthquakeFeatureIndex index = EarthquakeFeatureIndex.concat(indexes);
+        EarthquakeStore page = new EarthquakeStore(PAGE_SIZE);
+        for (int position = 0; position < PAGE_SIZE; position++) {
+            index.decode(position, page);
+        }
+        return page;
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Where {@link EarthquakeFeatureIndex} finds the features of a response (and of several responses
+ * put one after the other), and the earthquake decoded at each position.
+ */
+public class EarthquakeFeatureIndexTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static EarthquakeFeatureIndex build(String body) throws IOException {
+        return EarthquakeFeatureIndex.build(body.getBytes(UTF_8));
+    }
+
+    /**
+     * @return the earthquake decoded at this position, in a store of its own
+     */
+    private static EarthquakeStore decode(EarthquakeFeatureIndex index, int position) {
+        EarthquakeStore earthquake = new EarthquakeStore();
+        assertTrue(index.decode(position, earthquake));
+        assertEquals(1, earthquake.size());
+        return earthquake;
+    }
+
+    @Test
+    public void build_findsTheObjectsOfTheFeaturesArray() throws Exception {
+        //a "features" name that is not a key of the root object, braces in strings and an escaped quote
+        String body = "{\"type\":\"FeatureCollection\",\"metadata\":{\"features\":[{\"id\":\"x\"}],"
+                + "\"title\":\"{[\\\"features\\\":[\"},\"features\" : [\n"
+                + LocalServer.feature("us1", 6.5, "Chile {north}", 3000) + ",\n"
+                + LocalServer.feature("us2", 5.5, "Fiji \\\"]}", 2000) + ",\n"
+                + LocalServer.feature("us3", 4.5, "Tonga", 1000)
+                + "],\"bbox\":[-120.5,35.25,8.1,-120.5,35.25,8.1]}";
+
+        EarthquakeFeatureIndex index = build(body);
+
+        assertEquals(3, index.size());
+        assertEquals("us1", decode(index, 0).getId(0));
+        assertEquals("Chile {north}", decode(index, 0).getLocation(0));
+        assertEquals("Fiji \"]}", decode(index, 1).getLocation(0));
+        assertEquals(1000, decode(index, 2).getTimeInMilliseconds(0));
+        assertEquals(4.5, decode(index, 2).getMagnitude(0), 0);
+    }
+
+    @Test
+    public void build_stopsAtTheEndOfTheFeaturesArray() throws Exception {
+        //the rest of the response is not read, even if it's cut
+        EarthquakeFeatureIndex index = build("{\"features\":[" + LocalServer.feature("us1", 6.5, "Chile", 0)
+                + "],\"bbox\":[1,2");
+
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void build_ofAResponseWithoutFeatures() throws Exception {
+        assertEquals(0, build(LocalServer.feed()).size());
+        assertEquals(0, build("{\"type\":\"FeatureCollection\",\"metadata\":{\"count\":0}}").size());
+        assertEquals(0, build("{\"features\":null}").size());
+    }
+
+    @Test(expected = IOException.class)
+    public void build_ofACutResponseFails() throws Exception {
+        String feed = LocalServer.feed(LocalServer.feature("us1", 6.5, "Chile", 0),
+                LocalServer.feature("us2", 5.5, "Fiji", 0));
+        build(feed.substring(0, feed.length() - 20));
+    }
+
+    @Test
+    public void concat_findsEachFeatureInItsResponse() throws Exception {
+        EarthquakeFeatureIndex newest = build(LocalServer.feed(
+                LocalServer.feature("us5", 5, "Fiji", 5000),
+                LocalServer.feature("us4", 5, "Fiji", 4000)));
+        EarthquakeFeatureIndex empty = build(LocalServer.feed());
+        //a response where the features start further in, the offsets are of their own body
+        EarthquakeFeatureIndex oldest = build("{\"metadata\":{\"title\":\"USGS Earthquakes, the oldest window\"},"
+                + "\"features\":[" + LocalServer.feature("us3", 5, "Chile", 3000) + ","
+                + LocalServer.feature("us2", 5, "Chile", 2000) + ","
+                + LocalServer.feature("us1", 5, "Chile", 1000) + "]}");
+
+        EarthquakeFeatureIndex index = EarthquakeFeatureIndex.concat(Arrays.asList(newest, empty, oldest));
+
+        assertEquals(5, index.size());
+        for (int position = 0; position < 5; position++) {
+            EarthquakeStore earthquake = decode(index, position);
+            assertEquals("us" + (5 - position), earthquake.getId(0));
+            assertEquals((5 - position) * 1000L, earthquake.getTimeInMilliseconds(0));
+        }
+        //the indexes it was built from are not changed
+        assertEquals(2, newest.size());
+        assertEquals("us3", decode(oldest, 0).getId(0));
+        assertEquals(0, EarthquakeFeatureIndex.concat(Collections.<EarthquakeFeatureIndex>emptyList()).size());
+    }
+
+    @Test
+    public void decode_ofAFeatureWithoutPropertiesEmitsNothing() throws Exception {
+        EarthquakeFeatureIndex index = build("{\"features\":[{\"type\":\"Feature\",\"properties\":null,"
+                + "\"id\":\"xx\"}," + LocalServer.feature("us1", 6.5, "Chile", 0) + "]}");
+        EarthquakeStore earthquakes = new EarthquakeStore();
+
+        assertEquals(2, index.size());
+        assertFalse(index.decode(0, earthquakes));
+        assertTrue(index.decode(1, earthquakes));
+        assertEquals(1, earthquakes.size());
+    }
+
+    @Test
+    public void decode_outsideOfTheIndexThrows() throws Exception {
+        EarthquakeFeatureIndex index = build(LocalServer.feed(LocalServer.feature("us1", 6.5, "Chile", 0)));
+
+        for (int position : new int[]{-1, 1}) {
+            try {
+                index.decode(position, new EarthquakeStore());
+                fail("decoded " + position);
+            } catch (IndexOutOfBoundsException expected) {
+            }
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.example.android.quakereport;
+
+import com.example.android.http.CancellationToken;
+import com.sun.net.httpserver.HttpExchange;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * The pages of an {@link EarthquakePager}: the offsets asked to a {@link LocalServer}, the features
+ * of a query split in time windows, and when the paging stops or fetches the same page again.
+ */
+public class EarthquakePagerTest {
+
+    private static final int PAGE_SIZE = 20;
+
+    //the events of the feed, newest first
+    private volatile int mEventCount = 45;
+    //the offset answered with a 404 once, 0 for none
+    private volatile int mFailingOffset;
+
+    //the offsets asked by the requests (a hedged request asks twice)
+    private final List<Integer> mOffsets = Collections.synchronizedList(new ArrayList<Integer>());
+
+    private LocalServer mServer;
+    private EarthquakePager mPager;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(int request, HttpExchange exchange) throws IOException {
+                String query = exchange.getRequestURI().getRawQuery();
+                int offset = parameter(query, "offset");
+                int limit = parameter(query, "limit");
+                mOffsets.add(offset);
+                if (offset == mFailingOffset) {
+                    mFailingOffset = 0;
+                    LocalServer.respond(exchange, 404, "");
+                    return;
+                }
+                List<String> features = new ArrayList<>();
+                //USGS counts from 1
+                for (int event = offset - 1; event < Math.min(mEventCount, offset - 1 + limit); event++) {
+                    features.add(feature(event));
+                }
+                LocalServer.respond(exchange, 200, LocalServer.feed(features.toArray(new String[features.size()])));
+            }
+        });
+        //every request goes to the server
+        QueryUtils.setCache(null);
+        mPager = newPager();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    private EarthquakePager newPager() throws IOException {
+        EarthquakePager pager = new EarthquakePager(mServer.url("/query?format=geojson").toString(), null,
+                PAGE_SIZE, null);
+        //the url is not split, there is no Uri on the JVM to plan it with
+        pager.setPlanned(null);
+        return pager;
+    }
+
+    private static int parameter(String query, String name) {
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith(name + "=")) {
+                return Integer.parseInt(parameter.substring(name.length() + 1));
+            }
+        }
+        throw new IllegalArgumentException(name + " is not in " + query);
+    }
+
+    private static String feature(int event) {
+        return LocalServer.feature("us" + event, Benchmark.magnitude(event), Benchmark.location(event),
+                Benchmark.NEWEST_TIME - event * 60000L);
+    }
+
+    /**
+     * fetch the next page after the rows loaded and add its rows to them, like the loader
+     * @return the offsets asked for the page, each once
+     */
+    private List<Integer> fetchPage(EarthquakeStore loaded) {
+        mOffsets.clear();
+        EarthquakePager.Page page = mPager.fetchPage(loaded, new CancellationToken());
+        assertNotNull(page);
+        assertFalse(page.mWhole);
+        if (page.mRows != null) {
+            loaded.addAll(page.mRows);
+        }
+        Set<Integer> offsets = new LinkedHashSet<>(mOffsets);
+        return new ArrayList<>(offsets);
+    }
+
+    private static String[] ids(EarthquakeStore earthquakes) {
+        String[] ids = new String[earthquakes.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = earthquakes.getId(i);
+        }
+        return ids;
+    }
+
+    private static String[] ids(int first, int end) {
+        String[] ids = new String[end - first];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = "us" + (first + i);
+        }
+        return ids;
+    }
+
+    @Test
+    public void fetchPage_asksForTheOffsetAfterTheRowsLoaded() {
+        EarthquakeStore loaded = new EarthquakeStore();
+
+        assertEquals(Collections.singletonList(1), fetchPage(loaded));
+        assertEquals(20, loaded.size());
+        assertTrue(mPager.hasMorePages());
+
+        assertEquals(Collections.singletonList(21), fetchPage(loaded));
+        assertTrue(mPager.hasMorePages());
+
+        //the last page is smaller than the page size
+        assertEquals(Collections.singletonList(41), fetchPage(loaded));
+        assertFalse(mPager.hasMorePages());
+        assertArrayEquals(ids(0, 45), ids(loaded));
+    }
+
+    @Test
+    public void fetchPage_aFullLastPageIsKnownAtTheNextRequest() {
+        mEventCount = 40;
+        EarthquakeStore loaded = new EarthquakeStore();
+        fetchPage(loaded);
+        fetchPage(loaded);
+
+        //the server can't tell the page was the last one
+        assertTrue(mPager.hasMorePages());
+        assertEquals(Collections.singletonList(41), fetchPage(loaded));
+        assertFalse(mPager.hasMorePages());
+        assertArrayEquals(ids(0, 40), ids(loaded));
+    }
+
+    @Test
+    public void fetchPage_aFailedPageIsFetchedAgain() {
+        EarthquakeStore loaded = new EarthquakeStore();
+        fetchPage(loaded);
+        mFailingOffset = 21;
+
+        EarthquakePager.Page failed = mPager.fetchPage(loaded, new CancellationToken());
+
+        assertNull(failed.mRows);
+        assertTrue(mPager.isFailed());
+        //nothing moved
+        assertTrue(mPager.hasMorePages());
+        assertEquals(20, loaded.size());
+
+        assertEquals(Collections.singletonList(21), fetchPage(loaded));
+        assertFalse(mPager.isFailed());
+        assertArrayEquals(ids(0, 40), ids(loaded));
+    }
+
+    @Test
+    public void fetchPage_canceledChangesNothing() {
+        EarthquakeStore loaded = new EarthquakeStore();
+        fetchPage(loaded);
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+
+        assertNull(mPager.fetchPage(loaded, token));
+        assertFalse(mPager.isFailed());
+        assertTrue(mPager.hasMorePages());
+
+        assertEquals(Collections.singletonList(21), fetchPage(loaded));
+        assertArrayEquals(ids(0, 40), ids(loaded));
+    }
+
+    @Test
+    public void restore_continuesWhereTheOtherPagerStopped() throws IOException {
+        EarthquakeStore loaded = new EarthquakeStore();
+        fetchPage(loaded);
+        EarthquakeResultCache.Entry entry = mPager.retain(EarthquakeDisplayModel.empty(), 0);
+
+        mPager = newPager();
+        mPager.restore(entry);
+
+        assertEquals(Collections.singletonList(21), fetchPage(loaded));
+        assertArrayEquals(ids(0, 40), ids(loaded));
+    }
+
+    @Test
+    public void reset_startsAgainFromTheFirstPage() {
+        EarthquakeStore loaded = new EarthquakeStore();
+        fetchPage(loaded);
+        fetchPage(loaded);
+        fetchPage(loaded);
+        assertFalse(mPager.hasMorePages());
+
+        mPager.reset();
+        mPager.setPlanned(null);
+
+        assertTrue(mPager.hasMorePages());
+        assertEquals(Collections.singletonList(1), fetchPage(new EarthquakeStore()));
+    }
+
+    /**
+     * the features of windows of 30 events, the last event of a window is the first one of the next
+     * (an event on their edge), one more event has the time of the edge
+     */
+    private static EarthquakeFeatureIndex windows(int count) throws IOException {
+        List<EarthquakeFeatureIndex> windows = new ArrayList<>();
+        for (int window = 0; window < count; window++) {
+            List<String> features = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                features.add(feature(window * 29 + i));
+            }
+            if (window > 0) {
+                //the other event of that time, only the copy of the edge is left out
+                features.add(1, LocalServer.feature("other" + window, 5, "Fiji",
+                        Benchmark.NEWEST_TIME - window * 29 * 60000L));
+            }
+            windows.add(EarthquakeFeatureIndex.build(LocalServer.feed(features.toArray(new String[features.size()]))
+                    .getBytes(Charset.forName("UTF-8"))));
+        }
+        return EarthquakeFeatureIndex.concat(windows);
+    }
+
+    @Test
+    public void fetchPage_parsesTheNextFeaturesAndSkipsTheEdgeCopies() throws IOException {
+        //a page of 30 ends on the edge event of the first window, the next one starts on its copy
+        EarthquakeStore loaded = new EarthquakeStore();
+        EarthquakePager pager = new EarthquakePager("https://example.com/query", null, 30, null);
+        EarthquakeFeatureIndex index = windows(2);
+        assertEquals(61, index.size());
+        pager.setPlanned(index);
+
+        EarthquakePager.Page first = pager.fetchPage(loaded, new CancellationToken());
+        loaded.addAll(first.mRows);
+        assertArrayEquals(ids(0, 30), ids(loaded));
+        assertTrue(pager.hasMorePages());
+
+        EarthquakePager.Page second = pager.fetchPage(loaded, new CancellationToken());
+        loaded.addAll(second.mRows);
+        assertEquals(29, second.mRows.size());
+        assertEquals("other1", second.mRows.getId(0));
+        assertArrayEquals(ids(30, 58), Arrays.copyOfRange(ids(second.mRows), 1, 29));
+        assertTrue(pager.hasMorePages());
+
+        //the last feature alone
+        EarthquakePager.Page third = pager.fetchPage(loaded, new CancellationToken());
+        assertArrayEquals(new String[]{"us58"}, ids(third.mRows));
+        assertFalse(pager.hasMorePages());
+        assertEquals(0, mOffsets.size());
+    }
+
+    @Test
+    public void fetchPage_ofFeaturesFiltersAndStopsAtTheLimit() throws IOException {
+        //Benchmark.location() gives "Suva, Fiji" to every 18th event, and to the other event of each edge
+        EarthquakeQuery query = new EarthquakeQuery.Builder().setLocationText("fiji").setLimit(5).build();
+        EarthquakePager pager = new EarthquakePager("https://example.com/query", query, 10, null);
+        pager.setPlanned(windows(3));
+        EarthquakeStore loaded = new EarthquakeStore();
+
+        //a page with no match would add no row, the next features are parsed in the same load
+        EarthquakePager.Page first = pager.fetchPage(loaded, new CancellationToken());
+        loaded.addAll(first.mRows);
+        assertArrayEquals(new String[]{"us3"}, ids(loaded));
+        assertTrue(pager.hasMorePages());
+
+        while (pager.hasMorePages()) {
+            loaded.addAll(pager.fetchPage(loaded, new CancellationToken()).mRows);
+        }
+
+        assertArrayEquals(new String[]{"us3", "us21", "other1", "us39", "us57"}, ids(loaded));
+    }
+}
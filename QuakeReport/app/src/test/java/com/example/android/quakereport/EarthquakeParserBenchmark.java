@@ -0,0 +1,98 @@
+package com.example.android.quakereport;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link EarthquakeParser} against the way QueryUtils read a response before it: the whole body
+ * in a String, then a {@link JSONObject} tree, then one {@link Earthquake} per feature.
+ * both sides make the same list of earthquakes so only the parsing differs.
+ */
+@Category(Benchmark.Timed.class)
+public class EarthquakeParserBenchmark {
+
+    @Test
+    public void parse_10000Features() throws Exception {
+        compare(10000, 5, 9);
+    }
+
+    @Test
+    public void parse_100000Features() throws Exception {
+        compare(100000, 1, 3);
+    }
+
+    private static void compare(int count, int warmUps, int runs) throws Exception {
+        final byte[] feed = Benchmark.usgsFeed(count);
+        System.out.println(count + " features, " + feed.length / 1024 + " KB");
+
+        assertEquals(count, parseWithJsonObject(feed).size());
+        assertEquals(count, parseWithStreaming(feed).size());
+
+        Benchmark.Result before = Benchmark.measure("String + JSONObject", warmUps, runs, new Benchmark.Work() {
+            @Override
+            public Object run() throws Exception {
+                return parseWithJsonObject(feed);
+            }
+        });
+        Benchmark.Result after = Benchmark.measure("EarthquakeParser", warmUps, runs, new Benchmark.Work() {
+            @Override
+            public Object run() throws Exception {
+                return parseWithStreaming(feed);
+            }
+        });
+        Benchmark.compare(before, after);
+    }
+
+    private static List<Earthquake> parseWithStreaming(byte[] feed) throws IOException {
+        final List<Earthquake> earthquakes = new ArrayList<>();
+        EarthquakeParser.parse(new ByteArrayInputStream(feed), new EarthquakeParser.Callback() {
+            @Override
+            public void onEarthquake(String id, double magnitude, String location, long timeInMilliseconds,
+                                     String url, double longitude, double latitude, double depth) {
+                earthquakes.add(new Earthquake(id, magnitude, location, timeInMilliseconds, url,
+                        longitude, latitude, depth));
+            }
+        });
+        return earthquakes;
+    }
+
+    /**
+     * readFromStream and extractEarthquakes of QueryUtils before the streaming parser
+     */
+    private static List<Earthquake> parseWithJsonObject(byte[] feed) throws Exception {
+        InputStream inputStream = new ByteArrayInputStream(feed);
+        StringBuilder output = new StringBuilder();
+        InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
+        BufferedReader reader = new BufferedReader(inputStreamReader);
+        String line = reader.readLine();
+        while (line != null) {
+            output.append(line);
+            line = reader.readLine();
+        }
+
+        List<Earthquake> earthquakes = new ArrayList<>();
+        JSONArray features = new JSONObject(output.toString()).getJSONArray("features");
+        for (int i = 0; i < features.length(); i++) {
+            JSONObject feature = features.getJSONObject(i);
+            JSONObject properties = feature.getJSONObject("properties");
+            JSONArray coordinates = feature.getJSONObject("geometry").getJSONArray("coordinates");
+            earthquakes.add(new Earthquake(feature.getString("id"), properties.getDouble("mag"),
+                    properties.getString("place"), properties.getLong("time"), properties.getString("url"),
+                    coordinates.getDouble(0), coordinates.getDouble(1), coordinates.getDouble(2)));
+        }
+        return earthquakes;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link EarthquakeParser} on a small feed with every property of the USGS feed, the properties
+ * the app doesn't read are skipped (the speed against the JSONObject path is in
+ * {@link EarthquakeParserBenchmark}).
+ */
+public class EarthquakeParserTest {
+
+    private static final int COUNT = 50;
+
+    private static List<Earthquake> parse(byte[] feed) throws IOException {
+        final List<Earthquake> earthquakes = new ArrayList<>();
+        int count = EarthquakeParser.parse(new ByteArrayInputStream(feed), new EarthquakeParser.Callback() {
+            @Override
+            public void onEarthquake(String id, double magnitude, String location, long timeInMilliseconds,
+                                     String url, double longitude, double latitude, double depth) {
+                earthquakes.add(new Earthquake(id, magnitude, location, timeInMilliseconds, url,
+                        longitude, latitude, depth));
+            }
+        });
+        assertEquals(earthquakes.size(), count);
+        return earthquakes;
+    }
+
+    @Test
+    public void parse_readsEveryFeatureOfTheFeed() throws Exception {
+        List<Earthquake> earthquakes = parse(Benchmark.usgsFeed(COUNT));
+
+        assertEquals(COUNT, earthquakes.size());
+        for (int i = 0; i < COUNT; i++) {
+            Earthquake earthquake = earthquakes.get(i);
+            String id = "us" + (20000000 + i);
+            assertEquals(id, earthquake.getId());
+            assertEquals(Benchmark.magnitude(i), earthquake.getMagnitude(), 0);
+            assertEquals(Benchmark.location(i), earthquake.getLocation());
+            assertEquals(Benchmark.NEWEST_TIME - i * 60000L, earthquake.getTimeInMilliseconds());
+            assertEquals("https://earthquake.usgs.gov/earthquakes/eventpage/" + id, earthquake.getUrl());
+            assertEquals(Benchmark.longitude(i), earthquake.getLongitude(), 0);
+            assertEquals(Benchmark.latitude(i), earthquake.getLatitude(), 0);
+            assertEquals(i % 600, earthquake.getDepth(), 0);
+        }
+    }
+
+    @Test
+    public void parse_anEmptyFeedHasNoEarthquake() throws Exception {
+        assertEquals(0, parse(Benchmark.usgsFeed(0)).size());
+    }
+}
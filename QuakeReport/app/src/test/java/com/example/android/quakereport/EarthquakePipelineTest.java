@@ -0,0 +1,278 @@
+package com.example.android.quakereport;
+
+import com.example.android.http.CancellationToken;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * The stages of {@link EarthquakePipeline}, with a thread of the test standing for the main thread:
+ * the results published in the order of the jobs, the cancels and the stages that throw.
+ */
+public class EarthquakePipelineTest {
+
+    //the main thread of the pipeline, the jobs are submitted and published on it
+    private ExecutorService mMainThread;
+    private EarthquakePipeline mPipeline;
+
+    //what was published, in the order it was, only written on the main thread
+    private final List<String> mPublished = Collections.synchronizedList(new ArrayList<String>());
+
+    //the exceptions that escaped on a thread of the pools
+    private final List<Throwable> mUncaught = Collections.synchronizedList(new ArrayList<Throwable>());
+    private Thread.UncaughtExceptionHandler mDefaultHandler;
+
+    @Before
+    public void setUp() {
+        mMainThread = Executors.newSingleThreadExecutor();
+        mPipeline = new EarthquakePipeline(mMainThread);
+        mDefaultHandler = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread thread, Throwable throwable) {
+                mUncaught.add(throwable);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        Thread.setDefaultUncaughtExceptionHandler(mDefaultHandler);
+        mMainThread.shutdownNow();
+    }
+
+    /**
+     * a fetch that gives its name once the test releases it, or null when it's canceled first
+     * (or never released, a failed test doesn't hold a thread of the pool for the next ones)
+     */
+    private static final class HeldFetch implements EarthquakePipeline.Fetch<String> {
+        final String mName;
+        final CountDownLatch mRelease = new CountDownLatch(1);
+        final CountDownLatch mStarted = new CountDownLatch(1);
+
+        HeldFetch(String name) {
+            mName = name;
+        }
+
+        @Override
+        public String fetch(CancellationToken token) {
+            mStarted.countDown();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            try {
+                while (!mRelease.await(10, TimeUnit.MILLISECONDS)) {
+                    if (token.isCanceled() || System.nanoTime() > deadline) {
+                        return null;
+                    }
+                }
+            } catch (InterruptedException e) {
+                return null;
+            }
+            return mName;
+        }
+    }
+
+    /**
+     * the index stage of the tests, it records the order the jobs were indexed in
+     */
+    private final List<String> mIndexed = Collections.synchronizedList(new ArrayList<String>());
+
+    private final EarthquakePipeline.Index<String, String> mIndex = new EarthquakePipeline.Index<String, String>() {
+        @Override
+        public String index(String fetched) {
+            mIndexed.add(fetched);
+            return fetched.toUpperCase();
+        }
+    };
+
+    /**
+     * records what is published, and counts it down
+     */
+    private EarthquakePipeline.Publish<String> record(final CountDownLatch done) {
+        return new EarthquakePipeline.Publish<String>() {
+            @Override
+            public void onPublished(String result) {
+                mPublished.add(result);
+                done.countDown();
+            }
+
+            @Override
+            public void onCanceled(String result) {
+                mPublished.add("canceled " + result);
+                done.countDown();
+            }
+
+            @Override
+            public void onFailed(RuntimeException e) {
+                mPublished.add("failed " + e.getMessage());
+                done.countDown();
+            }
+        };
+    }
+
+    /**
+     * submit a job on the main thread, like the loader does
+     */
+    private EarthquakePipeline.Job submit(final EarthquakePipeline.Fetch<String> fetch,
+                                          final EarthquakePipeline.Index<String, String> index,
+                                          final EarthquakePipeline.Publish<String> publish) throws Exception {
+        return mMainThread.submit(new Callable<EarthquakePipeline.Job>() {
+            @Override
+            public EarthquakePipeline.Job call() {
+                return mPipeline.submit(fetch, index, publish);
+            }
+        }).get();
+    }
+
+    /**
+     * wait until the index stage got that many jobs
+     */
+    private void awaitIndexed(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (mIndexed.size() < count) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void submit_publishesInTheOrderOfTheJobsWhenTheFetchesEndTheOtherWay() throws Exception {
+        CountDownLatch done = new CountDownLatch(4);
+        HeldFetch[] fetches = new HeldFetch[4];
+        for (int i = 0; i < fetches.length; i++) {
+            fetches[i] = new HeldFetch("page" + i);
+            submit(fetches[i], mIndex, record(done));
+        }
+
+        //the last job ends first, then the one before it...
+        for (int i = fetches.length - 1; i >= 0; i--) {
+            assertTrue(fetches[i].mStarted.await(5, TimeUnit.SECONDS));
+            fetches[i].mRelease.countDown();
+            awaitIndexed(fetches.length - i);
+            if (i > 0) {
+                //the jobs before it are not done, nothing can be published yet
+                assertEquals(Collections.emptyList(), mPublished);
+            }
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("page3", "page2", "page1", "page0"), mIndexed);
+        assertEquals(Arrays.asList("PAGE0", "PAGE1", "PAGE2", "PAGE3"), mPublished);
+        assertEquals(Collections.emptyList(), mUncaught);
+    }
+
+    @Test
+    public void cancel_stopsTheFetchAndPublishesTheJobAsCanceled() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        HeldFetch fetch = new HeldFetch("page0");
+        EarthquakePipeline.Job job = submit(fetch, mIndex, record(done));
+        assertTrue(fetch.mStarted.await(5, TimeUnit.SECONDS));
+
+        job.cancel();
+
+        //the fetch was never released, the cancel stopped it
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(job.isCanceled());
+        assertEquals(Collections.singletonList("canceled null"), mPublished);
+        assertEquals(Collections.emptyList(), mIndexed);
+    }
+
+    @Test
+    public void cancel_afterTheFetchGivesTheIndexedResultToOnCanceled() throws Exception {
+        final CountDownLatch indexing = new CountDownLatch(1);
+        final CountDownLatch releaseIndex = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        HeldFetch fetch = new HeldFetch("page0");
+        fetch.mRelease.countDown();
+        EarthquakePipeline.Job job = submit(fetch, new EarthquakePipeline.Index<String, String>() {
+            @Override
+            public String index(String fetched) {
+                indexing.countDown();
+                try {
+                    releaseIndex.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return fetched.toUpperCase();
+            }
+        }, record(done));
+        assertTrue(indexing.await(5, TimeUnit.SECONDS));
+
+        job.cancel();
+        releaseIndex.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("canceled PAGE0"), mPublished);
+    }
+
+    @Test
+    public void cancel_keepsTheSlotOfTheJobInTheOrder() throws Exception {
+        CountDownLatch done = new CountDownLatch(3);
+        HeldFetch first = new HeldFetch("page0");
+        HeldFetch second = new HeldFetch("page1");
+        HeldFetch third = new HeldFetch("page2");
+        submit(first, mIndex, record(done));
+        EarthquakePipeline.Job canceled = submit(second, mIndex, record(done));
+        submit(third, mIndex, record(done));
+
+        //the job after the canceled one is done first, its result waits for the first one
+        third.mRelease.countDown();
+        canceled.cancel();
+        awaitIndexed(1);
+        first.mRelease.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("PAGE0", "canceled null", "PAGE2"), mPublished);
+    }
+
+    @Test
+    public void submit_publishesAFetchThatThrowsAsFailedAndGoesOn() throws Exception {
+        CountDownLatch done = new CountDownLatch(2);
+        submit(new EarthquakePipeline.Fetch<String>() {
+            @Override
+            public String fetch(CancellationToken token) {
+                throw new IllegalStateException("fetch broke");
+            }
+        }, mIndex, record(done));
+        HeldFetch next = new HeldFetch("page1");
+        next.mRelease.countDown();
+        submit(next, mIndex, record(done));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("failed fetch broke", "PAGE1"), mPublished);
+        //the pool thread that ran it did not die with it
+        assertEquals(Collections.emptyList(), mUncaught);
+    }
+
+    @Test
+    public void submit_publishesAnIndexThatThrowsAsFailedAndGoesOn() throws Exception {
+        CountDownLatch done = new CountDownLatch(2);
+        HeldFetch fetch = new HeldFetch("page0");
+        fetch.mRelease.countDown();
+        submit(fetch, new EarthquakePipeline.Index<String, String>() {
+            @Override
+            public String index(String fetched) {
+                throw new IllegalArgumentException("index broke");
+            }
+        }, record(done));
+        HeldFetch next = new HeldFetch("page1");
+        next.mRelease.countDown();
+        submit(next, mIndex, record(done));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("failed index broke", "PAGE1"), mPublished);
+        assertEquals(Collections.emptyList(), mUncaught);
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.android.quakereport;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * The wall-clock time of a year-long query split in monthly windows: the partitions fetched
+ * at the same time by {@link EarthquakeQueryPlanner}, against one after the other, from a
+ * {@link LocalServer} that takes a while to answer each window like the USGS server does.
+ */
+@Category(Benchmark.Timed.class)
+public class EarthquakeQueryPlannerBenchmark {
+
+    private static final int WINDOWS = 12;
+    private static final int EVENTS_PER_WINDOW = 500;
+    //the time the server takes before it answers a window
+    private static final long LATENCY = 250;
+
+    private static final long MONTH = 30L * 24 * 60 * 60 * 1000;
+
+    private LocalServer mServer;
+    private final List<String> mWindowUrls = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        //the feed of each window, the windows go from the newest to the oldest
+        final String[] feeds = new String[WINDOWS];
+        for (int window = 0; window < WINDOWS; window++) {
+            String[] features = new String[EVENTS_PER_WINDOW];
+            for (int i = 0; i < EVENTS_PER_WINDOW; i++) {
+                int event = window * EVENTS_PER_WINDOW + i;
+                features[i] = LocalServer.feature("us" + event, Benchmark.magnitude(event),
+                        Benchmark.location(event), Benchmark.NEWEST_TIME - window * MONTH - i * 60000L);
+            }
+            feeds[window] = LocalServer.feed(features);
+        }
+
+        mServer = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(int request, HttpExchange exchange) throws IOException {
+                String query = exchange.getRequestURI().getRawQuery();
+                int window = Integer.parseInt(query.substring(query.indexOf("window=") + "window=".length()));
+                try {
+                    Thread.sleep(LATENCY);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                LocalServer.respond(exchange, 200, feeds[window]);
+            }
+        });
+        for (int window = 0; window < WINDOWS; window++) {
+            mWindowUrls.add(mServer.url("/query?format=geojson&window=" + window).toString());
+        }
+        //every request goes to the server
+        QueryUtils.setCache(null);
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    /**
+     * the loader before the planner: the windows one after the other on its own thread
+     */
+    private EarthquakeStore fetchOneAfterTheOther() throws IOException {
+        List<EarthquakeStore> partitions = new ArrayList<>(WINDOWS);
+        for (String windowUrl : mWindowUrls) {
+            partitions.add(QueryUtils.fetchEarthquakeData(windowUrl));
+        }
+        return EarthquakeQueryPlanner.merge(partitions);
+    }
+
+    private EarthquakeStore fetchAtTheSameTime() throws IOException {
+        return EarthquakeQueryPlanner.fetch(mWindowUrls, EarthquakeQuery.Order.TIME, 0, null);
+    }
+
+    @Test
+    public void fetch_yearInMonthlyWindows() throws Exception {
+        EarthquakeStore sequential = fetchOneAfterTheOther();
+        EarthquakeStore parallel = fetchAtTheSameTime();
+        assertEquals(WINDOWS * EVENTS_PER_WINDOW, sequential.size());
+        assertEquals(sequential.size(), parallel.size());
+        for (int i = 0; i < parallel.size(); i++) {
+            assertEquals(sequential.getId(i), parallel.getId(i));
+        }
+
+        Benchmark.Result before = Benchmark.measure("12 windows one after the other", 1, 3, new Benchmark.Work() {
+            @Override
+            public Object run() throws Exception {
+                return fetchOneAfterTheOther();
+            }
+        });
+        Benchmark.Result after = Benchmark.measure("12 windows, EarthquakeQueryPlanner", 1, 3, new Benchmark.Work() {
+            @Override
+            public Object run() throws Exception {
+                return fetchAtTheSameTime();
+            }
+        });
+        //4 windows at a time: 3 rounds of the latency instead of 12
+        Benchmark.compare(before, after);
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.android.quakereport;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * The partitions of a query fetched at the same time by {@link EarthquakeQueryPlanner} from a
+ * {@link LocalServer} and merged in the order of the query (the time it saves is in
+ * {@link EarthquakeQueryPlannerBenchmark}).
+ */
+public class EarthquakeQueryPlannerTest {
+
+    private static final int WINDOWS = 3;
+    private static final int EVENTS_PER_WINDOW = 20;
+
+    private static final long MONTH = 30L * 24 * 60 * 60 * 1000;
+
+    private LocalServer mServer;
+    private final List<String> mWindowUrls = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        //the windows go from the newest to the oldest, the last event of a window is the first
+        //one of the next window (an event on their edge)
+        final String[] feeds = new String[WINDOWS];
+        for (int window = 0; window < WINDOWS; window++) {
+            String[] features = new String[EVENTS_PER_WINDOW];
+            for (int i = 0; i < EVENTS_PER_WINDOW; i++) {
+                int event = window * (EVENTS_PER_WINDOW - 1) + i;
+                features[i] = LocalServer.feature("us" + event, Benchmark.magnitude(event),
+                        Benchmark.location(event), Benchmark.NEWEST_TIME - event * 60000L);
+            }
+            feeds[window] = LocalServer.feed(features);
+        }
+
+        mServer = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(int request, HttpExchange exchange) throws IOException {
+                String query = exchange.getRequestURI().getRawQuery();
+                String window = query.substring(query.indexOf("window=") + "window=".length());
+                if (window.equals("missing")) {
+                    LocalServer.respond(exchange, 404, "");
+                } else {
+                    LocalServer.respond(exchange, 200, feeds[Integer.parseInt(window)]);
+                }
+            }
+        });
+        for (int window = 0; window < WINDOWS; window++) {
+            mWindowUrls.add(windowUrl(String.valueOf(window)));
+        }
+        //every request goes to the server
+        QueryUtils.setCache(null);
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    private String windowUrl(String window) throws IOException {
+        return mServer.url("/query?format=geojson&window=" + window).toString();
+    }
+
+    private static String[] ids(EarthquakeStore earthquakes) {
+        String[] ids = new String[earthquakes.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = earthquakes.getId(i);
+        }
+        return ids;
+    }
+
+    private static EarthquakeStore store(String... idsAndMagnitudes) {
+        EarthquakeStore earthquakes = new EarthquakeStore();
+        for (int i = 0; i < idsAndMagnitudes.length; i += 2) {
+            earthquakes.onEarthquake(idsAndMagnitudes[i], Double.parseDouble(idsAndMagnitudes[i + 1]),
+                    "Tonga", 0, "", 0, 0, 0);
+        }
+        return earthquakes;
+    }
+
+    @Test
+    public void fetch_isTheWindowsOneAfterTheOtherWithTheEdgesOnce() throws Exception {
+        List<EarthquakeStore> partitions = new ArrayList<>();
+        for (String windowUrl : mWindowUrls) {
+            partitions.add(QueryUtils.fetchEarthquakeData(windowUrl));
+        }
+
+        EarthquakeStore merged = EarthquakeQueryPlanner.fetch(mWindowUrls, EarthquakeQuery.Order.TIME, 0, null);
+
+        assertArrayEquals(ids(EarthquakeQueryPlanner.merge(partitions)), ids(merged));
+        //2 edges shared by 2 windows
+        assertEquals(WINDOWS * EVENTS_PER_WINDOW - (WINDOWS - 1), merged.size());
+        for (int i = 0; i < merged.size(); i++) {
+            assertEquals("us" + i, merged.getId(i));
+        }
+    }
+
+    @Test
+    public void fetch_keepsTheLimitOfTheQuery() throws Exception {
+        EarthquakeStore merged = EarthquakeQueryPlanner.fetch(mWindowUrls, EarthquakeQuery.Order.TIME, 25, null);
+
+        assertEquals(25, merged.size());
+        assertEquals("us24", merged.getId(24));
+    }
+
+    @Test
+    public void fetch_failsWhenAWindowFails() throws Exception {
+        List<String> windowUrls = new ArrayList<>(mWindowUrls);
+        windowUrls.add(1, windowUrl("missing"));
+        try {
+            EarthquakeQueryPlanner.fetch(windowUrls, EarthquakeQuery.Order.TIME, 0, null);
+            fail("merged without a window");
+        } catch (IOException e) {
+            assertNotNull(e.getCause());
+        }
+    }
+
+    @Test
+    public void merge_keepsTheOrderOfThePartitions() {
+        List<EarthquakeStore> partitions = Arrays.asList(
+                store("a", "6.5", "b", "4.0", "c", "2.0"),
+                store("d", "7.0", "b", "4.0", "e", "1.5"),
+                store("f", "5.0"));
+
+        EarthquakeStore merged = EarthquakeQueryPlanner.merge(partitions, EarthquakeQuery.Order.MAGNITUDE, 0);
+
+        assertArrayEquals(new String[]{"d", "a", "f", "b", "c", "e"}, ids(merged));
+        assertArrayEquals(new String[]{"d", "a", "f"},
+                ids(EarthquakeQueryPlanner.merge(partitions, EarthquakeQuery.Order.MAGNITUDE, 3)));
+    }
+
+    @Test
+    public void merge_keepsEveryEventWithoutId() {
+        List<EarthquakeStore> partitions = Arrays.asList(store("", "3.0"), store("", "3.0"));
+
+        assertEquals(2, EarthquakeQueryPlanner.merge(partitions, EarthquakeQuery.Order.MAGNITUDE, 0).size());
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * The USGS urls of an {@link EarthquakeQuery} and its predicates checked on the device, which
+ * must keep the same earthquakes as the server would with the parameters of the url.
+ * (the updatedafter parameter of a delta sync is added by {@link EarthquakeSync}, see EarthquakeSyncTest)
+ */
+public class EarthquakeQueryTest {
+
+    private static final String QUERY_URL = "https://earthquake.usgs.gov/fdsnws/event/1/query"
+            + "?format=geojson&eventtype=earthquake";
+
+    //2016-01-01T00:00:00Z and 2016-02-01T00:00:00Z
+    private static final long JANUARY = 1451606400000L;
+    private static final long FEBRUARY = 1454284800000L;
+
+    private static EarthquakeStore store() {
+        return new EarthquakeStore();
+    }
+
+    private static void add(EarthquakeStore earthquakes, double magnitude, String location, long time,
+                            double longitude, double latitude) {
+        earthquakes.onEarthquake("", magnitude, location, time, "", longitude, latitude, 10);
+    }
+
+    @Test
+    public void toUrl_withoutPredicatesOnlyHasTheOrder() {
+        assertEquals(QUERY_URL + "&orderby=time", new EarthquakeQuery.Builder().build().toUrl());
+    }
+
+    @Test
+    public void toUrl_rendersEveryPredicateOfTheServer() {
+        EarthquakeQuery query = new EarthquakeQuery.Builder()
+                .setTimeRange(JANUARY, FEBRUARY)
+                .setMinMagnitude(4.5)
+                .setMaxMagnitude(7)
+                .setBoundingBox(-10, 20.5, -80, -60)
+                .setOrder(EarthquakeQuery.Order.MAGNITUDE)
+                .setLimit(50)
+                .build();
+
+        assertEquals(QUERY_URL + "&orderby=magnitude"
+                + "&starttime=2016-01-01T00:00:00&endtime=2016-02-01T00:00:00"
+                + "&minmagnitude=4.5&maxmagnitude=7.0"
+                + "&minlatitude=-10.0&maxlatitude=20.5&minlongitude=-80.0&maxlongitude=-60.0"
+                + "&limit=50", query.toUrl());
+    }
+
+    @Test
+    public void toUrl_rendersAStartTimeOrAnEndTimeAlone() {
+        assertEquals(QUERY_URL + "&orderby=time&starttime=2016-01-01T00:00:00",
+                new EarthquakeQuery.Builder().setTimeRange(JANUARY, Long.MAX_VALUE).build().toUrl());
+        assertEquals(QUERY_URL + "&orderby=time&endtime=2016-02-01T00:00:00",
+                new EarthquakeQuery.Builder().setTimeRange(Long.MIN_VALUE, FEBRUARY).build().toUrl());
+    }
+
+    @Test
+    public void toUrl_rendersEachOrder() {
+        for (EarthquakeQuery.Order order : EarthquakeQuery.Order.values()) {
+            String url = new EarthquakeQuery.Builder().setOrder(order).build().toUrl();
+            String parameter = url.substring(url.indexOf("orderby=") + "orderby=".length());
+
+            assertEquals(order, EarthquakeQuery.Order.fromParameter(parameter));
+        }
+        assertEquals(EarthquakeQuery.Order.TIME, EarthquakeQuery.Order.fromParameter(null));
+        assertEquals(EarthquakeQuery.Order.TIME, EarthquakeQuery.Order.fromParameter("depth"));
+    }
+
+    @Test
+    public void toUrl_boxAcrossTheAntimeridianEndsAfter180() {
+        EarthquakeQuery query = new EarthquakeQuery.Builder().setBoundingBox(-30, 0, 170, -170).build();
+
+        assertEquals(QUERY_URL + "&orderby=time"
+                + "&minlatitude=-30.0&maxlatitude=0.0&minlongitude=170.0&maxlongitude=190.0", query.toUrl());
+    }
+
+    @Test
+    public void toPageUrl_countsTheOffsetFrom1AndLeavesTheLimitOfTheQueryOut() {
+        EarthquakeQuery query = new EarthquakeQuery.Builder().setMinMagnitude(6).setLimit(50).build();
+
+        assertEquals(QUERY_URL + "&orderby=time&minmagnitude=6.0&offset=1&limit=20", query.toPageUrl(0, 20));
+        assertEquals(QUERY_URL + "&orderby=time&minmagnitude=6.0&offset=41&limit=20", query.toPageUrl(40, 20));
+    }
+
+    @Test
+    public void toUrl_withALocalFilterSendsNoLimit() {
+        EarthquakeQuery query = new EarthquakeQuery.Builder().setLimit(10).setLocationText("alaska").build();
+
+        assertTrue(query.needsLocalFilter());
+        assertEquals(QUERY_URL + "&orderby=time", query.toUrl());
+        //the same url, other earthquakes
+        assertFalse(query.getKey().equals(new EarthquakeQuery.Builder().setLimit(10).setLocationText("chile")
+                .build().getKey()));
+        assertFalse(query.getKey().equals(new EarthquakeQuery.Builder().setLimit(20).setLocationText("alaska")
+                .build().getKey()));
+        assertEquals(query.getKey(), new EarthquakeQuery.Builder().setLimit(10).setLocationText("alaska")
+                .build().getKey());
+    }
+
+    @Test
+    public void matches_keepsTheBoundsLikeTheServer() {
+        EarthquakeQuery query = new EarthquakeQuery.Builder()
+                .setTimeRange(JANUARY, FEBRUARY)
+                .setMinMagnitude(4.5)
+                .setMaxMagnitude(7)
+                .setBoundingBox(-10, 20, -80, -60)
+                .build();
+        EarthquakeStore earthquakes = store();
+        //the bounds are in the query
+        add(earthquakes, 4.5, "a", JANUARY, -80, -10);
+        add(earthquakes, 7, "b", FEBRUARY, -60, 20);
+        //one past each bound
+        add(earthquakes, 4.4, "c", JANUARY, -70, 0);
+        add(earthquakes, 7.1, "d", JANUARY, -70, 0);
+        add(earthquakes, 5, "e", JANUARY - 1, -70, 0);
+        add(earthquakes, 5, "f", FEBRUARY + 1, -70, 0);
+        add(earthquakes, 5, "g", JANUARY, -80.5, 0);
+        add(earthquakes, 5, "h", JANUARY, -70, 20.5);
+        //an event without a position is not in any box
+        add(earthquakes, 5, "i", JANUARY, Double.NaN, Double.NaN);
+
+        assertTrue(query.matches(earthquakes, 0));
+        assertTrue(query.matches(earthquakes, 1));
+        for (int i = 2; i < earthquakes.size(); i++) {
+            assertFalse(earthquakes.getLocation(i), query.matches(earthquakes, i));
+        }
+    }
+
+    @Test
+    public void matches_boxAcrossTheAntimeridian() {
+        EarthquakeQuery query = new EarthquakeQuery.Builder().setBoundingBox(-30, 0, 170, -170).build();
+        EarthquakeStore earthquakes = store();
+        add(earthquakes, 5, "Fiji", 0, 178, -18);
+        add(earthquakes, 5, "Tonga", 0, -175, -20);
+        add(earthquakes, 5, "Vanuatu", 0, 168, -16);
+        add(earthquakes, 5, "Samoa", 0, -168, -14);
+
+        assertTrue(query.matches(earthquakes, 0));
+        assertTrue(query.matches(earthquakes, 1));
+        assertFalse(query.matches(earthquakes, 2));
+        assertFalse(query.matches(earthquakes, 3));
+    }
+
+    @Test
+    public void matches_checksTheLocationIgnoringCase() {
+        EarthquakeQuery query = new EarthquakeQuery.Builder().setMinMagnitude(5).setLocationText("ALASKA").build();
+        EarthquakeStore earthquakes = store();
+        add(earthquakes, 5, "Southern Alaska", 0, -150, 60);
+        add(earthquakes, 5, "Alaska Peninsula", 0, -150, 60);
+        add(earthquakes, 5, "Chile", 0, -70, -30);
+        add(earthquakes, 4, "Southern Alaska", 0, -150, 60);
+
+        assertTrue(query.matches(earthquakes, 0));
+        assertTrue(query.matches(earthquakes, 1));
+        assertFalse(query.matches(earthquakes, 2));
+        assertFalse(query.matches(earthquakes, 3));
+    }
+
+    @Test
+    public void filter_onlyChecksWhatTheServerCannot() {
+        EarthquakeQuery query = new EarthquakeQuery.Builder().setMinMagnitude(5).setLocationText("alaska").build();
+        EarthquakeStore earthquakes = store();
+        add(earthquakes, 5, "Southern Alaska", 0, -150, 60);
+        add(earthquakes, 5, "Chile", 0, -70, -30);
+        //below the minimum, the server would not send it: the filter doesn't check again
+        add(earthquakes, 4, "Alaska Peninsula", 0, -150, 60);
+
+        EarthquakeStore matching = query.filter(earthquakes);
+
+        assertEquals(2, matching.size());
+        assertEquals("Southern Alaska", matching.getLocation(0));
+        assertEquals("Alaska Peninsula", matching.getLocation(1));
+        //nothing to check on the device, the same rows
+        EarthquakeQuery remoteOnly = new EarthquakeQuery.Builder().setMinMagnitude(5).build();
+        assertSame(earthquakes, remoteOnly.filter(earthquakes));
+    }
+
+    @Test
+    public void apply_limitsTheRowsAfterTheFilter() {
+        EarthquakeQuery query = new EarthquakeQuery.Builder().setLimit(2).setLocationText("fiji").build();
+        EarthquakeStore earthquakes = store();
+        add(earthquakes, 5, "Tonga", 3, 0, 0);
+        add(earthquakes, 5, "Fiji", 2, 0, 0);
+        add(earthquakes, 5, "Tonga", 1, 0, 0);
+        add(earthquakes, 5, "Fiji region", 0, 0, 0);
+        add(earthquakes, 5, "South of the Fiji Islands", -1, 0, 0);
+
+        EarthquakeStore result = query.apply(earthquakes);
+
+        assertEquals(2, result.size());
+        assertEquals("Fiji", result.getLocation(0));
+        assertEquals("Fiji region", result.getLocation(1));
+    }
+
+    @Test
+    public void builder_rejectsAnInvalidQuery() {
+        try {
+            new EarthquakeQuery.Builder().setTimeRange(FEBRUARY, JANUARY);
+            fail("endTime < startTime");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new EarthquakeQuery.Builder().setBoundingBox(10, -10, 0, 10);
+            fail("minLatitude > maxLatitude");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new EarthquakeQuery.Builder().setBoundingBox(0, 10, 0, 190);
+            fail("longitude > 180");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new EarthquakeQuery.Builder().setLimit(-1);
+            fail("limit < 0");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
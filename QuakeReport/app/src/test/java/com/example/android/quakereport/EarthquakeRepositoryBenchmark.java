@@ -0,0 +1,195 @@
+package com.example.android.quakereport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * The SQL of {@link EarthquakeRepository} on the schema of {@link EarthquakeDbHelper}, run by the
+ * same SQLite engine through JDBC (android.database is only stubs on the JVM): the batch insert
+ * in one transaction against a transaction for each row, and a page of "M6+ in the last 30 days"
+ * out of 1M rows with the indexes and without them.
+ */
+@Category(Benchmark.Timed.class)
+public class EarthquakeRepositoryBenchmark {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final List<Connection> mConnections = new ArrayList<>();
+
+    @Before
+    public void setUp() throws ClassNotFoundException {
+        Class.forName("org.sqlite.JDBC");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        for (Connection connection : mConnections) {
+            connection.close();
+        }
+    }
+
+    /**
+     * @param indexes false to leave out the indexes on the time and the magnitude (the unique
+     *                index on the event id is kept, INSERT OR REPLACE needs it)
+     * @return a new database file with the schema of the app
+     */
+    private Connection open(String name, boolean indexes) throws Exception {
+        File file = new File(mFolder.getRoot(), name);
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+        mConnections.add(connection);
+        Statement statement = connection.createStatement();
+        try {
+            for (String create : EarthquakeDbHelper.SCHEMA) {
+                boolean searchIndex = create.startsWith("CREATE INDEX");
+                if (indexes || !searchIndex) {
+                    statement.execute(create);
+                }
+            }
+        } finally {
+            statement.close();
+        }
+        return connection;
+    }
+
+    /**
+     * insert made up events with the statement of {@link EarthquakeRepository#insert(EarthquakeStore)}
+     * @param transaction true for one transaction around the batch, false for one for each row
+     */
+    private static int insert(Connection connection, int count, boolean transaction) throws SQLException {
+        connection.setAutoCommit(!transaction);
+        PreparedStatement insert = connection.prepareStatement(EarthquakeRepository.INSERT_EARTHQUAKE);
+        try {
+            for (int i = 0; i < count; i++) {
+                String id = "us" + (20000000 + i);
+                insert.setString(1, id);
+                insert.setDouble(2, Benchmark.magnitude(i));
+                insert.setString(3, Benchmark.location(i));
+                insert.setLong(4, Benchmark.NEWEST_TIME - i * 60000L);
+                insert.setString(5, "https://earthquake.usgs.gov/earthquakes/eventpage/" + id);
+                insert.setDouble(6, Benchmark.longitude(i));
+                insert.setDouble(7, Benchmark.latitude(i));
+                insert.setDouble(8, i % 600);
+                insert.executeUpdate();
+            }
+            if (transaction) {
+                connection.commit();
+            }
+        } finally {
+            insert.close();
+            connection.setAutoCommit(true);
+        }
+        return count;
+    }
+
+    /**
+     * {@link EarthquakeRepository#queryPage(double, long, long, String, int)}, the arguments are
+     * bound as Strings like rawQuery does
+     * @return the event ids of the page
+     */
+    private static List<String> queryPage(Connection connection, double minMagnitude, long startTime,
+                                          long beforeTime, String beforeId, int limit) throws SQLException {
+        PreparedStatement query = connection.prepareStatement(EarthquakeRepository.SELECT_PAGE + " LIMIT " + limit);
+        try {
+            query.setString(1, String.valueOf(minMagnitude));
+            query.setString(2, String.valueOf(startTime));
+            query.setString(3, String.valueOf(beforeTime));
+            query.setString(4, String.valueOf(beforeTime));
+            query.setString(5, beforeId != null ? beforeId : "");
+            ResultSet rows = query.executeQuery();
+            List<String> ids = new ArrayList<>(limit);
+            while (rows.next()) {
+                ids.add(rows.getString(1));
+            }
+            return ids;
+        } finally {
+            query.close();
+        }
+    }
+
+    @Test
+    public void insert_oneTransactionAgainstATransactionForEachRow() throws Exception {
+        final int rows = 2000;
+        final Connection eachRow = open("each-row.db", true);
+        final Connection batch = open("batch.db", true);
+
+        Benchmark.Result before = Benchmark.measure("2000 inserts, a transaction each", 0, 1, new Benchmark.Work() {
+            @Override
+            public Object run() throws Exception {
+                return insert(eachRow, rows, false);
+            }
+        });
+        Benchmark.Result after = Benchmark.measure("2000 inserts, one transaction", 0, 1, new Benchmark.Work() {
+            @Override
+            public Object run() throws Exception {
+                return insert(batch, rows, true);
+            }
+        });
+        Benchmark.compare(before, after);
+        System.out.println(String.format(Locale.US, "%.0f rows/s -> %.0f rows/s",
+                rows / (before.mNanos / 1e9), rows / (after.mNanos / 1e9)));
+    }
+
+    @Test
+    public void queryPage_m6InTheLast30DaysOutOf1MRows() throws Exception {
+        final int rows = 1000000;
+        final Connection indexed = open("indexed.db", true);
+        final Connection scanned = open("scanned.db", false);
+
+        Benchmark.Result inserted = Benchmark.measure("1M inserts, one transaction", 0, 1, new Benchmark.Work() {
+            @Override
+            public Object run() throws Exception {
+                return insert(indexed, rows, true);
+            }
+        });
+        System.out.println(String.format(Locale.US, "%.0f rows/s with the 3 indexes", rows / (inserted.mNanos / 1e9)));
+        insert(scanned, rows, true);
+
+        final long startTime = Benchmark.NEWEST_TIME - 30 * DAY;
+        List<String> firstPage = queryPage(indexed, 6.0, startTime, Long.MAX_VALUE, null, 50);
+        assertEquals(firstPage, queryPage(scanned, 6.0, startTime, Long.MAX_VALUE, null, 50));
+        assertEquals(50, firstPage.size());
+
+        Benchmark.Result before = Benchmark.measure("M6+ 30 days page, no index", 2, 9, new Benchmark.Work() {
+            @Override
+            public Object run() throws Exception {
+                return queryPage(scanned, 6.0, startTime, Long.MAX_VALUE, null, 50);
+            }
+        });
+        Benchmark.Result after = Benchmark.measure("M6+ 30 days page, indexes", 20, 51, new Benchmark.Work() {
+            @Override
+            public Object run() throws Exception {
+                return queryPage(indexed, 6.0, startTime, Long.MAX_VALUE, null, 50);
+            }
+        });
+        Benchmark.compare(before, after);
+
+        //a page further down the list starts after the last row shown, it costs the same
+        final long beforeTime = Benchmark.NEWEST_TIME - 20 * DAY;
+        Benchmark.measure("M6+ 30 days page after 20 days, indexes", 20, 51, new Benchmark.Work() {
+            @Override
+            public Object run() throws Exception {
+                return queryPage(indexed, 6.0, startTime, beforeTime, "us20000000", 50);
+            }
+        });
+    }
+}
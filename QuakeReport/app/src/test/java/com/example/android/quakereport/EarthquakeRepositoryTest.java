@@ -0,0 +1,235 @@
+package com.example.android.quakereport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * The SQL of {@link EarthquakeRepository} on the schema of {@link EarthquakeDbHelper} and a
+ * thousand rows, through JDBC like {@link EarthquakeRepositoryBenchmark} (which times it on 1M rows):
+ * the pages read with the indexes are the ones read without them, and the pages that follow each
+ * other hold every row once.
+ */
+public class EarthquakeRepositoryTest {
+
+    private static final int ROWS = 1000;
+
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final List<Connection> mConnections = new ArrayList<>();
+
+    @Before
+    public void setUp() throws ClassNotFoundException {
+        Class.forName("org.sqlite.JDBC");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        for (Connection connection : mConnections) {
+            connection.close();
+        }
+    }
+
+    /**
+     * @param indexes false to leave out the indexes on the time and the magnitude
+     * @return a new database file with the schema of the app
+     */
+    private Connection open(String name, boolean indexes) throws Exception {
+        File file = new File(mFolder.getRoot(), name);
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+        mConnections.add(connection);
+        Statement statement = connection.createStatement();
+        try {
+            for (String create : EarthquakeDbHelper.SCHEMA) {
+                if (indexes || !create.startsWith("CREATE INDEX")) {
+                    statement.execute(create);
+                }
+            }
+        } finally {
+            statement.close();
+        }
+        return connection;
+    }
+
+    private static void insert(Connection connection, String id, double magnitude, long time) throws SQLException {
+        PreparedStatement insert = connection.prepareStatement(EarthquakeRepository.INSERT_EARTHQUAKE);
+        try {
+            insert.setString(1, id);
+            insert.setDouble(2, magnitude);
+            insert.setString(3, "Tonga");
+            insert.setLong(4, time);
+            insert.setString(5, "https://earthquake.usgs.gov/earthquakes/eventpage/" + id);
+            insert.setDouble(6, 0);
+            insert.setDouble(7, 0);
+            insert.setDouble(8, 10);
+            insert.executeUpdate();
+        } finally {
+            insert.close();
+        }
+    }
+
+    /**
+     * the made up events of {@link Benchmark}, a minute apart, in one transaction
+     */
+    private static void insertRows(Connection connection) throws SQLException {
+        connection.setAutoCommit(false);
+        for (int i = 0; i < ROWS; i++) {
+            insert(connection, "us" + (20000000 + i), Benchmark.magnitude(i), Benchmark.NEWEST_TIME - i * 60000L);
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+    }
+
+    /**
+     * {@link EarthquakeRepository#queryPage(double, long, long, String, int)}, the arguments are
+     * bound as Strings like rawQuery does
+     * @return the event ids of the page
+     */
+    private static List<String> queryPage(Connection connection, double minMagnitude, long startTime,
+                                          long beforeTime, String beforeId, int limit) throws SQLException {
+        PreparedStatement query = connection.prepareStatement(EarthquakeRepository.SELECT_PAGE + " LIMIT " + limit);
+        try {
+            query.setString(1, String.valueOf(minMagnitude));
+            query.setString(2, String.valueOf(startTime));
+            query.setString(3, String.valueOf(beforeTime));
+            query.setString(4, String.valueOf(beforeTime));
+            query.setString(5, beforeId != null ? beforeId : "");
+            ResultSet rows = query.executeQuery();
+            List<String> ids = new ArrayList<>(limit);
+            while (rows.next()) {
+                ids.add(rows.getString(1));
+            }
+            return ids;
+        } finally {
+            query.close();
+        }
+    }
+
+    /**
+     * read every page of a query one after the other, like the list does when it's scrolled
+     * @return the event ids of every page
+     */
+    private static List<String> queryEveryPage(Connection connection, double minMagnitude, long startTime,
+                                               int limit) throws SQLException {
+        PreparedStatement time = connection.prepareStatement("SELECT " + EarthquakeDbHelper.COLUMN_TIME
+                + " FROM " + EarthquakeDbHelper.TABLE_EARTHQUAKES + " WHERE " + EarthquakeDbHelper.COLUMN_EVENT_ID + " = ?");
+        List<String> ids = new ArrayList<>();
+        try {
+            long beforeTime = Long.MAX_VALUE;
+            String beforeId = null;
+            List<String> page;
+            do {
+                page = queryPage(connection, minMagnitude, startTime, beforeTime, beforeId, limit);
+                ids.addAll(page);
+                if (!page.isEmpty()) {
+                    beforeId = page.get(page.size() - 1);
+                    time.setString(1, beforeId);
+                    ResultSet row = time.executeQuery();
+                    assertTrue(row.next());
+                    beforeTime = row.getLong(1);
+                }
+            } while (page.size() == limit);
+        } finally {
+            time.close();
+        }
+        return ids;
+    }
+
+    @Test
+    public void queryPage_isTheSameWithAndWithoutTheIndexes() throws Exception {
+        Connection indexed = open("indexed.db", true);
+        Connection scanned = open("scanned.db", false);
+        insertRows(indexed);
+        insertRows(scanned);
+        long startTime = Benchmark.NEWEST_TIME - 10 * HOUR;
+
+        List<String> firstPage = queryPage(indexed, 6.0, startTime, Long.MAX_VALUE, null, 20);
+        assertEquals(20, firstPage.size());
+        assertEquals(firstPage, queryPage(scanned, 6.0, startTime, Long.MAX_VALUE, null, 20));
+        assertEquals(queryEveryPage(scanned, 6.0, startTime, 20), queryEveryPage(indexed, 6.0, startTime, 20));
+    }
+
+    @Test
+    public void queryPage_keepsTheMagnitudeAndTheTimeRange() throws Exception {
+        Connection connection = open("earthquakes.db", true);
+        insertRows(connection);
+        long startTime = Benchmark.NEWEST_TIME - 10 * HOUR;
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            if (Benchmark.magnitude(i) >= 6.0 && Benchmark.NEWEST_TIME - i * 60000L >= startTime) {
+                expected.add("us" + (20000000 + i));
+            }
+        }
+
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, queryEveryPage(connection, 6.0, startTime, 7));
+    }
+
+    @Test
+    public void queryPage_withoutBoundsReadsEveryRow() throws Exception {
+        Connection connection = open("earthquakes.db", true);
+        insertRows(connection);
+
+        //the bounds of EarthquakeRepository.queryNextPage, written as text
+        List<String> ids = queryEveryPage(connection, -Double.MAX_VALUE, Long.MIN_VALUE, 64);
+
+        assertEquals(ROWS, ids.size());
+        assertEquals("us20000000", ids.get(0));
+        assertEquals("us" + (20000000 + ROWS - 1), ids.get(ROWS - 1));
+    }
+
+    @Test
+    public void queryPage_splitsEventsAtTheSameTimeByTheirId() throws Exception {
+        Connection connection = open("earthquakes.db", true);
+        insert(connection, "a", 5.0, 1000L);
+        insert(connection, "b", 5.0, 2000L);
+        insert(connection, "c", 5.0, 2000L);
+        insert(connection, "d", 5.0, 2000L);
+        insert(connection, "e", 5.0, 3000L);
+
+        List<String> firstPage = queryPage(connection, 0, 0, Long.MAX_VALUE, null, 2);
+        List<String> secondPage = queryPage(connection, 0, 0, 2000L, "d", 2);
+
+        //a page boundary between 2 events at the same time neither skips nor repeats one
+        assertEquals(Arrays.asList("e", "d"), firstPage);
+        assertEquals(Arrays.asList("c", "b"), secondPage);
+        assertEquals(Arrays.asList("e", "d", "c", "b", "a"), queryEveryPage(connection, 0, 0, 2));
+    }
+
+    @Test
+    public void insert_replacesAnEventWithTheSameId() throws Exception {
+        Connection connection = open("earthquakes.db", true);
+        insert(connection, "us1", 4.5, 1000L);
+        insert(connection, "us1", 4.9, 1000L);
+
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet rows = statement.executeQuery("SELECT " + EarthquakeDbHelper.COLUMN_MAGNITUDE
+                    + " FROM " + EarthquakeDbHelper.TABLE_EARTHQUAKES);
+            assertTrue(rows.next());
+            assertEquals(4.9, rows.getDouble(1), 0);
+            assertFalse(rows.next());
+        } finally {
+            statement.close();
+        }
+    }
+}
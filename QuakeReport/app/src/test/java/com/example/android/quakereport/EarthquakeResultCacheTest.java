@@ -0,0 +1,126 @@
+package com.example.android.quakereport;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * The time to live and the trimming of the pages kept by {@link EarthquakeResultCache}.
+ */
+public class EarthquakeResultCacheTest {
+
+    private static final long TIME_TO_LIVE = 60000;
+    private static final long NOW = 1500000000000L;
+
+    private static final EarthquakeFormatter FORMATTER = new EarthquakeFormatter(new int[11]);
+
+    /**
+     * @return the pages of a query with that many rows, loaded at that time
+     */
+    private static EarthquakeResultCache.Entry entry(int rows, boolean showingLocal, long time) {
+        EarthquakeStore earthquakes = new EarthquakeStore(rows);
+        for (int i = 0; i < rows; i++) {
+            earthquakes.onEarthquake("us" + i, 5.0, "10km N of Suva, Fiji", time - i, "u" + i, 0, 0, 0);
+        }
+        EarthquakeDisplayModel model = EarthquakeDisplayModel.build(earthquakes, null, FORMATTER);
+        return new EarthquakeResultCache.Entry(model, rows, true, showingLocal, 0, null, 0, 0, null, time);
+    }
+
+    @Test
+    public void get_networkPagesExpireAfterTheTimeToLive() {
+        EarthquakeResultCache cache = new EarthquakeResultCache(1000, TIME_TO_LIVE);
+        EarthquakeResultCache.Entry entry = entry(10, false, NOW);
+        cache.put("q", entry);
+
+        assertSame(entry, cache.get("q", NOW + TIME_TO_LIVE - 1));
+        assertNull(cache.get("q", NOW + TIME_TO_LIVE));
+        //the expired entry is dropped with its rows
+        assertEquals(0, cache.getRowCount());
+    }
+
+    @Test
+    public void get_localPagesDoNotExpire() {
+        EarthquakeResultCache cache = new EarthquakeResultCache(1000, TIME_TO_LIVE);
+        EarthquakeResultCache.Entry entry = entry(10, true, NOW);
+        cache.put("q", entry);
+
+        assertSame(entry, cache.get("q", NOW + 100 * TIME_TO_LIVE));
+    }
+
+    @Test
+    public void put_replacesThePagesOfTheSameQuery() {
+        EarthquakeResultCache cache = new EarthquakeResultCache(1000, TIME_TO_LIVE);
+        cache.put("q", entry(10, false, NOW));
+        EarthquakeResultCache.Entry more = entry(30, false, NOW);
+        cache.put("q", more);
+
+        assertSame(more, cache.get("q", NOW));
+        assertEquals(30, cache.getRowCount());
+    }
+
+    @Test
+    public void put_dropsTheLeastRecentlyUsedQueriesOverTheMaxRows() {
+        EarthquakeResultCache cache = new EarthquakeResultCache(100, TIME_TO_LIVE);
+        cache.put("a", entry(40, false, NOW));
+        cache.put("b", entry(40, false, NOW));
+        //"a" is used again, "b" is now the least recently used
+        assertNotNull(cache.get("a", NOW));
+
+        cache.put("c", entry(40, false, NOW));
+
+        assertNotNull(cache.get("a", NOW));
+        assertNull(cache.get("b", NOW));
+        assertNotNull(cache.get("c", NOW));
+        assertEquals(80, cache.getRowCount());
+    }
+
+    @Test
+    public void put_keepsTheLastQueryEvenOverTheMaxRows() {
+        EarthquakeResultCache cache = new EarthquakeResultCache(100, TIME_TO_LIVE);
+        cache.put("a", entry(40, false, NOW));
+
+        cache.put("big", entry(150, false, NOW));
+
+        assertNull(cache.get("a", NOW));
+        assertNotNull(cache.get("big", NOW));
+        assertEquals(150, cache.getRowCount());
+    }
+
+    @Test
+    public void onTrimMemory_runningLowKeepsHalfTheRows() {
+        EarthquakeResultCache cache = new EarthquakeResultCache(100, TIME_TO_LIVE);
+        cache.put("a", entry(30, false, NOW));
+        cache.put("b", entry(30, false, NOW));
+        cache.put("c", entry(30, false, NOW));
+
+        cache.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+
+        assertEquals(30, cache.getRowCount());
+        assertNotNull(cache.get("c", NOW));
+    }
+
+    @Test
+    public void onTrimMemory_backgroundDropsEverything() {
+        EarthquakeResultCache cache = new EarthquakeResultCache(100, TIME_TO_LIVE);
+        cache.put("a", entry(30, false, NOW));
+        cache.put("b", entry(30, true, NOW));
+
+        cache.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+
+        assertEquals(0, cache.getRowCount());
+        assertNull(cache.get("a", NOW));
+        assertNull(cache.get("b", NOW));
+    }
+
+    @Test
+    public void onLowMemory_dropsEverything() {
+        EarthquakeResultCache cache = new EarthquakeResultCache(100, TIME_TO_LIVE);
+        cache.put("a", entry(30, false, NOW));
+
+        cache.onLowMemory();
+
+        assertEquals(0, cache.getRowCount());
+    }
+}
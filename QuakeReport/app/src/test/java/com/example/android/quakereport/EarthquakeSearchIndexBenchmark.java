@@ -0,0 +1,119 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * The search as the user types on 100k events: {@link EarthquakeSearchIndex} against a scan of
+ * the primary location of every event with the same matching (each word typed starts a word of
+ * the location). the scan only splits a location again when it differs from the row before,
+ * like the index does when it adds the rows.
+ */
+@Category(Benchmark.Timed.class)
+public class EarthquakeSearchIndexBenchmark {
+
+    private static final int COUNT = 100000;
+
+    private static final EarthquakeStore EARTHQUAKES = Benchmark.store(COUNT);
+
+    //every keystroke of "Kathmandu" and then of "sumatra ind"
+    private static final String[] KEYSTROKES = keystrokes("Kathmandu", "sumatra ind");
+
+    private static String[] keystrokes(String... texts) {
+        List<String> keystrokes = new ArrayList<>();
+        for (String text : texts) {
+            for (int i = 1; i <= text.length(); i++) {
+                keystrokes.add(text.substring(0, i));
+            }
+        }
+        return keystrokes.toArray(new String[keystrokes.size()]);
+    }
+
+    private static int[] scan(String text) {
+        String[] prefixes = EarthquakeSearchIndex.tokenize(text);
+        int[] found = new int[16];
+        int size = 0;
+        String lastLocation = null;
+        String[] words = new String[0];
+        for (int i = 0; i < EARTHQUAKES.size(); i++) {
+            String location = EARTHQUAKES.getPrimaryLocation(i);
+            if (location != lastLocation) {
+                lastLocation = location;
+                words = EarthquakeSearchIndex.tokenize(location);
+            }
+            if (matches(words, prefixes)) {
+                if (size == found.length) {
+                    found = Arrays.copyOf(found, size * 2);
+                }
+                found[size++] = i;
+            }
+        }
+        return Arrays.copyOf(found, size);
+    }
+
+    private static boolean matches(String[] words, String[] prefixes) {
+        for (String prefix : prefixes) {
+            boolean found = false;
+            for (String word : words) {
+                if (word.startsWith(prefix)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Test
+    public void search_everyKeystrokeOn100000Events() throws Exception {
+        Benchmark.Result build = Benchmark.measure("EarthquakeSearchIndex.addAll, 100k events", 3, 9, new Benchmark.Work() {
+            @Override
+            public Object run() {
+                EarthquakeSearchIndex index = new EarthquakeSearchIndex();
+                index.addAll(EARTHQUAKES);
+                return index;
+            }
+        });
+        final EarthquakeSearchIndex index = new EarthquakeSearchIndex();
+        index.addAll(EARTHQUAKES);
+
+        for (String keystroke : KEYSTROKES) {
+            assertArrayEquals(keystroke, scan(keystroke), index.search(keystroke, COUNT));
+        }
+
+        Benchmark.Result before = Benchmark.measure(KEYSTROKES.length + " keystrokes, scan", 3, 11, new Benchmark.Work() {
+            @Override
+            public Object run() {
+                int found = 0;
+                for (String keystroke : KEYSTROKES) {
+                    found += scan(keystroke).length;
+                }
+                return found;
+            }
+        });
+        Benchmark.Result after = Benchmark.measure(KEYSTROKES.length + " keystrokes, index", 20, 51, new Benchmark.Work() {
+            @Override
+            public Object run() {
+                int found = 0;
+                for (String keystroke : KEYSTROKES) {
+                    found += index.search(keystroke, COUNT).length;
+                }
+                return found;
+            }
+        });
+        Benchmark.compare(before, after);
+        double perKeystroke = after.getMillis() / KEYSTROKES.length;
+        System.out.println(String.format(Locale.US, "per keystroke: %.3f ms -> %.3f ms (index built in %.1f ms)",
+                before.getMillis() / KEYSTROKES.length, perKeystroke, build.getMillis()));
+    }
+}
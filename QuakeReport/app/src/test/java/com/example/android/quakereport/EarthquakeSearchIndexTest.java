@@ -0,0 +1,103 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * The words and prefixes matched by {@link EarthquakeSearchIndex} on a few locations
+ * (the time of a keystroke on 100k events is in {@link EarthquakeSearchIndexBenchmark}).
+ */
+public class EarthquakeSearchIndexTest {
+
+    private static final String[] LOCATIONS = {
+            "88km N of Yelizovo, Russia",
+            "Alaska Peninsula",
+            "5km SW of B\u00edob\u00edo, Chile",
+            "Southern Alaska",
+            "12km S of Kathmandu, Nepal",
+            "Alaska Peninsula",
+            "Kepulauan Talaud, Indonesia",
+    };
+
+    private static EarthquakeStore store(String... locations) {
+        EarthquakeStore earthquakes = new EarthquakeStore();
+        for (String location : locations) {
+            earthquakes.onEarthquake("", 4.5, location, 0, "", 0, 0, 10);
+        }
+        return earthquakes;
+    }
+
+    private static EarthquakeSearchIndex index(EarthquakeStore earthquakes) {
+        EarthquakeSearchIndex index = new EarthquakeSearchIndex();
+        index.addAll(earthquakes);
+        return index;
+    }
+
+    @Test
+    public void tokenize_keepsLowerCaseWordsWithoutAccents() {
+        assertArrayEquals(new String[]{"5km", "sw", "of", "biobio", "chile"},
+                EarthquakeSearchIndex.tokenize("5km SW of B\u00edob\u00edo, Chile"));
+        assertArrayEquals(new String[]{"ala", "pen"}, EarthquakeSearchIndex.tokenize("  Ala  pen "));
+        assertEquals(0, EarthquakeSearchIndex.tokenize(" ,- ").length);
+        assertEquals(0, EarthquakeSearchIndex.tokenize(null).length);
+    }
+
+    @Test
+    public void search_findsTheWordsStartingWithEachPrefix() {
+        EarthquakeSearchIndex index = index(store(LOCATIONS));
+
+        assertArrayEquals(new int[]{1, 3, 5}, index.search("ala", LOCATIONS.length));
+        assertArrayEquals(new int[]{1, 5}, index.search("ala pen", LOCATIONS.length));
+        assertArrayEquals(new int[]{1, 5}, index.search("PEN ala", LOCATIONS.length));
+        assertArrayEquals(new int[]{2}, index.search("b\u00edob", LOCATIONS.length));
+        assertArrayEquals(new int[]{2}, index.search("biob", LOCATIONS.length));
+        assertArrayEquals(new int[0], index.search("ala chile", LOCATIONS.length));
+        //only the primary location is indexed, not its offset
+        assertArrayEquals(new int[0], index.search("88km", LOCATIONS.length));
+        //a prefix in the middle of a word doesn't match
+        assertArrayEquals(new int[0], index.search("laska", LOCATIONS.length));
+    }
+
+    @Test
+    public void search_withoutAWordReturnsEveryRow() {
+        EarthquakeSearchIndex index = index(store(LOCATIONS));
+
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4, 5, 6}, index.search(" ", LOCATIONS.length));
+        assertArrayEquals(new int[]{0, 1, 2}, index.search("", 3));
+    }
+
+    @Test
+    public void search_onlyReturnsTheRowsOfTheSizeAsked() {
+        EarthquakeSearchIndex index = index(store(LOCATIONS));
+
+        assertArrayEquals(new int[]{1, 3}, index.search("alaska", 4));
+        assertArrayEquals(new int[]{1, 3, 5}, index.search("alaska", 100));
+    }
+
+    @Test
+    public void addAll_ofTheNextPageOnlyAddsItsRows() {
+        EarthquakeStore firstPage = store(LOCATIONS[0], LOCATIONS[1], LOCATIONS[2]);
+        EarthquakeStore bothPages = firstPage.copy();
+        for (int i = 3; i < LOCATIONS.length; i++) {
+            bothPages.onEarthquake("", 4.5, LOCATIONS[i], 0, "", 0, 0, 10);
+        }
+
+        EarthquakeSearchIndex paged = index(firstPage);
+        assertEquals(3, paged.size());
+        paged.addAll(bothPages);
+        EarthquakeSearchIndex atOnce = index(bothPages);
+
+        assertEquals(LOCATIONS.length, paged.size());
+        for (String text : new String[]{"a", "alaska", "k", "s", "indonesia", "n"}) {
+            assertArrayEquals(text, atOnce.search(text, LOCATIONS.length), paged.search(text, LOCATIONS.length));
+        }
+    }
+
+    @Test
+    public void addAll_keepsARowOnceForAWordTwiceInItsLocation() {
+        EarthquakeSearchIndex index = index(store("Santa Cruz, Santa Cruz Islands"));
+
+        assertArrayEquals(new int[]{0}, index.search("santa cruz", 1));
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.android.quakereport;
+
+import com.example.android.http.CancellationToken;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * The fetches of the same url coalesced by {@link EarthquakeSingleFlight}, with a fetcher the test
+ * holds until the callers are waiting for it.
+ */
+public class EarthquakeSingleFlightTest {
+
+    private static final String URL = "https://earthquake.usgs.gov/fdsnws/event/1/query";
+
+    /**
+     * a fetcher that waits for the test to release it and counts its requests
+     */
+    private static final class HeldFetcher implements EarthquakeSingleFlight.Fetcher {
+        final CountDownLatch mStarted = new CountDownLatch(1);
+        final CountDownLatch mRelease = new CountDownLatch(1);
+        final AtomicInteger mRequests = new AtomicInteger();
+        volatile IOException mFailure;
+
+        @Override
+        public EarthquakeStore fetch(String requestUrl, CancellationToken token) throws IOException {
+            mRequests.incrementAndGet();
+            mStarted.countDown();
+            try {
+                while (!mRelease.await(10, TimeUnit.MILLISECONDS)) {
+                    if (token != null) {
+                        token.throwIfCanceled();
+                    }
+                }
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            if (mFailure != null) {
+                throw mFailure;
+            }
+            EarthquakeStore earthquakes = new EarthquakeStore();
+            earthquakes.onEarthquake("us1", 6.0, "Fiji", 1L, "u", 0, 0, 0);
+            return earthquakes;
+        }
+    }
+
+    /**
+     * a caller of the single flight on its own thread, it keeps what it got
+     */
+    private static final class Caller extends Thread {
+        final EarthquakeSingleFlight mSingleFlight;
+        final CancellationToken mToken;
+        volatile EarthquakeStore mResult;
+        volatile IOException mFailure;
+
+        Caller(EarthquakeSingleFlight singleFlight, CancellationToken token) {
+            mSingleFlight = singleFlight;
+            mToken = token;
+            start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                mResult = mSingleFlight.fetch(URL, mToken);
+            } catch (IOException e) {
+                mFailure = e;
+            }
+        }
+
+        /**
+         * wait until the caller is blocked waiting for the fetch in flight
+         */
+        void awaitWaiting() throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (getState() != State.WAITING && getState() != State.TIMED_WAITING) {
+                assertTrue("the caller never waited", System.currentTimeMillis() < deadline);
+                Thread.sleep(1);
+            }
+        }
+
+        void finish() throws InterruptedException {
+            join(5000);
+            assertFalse("the caller is still waiting", isAlive());
+        }
+    }
+
+    @Test
+    public void fetch_callersOfTheSameUrlShareOneRequest() throws Exception {
+        HeldFetcher fetcher = new HeldFetcher();
+        EarthquakeSingleFlight singleFlight = new EarthquakeSingleFlight(fetcher);
+        Caller leader = new Caller(singleFlight, null);
+        fetcher.mStarted.await();
+        Caller[] waiters = new Caller[4];
+        for (int i = 0; i < waiters.length; i++) {
+            waiters[i] = new Caller(singleFlight, new CancellationToken());
+            waiters[i].awaitWaiting();
+        }
+        assertEquals(1, singleFlight.getInFlightCount());
+
+        fetcher.mRelease.countDown();
+        leader.finish();
+        for (Caller waiter : waiters) {
+            waiter.finish();
+            assertSame(leader.mResult, waiter.mResult);
+        }
+
+        assertEquals(1, fetcher.mRequests.get());
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    @Test
+    public void fetch_nextCallAfterTheFetchMakesANewRequest() throws Exception {
+        HeldFetcher fetcher = new HeldFetcher();
+        fetcher.mRelease.countDown();
+        EarthquakeSingleFlight singleFlight = new EarthquakeSingleFlight(fetcher);
+
+        EarthquakeStore first = singleFlight.fetch(URL);
+        EarthquakeStore second = singleFlight.fetch(URL);
+
+        assertNotSame(first, second);
+        assertEquals(2, fetcher.mRequests.get());
+    }
+
+    @Test
+    public void fetch_failureFailsEveryWaitingCaller() throws Exception {
+        HeldFetcher fetcher = new HeldFetcher();
+        fetcher.mFailure = new IOException("Error response code: 503");
+        EarthquakeSingleFlight singleFlight = new EarthquakeSingleFlight(fetcher);
+        Caller leader = new Caller(singleFlight, null);
+        fetcher.mStarted.await();
+        Caller waiter = new Caller(singleFlight, null);
+        waiter.awaitWaiting();
+
+        fetcher.mRelease.countDown();
+        leader.finish();
+        waiter.finish();
+
+        assertSame(fetcher.mFailure, leader.mFailure);
+        assertNotNull(waiter.mFailure);
+        assertSame(fetcher.mFailure, waiter.mFailure.getCause());
+        assertNull(waiter.mResult);
+        assertEquals(1, fetcher.mRequests.get());
+    }
+
+    @Test
+    public void fetch_canceledWaiterStopsRightAwayAndTheRequestGoesOn() throws Exception {
+        HeldFetcher fetcher = new HeldFetcher();
+        EarthquakeSingleFlight singleFlight = new EarthquakeSingleFlight(fetcher);
+        Caller leader = new Caller(singleFlight, null);
+        fetcher.mStarted.await();
+        CancellationToken token = new CancellationToken();
+        Caller canceled = new Caller(singleFlight, token);
+        canceled.awaitWaiting();
+
+        long start = System.nanoTime();
+        token.cancel();
+        canceled.finish();
+        long elapsed = (System.nanoTime() - start) / 1000000L;
+
+        assertTrue(canceled.mFailure instanceof InterruptedIOException);
+        //woken up by the cancel, not by a poll or the end of the fetch
+        assertTrue("the cancel took " + elapsed + " ms", elapsed < 1000);
+        assertTrue(leader.isAlive());
+
+        fetcher.mRelease.countDown();
+        leader.finish();
+        assertNotNull(leader.mResult);
+    }
+
+    @Test
+    public void fetch_waitersRetryWhenTheLeaderIsCanceled() throws Exception {
+        HeldFetcher fetcher = new HeldFetcher();
+        EarthquakeSingleFlight singleFlight = new EarthquakeSingleFlight(fetcher);
+        CancellationToken leaderToken = new CancellationToken();
+        Caller leader = new Caller(singleFlight, leaderToken);
+        fetcher.mStarted.await();
+        Caller waiter = new Caller(singleFlight, null);
+        waiter.awaitWaiting();
+
+        leaderToken.cancel();
+        leader.finish();
+        assertTrue(leader.mFailure instanceof InterruptedIOException);
+
+        //the waiter does the request again instead of getting the canceled one
+        fetcher.mRelease.countDown();
+        waiter.finish();
+        assertNotNull(waiter.mResult);
+        assertEquals(2, fetcher.mRequests.get());
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.android.quakereport;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * The round trip of an {@link EarthquakeStore} through an {@link EarthquakeSnapshot} file.
+ */
+public class EarthquakeSnapshotTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static EarthquakeStore sample() {
+        EarthquakeStore earthquakes = new EarthquakeStore();
+        earthquakes.onEarthquake("us1", 7.2, "88km N of Yelizovo, Russia", 1454124312220L,
+                "https://earthquake.usgs.gov/us1", 158.5, 53.9, 177.0);
+        //the same location and url as the first one, written once in the string table
+        earthquakes.onEarthquake("us2", 6.1, "88km N of Yelizovo, Russia", 1454124312221L,
+                "https://earthquake.usgs.gov/us1", -0.0, 0, 0);
+        //no geometry, an empty id and text out of the ASCII range
+        earthquakes.onEarthquake("", 4.0, "Región de Valparaíso, 東京", -1L,
+                "", Double.NaN, Double.NaN, Double.NaN);
+        return earthquakes;
+    }
+
+    @Test
+    public void read_givesBackWhatWasWritten() throws IOException {
+        EarthquakeStore written = sample();
+        File file = mFolder.newFile("snapshot");
+
+        EarthquakeSnapshot.write(written, file);
+        EarthquakeStore read = EarthquakeSnapshot.read(file);
+
+        assertEquals(written.size(), read.size());
+        for (int i = 0; i < written.size(); i++) {
+            assertEquals(written.getId(i), read.getId(i));
+            assertEquals(written.getMagnitude(i), read.getMagnitude(i), 0);
+            assertEquals(written.getLocation(i), read.getLocation(i));
+            assertEquals(written.getPrimaryLocation(i), read.getPrimaryLocation(i));
+            assertEquals(written.getLocationOffset(i), read.getLocationOffset(i));
+            assertEquals(written.getTimeInMilliseconds(i), read.getTimeInMilliseconds(i));
+            assertEquals(written.getUrl(i), read.getUrl(i));
+            assertEquals(written.getLongitude(i), read.getLongitude(i), 0);
+            assertEquals(written.getLatitude(i), read.getLatitude(i), 0);
+            assertEquals(written.getDepth(i), read.getDepth(i), 0);
+        }
+        assertTrue(Double.isNaN(read.getLongitude(2)));
+    }
+
+    @Test
+    public void read_emptyStore() throws IOException {
+        File file = mFolder.newFile("snapshot");
+
+        EarthquakeSnapshot.write(new EarthquakeStore(), file);
+
+        assertTrue(EarthquakeSnapshot.read(file).isEmpty());
+    }
+
+    @Test
+    public void write_replacesTheFile() throws IOException {
+        File file = mFolder.newFile("snapshot");
+        EarthquakeSnapshot.write(sample(), file);
+
+        EarthquakeStore single = new EarthquakeStore();
+        single.onEarthquake("us9", 5.0, "Fiji", 1L, "u", 1, 2, 3);
+        EarthquakeSnapshot.write(single, file);
+
+        EarthquakeStore read = EarthquakeSnapshot.read(file);
+        assertEquals(1, read.size());
+        assertEquals("us9", read.getId(0));
+    }
+
+    @Test(expected = IOException.class)
+    public void read_refusesAnOtherFile() throws IOException {
+        File file = mFolder.newFile("snapshot");
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(file));
+        try {
+            output.writeBytes("{\"type\":\"FeatureCollection\",\"features\":[]}");
+        } finally {
+            output.close();
+        }
+
+        EarthquakeSnapshot.read(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void read_refusesAnOtherVersion() throws IOException {
+        File file = mFolder.newFile("snapshot");
+        EarthquakeSnapshot.write(sample(), file);
+        //the version is the int after the magic
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.seek(4);
+            randomAccessFile.writeInt(Integer.MAX_VALUE);
+        } finally {
+            randomAccessFile.close();
+        }
+
+        EarthquakeSnapshot.read(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void read_refusesATruncatedFile() throws IOException {
+        File file = mFolder.newFile("snapshot");
+        EarthquakeSnapshot.write(sample(), file);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(randomAccessFile.length() - 10);
+        } finally {
+            randomAccessFile.close();
+        }
+
+        EarthquakeSnapshot.read(file);
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.android.quakereport;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The radius, box and nearest queries of {@link EarthquakeSpatialIndex} against a scan of every
+ * event, on 1M made up events spread over the globe. each run asks the same 10 places.
+ */
+@Category(Benchmark.Timed.class)
+public class EarthquakeSpatialIndexBenchmark {
+
+    private static final int COUNT = 1000000;
+    private static final int QUERIES = 10;
+
+    private static EarthquakeStore sEarthquakes;
+    private static EarthquakeSpatialIndex sIndex;
+    private static final double[] LATITUDES = new double[QUERIES];
+    private static final double[] LONGITUDES = new double[QUERIES];
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        //only the coordinates matter here, the ids and urls are left empty to keep the heap small
+        sEarthquakes = new EarthquakeStore(COUNT);
+        Random random = new Random(42);
+        for (int i = 0; i < COUNT; i++) {
+            sEarthquakes.onEarthquake("", Benchmark.magnitude(i), Benchmark.location(i),
+                    Benchmark.NEWEST_TIME - i * 60000L, "", random.nextDouble() * 360 - 180,
+                    random.nextDouble() * 180 - 90, i % 600);
+        }
+        sEarthquakes.compact();
+
+        Benchmark.measure("EarthquakeSpatialIndex.build, 1M events", 2, 5, new Benchmark.Work() {
+            @Override
+            public Object run() {
+                return EarthquakeSpatialIndex.build(sEarthquakes);
+            }
+        });
+        sIndex = EarthquakeSpatialIndex.build(sEarthquakes);
+
+        for (int i = 0; i < QUERIES; i++) {
+            LATITUDES[i] = random.nextDouble() * 140 - 70;
+            LONGITUDES[i] = random.nextDouble() * 360 - 180;
+        }
+    }
+
+    private static int[] scanRadius(double latitude, double longitude, double radiusKm) {
+        int[] found = new int[16];
+        int size = 0;
+        for (int i = 0; i < sEarthquakes.size(); i++) {
+            if (EarthquakeSpatialIndex.distanceKm(latitude, longitude, sEarthquakes.getLatitude(i),
+                    sEarthquakes.getLongitude(i)) <= radiusKm) {
+                if (size == found.length) {
+                    found = Arrays.copyOf(found, size * 2);
+                }
+                found[size++] = i;
+            }
+        }
+        return Arrays.copyOf(found, size);
+    }
+
+    private static int[] scanBox(double minLatitude, double maxLatitude, double minLongitude, double maxLongitude) {
+        int[] found = new int[16];
+        int size = 0;
+        for (int i = 0; i < sEarthquakes.size(); i++) {
+            double latitude = sEarthquakes.getLatitude(i);
+            double longitude = sEarthquakes.getLongitude(i);
+            if (latitude >= minLatitude && latitude <= maxLatitude
+                    && longitude >= minLongitude && longitude <= maxLongitude) {
+                if (size == found.length) {
+                    found = Arrays.copyOf(found, size * 2);
+                }
+                found[size++] = i;
+            }
+        }
+        return Arrays.copyOf(found, size);
+    }
+
+    /**
+     * @return the distances of the k closest events, the closest first
+     */
+    private static double[] scanNearest(double latitude, double longitude, int k) {
+        double[] closest = new double[k];
+        Arrays.fill(closest, Double.MAX_VALUE);
+        for (int i = 0; i < sEarthquakes.size(); i++) {
+            double distance = EarthquakeSpatialIndex.distanceKm(latitude, longitude,
+                    sEarthquakes.getLatitude(i), sEarthquakes.getLongitude(i));
+            if (distance < closest[k - 1]) {
+                //insertion in the sorted k closest
+                int j = k - 1;
+                while (j > 0 && closest[j - 1] > distance) {
+                    closest[j] = closest[j - 1];
+                    j--;
+                }
+                closest[j] = distance;
+            }
+        }
+        return closest;
+    }
+
+    @Test
+    public void queryRadius_500Km() throws Exception {
+        for (int i = 0; i < QUERIES; i++) {
+            assertArrayEquals(scanRadius(LATITUDES[i], LONGITUDES[i], 500),
+                    sIndex.queryRadius(LATITUDES[i], LONGITUDES[i], 500));
+        }
+
+        Benchmark.Result before = Benchmark.measure("10 radius queries, scan", 1, 3, new Benchmark.Work() {
+            @Override
+            public Object run() {
+                int found = 0;
+                for (int i = 0; i < QUERIES; i++) {
+                    found += scanRadius(LATITUDES[i], LONGITUDES[i], 500).length;
+                }
+                return found;
+            }
+        });
+        Benchmark.Result after = Benchmark.measure("10 radius queries, index", 10, 21, new Benchmark.Work() {
+            @Override
+            public Object run() {
+                int found = 0;
+                for (int i = 0; i < QUERIES; i++) {
+                    found += sIndex.queryRadius(LATITUDES[i], LONGITUDES[i], 500).length;
+                }
+                return found;
+            }
+        });
+        Benchmark.compare(before, after);
+    }
+
+    @Test
+    public void queryBox_10Degrees() throws Exception {
+        for (int i = 0; i < QUERIES; i++) {
+            assertArrayEquals(scanBox(LATITUDES[i], LATITUDES[i] + 10, LONGITUDES[i], LONGITUDES[i] + 10),
+                    sIndex.queryBox(LATITUDES[i], LATITUDES[i] + 10, LONGITUDES[i], LONGITUDES[i] + 10));
+        }
+
+        Benchmark.Result before = Benchmark.measure("10 box queries, scan", 1, 3, new Benchmark.Work() {
+            @Override
+            public Object run() {
+                int found = 0;
+                for (int i = 0; i < QUERIES; i++) {
+                    found += scanBox(LATITUDES[i], LATITUDES[i] + 10, LONGITUDES[i], LONGITUDES[i] + 10).length;
+                }
+                return found;
+            }
+        });
+        Benchmark.Result after = Benchmark.measure("10 box queries, index", 10, 21, new Benchmark.Work() {
+            @Override
+            public Object run() {
+                int found = 0;
+                for (int i = 0; i < QUERIES; i++) {
+                    found += sIndex.queryBox(LATITUDES[i], LATITUDES[i] + 10, LONGITUDES[i], LONGITUDES[i] + 10).length;
+                }
+                return found;
+            }
+        });
+        Benchmark.compare(before, after);
+    }
+
+    @Test
+    public void nearest_10() throws Exception {
+        for (int i = 0; i < QUERIES; i++) {
+            int[] nearest = sIndex.nearest(LATITUDES[i], LONGITUDES[i], 10);
+            double[] distances = scanNearest(LATITUDES[i], LONGITUDES[i], 10);
+            for (int j = 0; j < nearest.length; j++) {
+                assertEquals(distances[j], EarthquakeSpatialIndex.distanceKm(LATITUDES[i], LONGITUDES[i],
+                        sEarthquakes.getLatitude(nearest[j]), sEarthquakes.getLongitude(nearest[j])), 1e-9);
+            }
+        }
+
+        Benchmark.Result before = Benchmark.measure("10 nearest queries (k=10), scan", 1, 3, new Benchmark.Work() {
+            @Override
+            public Object run() {
+                double sum = 0;
+                for (int i = 0; i < QUERIES; i++) {
+                    sum += scanNearest(LATITUDES[i], LONGITUDES[i], 10)[0];
+                }
+                return sum;
+            }
+        });
+        Benchmark.Result after = Benchmark.measure("10 nearest queries (k=10), index", 10, 21, new Benchmark.Work() {
+            @Override
+            public Object run() {
+                int sum = 0;
+                for (int i = 0; i < QUERIES; i++) {
+                    sum += sIndex.nearest(LATITUDES[i], LONGITUDES[i], 10)[0];
+                }
+                return sum;
+            }
+        });
+        Benchmark.compare(before, after);
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.android.quakereport;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The queries of {@link EarthquakeSpatialIndex} against a scan of every event, on a few thousand
+ * made up events and on the antimeridian and the poles (the time it saves is in
+ * {@link EarthquakeSpatialIndexBenchmark}).
+ */
+public class EarthquakeSpatialIndexTest {
+
+    private static final int COUNT = 3000;
+
+    private static EarthquakeStore sEarthquakes;
+    private static EarthquakeSpatialIndex sIndex;
+
+    @BeforeClass
+    public static void setUpClass() {
+        sEarthquakes = new EarthquakeStore(COUNT);
+        Random random = new Random(7);
+        for (int i = 0; i < COUNT; i++) {
+            add(sEarthquakes, random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+        }
+        sIndex = EarthquakeSpatialIndex.build(sEarthquakes);
+    }
+
+    private static void add(EarthquakeStore earthquakes, double latitude, double longitude) {
+        earthquakes.onEarthquake("", 4.5, "Tonga", 0, "", longitude, latitude, 10);
+    }
+
+    private static double distanceKm(double latitude, double longitude, int position) {
+        return EarthquakeSpatialIndex.distanceKm(latitude, longitude,
+                sEarthquakes.getLatitude(position), sEarthquakes.getLongitude(position));
+    }
+
+    private static int[] scanRadius(double latitude, double longitude, double radiusKm) {
+        int[] found = new int[COUNT];
+        int size = 0;
+        for (int i = 0; i < COUNT; i++) {
+            if (distanceKm(latitude, longitude, i) <= radiusKm) {
+                found[size++] = i;
+            }
+        }
+        return Arrays.copyOf(found, size);
+    }
+
+    private static int[] scanBox(double minLatitude, double maxLatitude, double minLongitude, double maxLongitude) {
+        int[] found = new int[COUNT];
+        int size = 0;
+        for (int i = 0; i < COUNT; i++) {
+            double latitude = sEarthquakes.getLatitude(i);
+            double longitude = sEarthquakes.getLongitude(i);
+            boolean inLongitudes = minLongitude <= maxLongitude
+                    ? longitude >= minLongitude && longitude <= maxLongitude
+                    : longitude >= minLongitude || longitude <= maxLongitude;
+            if (latitude >= minLatitude && latitude <= maxLatitude && inLongitudes) {
+                found[size++] = i;
+            }
+        }
+        return Arrays.copyOf(found, size);
+    }
+
+    @Test
+    public void distanceKm_ofADegreeOfLatitude() {
+        assertEquals(111.195, EarthquakeSpatialIndex.distanceKm(0, 0, 1, 0), 0.001);
+        assertEquals(0, EarthquakeSpatialIndex.distanceKm(35.2, -120.5, 35.2, -120.5), 0);
+        //across the antimeridian
+        assertEquals(EarthquakeSpatialIndex.distanceKm(0, 0, 0, 2),
+                EarthquakeSpatialIndex.distanceKm(0, 179, 0, -179), 1e-9);
+    }
+
+    @Test
+    public void queryRadius_isTheScan() {
+        double[][] centers = {{0, 0}, {35, -120}, {-20, 178}, {10, -179.5}, {88, 40}, {-89, -100}};
+        for (double[] center : centers) {
+            for (double radiusKm : new double[]{100, 800, 3000}) {
+                assertArrayEquals(center[0] + "," + center[1] + " " + radiusKm + " km",
+                        scanRadius(center[0], center[1], radiusKm),
+                        sIndex.queryRadius(center[0], center[1], radiusKm));
+            }
+        }
+    }
+
+    @Test
+    public void queryBox_isTheScan() {
+        assertArrayEquals(scanBox(-10, 30, 20, 60), sIndex.queryBox(-10, 30, 20, 60));
+        assertArrayEquals(scanBox(-90, 90, -180, 180), sIndex.queryBox(-90, 90, -180, 180));
+        //a box crossing the antimeridian
+        assertArrayEquals(scanBox(-30, 30, 170, -170), sIndex.queryBox(-30, 30, 170, -170));
+        assertEquals(COUNT, sIndex.queryBox(-90, 90, -180, 180).length);
+    }
+
+    @Test
+    public void nearest_isTheClosestOfTheScan() {
+        double[][] points = {{0, 0}, {-45, 179.9}, {89.5, 0}, {12.3, -77.7}};
+        for (double[] point : points) {
+            int[] nearest = sIndex.nearest(point[0], point[1], 15);
+            double[] distances = new double[COUNT];
+            for (int i = 0; i < COUNT; i++) {
+                distances[i] = distanceKm(point[0], point[1], i);
+            }
+            Arrays.sort(distances);
+
+            assertEquals(15, nearest.length);
+            for (int j = 0; j < nearest.length; j++) {
+                assertEquals(distances[j], distanceKm(point[0], point[1], nearest[j]), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void build_leavesOutTheEventsWithoutCoordinates() {
+        EarthquakeStore earthquakes = new EarthquakeStore();
+        add(earthquakes, 10, 10);
+        add(earthquakes, Double.NaN, Double.NaN);
+        add(earthquakes, 10.5, 10.5);
+        EarthquakeSpatialIndex index = EarthquakeSpatialIndex.build(earthquakes);
+
+        assertArrayEquals(new int[]{0, 2}, index.queryBox(-90, 90, -180, 180));
+        //there are only 2 events to return
+        assertArrayEquals(new int[]{2, 0}, index.nearest(11, 11, 5));
+        assertEquals(0, EarthquakeSpatialIndex.build(new EarthquakeStore()).nearest(0, 0, 3).length);
+    }
+}
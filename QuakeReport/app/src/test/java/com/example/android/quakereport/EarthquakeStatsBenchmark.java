@@ -0,0 +1,164 @@
+package com.example.android.quakereport;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * The summary of 1M made up events: {@link EarthquakeStats} on the columns of the store against
+ * the same loop over a list of boxed earthquakes (a Double magnitude and a Long time, the region
+ * split out of every location and the days in a map), and the summary carried over when a page
+ * is appended.
+ */
+@Category(Benchmark.Timed.class)
+public class EarthquakeStatsBenchmark {
+
+    private static final int COUNT = 1000000;
+    private static final int PAGE = 20;
+
+    private static EarthquakeStore sEarthquakes;
+    private static List<BoxedEarthquake> sBoxed;
+
+    /**
+     * an earthquake of the list before the store
+     */
+    private static final class BoxedEarthquake {
+        private final Double mMagnitude;
+        private final String mLocation;
+        private final Long mTimeInMilliseconds;
+
+        private BoxedEarthquake(Double magnitude, String location, Long timeInMilliseconds) {
+            mMagnitude = magnitude;
+            mLocation = location;
+            mTimeInMilliseconds = timeInMilliseconds;
+        }
+    }
+
+    /**
+     * the summary of the boxed list: the counts of each magnitude bucket, the max magnitude, the
+     * count of each day and the count, max and sum of the magnitudes of each region
+     */
+    private static final class BoxedStats {
+        private final int[] mMagnitudeCounts = new int[EarthquakeStats.MAGNITUDE_BUCKETS];
+        private double mMaxMagnitude = Double.NEGATIVE_INFINITY;
+        private final Map<Integer, Integer> mDayCounts = new HashMap<>();
+        private final Map<String, double[]> mRegions = new HashMap<>();
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+        //the ids and urls are left empty to keep the heap small, the summary does not read them
+        sEarthquakes = new EarthquakeStore(COUNT);
+        sBoxed = new ArrayList<>(COUNT);
+        for (int i = 0; i < COUNT; i++) {
+            String location = Benchmark.location(i);
+            long time = Benchmark.NEWEST_TIME - i * 60000L;
+            sEarthquakes.onEarthquake("", Benchmark.magnitude(i), location, time, "",
+                    Benchmark.longitude(i), Benchmark.latitude(i), i % 600);
+            sBoxed.add(new BoxedEarthquake(Benchmark.magnitude(i), location, time));
+        }
+        sEarthquakes.compact();
+    }
+
+    private static BoxedStats computeBoxed(List<BoxedEarthquake> earthquakes) {
+        BoxedStats stats = new BoxedStats();
+        for (BoxedEarthquake earthquake : earthquakes) {
+            stats.mMagnitudeCounts[EarthquakeStats.magnitudeBucket(earthquake.mMagnitude)]++;
+            stats.mMaxMagnitude = Math.max(stats.mMaxMagnitude, earthquake.mMagnitude);
+
+            Integer day = EarthquakeStats.dayOf(earthquake.mTimeInMilliseconds);
+            Integer dayCount = stats.mDayCounts.get(day);
+            stats.mDayCounts.put(day, dayCount == null ? 1 : dayCount + 1);
+
+            //the primary location is split out of the location of each row, then its region
+            String location = earthquake.mLocation;
+            int of = location.indexOf(" of ");
+            String primaryLocation = of >= 0 ? location.substring(of + " of ".length()) : location;
+            String region = EarthquakeStats.regionOf(primaryLocation);
+            double[] regionStats = stats.mRegions.get(region);
+            if (regionStats == null) {
+                regionStats = new double[]{0, Double.NEGATIVE_INFINITY, 0};
+                stats.mRegions.put(region, regionStats);
+            }
+            regionStats[0]++;
+            regionStats[1] = Math.max(regionStats[1], earthquake.mMagnitude);
+            regionStats[2] += earthquake.mMagnitude;
+        }
+        return stats;
+    }
+
+    @Test
+    public void compute_1MEvents() throws Exception {
+        EarthquakeStats stats = EarthquakeStats.compute(sEarthquakes);
+        BoxedStats boxed = computeBoxed(sBoxed);
+        assertEquals(COUNT, stats.size());
+        for (int bucket = 0; bucket < EarthquakeStats.MAGNITUDE_BUCKETS; bucket++) {
+            assertEquals(boxed.mMagnitudeCounts[bucket], stats.getMagnitudeCount(bucket));
+        }
+        assertEquals(boxed.mMaxMagnitude, stats.getMaxMagnitude(), 0);
+        for (Map.Entry<Integer, Integer> day : boxed.mDayCounts.entrySet()) {
+            assertEquals(day.getValue().intValue(), stats.getCountOfDay(day.getKey()));
+        }
+        assertEquals(boxed.mRegions.keySet(), stats.getRegions().keySet());
+        for (Map.Entry<String, double[]> region : boxed.mRegions.entrySet()) {
+            EarthquakeStats.Region summary = stats.getRegions().get(region.getKey());
+            assertEquals((int) region.getValue()[0], summary.getCount());
+            assertEquals(region.getValue()[1], summary.getMaxMagnitude(), 0);
+            assertEquals(region.getValue()[2] / region.getValue()[0], summary.getMeanMagnitude(), 1e-9);
+        }
+
+        Benchmark.Result before = Benchmark.measure("1M events, boxed list", 2, 7, new Benchmark.Work() {
+            @Override
+            public Object run() {
+                return computeBoxed(sBoxed);
+            }
+        });
+        Benchmark.Result after = Benchmark.measure("1M events, EarthquakeStats.compute", 2, 7, new Benchmark.Work() {
+            @Override
+            public Object run() {
+                return EarthquakeStats.compute(sEarthquakes);
+            }
+        });
+        Benchmark.compare(before, after);
+    }
+
+    @Test
+    public void plus_aPageAfter1MEvents() throws Exception {
+        final EarthquakeStats stats = EarthquakeStats.compute(sEarthquakes);
+        //the store of the next page starts with the rows already summed
+        final EarthquakeStore earthquakes = new EarthquakeStore(COUNT + PAGE);
+        for (int i = 0; i < COUNT + PAGE; i++) {
+            earthquakes.onEarthquake("", Benchmark.magnitude(i), Benchmark.location(i),
+                    Benchmark.NEWEST_TIME - i * 60000L, "", Benchmark.longitude(i), Benchmark.latitude(i), i % 600);
+        }
+        EarthquakeStats recomputed = EarthquakeStats.compute(earthquakes);
+        EarthquakeStats carried = stats.plus(earthquakes);
+        assertEquals(recomputed.size(), carried.size());
+        for (int bucket = 0; bucket < EarthquakeStats.MAGNITUDE_BUCKETS; bucket++) {
+            assertEquals(recomputed.getMagnitudeCount(bucket), carried.getMagnitudeCount(bucket));
+        }
+        assertEquals(recomputed.getMeanMagnitude(), carried.getMeanMagnitude(), 1e-9);
+
+        Benchmark.Result before = Benchmark.measure("a page after 1M events, compute", 2, 7, new Benchmark.Work() {
+            @Override
+            public Object run() {
+                return EarthquakeStats.compute(earthquakes);
+            }
+        });
+        Benchmark.Result after = Benchmark.measure("a page after 1M events, plus", 20, 51, new Benchmark.Work() {
+            @Override
+            public Object run() {
+                return stats.plus(earthquakes);
+            }
+        });
+        //a page must not cost the rows before it
+        Benchmark.compare(before, after);
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * The buckets, days and regions of {@link EarthquakeStats} on a few events, and a summary
+ * carried over page by page (the time it takes on 1M events is in {@link EarthquakeStatsBenchmark}).
+ */
+public class EarthquakeStatsTest {
+
+    private static final long DAY = EarthquakeStats.DAY_IN_MILLISECONDS;
+
+    //a time on the day 17000 since the epoch, at noon
+    private static final long NOON = 17000 * DAY + DAY / 2;
+
+    private static void add(EarthquakeStore earthquakes, double magnitude, String location, long time) {
+        earthquakes.onEarthquake("", magnitude, location, time, "", 0, 0, 10);
+    }
+
+    @Test
+    public void compute_countsTheMagnitudeBuckets() {
+        EarthquakeStore earthquakes = new EarthquakeStore();
+        add(earthquakes, -0.5, "Nevada", NOON);
+        add(earthquakes, 0.9, "Nevada", NOON);
+        add(earthquakes, 4.0, "Nevada", NOON);
+        add(earthquakes, 4.99, "Nevada", NOON);
+        add(earthquakes, 11.2, "Nevada", NOON);
+
+        EarthquakeStats stats = EarthquakeStats.compute(earthquakes);
+
+        assertEquals(5, stats.size());
+        assertEquals(2, stats.getMagnitudeCount(0));
+        assertEquals(2, stats.getMagnitudeCount(4));
+        assertEquals(1, stats.getMagnitudeCount(EarthquakeStats.MAGNITUDE_BUCKETS - 1));
+        assertEquals(11.2, stats.getMaxMagnitude(), 0);
+        assertEquals((-0.5 + 0.9 + 4.0 + 4.99 + 11.2) / 5, stats.getMeanMagnitude(), 1e-9);
+    }
+
+    @Test
+    public void compute_countsTheDaysNewestFirst() {
+        //the order of the feeds, each day comes before the last one and the histogram grows backward
+        EarthquakeStore earthquakes = new EarthquakeStore();
+        add(earthquakes, 4.5, "Fiji", NOON + DAY / 4);
+        add(earthquakes, 4.5, "Fiji", NOON);
+        add(earthquakes, 4.5, "Fiji", NOON - DAY);
+        add(earthquakes, 4.5, "Fiji", NOON - 40 * DAY);
+        add(earthquakes, 4.5, "Fiji", NOON - 40 * DAY - DAY / 4);
+
+        EarthquakeStats stats = EarthquakeStats.compute(earthquakes);
+
+        assertEquals(17000 - 40, stats.getFirstDay());
+        assertEquals(41, stats.getDayCount());
+        assertEquals(2, stats.getCountOfDay(17000));
+        assertEquals(1, stats.getCountOfDay(16999));
+        assertEquals(0, stats.getCountOfDay(16990));
+        assertEquals(2, stats.getCountOfDay(17000 - 40));
+        assertEquals(0, stats.getCountOfDay(17001));
+        assertEquals(0, stats.getCountOfDay(16000));
+    }
+
+    @Test
+    public void compute_countsTheDaysOldestFirst() {
+        EarthquakeStore earthquakes = new EarthquakeStore();
+        for (int day = 0; day < 30; day++) {
+            add(earthquakes, 4.5, "Fiji", NOON + day * DAY);
+        }
+
+        EarthquakeStats stats = EarthquakeStats.compute(earthquakes);
+
+        assertEquals(17000, stats.getFirstDay());
+        assertEquals(30, stats.getDayCount());
+        for (int day = 0; day < 30; day++) {
+            assertEquals(1, stats.getCountOfDay(17000 + day));
+        }
+    }
+
+    @Test
+    public void dayOf_roundsDownBefore1970() {
+        assertEquals(0, EarthquakeStats.dayOf(0));
+        assertEquals(0, EarthquakeStats.dayOf(DAY - 1));
+        assertEquals(-1, EarthquakeStats.dayOf(-1));
+        assertEquals(-1, EarthquakeStats.dayOf(-DAY));
+        assertEquals(-2, EarthquakeStats.dayOf(-DAY - 1));
+    }
+
+    @Test
+    public void compute_summarizesTheRegions() {
+        EarthquakeStore earthquakes = new EarthquakeStore();
+        add(earthquakes, 3.0, "10km NE of Anchorage, Alaska", NOON);
+        add(earthquakes, 5.0, "Alaska", NOON);
+        add(earthquakes, 4.0, "Kepulauan Talaud, Indonesia", NOON);
+        add(earthquakes, 2.5, "80km W of Ferndale, CA", NOON);
+
+        Map<String, EarthquakeStats.Region> regions = EarthquakeStats.compute(earthquakes).getRegions();
+
+        assertEquals(3, regions.size());
+        EarthquakeStats.Region alaska = regions.get("Alaska");
+        assertEquals(2, alaska.getCount());
+        assertEquals(5.0, alaska.getMaxMagnitude(), 0);
+        assertEquals(4.0, alaska.getMeanMagnitude(), 1e-9);
+        assertEquals(1, regions.get("Indonesia").getCount());
+        assertEquals(1, regions.get("CA").getCount());
+    }
+
+    @Test
+    public void plus_isTheSameAsComputingEveryPage() {
+        EarthquakeStore firstPage = Benchmark.store(50);
+        EarthquakeStore bothPages = firstPage.copy();
+        for (int i = 50; i < 80; i++) {
+            add(bothPages, Benchmark.magnitude(i), Benchmark.location(i), Benchmark.NEWEST_TIME - i * 6 * 3600000L);
+        }
+
+        EarthquakeStats first = EarthquakeStats.compute(firstPage);
+        EarthquakeStats carried = first.plus(bothPages);
+        EarthquakeStats recomputed = EarthquakeStats.compute(bothPages);
+
+        assertSummariesEqual(recomputed, carried);
+        //the summary of the first page is not changed
+        assertEquals(50, first.size());
+        assertSummariesEqual(EarthquakeStats.compute(firstPage), first);
+    }
+
+    @Test
+    public void compute_inParallelIsTheSameAsOneRange() {
+        //large enough to be cut in ranges summed at the same time (on a device with more than
+        //one core), against pages too small to be cut
+        EarthquakeStore earthquakes = new EarthquakeStore(250000);
+        for (int i = 0; i < 250000; i++) {
+            add(earthquakes, Benchmark.magnitude(i), Benchmark.location(i), Benchmark.NEWEST_TIME - i * 60000L);
+        }
+        EarthquakeStats oneRange = EarthquakeStats.empty();
+        for (int size = 50000; size <= 250000; size += 50000) {
+            EarthquakeStore page = new EarthquakeStore(size);
+            for (int i = 0; i < size; i++) {
+                page.add(earthquakes, i);
+            }
+            oneRange = oneRange.plus(page);
+        }
+
+        assertSummariesEqual(oneRange, EarthquakeStats.compute(earthquakes));
+    }
+
+    @Test
+    public void empty_hasNoEarthquake() {
+        EarthquakeStats stats = EarthquakeStats.empty();
+
+        assertEquals(0, stats.size());
+        assertEquals(0, stats.getDayCount());
+        assertTrue(Double.isNaN(stats.getMeanMagnitude()));
+        assertEquals(Double.NEGATIVE_INFINITY, stats.getMaxMagnitude(), 0);
+        assertTrue(stats.getRegions().isEmpty());
+    }
+
+    private static void assertSummariesEqual(EarthquakeStats expected, EarthquakeStats actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int bucket = 0; bucket < EarthquakeStats.MAGNITUDE_BUCKETS; bucket++) {
+            assertEquals(expected.getMagnitudeCount(bucket), actual.getMagnitudeCount(bucket));
+        }
+        assertEquals(expected.getMaxMagnitude(), actual.getMaxMagnitude(), 0);
+        assertEquals(expected.getMeanMagnitude(), actual.getMeanMagnitude(), 1e-9);
+        assertEquals(expected.getFirstDay(), actual.getFirstDay());
+        assertEquals(expected.getDayCount(), actual.getDayCount());
+        for (int day = expected.getFirstDay(); day < expected.getFirstDay() + expected.getDayCount(); day++) {
+            assertEquals(expected.getCountOfDay(day), actual.getCountOfDay(day));
+        }
+        assertEquals(expected.getRegions().keySet(), actual.getRegions().keySet());
+        for (EarthquakeStats.Region region : expected.getRegions().values()) {
+            EarthquakeStats.Region other = actual.getRegions().get(region.getName());
+            assertEquals(region.getCount(), other.getCount());
+            assertEquals(region.getMaxMagnitude(), other.getMaxMagnitude(), 0);
+            assertEquals(region.getMeanMagnitude(), other.getMeanMagnitude(), 1e-9);
+        }
+    }
+}
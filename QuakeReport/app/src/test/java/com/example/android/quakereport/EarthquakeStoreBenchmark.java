@@ -0,0 +1,147 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link EarthquakeStore} against the list of boxed earthquakes it replaced, for the events of
+ * a large result: the time and bytes to fill it, the heap it then holds and a pass over every row.
+ */
+@Category(Benchmark.Timed.class)
+public class EarthquakeStoreBenchmark {
+
+    private static final int COUNT = 100000;
+
+    /**
+     * the Earthquake of the ArrayList before the store, with boxed magnitude and time
+     */
+    private static final class BoxedEarthquake {
+        private final String mId;
+        private final Double mMagnitude;
+        private final String mLocation;
+        private final Long mTimeInMilliseconds;
+        private final String mUrl;
+        private final Double mLongitude;
+        private final Double mLatitude;
+        private final Double mDepth;
+
+        BoxedEarthquake(String id, Double magnitude, String location, Long timeInMilliseconds, String url,
+                        Double longitude, Double latitude, Double depth) {
+            mId = id;
+            mMagnitude = magnitude;
+            mLocation = location;
+            mTimeInMilliseconds = timeInMilliseconds;
+            mUrl = url;
+            mLongitude = longitude;
+            mLatitude = latitude;
+            mDepth = depth;
+        }
+
+        Double getMagnitude() {
+            return mMagnitude;
+        }
+
+        Long getTimeInMilliseconds() {
+            return mTimeInMilliseconds;
+        }
+    }
+
+    //the Strings of the events as a parser gives them, a new object for every event
+    private static final String[] IDS = new String[COUNT];
+    private static final String[] LOCATIONS = new String[COUNT];
+    private static final String[] URLS = new String[COUNT];
+
+    static {
+        for (int i = 0; i < COUNT; i++) {
+            IDS[i] = new String("us" + (20000000 + i));
+            LOCATIONS[i] = new String(Benchmark.location(i));
+            URLS[i] = new String("https://earthquake.usgs.gov/earthquakes/eventpage/" + IDS[i]);
+        }
+    }
+
+    private static List<BoxedEarthquake> fillList() {
+        List<BoxedEarthquake> earthquakes = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++) {
+            earthquakes.add(new BoxedEarthquake(IDS[i], Benchmark.magnitude(i), LOCATIONS[i],
+                    Benchmark.NEWEST_TIME - i * 60000L, URLS[i], (double) i, (double) -i, (double) (i % 600)));
+        }
+        return earthquakes;
+    }
+
+    private static EarthquakeStore fillStore() {
+        EarthquakeStore earthquakes = new EarthquakeStore();
+        for (int i = 0; i < COUNT; i++) {
+            earthquakes.onEarthquake(IDS[i], Benchmark.magnitude(i), LOCATIONS[i],
+                    Benchmark.NEWEST_TIME - i * 60000L, URLS[i], i, -i, i % 600);
+        }
+        earthquakes.compact();
+        return earthquakes;
+    }
+
+    @Test
+    public void fill_100000Events() throws Exception {
+        Benchmark.Result before = Benchmark.measure("ArrayList<boxed Earthquake> fill", 5, 11, new Benchmark.Work() {
+            @Override
+            public Object run() {
+                return fillList();
+            }
+        });
+        Benchmark.Result after = Benchmark.measure("EarthquakeStore fill", 5, 11, new Benchmark.Work() {
+            @Override
+            public Object run() {
+                return fillStore();
+            }
+        });
+        Benchmark.compare(before, after);
+
+        long listBytes = Benchmark.retainedBytes("ArrayList<boxed Earthquake>", new Benchmark.Work() {
+            @Override
+            public Object run() {
+                return fillList();
+            }
+        });
+        long storeBytes = Benchmark.retainedBytes("EarthquakeStore", new Benchmark.Work() {
+            @Override
+            public Object run() {
+                return fillStore();
+            }
+        });
+        System.out.println(String.format("per event: %d B -> %d B (without the id and url Strings)",
+                listBytes / COUNT, storeBytes / COUNT));
+    }
+
+    @Test
+    public void scan_100000Events() throws Exception {
+        final List<BoxedEarthquake> list = fillList();
+        final EarthquakeStore store = fillStore();
+
+        Benchmark.Result before = Benchmark.measure("ArrayList<boxed Earthquake> scan", 20, 51, new Benchmark.Work() {
+            @Override
+            public Object run() {
+                double magnitudes = 0;
+                long times = 0;
+                for (BoxedEarthquake earthquake : list) {
+                    magnitudes += earthquake.getMagnitude();
+                    times += earthquake.getTimeInMilliseconds();
+                }
+                return magnitudes + times;
+            }
+        });
+        Benchmark.Result after = Benchmark.measure("EarthquakeStore scan", 20, 51, new Benchmark.Work() {
+            @Override
+            public Object run() {
+                double magnitudes = 0;
+                long times = 0;
+                for (int i = 0; i < store.size(); i++) {
+                    magnitudes += store.getMagnitude(i);
+                    times += store.getTimeInMilliseconds(i);
+                }
+                return magnitudes + times;
+            }
+        });
+        Benchmark.compare(before, after);
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * The columns of {@link EarthquakeStore}: what is read back, the shared locations and the copies
+ * that add rows after the ones of the store (the heap it saves is in {@link EarthquakeStoreBenchmark}).
+ */
+public class EarthquakeStoreTest {
+
+    private static void add(EarthquakeStore earthquakes, String id, String location) {
+        earthquakes.onEarthquake(id, 4.5, location, 1000L, "https://earthquake.usgs.gov/" + id, 10, 20, 30);
+    }
+
+    private static String[] ids(EarthquakeStore earthquakes) {
+        String[] ids = new String[earthquakes.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = earthquakes.getId(i);
+        }
+        return ids;
+    }
+
+    @Test
+    public void onEarthquake_readsEveryFieldBack() {
+        EarthquakeStore earthquakes = Benchmark.store(100);
+
+        assertEquals(100, earthquakes.size());
+        EarthquakeStore.Row row = earthquakes.newRow();
+        for (int i = 0; i < earthquakes.size(); i++) {
+            row.moveTo(i);
+            String id = "us" + (20000000 + i);
+            assertEquals(id, earthquakes.getId(i));
+            assertEquals(Benchmark.magnitude(i), earthquakes.getMagnitude(i), 0);
+            assertEquals(Benchmark.location(i), earthquakes.getLocation(i));
+            assertEquals(Benchmark.NEWEST_TIME - i * 60000L, earthquakes.getTimeInMilliseconds(i));
+            assertEquals("https://earthquake.usgs.gov/earthquakes/eventpage/" + id, earthquakes.getUrl(i));
+            assertEquals(Benchmark.longitude(i), earthquakes.getLongitude(i), 0);
+            assertEquals(Benchmark.latitude(i), earthquakes.getLatitude(i), 0);
+            assertEquals(i % 600, earthquakes.getDepth(i), 0);
+
+            assertEquals(id, row.getId());
+            assertEquals(earthquakes.getLocation(i), row.getLocation());
+            assertEquals(earthquakes.getTimeInMilliseconds(i), row.getTimeInMilliseconds());
+            assertEquals(earthquakes.getUrl(i), earthquakes.get(i).getUrl());
+        }
+    }
+
+    @Test
+    public void onEarthquake_splitsTheLocation() {
+        EarthquakeStore earthquakes = new EarthquakeStore();
+        add(earthquakes, "a", "88km N of Yelizovo, Russia");
+        add(earthquakes, "b", "Kermadec Islands region");
+
+        assertEquals("88km N of ", earthquakes.getLocationOffset(0));
+        assertEquals("Yelizovo, Russia", earthquakes.getPrimaryLocation(0));
+        assertEquals("", earthquakes.getLocationOffset(1));
+        assertEquals("Kermadec Islands region", earthquakes.getPrimaryLocation(1));
+    }
+
+    @Test
+    public void onEarthquake_keepsAnEqualLocationOnce() {
+        EarthquakeStore earthquakes = new EarthquakeStore();
+        add(earthquakes, "a", new String("12km S of Suva, Fiji"));
+        add(earthquakes, "b", new String("12km S of Suva, Fiji"));
+        add(earthquakes, "c", new String("3km E of Suva, Fiji"));
+
+        assertSame(earthquakes.getLocation(0), earthquakes.getLocation(1));
+        assertSame(earthquakes.getPrimaryLocation(0), earthquakes.getPrimaryLocation(2));
+    }
+
+    @Test
+    public void onEarthquake_storesAMissingIdUrlOrLocationAsEmpty() {
+        EarthquakeStore earthquakes = new EarthquakeStore();
+        earthquakes.onEarthquake(null, 1.0, null, 0, null, 0, 0, 0);
+
+        assertEquals("", earthquakes.getId(0));
+        assertEquals("", earthquakes.getLocation(0));
+        assertEquals("", earthquakes.getUrl(0));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getMagnitude_afterTheLastRowThrows() {
+        EarthquakeStore earthquakes = new EarthquakeStore(16);
+        add(earthquakes, "a", "Tonga");
+        earthquakes.getMagnitude(1);
+    }
+
+    @Test
+    public void copy_addsRowsWithoutChangingTheStore() {
+        EarthquakeStore earthquakes = new EarthquakeStore(4);
+        add(earthquakes, "a", "Tonga");
+        add(earthquakes, "b", "Tonga");
+
+        EarthquakeStore first = earthquakes.copy();
+        add(first, "c", "Fiji");
+        //a second copy of the same store writes after the same row, it must not overwrite the first one
+        EarthquakeStore second = earthquakes.copy();
+        add(second, "d", "Chile");
+        add(second, "e", "Chile");
+        add(second, "f", "Chile");
+
+        assertArrayEquals(new String[]{"a", "b"}, ids(earthquakes));
+        assertArrayEquals(new String[]{"a", "b", "c"}, ids(first));
+        assertArrayEquals(new String[]{"a", "b", "d", "e", "f"}, ids(second));
+        assertEquals("Fiji", first.getLocation(2));
+    }
+
+    @Test
+    public void addAll_andAddCopyTheRowsOfAnOtherStore() {
+        EarthquakeStore page = new EarthquakeStore();
+        add(page, "a", "88km N of Yelizovo, Russia");
+        add(page, "b", "Tonga");
+        add(page, "c", "Fiji");
+
+        EarthquakeStore earthquakes = new EarthquakeStore(1);
+        earthquakes.addAll(page);
+        earthquakes.add(page, 0);
+
+        assertArrayEquals(new String[]{"a", "b", "c", "a"}, ids(earthquakes));
+        assertEquals("Yelizovo, Russia", earthquakes.getPrimaryLocation(3));
+        assertEquals("88km N of ", earthquakes.getLocationOffset(0));
+    }
+}
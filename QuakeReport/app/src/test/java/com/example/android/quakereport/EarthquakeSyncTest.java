@@ -0,0 +1,212 @@
+package com.example.android.quakereport;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * The delta syncs of {@link EarthquakeSync}, driven by a fake clock against a {@link LocalServer}
+ * into a local copy in memory.
+ */
+public class EarthquakeSyncTest {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    //2017-07-14T02:40:00.000Z
+    private static final long NOW = 1500000000000L;
+
+    private final FakeClock mClock = new FakeClock();
+    private final MemoryLocalCopy mLocalCopy = new MemoryLocalCopy();
+
+    //the query of each request and the feed the server answers the next one with
+    private final List<String> mQueries = Collections.synchronizedList(new ArrayList<String>());
+    private volatile String mFeed = LocalServer.feed();
+    private volatile int mCode = 200;
+
+    private LocalServer mServer;
+    private EarthquakeSync mSync;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(int request, HttpExchange exchange) throws IOException {
+                mQueries.add(exchange.getRequestURI().getRawQuery());
+                LocalServer.respond(exchange, mCode, mFeed);
+            }
+        });
+        mClock.mTime = NOW;
+        mSync = new EarthquakeSync(mLocalCopy, mServer.url("/query?format=geojson").toString(),
+                mClock, 30 * DAY);
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    @Test
+    public void sync_firstSyncFetchesTheWholeFeed() {
+        mFeed = LocalServer.feed(
+                LocalServer.feature("us2", 6.0, "Fiji", NOW - DAY),
+                LocalServer.feature("us1", 6.5, "Chile", NOW - 2 * DAY));
+
+        assertEquals(2, mSync.sync());
+
+        assertEquals(Collections.singletonList("format=geojson"), mQueries);
+        assertEquals(2, mLocalCopy.mRows.size());
+        assertEquals(1, mSync.getVersion());
+        assertEquals(NOW, mSync.getLastSyncTime());
+    }
+
+    @Test
+    public void sync_nextSyncOnlyAsksForTheEventsUpdatedAfterTheNewest() {
+        mFeed = LocalServer.feed(LocalServer.feature("us1", 6.5, "Chile", NOW - DAY));
+        mSync.sync();
+
+        //the first event revised and a new one
+        mFeed = LocalServer.feed(
+                LocalServer.feature("us2", 6.2, "Fiji", NOW + 1000),
+                LocalServer.feature("us1", 6.7, "Chile", NOW - DAY));
+        mClock.mTime = NOW + 60000;
+
+        assertEquals(2, mSync.sync());
+
+        //the time of the newest stored event, in UTC
+        assertEquals("format=geojson&updatedafter=2017-07-13T02:40:00.000", mQueries.get(1));
+        assertEquals(2, mLocalCopy.mRows.size());
+        assertEquals(6.7, mLocalCopy.mRows.get("us1").getMagnitude(), 0);
+        assertEquals(2, mSync.getVersion());
+        assertEquals(NOW + 60000, mSync.getLastSyncTime());
+    }
+
+    @Test
+    public void sync_emptyDeltaDoesNotChangeTheVersion() {
+        mFeed = LocalServer.feed(LocalServer.feature("us1", 6.5, "Chile", NOW - DAY));
+        mSync.sync();
+
+        mFeed = LocalServer.feed();
+        mClock.mTime = NOW + 60000;
+
+        assertEquals(0, mSync.sync());
+        assertEquals(1, mSync.getVersion());
+        assertEquals(NOW + 60000, mSync.getLastSyncTime());
+    }
+
+    @Test
+    public void sync_dropsTheEventsOlderThanTheRetention() {
+        mFeed = LocalServer.feed(
+                LocalServer.feature("us2", 6.0, "Fiji", NOW - DAY),
+                LocalServer.feature("us1", 6.5, "Chile", NOW - 20 * DAY));
+        mSync.sync();
+
+        mFeed = LocalServer.feed();
+        mClock.mTime = NOW + 15 * DAY;
+        mSync.sync();
+
+        assertEquals(Collections.singleton("us2"), mLocalCopy.mRows.keySet());
+    }
+
+    @Test
+    public void sync_failedRequestWritesNothingAndAsksAgainFromTheSameEvent() {
+        mFeed = LocalServer.feed(LocalServer.feature("us1", 6.5, "Chile", NOW - DAY));
+        mSync.sync();
+
+        mCode = 503;
+        mClock.mTime = NOW + 60000;
+        assertEquals(0, mSync.sync());
+        assertEquals(1, mSync.getVersion());
+        //the failure still counts as a sync, the next one is at the next interval
+        assertEquals(NOW + 60000, mSync.getLastSyncTime());
+
+        mCode = 200;
+        mSync.sync();
+        assertEquals(mQueries.get(1), mQueries.get(mQueries.size() - 1));
+    }
+
+    @Test
+    public void isSyncDue_followsTheClock() {
+        assertTrue(mSync.isSyncDue(DAY));
+        mSync.sync();
+
+        mClock.mTime = NOW + DAY - 1;
+        assertFalse(mSync.isSyncDue(DAY));
+        mClock.mTime = NOW + DAY;
+        assertTrue(mSync.isSyncDue(DAY));
+    }
+
+    /**
+     * a clock the test sets
+     */
+    private static final class FakeClock implements EarthquakeSync.Clock {
+        volatile long mTime;
+
+        @Override
+        public long currentTimeMillis() {
+            return mTime;
+        }
+    }
+
+    /**
+     * the local copy in a map, by id
+     */
+    private static final class MemoryLocalCopy implements EarthquakeSync.LocalCopy {
+        final Map<String, Earthquake> mRows = new HashMap<>();
+        final Map<String, Long> mSyncTimes = new HashMap<>();
+
+        @Override
+        public int insert(EarthquakeStore earthquakes) {
+            for (int i = 0; i < earthquakes.size(); i++) {
+                mRows.put(earthquakes.getId(i), earthquakes.get(i));
+            }
+            return earthquakes.size();
+        }
+
+        @Override
+        public int deleteOlderThan(long time) {
+            int deleted = 0;
+            for (String id : new ArrayList<>(mRows.keySet())) {
+                if (mRows.get(id).getTimeInMilliseconds() < time) {
+                    mRows.remove(id);
+                    deleted++;
+                }
+            }
+            return deleted;
+        }
+
+        @Override
+        public EarthquakeStore queryNextPage(EarthquakeStore previous, int limit) {
+            throw new UnsupportedOperationException("not read by the sync");
+        }
+
+        @Override
+        public long getNewestTime() {
+            long newest = -1;
+            for (Earthquake earthquake : mRows.values()) {
+                newest = Math.max(newest, earthquake.getTimeInMilliseconds());
+            }
+            return newest;
+        }
+
+        @Override
+        public long getLastSyncTime(String feedUrl) {
+            Long time = mSyncTimes.get(feedUrl);
+            return time != null ? time : 0;
+        }
+
+        @Override
+        public void setLastSyncTime(String feedUrl, long time) {
+            mSyncTimes.put(feedUrl, time);
+        }
+    }
+}
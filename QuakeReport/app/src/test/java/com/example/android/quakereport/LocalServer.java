@@ -0,0 +1,116 @@
+package com.example.android.quakereport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A server on the loopback for the tests, it answers each request with the {@link Handler} of the test
+ * and counts them. stop it in a finally block.
+ * it also writes the GeoJSON of a USGS feed ({@link #feature}, {@link #feed}).
+ */
+final class LocalServer {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static {
+        //the server writes the headers and the body apart, without this a kept alive connection
+        //waits for the delayed ACK of the client (40 ms) on every response, a real server doesn't
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    /**
+     * answers one request
+     */
+    interface Handler {
+        /**
+         * @param request the number of the request, 1 for the first one
+         */
+        void handle(int request, HttpExchange exchange) throws IOException;
+    }
+
+    private final HttpServer mServer;
+    //a thread for each request, a slow one (i.e. the first copy of a hedged request) doesn't hold the others
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+    private final AtomicInteger mRequests = new AtomicInteger();
+
+    LocalServer(final Handler handler) throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    handler.handle(mRequests.incrementAndGet(), exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        mServer.setExecutor(mExecutor);
+        mServer.start();
+    }
+
+    URL url(String path) throws MalformedURLException {
+        return new URL("http://127.0.0.1:" + mServer.getAddress().getPort() + path);
+    }
+
+    int getRequestCount() {
+        return mRequests.get();
+    }
+
+    /**
+     * stop the server, the slow handlers are interrupted
+     */
+    void stop() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * send a response with a text body
+     */
+    static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes(UTF_8);
+        exchange.sendResponseHeaders(code, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            OutputStream outputStream = exchange.getResponseBody();
+            outputStream.write(bytes);
+            outputStream.close();
+        }
+    }
+
+    /**
+     * @return the GeoJSON of a feature, with the properties read by {@link EarthquakeParser}
+     */
+    static String feature(String id, double magnitude, String place, long time) {
+        return String.format(Locale.US, "{\"type\":\"Feature\",\"id\":\"%s\",\"properties\":{\"mag\":%s,"
+                        + "\"place\":\"%s\",\"time\":%d,\"url\":\"https://earthquake.usgs.gov/%s\"},"
+                        + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[-120.5,35.25,8.1]}}",
+                id, magnitude, place, time, id);
+    }
+
+    /**
+     * @return the GeoJSON of a feed with these features
+     */
+    static String feed(String... features) {
+        StringBuilder feed = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+        for (int i = 0; i < features.length; i++) {
+            if (i > 0) {
+                feed.append(',');
+            }
+            feed.append(features[i]);
+        }
+        return feed.append("]}").toString();
+    }
+}
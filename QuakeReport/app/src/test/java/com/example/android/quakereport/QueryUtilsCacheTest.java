@@ -0,0 +1,182 @@
+package com.example.android.quakereport;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * The responses {@link QueryUtils} keeps in an {@link EarthquakeCache} and revalidates with a
+ * conditional GET, against a {@link LocalServer}.
+ */
+public class QueryUtilsCacheTest {
+
+    private static final String ETAG = "\"v1\"";
+    private static final String FEED = LocalServer.feed(
+            LocalServer.feature("us1", 4.5, "10km N of Ridgecrest, CA", 1500000000000L),
+            LocalServer.feature("us2", 6.1, "Tonga", 1400000000000L));
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mDirectory;
+    private EarthquakeCache mCache;
+
+    //the If-None-Match header of each request, "" if there was none
+    private final List<String> mConditions = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = mFolder.newFolder("cache");
+        mCache = new EarthquakeCache(mDirectory, 1024 * 1024, 60000);
+        QueryUtils.setCache(mCache);
+    }
+
+    @After
+    public void tearDown() {
+        QueryUtils.setCache(null);
+    }
+
+    /**
+     * answers 304 when the request has the ETag of the feed, or else the feed
+     */
+    private LocalServer.Handler revalidatingFeed() {
+        return new LocalServer.Handler() {
+            @Override
+            public void handle(int request, HttpExchange exchange) throws IOException {
+                String condition = exchange.getRequestHeaders().getFirst("If-None-Match");
+                mConditions.add(condition != null ? condition : "");
+                exchange.getResponseHeaders().set("ETag", ETAG);
+                if (ETAG.equals(condition)) {
+                    LocalServer.respond(exchange, 304, "");
+                } else {
+                    LocalServer.respond(exchange, 200, FEED);
+                }
+            }
+        };
+    }
+
+    @Test
+    public void fetch_freshResponseIsServedWithoutRequest() throws Exception {
+        LocalServer server = new LocalServer(revalidatingFeed());
+        try {
+            String url = server.url("/query?format=geojson").toString();
+
+            EarthquakeStore first = QueryUtils.fetchEarthquakeData(url);
+            EarthquakeStore second = QueryUtils.fetchEarthquakeData(url);
+
+            assertEquals(1, server.getRequestCount());
+            assertEquals(1, mCache.getMissCount());
+            assertEquals(1, mCache.getHitCount());
+            assertEquals(2, second.size());
+            assertEquals(first.getId(1), second.getId(1));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void fetch_expiredResponseIsRevalidatedWithItsETag() throws Exception {
+        LocalServer server = new LocalServer(revalidatingFeed());
+        try {
+            String url = server.url("/query?format=geojson").toString();
+            mCache.setTimeToLive(url, 0);
+
+            QueryUtils.fetchEarthquakeData(url);
+            EarthquakeStore revalidated = QueryUtils.fetchEarthquakeData(url);
+
+            assertEquals(Arrays.asList("", ETAG), mConditions);
+            assertEquals(1, mCache.getRevalidateCount());
+            assertEquals(2, revalidated.size());
+            assertEquals("us1", revalidated.getId(0));
+            assertEquals(6.1, revalidated.getMagnitude(1), 0);
+            assertEquals("Tonga", revalidated.getLocation(1));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void fetch_revalidatedResponseIsReadBackFromItsSnapshot() throws Exception {
+        LocalServer server = new LocalServer(revalidatingFeed());
+        try {
+            String url = server.url("/query?format=geojson").toString();
+            mCache.setTimeToLive(url, 0);
+            QueryUtils.fetchEarthquakeData(url);
+
+            //a new cache on the same directory, as after a restart of the app: nothing is in memory
+            mCache = new EarthquakeCache(mDirectory, 1024 * 1024, 0);
+            QueryUtils.setCache(mCache);
+            EarthquakeStore revalidated = QueryUtils.fetchEarthquakeData(url);
+
+            assertEquals(1, mCache.getRevalidateCount());
+            assertEquals(2, revalidated.size());
+            assertEquals(1500000000000L, revalidated.getTimeInMilliseconds(0));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void fetch_redirectedResponseIsCachedUnderTheRequestUrl() throws Exception {
+        final LocalServer[] self = new LocalServer[1];
+        LocalServer server = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(int request, HttpExchange exchange) throws IOException {
+                if (exchange.getRequestURI().getPath().equals("/old")) {
+                    exchange.getResponseHeaders().set("Location", self[0].url("/query").toString());
+                    LocalServer.respond(exchange, 301, "");
+                } else {
+                    LocalServer.respond(exchange, 200, FEED);
+                }
+            }
+        });
+        self[0] = server;
+        try {
+            String url = server.url("/old").toString();
+
+            QueryUtils.fetchEarthquakeData(url);
+            QueryUtils.fetchEarthquakeData(url);
+
+            assertNotNull(mCache.get(url));
+            assertEquals(1, mCache.getHitCount());
+            //the redirect and the feed, once
+            assertEquals(2, server.getRequestCount());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void fetch_errorResponseIsAFailureNotAnEmptyFeed() throws Exception {
+        LocalServer server = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(int request, HttpExchange exchange) throws IOException {
+                LocalServer.respond(exchange, 400, "bad request");
+            }
+        });
+        try {
+            String url = server.url("/query?minmagnitude=x").toString();
+            try {
+                QueryUtils.fetchEarthquakeData(url);
+                fail("the server answered 400");
+            } catch (IOException expected) {
+            }
+            assertNull(mCache.get(url));
+        } finally {
+            server.stop();
+        }
+    }
+}
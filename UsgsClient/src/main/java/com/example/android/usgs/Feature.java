@@ -0,0 +1,224 @@
+package com.example.android.usgs;
+
+/**
+ * One feature (earthquake) of a USGS GeoJSON response, as given to a {@link FeatureMapper}.
+ *
+ * only the properties the mapper named are kept, the other ones were skipped by the parser.
+ * the object is reused for every feature of a response: the mapper copies what it needs and
+ * doesn't keep it. a property that is missing or null in the feed is "missing" here.
+ */
+public final class Feature {
+
+    //the kind of value of each property
+    private static final int MISSING = 0;
+    private static final int STRING = 1;
+    private static final int NUMBER = 2;
+    private static final int BOOLEAN = 3;
+
+    //a whole number under that is written without a decimal point (i.e. "5" and not "5.0")
+    private static final double MAX_WHOLE_NUMBER = 1e15;
+
+    private final String[] mNames;
+    private final int[] mTypes;
+    private final String[] mStrings;
+    private final double[] mNumbers;
+
+    private boolean mHasProperties;
+    private String mId;
+    private double mLongitude;
+    private double mLatitude;
+    private double mDepth;
+
+    /**
+     * @param names the properties to keep
+     */
+    Feature(String[] names) {
+        mNames = names;
+        mTypes = new int[names.length];
+        mStrings = new String[names.length];
+        mNumbers = new double[names.length];
+        reset();
+    }
+
+    /**
+     * @return the id of the feature (i.e. "us10004u1y"), null if it has none
+     */
+    public String getId() {
+        return mId;
+    }
+
+    /**
+     * @return the longitude of the epicenter in degrees, NaN when the feature has no geometry
+     */
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    /**
+     * @return the latitude of the epicenter in degrees, NaN when the feature has no geometry
+     */
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    /**
+     * @return the depth in km, NaN when the feature has no geometry
+     */
+    public double getDepth() {
+        return mDepth;
+    }
+
+    /**
+     * @param name one of the properties named by the mapper
+     * @return false if the property is missing or null
+     */
+    public boolean has(String name) {
+        return mTypes[indexOf(name)] != MISSING;
+    }
+
+    /**
+     * @param name one of the properties named by the mapper
+     * @return the text of the property (a number as written by org.json i.e. "5" or "3.4"),
+     * null if it's missing
+     */
+    public String getString(String name) {
+        int index = indexOf(name);
+        switch (mTypes[index]) {
+            case STRING:
+                return mStrings[index];
+            case NUMBER:
+                double value = mNumbers[index];
+                if (value == Math.rint(value) && Math.abs(value) < MAX_WHOLE_NUMBER) {
+                    return Long.toString((long) value);
+                }
+                return Double.toString(value);
+            case BOOLEAN:
+                return mNumbers[index] != 0 ? "true" : "false";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @param name one of the properties named by the mapper
+     * @param fallback the value returned if the property is missing
+     */
+    public String getString(String name, String fallback) {
+        String value = getString(name);
+        return value != null ? value : fallback;
+    }
+
+    /**
+     * @param name one of the properties named by the mapper
+     * @param fallback the value returned if the property is missing or not a number
+     * @return the number (a string holding a number is parsed)
+     */
+    public double getDouble(String name, double fallback) {
+        int index = indexOf(name);
+        switch (mTypes[index]) {
+            case NUMBER:
+                return mNumbers[index];
+            case STRING:
+                try {
+                    return Double.parseDouble(mStrings[index]);
+                } catch (NumberFormatException e) {
+                    return fallback;
+                }
+            default:
+                return fallback;
+        }
+    }
+
+    /**
+     * the numbers are read as doubles, a long is exact up to 2^53 (i.e. any time in milliseconds)
+     * @param name one of the properties named by the mapper
+     * @param fallback the value returned if the property is missing or not a number
+     */
+    public long getLong(String name, long fallback) {
+        double value = getDouble(name, Double.NaN);
+        return Double.isNaN(value) ? fallback : (long) value;
+    }
+
+    /**
+     * @param name one of the properties named by the mapper
+     * @param fallback the value returned if the property is missing or not a number
+     */
+    public int getInt(String name, int fallback) {
+        double value = getDouble(name, Double.NaN);
+        return Double.isNaN(value) ? fallback : (int) value;
+    }
+
+    boolean hasProperties() {
+        return mHasProperties;
+    }
+
+    void setHasProperties() {
+        mHasProperties = true;
+    }
+
+    void setId(String id) {
+        mId = id;
+    }
+
+    void setLongitude(double longitude) {
+        mLongitude = longitude;
+    }
+
+    void setLatitude(double latitude) {
+        mLatitude = latitude;
+    }
+
+    void setDepth(double depth) {
+        mDepth = depth;
+    }
+
+    void setString(int index, String value) {
+        mTypes[index] = STRING;
+        mStrings[index] = value;
+    }
+
+    void setNumber(int index, double value) {
+        mTypes[index] = NUMBER;
+        mNumbers[index] = value;
+    }
+
+    void setBoolean(int index, boolean value) {
+        mTypes[index] = BOOLEAN;
+        mNumbers[index] = value ? 1 : 0;
+    }
+
+    /**
+     * @return the index of a property to keep, -1 if it's not one of them
+     */
+    int find(String name) {
+        for (int i = 0; i < mNames.length; i++) {
+            if (mNames[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * forget the feature read before
+     */
+    void reset() {
+        mHasProperties = false;
+        mId = null;
+        mLongitude = Double.NaN;
+        mLatitude = Double.NaN;
+        mDepth = Double.NaN;
+        for (int i = 0; i < mTypes.length; i++) {
+            mTypes[i] = MISSING;
+            mStrings[i] = null;
+        }
+    }
+
+    private int indexOf(String name) {
+        int index = find(name);
+        if (index < 0) {
+            throw new IllegalArgumentException("the property " + name + " is not read by the mapper");
+        }
+        return index;
+    }
+}
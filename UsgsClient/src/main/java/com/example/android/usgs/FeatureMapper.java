@@ -0,0 +1,32 @@
+package com.example.android.usgs;
+
+/**
+ * Turns a {@link Feature} of a USGS response into the object an app works with
+ * (i.e. an Earthquake or an Event).
+ *
+ * the mapper names the properties it reads, the parser skips the other ones without decoding them.
+ * it's called on the thread parsing the response, once for each feature with properties.
+ *
+ * @param <T> the object made for each feature
+ */
+public abstract class FeatureMapper<T> {
+
+    private final String[] mProperties;
+
+    /**
+     * @param properties the names of the properties {@link #map(Feature)} reads (i.e. "mag", "place")
+     */
+    protected FeatureMapper(String... properties) {
+        mProperties = properties.clone();
+    }
+
+    /**
+     * @param feature the feature read, it's reused for the next one so it must not be kept
+     * @return the object for the feature, null to leave the feature out
+     */
+    public abstract T map(Feature feature);
+
+    String[] getProperties() {
+        return mProperties;
+    }
+}
@@ -0,0 +1,658 @@
+package com.example.android.usgs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * A streaming (pull) JSON reader working on the bytes of a UTF-8 stream.
+ *
+ * the tokens are read in place from a byte buffer refilled from the stream: a skipped value (most
+ * of the keys of a USGS feature) is stepped over without being decoded or checked, a number is
+ * parsed without a String and the names, which are the same for every feature, are decoded and
+ * then shared instead of being built again each time. the methods are the ones of
+ * android.util.JsonReader that the parser needs, without its Android dependency so the parsing
+ * runs (and can be measured) on any JVM. a malformed document throws an {@link IOException}.
+ */
+final class JsonStreamReader {
+
+    enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    //what each level of nesting expects next
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_OBJECT = 2;
+    private static final int DANGLING_NAME = 3;
+    private static final int NONEMPTY_OBJECT = 4;
+    private static final int EMPTY_ARRAY = 5;
+    private static final int NONEMPTY_ARRAY = 6;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    //the names decoded so far, by hash (a power of two)
+    private static final int NAME_CACHE_SIZE = 64;
+
+    //a number with that many digits or less and a small exponent is parsed exactly with one
+    //multiplication or division by a power of ten, the other ones with Double.parseDouble
+    private static final int MAX_EXACT_DIGITS = 15;
+    private static final int MAX_MANTISSA_DIGITS = 18;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final InputStream mIn;
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+    private int mPos;
+    private int mLimit;
+    //the bytes read before the ones in the buffer, to tell where an error is
+    private long mBufferOffset;
+
+    private int[] mStack = new int[32];
+    private int mStackSize;
+
+    //the next token once peeked, null if it's not
+    private Token mPeeked;
+    private boolean mBooleanValue;
+
+    //the chars of the last string, name or number read
+    private char[] mChars = new char[64];
+    private final String[] mNames = new String[NAME_CACHE_SIZE];
+
+    //the last number read: mantissa * 10^exponent, inexact if some digits didn't fit the mantissa,
+    //and the number of its chars in mChars
+    private long mMantissa;
+    private int mExponent;
+    private int mDigits;
+    private boolean mNegative;
+    private boolean mIntegral;
+    private boolean mInexact;
+    private int mLength;
+
+    /**
+     * @param in the UTF-8 document, it's not closed by the reader
+     */
+    JsonStreamReader(InputStream in) {
+        mIn = in;
+        mStack[mStackSize++] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * @return the kind of the next token, without consuming it
+     */
+    Token peek() throws IOException {
+        return mPeeked != null ? mPeeked : doPeek();
+    }
+
+    /**
+     * @return true if the current object or array has an other element
+     */
+    boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    void beginObject() throws IOException {
+        consume(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    void endObject() throws IOException {
+        consume(Token.END_OBJECT);
+        mStackSize--;
+    }
+
+    void beginArray() throws IOException {
+        consume(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    void endArray() throws IOException {
+        consume(Token.END_ARRAY);
+        mStackSize--;
+    }
+
+    /**
+     * @return the name of the next property, the same String each time the same name is read
+     */
+    String nextName() throws IOException {
+        consume(Token.NAME);
+        int length = readChars();
+
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + mChars[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (NAME_CACHE_SIZE - 1);
+        String name = mNames[slot];
+        if (name == null || !contentEquals(name, length)) {
+            name = new String(mChars, 0, length);
+            mNames[slot] = name;
+        }
+        return name;
+    }
+
+    String nextString() throws IOException {
+        consume(Token.STRING);
+        //mChars grows while the string is read, it's only read once the string is whole
+        int length = readChars();
+        return new String(mChars, 0, length);
+    }
+
+    double nextDouble() throws IOException {
+        consume(Token.NUMBER);
+        readNumber();
+        return toDouble();
+    }
+
+    /**
+     * @throws IOException if the number is not a whole number or doesn't fit in a long
+     */
+    long nextLong() throws IOException {
+        consume(Token.NUMBER);
+        int length = readNumber();
+        if (mIntegral && !mInexact) {
+            return mNegative ? -mMantissa : mMantissa;
+        }
+        if (mIntegral) {
+            try {
+                return Long.parseLong(new String(mChars, 0, length));
+            } catch (NumberFormatException e) {
+                throw syntaxError("expected a long but was " + new String(mChars, 0, length));
+            }
+        }
+        double value = toDouble();
+        if (value != (long) value) {
+            throw syntaxError("expected a long but was " + new String(mChars, 0, length));
+        }
+        return (long) value;
+    }
+
+    boolean nextBoolean() throws IOException {
+        consume(Token.BOOLEAN);
+        return mBooleanValue;
+    }
+
+    void nextNull() throws IOException {
+        consume(Token.NULL);
+    }
+
+    /**
+     * step over the next value, an object or an array is skipped whole without being checked
+     */
+    void skipValue() throws IOException {
+        Token token = peek();
+        switch (token) {
+            case BEGIN_OBJECT:
+            case BEGIN_ARRAY:
+                mPeeked = null;
+                skipContainer();
+                break;
+            case STRING:
+                mPeeked = null;
+                skipString();
+                break;
+            case NUMBER:
+                mPeeked = null;
+                skipNumber();
+                break;
+            case BOOLEAN:
+            case NULL:
+                //the literal was read by the peek
+                mPeeked = null;
+                break;
+            default:
+                throw syntaxError("expected a value but was " + token);
+        }
+    }
+
+    private void consume(Token expected) throws IOException {
+        Token token = peek();
+        if (token != expected) {
+            throw syntaxError("expected " + expected + " but was " + token);
+        }
+        mPeeked = null;
+    }
+
+    private void push(int scope) {
+        if (mStackSize == mStack.length) {
+            mStack = Arrays.copyOf(mStack, mStackSize * 2);
+        }
+        mStack[mStackSize++] = scope;
+    }
+
+    /**
+     * read up to the next token: the separators before it (',' and ':') are consumed and so is
+     * its first char, except for a number which is read from its first digit or sign
+     */
+    private Token doPeek() throws IOException {
+        int top = mStackSize - 1;
+        int scope = mStack[top];
+        int c;
+        switch (scope) {
+            case EMPTY_ARRAY:
+                mStack[top] = NONEMPTY_ARRAY;
+                c = nextNonWhitespace();
+                if (c == ']') {
+                    return mPeeked = Token.END_ARRAY;
+                }
+                break;
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace();
+                if (c == ']') {
+                    return mPeeked = Token.END_ARRAY;
+                }
+                if (c != ',') {
+                    throw syntaxError("expected ',' or ']'");
+                }
+                c = nextNonWhitespace();
+                break;
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                c = nextNonWhitespace();
+                if (c == '}') {
+                    return mPeeked = Token.END_OBJECT;
+                }
+                if (scope == NONEMPTY_OBJECT) {
+                    if (c != ',') {
+                        throw syntaxError("expected ',' or '}'");
+                    }
+                    c = nextNonWhitespace();
+                }
+                if (c != '"') {
+                    throw syntaxError("expected a name");
+                }
+                mStack[top] = DANGLING_NAME;
+                return mPeeked = Token.NAME;
+            case DANGLING_NAME:
+                if (nextNonWhitespace() != ':') {
+                    throw syntaxError("expected ':'");
+                }
+                mStack[top] = NONEMPTY_OBJECT;
+                c = nextNonWhitespace();
+                break;
+            case EMPTY_DOCUMENT:
+                mStack[top] = NONEMPTY_DOCUMENT;
+                c = nextNonWhitespace();
+                break;
+            default:
+                if (nextNonWhitespace() == -1) {
+                    return mPeeked = Token.END_DOCUMENT;
+                }
+                throw syntaxError("expected the end of the document");
+        }
+
+        switch (c) {
+            case '{':
+                return mPeeked = Token.BEGIN_OBJECT;
+            case '[':
+                return mPeeked = Token.BEGIN_ARRAY;
+            case '"':
+                return mPeeked = Token.STRING;
+            case 't':
+                expectLiteral("rue");
+                mBooleanValue = true;
+                return mPeeked = Token.BOOLEAN;
+            case 'f':
+                expectLiteral("alse");
+                mBooleanValue = false;
+                return mPeeked = Token.BOOLEAN;
+            case 'n':
+                expectLiteral("ull");
+                return mPeeked = Token.NULL;
+            case -1:
+                throw syntaxError("unexpected end of the document");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    //the char is still in the buffer, the number is read from it
+                    mPos--;
+                    return mPeeked = Token.NUMBER;
+                }
+                throw syntaxError("unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private void expectLiteral(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            if (read() != rest.charAt(i)) {
+                throw syntaxError("unexpected literal");
+            }
+        }
+    }
+
+    /**
+     * decode a string into mChars, its opening quote was read by the peek
+     * @return the number of chars
+     */
+    private int readChars() throws IOException {
+        int length = 0;
+        while (true) {
+            int c = read();
+            if (c == '"') {
+                return length;
+            }
+            if (c == -1) {
+                throw syntaxError("unterminated string");
+            }
+            if (c == '\\') {
+                c = readEscape();
+            } else if (c >= 0x80) {
+                if ((c & 0xe0) == 0xc0) {
+                    c = ((c & 0x1f) << 6) | readContinuation();
+                } else if ((c & 0xf0) == 0xe0) {
+                    c = ((c & 0x0f) << 12) | (readContinuation() << 6) | readContinuation();
+                } else if ((c & 0xf8) == 0xf0) {
+                    int codePoint = ((c & 0x07) << 18) | (readContinuation() << 12)
+                            | (readContinuation() << 6) | readContinuation();
+                    //outside of the BMP: a surrogate pair
+                    codePoint -= 0x10000;
+                    length = append(length, 0xd800 + (codePoint >>> 10));
+                    c = 0xdc00 + (codePoint & 0x3ff);
+                } else {
+                    throw syntaxError("malformed UTF-8");
+                }
+            }
+            length = append(length, c);
+        }
+    }
+
+    private int append(int length, int c) {
+        if (length == mChars.length) {
+            mChars = Arrays.copyOf(mChars, length * 2);
+        }
+        mChars[length] = (char) c;
+        return length + 1;
+    }
+
+    private int readContinuation() throws IOException {
+        int c = read();
+        if ((c & 0xc0) != 0x80) {
+            throw syntaxError("malformed UTF-8");
+        }
+        return c & 0x3f;
+    }
+
+    private int readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                return c;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit < 0) {
+                        throw syntaxError("malformed \\u escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return value;
+            default:
+                throw syntaxError("invalid escape");
+        }
+    }
+
+    private boolean contentEquals(String name, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != mChars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * read a number into mChars and mMantissa, mExponent... (see {@link #toDouble()})
+     * @return the number of chars
+     */
+    private int readNumber() throws IOException {
+        int length = 0;
+        mMantissa = 0;
+        mExponent = 0;
+        mDigits = 0;
+        mNegative = false;
+        mIntegral = true;
+        mInexact = false;
+
+        int c = peekByte();
+        if (c == '-') {
+            mNegative = true;
+            length = appendByte(length, c);
+            c = peekByte();
+        }
+        if (!isDigit(c)) {
+            throw syntaxError("malformed number");
+        }
+        while (isDigit(c)) {
+            length = appendByte(length, c);
+            if (mDigits < MAX_MANTISSA_DIGITS) {
+                addDigit(c);
+            } else {
+                mExponent++;
+                mInexact = true;
+            }
+            c = peekByte();
+        }
+        if (c == '.') {
+            mIntegral = false;
+            length = appendByte(length, c);
+            c = peekByte();
+            if (!isDigit(c)) {
+                throw syntaxError("malformed number");
+            }
+            while (isDigit(c)) {
+                length = appendByte(length, c);
+                if (mDigits < MAX_MANTISSA_DIGITS) {
+                    addDigit(c);
+                    mExponent--;
+                } else {
+                    mInexact = true;
+                }
+                c = peekByte();
+            }
+        }
+        if (c == 'e' || c == 'E') {
+            mIntegral = false;
+            length = appendByte(length, c);
+            c = peekByte();
+            boolean negativeExponent = c == '-';
+            if (c == '+' || c == '-') {
+                length = appendByte(length, c);
+                c = peekByte();
+            }
+            if (!isDigit(c)) {
+                throw syntaxError("malformed number");
+            }
+            int exponent = 0;
+            while (isDigit(c)) {
+                length = appendByte(length, c);
+                //far past the range of a double, the value is 0 or infinite anyway
+                if (exponent < 100000) {
+                    exponent = exponent * 10 + (c - '0');
+                }
+                c = peekByte();
+            }
+            mExponent += negativeExponent ? -exponent : exponent;
+        }
+        mLength = length;
+        return length;
+    }
+
+    private void addDigit(int c) {
+        mMantissa = mMantissa * 10 + (c - '0');
+        //the leading zeros are not significant
+        if (mMantissa != 0) {
+            mDigits++;
+        }
+    }
+
+    /**
+     * append the byte peeked to mChars and consume it
+     */
+    private int appendByte(int length, int c) {
+        mPos++;
+        return append(length, c);
+    }
+
+    /**
+     * @return the last number read as a double, correctly rounded
+     */
+    private double toDouble() {
+        if (mInexact || mDigits > MAX_EXACT_DIGITS || mExponent < -22 || mExponent > 22) {
+            return Double.parseDouble(new String(mChars, 0, mLength));
+        }
+        //the mantissa and the power of ten are exact, so is the rounding of their product
+        double value = mExponent >= 0 ? mMantissa * POWERS_OF_TEN[mExponent] : mMantissa / POWERS_OF_TEN[-mExponent];
+        return mNegative ? -value : value;
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private void skipNumber() throws IOException {
+        while (true) {
+            int c = peekByte();
+            if (isDigit(c) || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+                mPos++;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * step over a string, its opening quote was read by the peek
+     */
+    private void skipString() throws IOException {
+        while (true) {
+            byte[] buffer = mBuffer;
+            int pos = mPos;
+            int limit = mLimit;
+            while (pos < limit) {
+                byte c = buffer[pos++];
+                if (c == '"') {
+                    mPos = pos;
+                    return;
+                }
+                if (c == '\\') {
+                    //the escaped char can't end the string (a \\u escape is 4 plain chars)
+                    if (pos == limit) {
+                        mPos = pos;
+                        if (!fill()) {
+                            throw syntaxError("unterminated string");
+                        }
+                        pos = mPos;
+                        limit = mLimit;
+                    }
+                    pos++;
+                }
+            }
+            mPos = pos;
+            if (!fill()) {
+                throw syntaxError("unterminated string");
+            }
+        }
+    }
+
+    /**
+     * step over an object or an array, its opening bracket was read by the peek
+     */
+    private void skipContainer() throws IOException {
+        int depth = 1;
+        while (true) {
+            byte[] buffer = mBuffer;
+            int pos = mPos;
+            int limit = mLimit;
+            while (pos < limit) {
+                byte c = buffer[pos++];
+                if (c == '"') {
+                    mPos = pos;
+                    skipString();
+                    pos = mPos;
+                    limit = mLimit;
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    if (--depth == 0) {
+                        mPos = pos;
+                        return;
+                    }
+                }
+            }
+            mPos = pos;
+            if (!fill()) {
+                throw syntaxError("unexpected end of the document");
+            }
+        }
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        while (true) {
+            int c = read();
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+        }
+    }
+
+    /**
+     * @return the next byte (0 to 255), -1 at the end of the stream
+     */
+    private int read() throws IOException {
+        if (mPos == mLimit && !fill()) {
+            return -1;
+        }
+        return mBuffer[mPos++] & 0xff;
+    }
+
+    /**
+     * @return the next byte without consuming it, -1 at the end of the stream
+     */
+    private int peekByte() throws IOException {
+        if (mPos == mLimit && !fill()) {
+            return -1;
+        }
+        return mBuffer[mPos] & 0xff;
+    }
+
+    /**
+     * replace the buffer with the next bytes of the stream, the ones in it were all consumed
+     * @return false at the end of the stream
+     */
+    private boolean fill() throws IOException {
+        mBufferOffset += mLimit;
+        mPos = 0;
+        mLimit = 0;
+        int count;
+        do {
+            count = mIn.read(mBuffer, 0, mBuffer.length);
+        } while (count == 0);
+        if (count < 0) {
+            return false;
+        }
+        mLimit = count;
+        return true;
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException("malformed JSON: " + message + " at byte " + (mBufferOffset + mPos));
+    }
+}
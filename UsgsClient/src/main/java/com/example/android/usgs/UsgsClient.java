@@ -0,0 +1,116 @@
+package com.example.android.usgs;
+
+import com.example.android.http.CancellationToken;
+import com.example.android.http.HttpClient;
+import com.example.android.http.Metrics;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Requests a USGS query and maps the features of its response with a {@link FeatureMapper}.
+ *
+ * the body is parsed while it's downloaded (see {@link UsgsParser}) and the parse time and the
+ * number of features read are recorded in the metrics of the {@link HttpClient}. an app with
+ * its own cache around the request (QuakeReport) uses {@link UsgsParser} on its response instead.
+ */
+public final class UsgsClient {
+
+    private static UsgsClient sDefault;
+
+    private final HttpClient mHttpClient;
+
+    /**
+     * @param httpClient sends the requests
+     */
+    public UsgsClient(HttpClient httpClient) {
+        if (httpClient == null) {
+            throw new IllegalArgumentException("httpClient == null");
+        }
+        mHttpClient = httpClient;
+    }
+
+    /**
+     * @return a client sending its requests with {@link HttpClient#getDefault()}
+     */
+    public static synchronized UsgsClient getDefault() {
+        if (sDefault == null) {
+            sDefault = new UsgsClient(HttpClient.getDefault());
+        }
+        return sDefault;
+    }
+
+    /**
+     * @param requestUrl the url of the query
+     * @param mapper makes an object of each feature
+     * @return the objects in the order of the feed
+     * @throws IOException if the url is malformed, the server can't be reached, doesn't answer 200
+     * or the response is not valid JSON
+     */
+    public <T> List<T> fetch(String requestUrl, FeatureMapper<T> mapper) throws IOException {
+        final List<T> values = new ArrayList<>();
+        fetch(new URL(requestUrl), null, mapper, new UsgsParser.Receiver<T>() {
+            @Override
+            public void onFeature(T value) {
+                values.add(value);
+            }
+        }, Integer.MAX_VALUE);
+        return values;
+    }
+
+    /**
+     * only the first feature is parsed, the rest of the response is not
+     * @param requestUrl the url of the query
+     * @param mapper makes an object of the feature
+     * @return the object of the first feature, null if there is no feature or the mapper left it out
+     * @throws IOException if the url is malformed, the server can't be reached, doesn't answer 200
+     * or the response is not valid JSON
+     */
+    public <T> T fetchFirst(String requestUrl, FeatureMapper<T> mapper) throws IOException {
+        final List<T> values = new ArrayList<>(1);
+        fetch(new URL(requestUrl), null, mapper, new UsgsParser.Receiver<T>() {
+            @Override
+            public void onFeature(T value) {
+                values.add(value);
+            }
+        }, 1);
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * @param url the url of the query
+     * @param token cancels the request, can be null
+     * @param mapper makes an object of each feature
+     * @param receiver receives each object as soon as its feature is parsed, can be null
+     * @param maxFeatures the parsing stops once that many features were read (Integer.MAX_VALUE for all)
+     * @return the number of features read
+     * @throws IOException if the server can't be reached, doesn't answer 200, the response is
+     * not valid JSON or the token is canceled
+     */
+    public <T> int fetch(URL url, CancellationToken token, FeatureMapper<T> mapper,
+                         UsgsParser.Receiver<? super T> receiver, int maxFeatures) throws IOException {
+        HttpClient.Response response = mHttpClient.get(url, Collections.<String, String>emptyMap(), token);
+        try {
+            if (response.getCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Error response code: " + response.getCode());
+            }
+
+            // the body is parsed as it's read, this time includes the download of the rest of it
+            long parseStart = System.nanoTime();
+            int count = UsgsParser.parse(response.getBody(), mapper, receiver, maxFeatures);
+            Metrics metrics = mHttpClient.getMetrics();
+            if (metrics != null) {
+                metrics.recordSince(Metrics.PARSE, parseStart);
+                metrics.record(Metrics.FEATURES, count);
+            }
+            return count;
+        } finally {
+            // the connection is not disconnected, closing the response give it back to the pool
+            response.close();
+        }
+    }
+}
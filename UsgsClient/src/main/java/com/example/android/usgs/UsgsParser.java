@@ -0,0 +1,184 @@
+package com.example.android.usgs;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A streaming parser for the USGS GeoJSON response.
+ *
+ * the features are read one at a time straight from the {@link InputStream} (no String of the
+ * whole response and no JSON tree), each one is handed to a {@link FeatureMapper} as soon as it's
+ * closed, so only one feature at a time is held in memory. only the "id", the "geometry" and the
+ * properties named by the mapper are decoded.
+ */
+public final class UsgsParser {
+
+    /**
+     * Receives the object made by the mapper for each feature, in the order of the feed
+     */
+    public interface Receiver<T> {
+        void onFeature(T value);
+    }
+
+    /**
+     * Create a private constructor because no one should ever create a {@link UsgsParser} object.
+     */
+    private UsgsParser() {
+    }
+
+    /**
+     * read the GeoJSON response and map its features
+     * @param inputStream the response body (not closed by this method)
+     * @param mapper makes an object of each feature
+     * @param receiver receives each object that is not null, can be null when the mapper
+     *                 does all the work
+     * @param maxFeatures the parsing stops once that many features were read, the rest of the
+     *                    body is not read (Integer.MAX_VALUE to read them all)
+     * @return the number of features read (with properties)
+     * @throws IOException if the stream can't be read or is not valid JSON
+     */
+    public static <T> int parse(InputStream inputStream, FeatureMapper<T> mapper,
+                                Receiver<? super T> receiver, int maxFeatures) throws IOException {
+        JsonStreamReader reader = new JsonStreamReader(inputStream);
+        Feature feature = new Feature(mapper.getProperties());
+        int count = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            // we only care about the "features" array, everything else (metadata, bbox...) is skipped
+            if ("features".equals(reader.nextName()) && reader.peek() == JsonStreamReader.Token.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (readFeature(reader, feature, mapper, receiver)) {
+                        count++;
+                        if (count == maxFeatures) {
+                            return count;
+                        }
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return count;
+    }
+
+    /**
+     * read one feature object alone (i.e. a feature found in the bytes of a response)
+     * @param inputStream the bytes of the feature object (not closed by this method)
+     * @param mapper makes an object of the feature
+     * @param receiver receives the object if it's not null, can be null
+     * @return false if the feature has no properties, the mapper is not called
+     * @throws IOException if the stream can't be read or is not valid JSON
+     */
+    public static <T> boolean parseFeature(InputStream inputStream, FeatureMapper<T> mapper,
+                                           Receiver<? super T> receiver) throws IOException {
+        JsonStreamReader reader = new JsonStreamReader(inputStream);
+        return readFeature(reader, new Feature(mapper.getProperties()), mapper, receiver);
+    }
+
+    /**
+     * read a single feature object, only the "id", the "properties" and the "geometry" are kept
+     * @param feature receives the fields of the feature, it's reused for every feature
+     * @return false if the feature has no properties
+     */
+    private static <T> boolean readFeature(JsonStreamReader reader, Feature feature, FeatureMapper<T> mapper,
+                                           Receiver<? super T> receiver) throws IOException {
+        feature.reset();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            JsonStreamReader.Token token = reader.peek();
+            if ("properties".equals(name) && token == JsonStreamReader.Token.BEGIN_OBJECT) {
+                readProperties(reader, feature);
+            } else if ("geometry".equals(name) && token == JsonStreamReader.Token.BEGIN_OBJECT) {
+                readGeometry(reader, feature);
+            } else if ("id".equals(name) && token == JsonStreamReader.Token.STRING) {
+                feature.setId(reader.nextString());
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (!feature.hasProperties()) {
+            return false;
+        }
+        T value = mapper.map(feature);
+        if (value != null && receiver != null) {
+            receiver.onFeature(value);
+        }
+        return true;
+    }
+
+    /**
+     * read the properties the mapper asked for, a null, an object or an array is left missing
+     */
+    private static void readProperties(JsonStreamReader reader, Feature feature) throws IOException {
+        feature.setHasProperties();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            int index = feature.find(reader.nextName());
+            if (index < 0) {
+                reader.skipValue();
+                continue;
+            }
+            switch (reader.peek()) {
+                case STRING:
+                    feature.setString(index, reader.nextString());
+                    break;
+                case NUMBER:
+                    feature.setNumber(index, reader.nextDouble());
+                    break;
+                case BOOLEAN:
+                    feature.setBoolean(index, reader.nextBoolean());
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * read the "coordinates" of the point geometry: [longitude, latitude, depth]
+     */
+    private static void readGeometry(JsonStreamReader reader, Feature feature) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("coordinates".equals(reader.nextName()) && reader.peek() == JsonStreamReader.Token.BEGIN_ARRAY) {
+                reader.beginArray();
+                for (int i = 0; reader.hasNext(); i++) {
+                    if (reader.peek() != JsonStreamReader.Token.NUMBER) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    switch (i) {
+                        case 0:
+                            feature.setLongitude(reader.nextDouble());
+                            break;
+                        case 1:
+                            feature.setLatitude(reader.nextDouble());
+                            break;
+                        case 2:
+                            feature.setDepth(reader.nextDouble());
+                            break;
+                        default:
+                            reader.skipValue();
+                            break;
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.android.usgs;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * What a {@link FeatureMapper} reads from a {@link Feature}: only the properties it named, each
+ * one converted to the type asked for, and nothing left from the feature read before.
+ */
+public class FeatureMapperTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * keeps the feature (it's reused, so only until the next one) and the properties as Strings
+     */
+    private static final class RecordingMapper extends FeatureMapper<String> {
+        final List<String> mMapped = new ArrayList<>();
+        Feature mFeature;
+
+        RecordingMapper(String... properties) {
+            super(properties);
+        }
+
+        @Override
+        public String map(Feature feature) {
+            mFeature = feature;
+            StringBuilder mapped = new StringBuilder();
+            for (String property : getProperties()) {
+                mapped.append(property).append('=').append(feature.getString(property)).append(' ');
+            }
+            mMapped.add(mapped.toString().trim());
+            //a feature with a magnitude of 0 is left out
+            return feature.getDouble("mag", -1) != 0 ? mapped.toString() : null;
+        }
+    }
+
+    private static Feature parseFeature(RecordingMapper mapper, String properties) throws IOException {
+        String json = "{\"type\":\"Feature\",\"properties\":" + properties + ",\"id\":\"us1\"}";
+        assertTrue(UsgsParser.parseFeature(new ByteArrayInputStream(json.getBytes(UTF_8)), mapper, null));
+        return mapper.mFeature;
+    }
+
+    @Test
+    public void getString_writesNumbersLikeOrgJson() throws Exception {
+        RecordingMapper mapper = new RecordingMapper("mag", "time", "tsunami", "cdi", "tiny", "huge");
+        Feature feature = parseFeature(mapper, "{\"mag\":5.0,\"time\":1454124312220,\"tsunami\":true,"
+                + "\"cdi\":3.4,\"tiny\":1e-7,\"huge\":1e20}");
+
+        assertEquals("5", feature.getString("mag"));
+        assertEquals("1454124312220", feature.getString("time"));
+        assertEquals("true", feature.getString("tsunami"));
+        assertEquals("3.4", feature.getString("cdi"));
+        assertEquals("1.0E-7", feature.getString("tiny"));
+        assertEquals("1.0E20", feature.getString("huge"));
+    }
+
+    @Test
+    public void getDouble_parsesANumberWrittenAsAString() throws Exception {
+        RecordingMapper mapper = new RecordingMapper("mag", "place", "felt");
+        Feature feature = parseFeature(mapper, "{\"mag\":\"4.5\",\"place\":\"Tonga\",\"felt\":12}");
+
+        assertEquals(4.5, feature.getDouble("mag", -1), 0);
+        assertEquals(-1, feature.getDouble("place", -1), 0);
+        assertEquals(12, feature.getInt("felt", -1));
+        assertEquals(12L, feature.getLong("felt", -1));
+        assertEquals(-1, feature.getInt("place", -1));
+    }
+
+    @Test
+    public void has_isFalseForANullAnObjectOrAnArray() throws Exception {
+        RecordingMapper mapper = new RecordingMapper("felt", "products", "ids", "alert", "mag");
+        Feature feature = parseFeature(mapper, "{\"felt\":null,\"products\":{\"dyfi\":[{\"id\":1}]},"
+                + "\"ids\":[\"a\",\"b\"],\"mag\":2.1}");
+
+        assertFalse(feature.has("felt"));
+        assertFalse(feature.has("products"));
+        assertFalse(feature.has("ids"));
+        //not in the feed at all
+        assertFalse(feature.has("alert"));
+        assertNull(feature.getString("alert"));
+        assertEquals("green", feature.getString("alert", "green"));
+        assertTrue(feature.has("mag"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getString_ofAPropertyTheMapperDidNotNameThrows() throws Exception {
+        RecordingMapper mapper = new RecordingMapper("mag");
+        Feature feature = parseFeature(mapper, "{\"mag\":2.1,\"place\":\"Tonga\"}");
+
+        feature.getString("place");
+    }
+
+    @Test
+    public void map_seesNothingOfTheFeatureBefore() throws Exception {
+        RecordingMapper mapper = new RecordingMapper("mag", "place");
+        String feed = "{\"features\":["
+                + "{\"properties\":{\"mag\":4.5,\"place\":\"Tonga\"},\"geometry\":{\"coordinates\":[1,2,3]},\"id\":\"a\"},"
+                + "{\"properties\":{\"mag\":0},\"id\":\"b\"},"
+                + "{\"properties\":{\"place\":\"Fiji\"}}]}";
+        final List<String> received = new ArrayList<>();
+
+        int count = UsgsParser.parse(new ByteArrayInputStream(feed.getBytes(UTF_8)), mapper,
+                new UsgsParser.Receiver<String>() {
+                    @Override
+                    public void onFeature(String value) {
+                        received.add(value);
+                    }
+                }, Integer.MAX_VALUE);
+
+        assertEquals(3, count);
+        assertEquals("mag=4.5 place=Tonga", mapper.mMapped.get(0));
+        assertEquals("mag=0 place=null", mapper.mMapped.get(1));
+        assertEquals("mag=null place=Fiji", mapper.mMapped.get(2));
+        //the last feature has no id and no geometry
+        assertNull(mapper.mFeature.getId());
+        assertTrue(Double.isNaN(mapper.mFeature.getLatitude()));
+        //the mapper left the feature with a magnitude of 0 out, it was still read
+        assertEquals(2, received.size());
+    }
+
+    @Test
+    public void getProperties_isACopyOfTheNames() {
+        String[] properties = {"mag", "place"};
+        RecordingMapper mapper = new RecordingMapper(properties);
+        properties[0] = "time";
+
+        assertArrayEquals(new String[]{"mag", "place"}, mapper.getProperties());
+    }
+}
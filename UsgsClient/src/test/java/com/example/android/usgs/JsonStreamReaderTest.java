@@ -0,0 +1,316 @@
+package com.example.android.usgs;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+/**
+ * The tokens of {@link JsonStreamReader}: strings and their escapes, numbers, nested and skipped
+ * values and the documents that end too early. each document is also read one byte at a time,
+ * so every token is cut by a refill of the buffer somewhere.
+ */
+public class JsonStreamReaderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * a stream that returns one byte for each read, like a slow network
+     */
+    private static final class OneByteInputStream extends InputStream {
+        private final byte[] mBytes;
+        private int mPos;
+
+        OneByteInputStream(byte[] bytes) {
+            mBytes = bytes;
+        }
+
+        @Override
+        public int read() {
+            return mPos < mBytes.length ? mBytes[mPos++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (mPos == mBytes.length) {
+                return -1;
+            }
+            buffer[offset] = mBytes[mPos++];
+            return 1;
+        }
+    }
+
+    private static JsonStreamReader reader(String json) {
+        return new JsonStreamReader(new ByteArrayInputStream(json.getBytes(UTF_8)));
+    }
+
+    private static JsonStreamReader[] readers(String json) {
+        byte[] bytes = json.getBytes(UTF_8);
+        return new JsonStreamReader[]{
+                new JsonStreamReader(new ByteArrayInputStream(bytes)),
+                new JsonStreamReader(new OneByteInputStream(bytes))
+        };
+    }
+
+    /**
+     * @return the string of the document ["..."] read by each reader
+     */
+    private static void assertString(String expected, String json) throws IOException {
+        for (JsonStreamReader reader : readers("[" + json + "]")) {
+            reader.beginArray();
+            assertEquals(json, expected, reader.nextString());
+            reader.endArray();
+            assertEquals(JsonStreamReader.Token.END_DOCUMENT, reader.peek());
+        }
+    }
+
+    private static void assertDouble(String number) throws IOException {
+        for (JsonStreamReader reader : readers("[" + number + "]")) {
+            reader.beginArray();
+            //Double.equals tells 0.0 and -0.0 apart
+            assertEquals(number, Double.valueOf(number), Double.valueOf(reader.nextDouble()));
+            reader.endArray();
+        }
+    }
+
+    private static void assertMalformed(String json) {
+        for (JsonStreamReader reader : readers(json)) {
+            try {
+                readWhole(reader);
+                fail("read " + json);
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("malformed JSON: "));
+                assertTrue(e.getMessage(), e.getMessage().contains(" at byte "));
+            }
+        }
+    }
+
+    /**
+     * read every token of the document, the numbers as doubles
+     */
+    private static void readWhole(JsonStreamReader reader) throws IOException {
+        while (true) {
+            switch (reader.peek()) {
+                case BEGIN_OBJECT:
+                    reader.beginObject();
+                    break;
+                case END_OBJECT:
+                    reader.endObject();
+                    break;
+                case BEGIN_ARRAY:
+                    reader.beginArray();
+                    break;
+                case END_ARRAY:
+                    reader.endArray();
+                    break;
+                case NAME:
+                    reader.nextName();
+                    break;
+                case STRING:
+                    reader.nextString();
+                    break;
+                case NUMBER:
+                    reader.nextDouble();
+                    break;
+                case BOOLEAN:
+                    reader.nextBoolean();
+                    break;
+                case NULL:
+                    reader.nextNull();
+                    break;
+                case END_DOCUMENT:
+                    return;
+            }
+        }
+    }
+
+    @Test
+    public void nextString_decodesTheEscapes() throws Exception {
+        assertString("a\"b\\c/d", "\"a\\\"b\\\\c\\/d\"");
+        assertString("\b\f\n\r\t", "\"\\b\\f\\n\\r\\t\"");
+        assertString("", "\"\"");
+    }
+
+    @Test
+    public void nextString_decodesTheUnicodeEscapes() throws Exception {
+        assertString("B\u00edob\u00edo", "\"B\\u00edob\\u00EDo\"");
+        assertString("\u20ac 5", "\"\\u20ac 5\"");
+        //a char outside of the BMP is written as 2 escaped surrogates
+        assertString("\ud83c\udf0b", "\"\\ud83c\\udf0b\"");
+    }
+
+    @Test
+    public void nextString_decodesUtf8() throws Exception {
+        //2, 3 and 4 bytes
+        assertString("Bi\u00f3b\u00edo", "\"Bi\u00f3b\u00edo\"");
+        assertString("\u6771\u4eac", "\"\u6771\u4eac\"");
+        assertString("volcano \ud83c\udf0b", "\"volcano \ud83c\udf0b\"");
+    }
+
+    @Test
+    public void nextString_longerThanTheBuffer() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            text.append("km\u00e9\\n");
+        }
+        String expected = text.toString().replace("\\n", "\n");
+        assertString(expected, "\"" + text + "\"");
+    }
+
+    @Test
+    public void nextDouble_isTheValueOfParseDouble() throws Exception {
+        String[] numbers = {
+                "0", "-0", "7", "-7", "0.1", "-0.5", "4.62", "6.1", "35.2466667", "-117.5973333",
+                "1388620296020", "1e3", "1E3", "2.5e+2", "-2.5E-2", "1.5e-7", "0.000123", "123456789012345678",
+                "12345678901234567890123", "3.141592653589793238462643", "1e308", "1e-320", "4.9e-324",
+                "1e400", "-1e400", "0.30000000000000004"
+        };
+        for (String number : numbers) {
+            assertDouble(number);
+        }
+    }
+
+    @Test
+    public void nextLong_readsWholeNumbers() throws Exception {
+        JsonStreamReader reader = reader("[1388620296020, -42, 1234567890123456789, 2e3]");
+        reader.beginArray();
+        assertEquals(1388620296020L, reader.nextLong());
+        assertEquals(-42, reader.nextLong());
+        assertEquals(1234567890123456789L, reader.nextLong());
+        assertEquals(2000, reader.nextLong());
+        reader.endArray();
+    }
+
+    @Test
+    public void nextLong_failsOnAFractionOrAnOverflow() throws Exception {
+        for (String number : new String[]{"1.5", "99999999999999999999", "-1e-3"}) {
+            JsonStreamReader reader = reader("[" + number + "]");
+            reader.beginArray();
+            try {
+                reader.nextLong();
+                fail(number);
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains(number));
+            }
+        }
+    }
+
+    @Test
+    public void read_nestedValues() throws Exception {
+        String json = " {\"type\" : \"Point\", \"coordinates\":[ -120.5, 35.25 ,8.1 ],"
+                + "\"flags\":{\"a\":true,\"b\":false,\"c\":null}, \"empty\":{}, \"none\":[] }\n";
+        for (JsonStreamReader reader : readers(json)) {
+            reader.beginObject();
+            assertEquals("type", reader.nextName());
+            assertEquals("Point", reader.nextString());
+            assertEquals("coordinates", reader.nextName());
+            reader.beginArray();
+            assertEquals(-120.5, reader.nextDouble(), 0);
+            assertEquals(35.25, reader.nextDouble(), 0);
+            assertTrue(reader.hasNext());
+            assertEquals(8.1, reader.nextDouble(), 0);
+            assertFalse(reader.hasNext());
+            reader.endArray();
+            assertEquals("flags", reader.nextName());
+            reader.beginObject();
+            assertEquals("a", reader.nextName());
+            assertTrue(reader.nextBoolean());
+            assertEquals("b", reader.nextName());
+            assertFalse(reader.nextBoolean());
+            assertEquals("c", reader.nextName());
+            assertEquals(JsonStreamReader.Token.NULL, reader.peek());
+            reader.nextNull();
+            reader.endObject();
+            assertEquals("empty", reader.nextName());
+            reader.beginObject();
+            assertFalse(reader.hasNext());
+            reader.endObject();
+            assertEquals("none", reader.nextName());
+            reader.beginArray();
+            assertFalse(reader.hasNext());
+            reader.endArray();
+            reader.endObject();
+            assertEquals(JsonStreamReader.Token.END_DOCUMENT, reader.peek());
+        }
+    }
+
+    @Test
+    public void skipValue_stepsOverEveryKindOfValue() throws Exception {
+        String json = "{\"skipped\":{\"a\":[1,{\"b\":\"]}\\\"[{\"},[[]]],\"c\":\"\\\\\"},"
+                + "\"string\":\"x\\\"y\",\"number\":-1.5e-3,\"true\":true,\"null\":null,\"kept\":7}";
+        for (JsonStreamReader reader : readers(json)) {
+            reader.beginObject();
+            int skipped = 0;
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("kept")) {
+                    assertEquals(7, reader.nextLong());
+                } else {
+                    reader.skipValue();
+                    skipped++;
+                }
+            }
+            reader.endObject();
+            assertEquals(5, skipped);
+            assertEquals(JsonStreamReader.Token.END_DOCUMENT, reader.peek());
+        }
+    }
+
+    @Test
+    public void nextName_isTheSameStringForTheSameName() throws Exception {
+        JsonStreamReader reader = reader("[{\"mag\":1},{\"mag\":2}]");
+        reader.beginArray();
+        reader.beginObject();
+        String first = reader.nextName();
+        reader.skipValue();
+        reader.endObject();
+        reader.beginObject();
+        String second = reader.nextName();
+
+        assertEquals("mag", first);
+        assertSame(first, second);
+    }
+
+    @Test
+    public void read_truncatedDocumentsFail() {
+        assertMalformed("");
+        assertMalformed("{\"features\":[");
+        assertMalformed("{\"place\":\"88km N of Yeli");
+        assertMalformed("{\"place\":\"\\u00e");
+        assertMalformed("{\"mag\":4.");
+        assertMalformed("{\"mag\":4.5e");
+        assertMalformed("{\"tsunami\":tru");
+        assertMalformed("{\"mag\":4.5");
+        assertMalformed("{\"mag\"");
+    }
+
+    @Test
+    public void skipValue_ofATruncatedValueFails() {
+        for (String json : new String[]{"[{\"a\":[1,2", "[\"abc", "[{\"a\":\"b\\"}) {
+            for (JsonStreamReader reader : readers(json)) {
+                try {
+                    reader.beginArray();
+                    reader.skipValue();
+                    fail("skipped " + json);
+                } catch (IOException e) {
+                    assertTrue(e.getMessage(), e.getMessage().startsWith("malformed JSON: "));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void read_malformedDocumentsFail() {
+        assertMalformed("{\"mag\" 4.5}");
+        assertMalformed("{\"mag\":4.5 \"place\":\"x\"}");
+        assertMalformed("[1 2]");
+        assertMalformed("{mag:4.5}");
+        assertMalformed("[\"\\x\"]");
+        assertMalformed("[-]");
+        assertMalformed("[+1]");
+        assertMalformed("{} {}");
+    }
+}
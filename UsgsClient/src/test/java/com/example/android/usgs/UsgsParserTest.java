@@ -0,0 +1,217 @@
+package com.example.android.usgs;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * The features {@link UsgsParser} hands to a {@link FeatureMapper}, from a feature collection
+ * of the USGS query API: its metadata and bbox, the properties of each feature with the null
+ * ones, a feature without geometry and one without properties.
+ */
+public class UsgsParserTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String YELIZOVO = "{\"type\":\"Feature\",\"properties\":{\"mag\":7.2,"
+            + "\"place\":\"88km N of Yelizovo, Russia\",\"time\":1454124312220,\"updated\":1460674294040,"
+            + "\"tz\":720,\"url\":\"https://earthquake.usgs.gov/earthquakes/eventpage/us20004vvx\","
+            + "\"detail\":\"https://earthquake.usgs.gov/fdsnws/event/1/query?eventid=us20004vvx&format=geojson\","
+            + "\"felt\":2,\"cdi\":3.4,\"mmi\":5.82,\"alert\":\"green\",\"status\":\"reviewed\",\"tsunami\":1,"
+            + "\"sig\":798,\"net\":\"us\",\"code\":\"20004vvx\",\"ids\":\",at00o1qxho,pt16030050,us20004vvx,gcmt20160130032510,\","
+            + "\"sources\":\",at,pt,us,gcmt,\",\"types\":\",cap,dyfi,finite-fault,general-link,general-text,"
+            + "geoserve,impact-link,impact-text,losspager,moment-tensor,nearby-cities,origin,phase-data,"
+            + "shakemap,tectonic-summary,\",\"nst\":null,\"dmin\":0.958,\"rms\":1.19,\"gap\":17,"
+            + "\"magType\":\"mww\",\"type\":\"earthquake\",\"title\":\"M 7.2 - 88km N of Yelizovo, Russia\"},"
+            + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[158.5463,53.9776,177]},\"id\":\"us20004vvx\"}";
+
+    //the place has accents, felt, cdi and alert are null and the depth is negative
+    private static final String BIOBIO = "{\"type\":\"Feature\",\"properties\":{\"mag\":4.6,"
+            + "\"place\":\"25km WSW of Lebu, B\u00edob\u00edo, Chile\",\"time\":1453988164290,\"updated\":1454040511040,"
+            + "\"tz\":-180,\"url\":\"https://earthquake.usgs.gov/earthquakes/eventpage/us20004vq2\","
+            + "\"felt\":null,\"cdi\":null,\"mmi\":null,\"alert\":null,\"status\":\"reviewed\",\"tsunami\":0,"
+            + "\"sig\":326,\"net\":\"us\",\"code\":\"20004vq2\",\"nst\":null,\"dmin\":1.338,\"rms\":0.78,\"gap\":123,"
+            + "\"magType\":\"mb\",\"type\":\"earthquake\",\"title\":\"M 4.6 - 25km WSW of Lebu, B\u00edob\u00edo, Chile\"},"
+            + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[-73.9041,-37.6821,-1.2e0]},\"id\":\"us20004vq2\"}";
+
+    //a feature of a feed without geometry
+    private static final String NO_GEOMETRY = "{\"type\":\"Feature\",\"properties\":{\"mag\":-0.3,"
+            + "\"place\":\"Kermadec Islands region\",\"time\":1453777820750,\"url\":null,\"tsunami\":0},"
+            + "\"geometry\":null,\"id\":\"us20004uks\"}";
+
+    private static final String NO_PROPERTIES = "{\"type\":\"Feature\",\"properties\":null,"
+            + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[1,2,3]},\"id\":\"xx\"}";
+
+    private static final String FEED = "{\"type\":\"FeatureCollection\",\"metadata\":{\"generated\":1454220003000,"
+            + "\"url\":\"https://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&limit=4\","
+            + "\"title\":\"USGS Earthquakes\",\"status\":200,\"api\":\"1.5.2\",\"limit\":4,\"offset\":1,\"count\":4},"
+            + "\"features\":[" + YELIZOVO + ",\n" + BIOBIO + ",\n" + NO_PROPERTIES + ",\n" + NO_GEOMETRY + "],"
+            + "\"bbox\":[-73.9041,-37.6821,-1.2,158.5463,53.9776,177]}";
+
+    /**
+     * the fields of a feature the tests look at
+     */
+    private static final class Quake {
+        final String mId;
+        final double mMagnitude;
+        final String mPlace;
+        final long mTime;
+        final String mUrl;
+        final int mFelt;
+        final String mAlert;
+        final int mTsunami;
+        final double mLongitude;
+        final double mLatitude;
+        final double mDepth;
+
+        Quake(Feature feature) {
+            mId = feature.getId();
+            mMagnitude = feature.getDouble("mag", Double.NaN);
+            mPlace = feature.getString("place");
+            mTime = feature.getLong("time", -1);
+            mUrl = feature.getString("url");
+            mFelt = feature.getInt("felt", -1);
+            mAlert = feature.getString("alert", "none");
+            mTsunami = feature.getInt("tsunami", -1);
+            mLongitude = feature.getLongitude();
+            mLatitude = feature.getLatitude();
+            mDepth = feature.getDepth();
+        }
+    }
+
+    private static final FeatureMapper<Quake> MAPPER =
+            new FeatureMapper<Quake>("mag", "place", "time", "url", "felt", "alert", "tsunami") {
+                @Override
+                public Quake map(Feature feature) {
+                    return new Quake(feature);
+                }
+            };
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(UTF_8));
+    }
+
+    private static List<Quake> parse(InputStream feed, int maxFeatures, int expectedCount) throws IOException {
+        final List<Quake> quakes = new ArrayList<>();
+        int count = UsgsParser.parse(feed, MAPPER, new UsgsParser.Receiver<Quake>() {
+            @Override
+            public void onFeature(Quake value) {
+                quakes.add(value);
+            }
+        }, maxFeatures);
+        assertEquals(expectedCount, count);
+        return quakes;
+    }
+
+    @Test
+    public void parse_readsEveryFeatureWithProperties() throws Exception {
+        List<Quake> quakes = parse(stream(FEED), Integer.MAX_VALUE, 3);
+
+        assertEquals(3, quakes.size());
+        Quake yelizovo = quakes.get(0);
+        assertEquals("us20004vvx", yelizovo.mId);
+        assertEquals(7.2, yelizovo.mMagnitude, 0);
+        assertEquals("88km N of Yelizovo, Russia", yelizovo.mPlace);
+        assertEquals(1454124312220L, yelizovo.mTime);
+        assertEquals("https://earthquake.usgs.gov/earthquakes/eventpage/us20004vvx", yelizovo.mUrl);
+        assertEquals(2, yelizovo.mFelt);
+        assertEquals("green", yelizovo.mAlert);
+        assertEquals(1, yelizovo.mTsunami);
+        assertEquals(158.5463, yelizovo.mLongitude, 0);
+        assertEquals(53.9776, yelizovo.mLatitude, 0);
+        assertEquals(177, yelizovo.mDepth, 0);
+
+        Quake biobio = quakes.get(1);
+        assertEquals("us20004vq2", biobio.mId);
+        assertEquals("25km WSW of Lebu, B\u00edob\u00edo, Chile", biobio.mPlace);
+        assertEquals(-73.9041, biobio.mLongitude, 0);
+        assertEquals(-37.6821, biobio.mLatitude, 0);
+        assertEquals(-1.2, biobio.mDepth, 0);
+    }
+
+    @Test
+    public void parse_leavesTheNullPropertiesMissing() throws Exception {
+        List<Quake> quakes = parse(stream(FEED), Integer.MAX_VALUE, 3);
+
+        //null in the feed, the fallback of the mapper
+        Quake biobio = quakes.get(1);
+        assertEquals(-1, biobio.mFelt);
+        assertEquals("none", biobio.mAlert);
+        assertEquals(0, biobio.mTsunami);
+
+        Quake noGeometry = quakes.get(2);
+        assertEquals("us20004uks", noGeometry.mId);
+        assertEquals(-0.3, noGeometry.mMagnitude, 0);
+        assertNull(noGeometry.mUrl);
+        assertTrue(Double.isNaN(noGeometry.mLongitude));
+        assertTrue(Double.isNaN(noGeometry.mLatitude));
+        assertTrue(Double.isNaN(noGeometry.mDepth));
+    }
+
+    @Test
+    public void parse_stopsReadingAfterMaxFeatures() throws Exception {
+        //the rest of the body is never read, it doesn't matter that it's broken
+        InputStream feed = new SequenceInputStream(
+                stream("{\"type\":\"FeatureCollection\",\"features\":[" + YELIZOVO + ","),
+                stream("this is not JSON"));
+
+        List<Quake> quakes = parse(feed, 1, 1);
+
+        assertEquals("us20004vvx", quakes.get(0).mId);
+    }
+
+    @Test
+    public void parse_aTruncatedFeedFailsAfterItsWholeFeatures() throws Exception {
+        final List<Quake> quakes = new ArrayList<>();
+        String truncated = FEED.substring(0, FEED.indexOf(BIOBIO) + BIOBIO.length() / 2);
+        try {
+            UsgsParser.parse(stream(truncated), MAPPER, new UsgsParser.Receiver<Quake>() {
+                @Override
+                public void onFeature(Quake value) {
+                    quakes.add(value);
+                }
+            }, Integer.MAX_VALUE);
+            fail("parsed a truncated feed");
+        } catch (IOException e) {
+            assertEquals(1, quakes.size());
+        }
+    }
+
+    @Test
+    public void parse_aFeedWithoutFeatures() throws Exception {
+        assertEquals(0, parse(stream("{\"type\":\"FeatureCollection\",\"metadata\":{\"count\":0},\"features\":[]}"),
+                Integer.MAX_VALUE, 0).size());
+        assertEquals(0, parse(stream("{\"type\":\"FeatureCollection\",\"features\":null}"),
+                Integer.MAX_VALUE, 0).size());
+    }
+
+    @Test(expected = IOException.class)
+    public void parse_aBodyThatIsNotAnObjectFails() throws Exception {
+        parse(stream("[" + YELIZOVO + "]"), Integer.MAX_VALUE, 0);
+    }
+
+    @Test
+    public void parseFeature_readsOneFeature() throws Exception {
+        final List<Quake> quakes = new ArrayList<>();
+        UsgsParser.Receiver<Quake> receiver = new UsgsParser.Receiver<Quake>() {
+            @Override
+            public void onFeature(Quake value) {
+                quakes.add(value);
+            }
+        };
+
+        assertTrue(UsgsParser.parseFeature(stream(BIOBIO), MAPPER, receiver));
+        assertFalse(UsgsParser.parseFeature(stream(NO_PROPERTIES), MAPPER, receiver));
+
+        assertEquals(1, quakes.size());
+        assertEquals(4.6, quakes.get(0).mMagnitude, 0);
+    }
+}